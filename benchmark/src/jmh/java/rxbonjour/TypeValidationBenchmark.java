@@ -0,0 +1,41 @@
+package rxbonjour;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link RxBonjour#isBonjourType(String)} to the regular expression it used to be implemented with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypeValidationBenchmark {
+
+	/** Pattern previously used by {@link RxBonjour#isBonjourType(String)} */
+	private static final String TYPE_PATTERN = "_[a-zA-Z0-9\\-_]+\\.(_tcp|_udp)(\\.[a-zA-Z0-9\\-]+\\.)?";
+
+	private static final Pattern COMPILED_TYPE_PATTERN = Pattern.compile(TYPE_PATTERN);
+
+	@Param({ "_http._tcp", "_xmpp-server._tcp.local.", "_http._invalidprotocol" })
+	public String type;
+
+	@Benchmark public boolean isBonjourType() {
+		return RxBonjour.isBonjourType(type);
+	}
+
+	@Benchmark public boolean stringMatches() {
+		return type.matches(TYPE_PATTERN);
+	}
+
+	@Benchmark public boolean precompiledPattern() {
+		return COMPILED_TYPE_PATTERN.matcher(type).matches();
+	}
+}
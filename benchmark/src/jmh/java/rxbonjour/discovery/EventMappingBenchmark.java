@@ -0,0 +1,110 @@
+package rxbonjour.discovery;
+
+import android.net.nsd.NsdServiceInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.impl.ServiceInfoImpl;
+
+import rxbonjour.jmdns.JmDNSDiscovery;
+import rxbonjour.model.BonjourEvent;
+
+/**
+ * Measures the mapping of the events reported by JmDNS and NsdManager to BonjourEvents.
+ * The events are built locally, without any network access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventMappingBenchmark {
+
+	private static final String NAME = "Office Printer";
+	private static final String TYPE = "_http._tcp.local.";
+	private static final int PORT = 8080;
+
+	private ServiceEvent jmdnsEvent;
+	private NsdServiceInfo nsdServiceInfo;
+
+	@Setup public void setup() throws Exception {
+		Map<String, String> txtRecords = new HashMap<>();
+		txtRecords.put("path", "/index.html");
+		txtRecords.put("txtvers", "1");
+		txtRecords.put("note", "Second floor");
+		InetAddress address = InetAddress.getByName("192.168.1.42");
+
+		// JmDNS only adds addresses to resolved services internally
+		ServiceInfo info = ServiceInfo.create(TYPE, NAME, PORT, 0, 0, txtRecords);
+		Method addAddress = ServiceInfoImpl.class.getDeclaredMethod("addAddress", Inet4Address.class);
+		addAddress.setAccessible(true);
+		addAddress.invoke(info, address);
+		jmdnsEvent = new LocalServiceEvent(info);
+
+		nsdServiceInfo = new NsdServiceInfo();
+		nsdServiceInfo.setServiceName(NAME);
+		nsdServiceInfo.setServiceType("_http._tcp.");
+		nsdServiceInfo.setHost(address);
+		nsdServiceInfo.setPort(PORT);
+		for (Map.Entry<String, String> entry : txtRecords.entrySet()) {
+			nsdServiceInfo.setAttribute(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Benchmark public BonjourEvent supportNewBonjourEvent() {
+		return JmDNSDiscovery.newBonjourEvent(BonjourEvent.Type.ADDED, jmdnsEvent);
+	}
+
+	@Benchmark public BonjourEvent jbNewBonjourEvent() {
+		return JBBonjourDiscovery.newBonjourEvent(BonjourEvent.Type.ADDED, nsdServiceInfo, true);
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Stand-in for the events dispatched by JmDNS, which require a running JmDNS instance as their source
+	 */
+	private static final class LocalServiceEvent extends ServiceEvent {
+
+		private final ServiceInfo mInfo;
+
+		LocalServiceEvent(ServiceInfo info) {
+			super(info);
+			mInfo = info;
+		}
+
+		@Override public JmDNS getDNS() {
+			return null;
+		}
+
+		@Override public String getType() {
+			return mInfo.getType();
+		}
+
+		@Override public String getName() {
+			return mInfo.getName();
+		}
+
+		@Override public ServiceInfo getInfo() {
+			return mInfo;
+		}
+
+		@Override public LocalServiceEvent clone() {
+			return new LocalServiceEvent(mInfo);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package rxbonjour.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the queue holding the pending items of a {@link ResolveScheduler}, both from a single
+ * producer and from several producers contending for it. Each operation adds an item and drains one, so that
+ * the depth of the queue stays put instead of growing without bounds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OverflowQueueBenchmark {
+
+	/** Number of distinct keys of the added items, which only matters for {@link OverflowPolicy#COALESCE} */
+	private static final int KEY_COUNT = 16;
+
+	@Benchmark public Integer singleProducer(QueueState queue, ProducerState producer) {
+		Integer item = producer.next();
+		queue.queue.offer(item, item);
+		return queue.queue.poll();
+	}
+
+	@Benchmark @Threads(4) public Integer contendedProducers(QueueState queue, ProducerState producer) {
+		Integer item = producer.next();
+		queue.queue.offer(item, item);
+		return queue.queue.poll();
+	}
+
+	/* Begin states */
+
+	@State(Scope.Benchmark)
+	public static class QueueState {
+		@Param({ "GROW", "COALESCE" })
+		public OverflowPolicy policy;
+
+		// Items queued up front, spilling past the ring buffer beyond ResolveScheduler.DEFAULT_CAPACITY.
+		// Coalesced items don't take up room, so with COALESCE the added items drain these over the course of an iteration
+		@Param({ "0", "256" })
+		public int queued;
+
+		OverflowQueue<Integer> queue;
+
+		@Setup(Level.Iteration) public void setup() {
+			queue = new OverflowQueue<>(ResolveScheduler.DEFAULT_CAPACITY, policy);
+			for (int i = 0; i < queued; i++) {
+				// Keys distinct from those of the added items
+				Integer item = KEY_COUNT + i;
+				queue.offer(item, item);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ProducerState {
+		private final Integer[] items = new Integer[KEY_COUNT];
+		private int index;
+
+		public ProducerState() {
+			for (int i = 0; i < KEY_COUNT; i++) {
+				items[i] = i;
+			}
+		}
+
+		Integer next() {
+			index = (index + 1) % KEY_COUNT;
+			return items[index];
+		}
+	}
+}
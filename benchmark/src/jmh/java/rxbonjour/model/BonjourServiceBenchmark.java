@@ -0,0 +1,57 @@
+package rxbonjour.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction and comparison of BonjourServices, which happen for every discovery event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BonjourServiceBenchmark {
+
+	private InetAddress v4Address;
+	private InetAddress v6Address;
+	private BonjourService service;
+	private BonjourService equalService;
+
+	@Setup public void setup() throws Exception {
+		v4Address = InetAddress.getByName("192.168.1.42");
+		v6Address = InetAddress.getByName("fe80::1");
+		service = newService();
+		equalService = newService();
+	}
+
+	@Benchmark public BonjourService build() {
+		return newService();
+	}
+
+	@Benchmark public boolean equalsEqual() {
+		return service.equals(equalService);
+	}
+
+	@Benchmark public int hashCodeOf() {
+		return service.hashCode();
+	}
+
+	/* Begin private */
+
+	private BonjourService newService() {
+		return new BonjourService.Builder("Office Printer", "_http._tcp.local.")
+				.addAddress(v4Address)
+				.addAddress(v6Address)
+				.setPort(8080)
+				.addTxtRecord("path", "/index.html")
+				.addTxtRecord("txtvers", "1")
+				.build();
+	}
+}
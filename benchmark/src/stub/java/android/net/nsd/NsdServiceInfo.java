@@ -0,0 +1,69 @@
+package android.net.nsd;
+
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the framework's NsdServiceInfo, covering the methods used by the library.
+ * The NsdServiceInfo shipped with Robolectric's android-all stores its attributes in an ArrayMap,
+ * which relies on System methods that only exist in Android's core libraries.
+ */
+public final class NsdServiceInfo {
+
+	private String mServiceName;
+	private String mServiceType;
+	private InetAddress mHost;
+	private int mPort;
+	private final Map<String, byte[]> mTxtRecord = new LinkedHashMap<>();
+
+	public String getServiceName() {
+		return mServiceName;
+	}
+
+	public void setServiceName(String serviceName) {
+		mServiceName = serviceName;
+	}
+
+	public String getServiceType() {
+		return mServiceType;
+	}
+
+	public void setServiceType(String serviceType) {
+		mServiceType = serviceType;
+	}
+
+	public InetAddress getHost() {
+		return mHost;
+	}
+
+	public void setHost(InetAddress host) {
+		mHost = host;
+	}
+
+	public int getPort() {
+		return mPort;
+	}
+
+	public void setPort(int port) {
+		mPort = port;
+	}
+
+	public void setAttribute(String key, String value) {
+		mTxtRecord.put(key, (value == null) ? new byte[0] : value.getBytes(Charset.forName("UTF-8")));
+	}
+
+	public void removeAttribute(String key) {
+		mTxtRecord.remove(key);
+	}
+
+	public Map<String, byte[]> getAttributes() {
+		return Collections.unmodifiableMap(mTxtRecord);
+	}
+
+	@Override public String toString() {
+		return "name: " + mServiceName + ", type: " + mServiceType + ", host: " + mHost + ", port: " + mPort;
+	}
+}
@@ -106,6 +106,7 @@ public class MainActivity extends AppCompatActivity {
 		// Clear the adapter's items, then start a new discovery
 		adapter.clearItems();
 		nsdSubscription = RxBonjour.newDiscovery(this, input, useNsdManager)
+				.compose(RxBonjour.distinctChanges())
 				.subscribe(new Action1<BonjourEvent>() {
 					@Override public void call(BonjourEvent bonjourEvent) {
 						// Depending on the type of event and the availability of the item, adjust the adapter
@@ -115,6 +116,10 @@ public class MainActivity extends AppCompatActivity {
 								if (!adapter.containsItem(item)) adapter.addItem(item);
 								break;
 
+							case UPDATED:
+								adapter.replaceItem(bonjourEvent.getPreviousService(), item);
+								break;
+
 							case REMOVED:
 								if (adapter.containsItem(item)) adapter.removeItem(item);
 								break;
@@ -0,0 +1,15 @@
+package rxbonjour.exc;
+
+/**
+ * Thrown when a service can't be resolved on demand
+ */
+public class ResolveFailed extends Exception {
+
+	public ResolveFailed(Class<?> implClass, String name, String type, int errorCode) {
+		super(implClass.getSimpleName() + " failed to resolve " + name + " of type " + type + " with error code " + errorCode);
+	}
+
+	public ResolveFailed(Class<?> implClass, String name, String type) {
+		super(implClass.getSimpleName() + " failed to resolve " + name + " of type " + type);
+	}
+}
@@ -0,0 +1,15 @@
+package rxbonjour.internal;
+
+/**
+ * Strategy applied to Bonjour events that are produced faster than a subscriber requests them.
+ */
+public enum BackpressureStrategy {
+	/** Keep only the latest pending event of each service, replacing older ones; events of distinct services are never dropped */
+	LATEST_PER_SERVICE,
+
+	/** Keep pending events in a bounded buffer, discarding the oldest event once it is full */
+	BUFFER,
+
+	/** Discard events that arrive while the subscriber hasn't requested any */
+	DROP
+}
@@ -0,0 +1,202 @@
+package rxbonjour.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rxbonjour.metrics.Metrics;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Operator decoupling the producers of Bonjour events, which emit events from callback threads at the network's pace,
+ * from the demand signalled by subscribers through {@link Subscriber#request(long)}. Events that can't be delivered yet
+ * are handled according to a {@link BackpressureStrategy}. With {@link BackpressureStrategy#LATEST_PER_SERVICE},
+ * pending events are keyed per service, so that at most one event per service is held; events of services beyond the
+ * capacity spill over rather than displacing those of other services. The other strategies hold pending events in a
+ * bounded queue. Events may be emitted from multiple threads concurrently. Events delivered to the subscriber
+ * are counted per type through {@link Metrics#countEvent(BonjourEvent.Type)}.
+ */
+public final class EventBackpressure implements Observable.Operator<BonjourEvent, BonjourEvent> {
+
+	/** Number of pending events held by default */
+	public static final int DEFAULT_CAPACITY = 128;
+
+	private static volatile BackpressureStrategy defaultStrategy = BackpressureStrategy.LATEST_PER_SERVICE;
+	private static volatile int defaultCapacity = DEFAULT_CAPACITY;
+
+	private final BackpressureStrategy strategy;
+	private final int capacity;
+
+	/**
+	 * Constructor
+	 *
+	 * @param strategy Strategy applied to events that can't be delivered yet
+	 * @param capacity Number of pending events held before applying the strategy's overflow rule
+	 */
+	public EventBackpressure(BackpressureStrategy strategy, int capacity) {
+		if (strategy == null) throw new IllegalArgumentException("strategy must not be null");
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.strategy = strategy;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return An operator using the strategy and capacity set through {@link #setDefault(BackpressureStrategy, int)}
+	 */
+	public static EventBackpressure withDefaults() {
+		return new EventBackpressure(defaultStrategy, defaultCapacity);
+	}
+
+	/**
+	 * Sets the strategy and capacity used by discoveries and broadcasts started afterwards.
+	 *
+	 * @param strategy Strategy applied to events that can't be delivered yet
+	 * @param capacity Number of pending events held before applying the strategy's overflow rule
+	 */
+	public static void setDefault(BackpressureStrategy strategy, int capacity) {
+		if (strategy == null) throw new IllegalArgumentException("strategy must not be null");
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		defaultStrategy = strategy;
+		defaultCapacity = capacity;
+	}
+
+	@Override public Subscriber<? super BonjourEvent> call(Subscriber<? super BonjourEvent> child) {
+		final BackpressureSubscriber parent = new BackpressureSubscriber(child, strategy, capacity);
+		child.add(parent);
+		child.setProducer(new Producer() {
+			@Override public void request(long n) {
+				parent.requestMore(n);
+			}
+		});
+		return parent;
+	}
+
+	/* Begin inner classes */
+
+	private static final class BackpressureSubscriber extends Subscriber<BonjourEvent> {
+
+		private final Subscriber<? super BonjourEvent> child;
+
+		/** Pending events */
+		private final OverflowQueue<BonjourEvent> queue;
+
+		/** Whether pending events are keyed per service */
+		private final boolean keyed;
+
+		/** Whether events are dropped unless there is outstanding demand for them */
+		private final boolean dropWithoutDemand;
+
+		private final AtomicLong requested = new AtomicLong();
+
+		/** Work-in-progress counter, ensuring that only one thread emits events at a time */
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private volatile boolean done;
+		private Throwable error;
+
+		BackpressureSubscriber(Subscriber<? super BonjourEvent> child, BackpressureStrategy strategy, int capacity) {
+			this.child = child;
+			switch (strategy) {
+				case LATEST_PER_SERVICE:
+					this.queue = new OverflowQueue<>(capacity, OverflowPolicy.COALESCE);
+					this.keyed = true;
+					this.dropWithoutDemand = false;
+					break;
+
+				case BUFFER:
+					this.queue = new OverflowQueue<>(capacity, OverflowPolicy.DROP_OLDEST);
+					this.keyed = false;
+					this.dropWithoutDemand = false;
+					break;
+
+				default:
+					// Events are still queued briefly while another thread is emitting
+					this.queue = new OverflowQueue<>(capacity, OverflowPolicy.DROP_OLDEST);
+					this.keyed = false;
+					this.dropWithoutDemand = true;
+					break;
+			}
+		}
+
+		@Override public void onStart() {
+			// Always accept events from upstream; they are held back here instead
+			request(Long.MAX_VALUE);
+		}
+
+		@Override public void onNext(BonjourEvent event) {
+			if (done) return;
+
+			// Only admit events for which there is demand, not counting those that are already waiting
+			if (dropWithoutDemand && requested.get() <= queue.depth()) return;
+
+			queue.offer(event, keyed ? keyOf(event.getService()) : null);
+			drain();
+		}
+
+		@Override public void onError(Throwable e) {
+			error = e;
+			done = true;
+			drain();
+		}
+
+		@Override public void onCompleted() {
+			done = true;
+			drain();
+		}
+
+		void requestMore(long n) {
+			if (n <= 0) return;
+
+			long r;
+			long u;
+			do {
+				r = requested.get();
+				u = r + n;
+				if (u < 0) u = Long.MAX_VALUE;
+			} while (!requested.compareAndSet(r, u));
+			drain();
+		}
+
+		/* Begin private */
+
+		private static Object keyOf(BonjourService service) {
+			return ServiceKeys.keyOf(service.getName(), service.getType());
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) return;
+
+			int missed = 1;
+			do {
+				long r = requested.get();
+				long emitted = 0;
+				while (emitted != r) {
+					if (child.isUnsubscribed()) return;
+					BonjourEvent event = queue.poll();
+					if (event == null) break;
+					Metrics.countEvent(event.getType());
+					child.onNext(event);
+					emitted++;
+				}
+				if (emitted != 0 && r != Long.MAX_VALUE) requested.addAndGet(-emitted);
+
+				// Errors are delivered right away, whereas completion waits for pending events.
+				// Terminating leaves the work-in-progress counter raised, so that nothing is emitted afterwards
+				if (done && (error != null || queue.depth() == 0)) {
+					queue.clear();
+					if (error != null) {
+						child.onError(error);
+					} else {
+						child.onCompleted();
+					}
+					return;
+				}
+
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package rxbonjour.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Transformer coalescing Bonjour events into batches, which are emitted once a time window has passed or a batch is full,
+ * whichever comes first. Windows without any events don't produce a batch. This reduces the number of hand-offs to a
+ * consumer thread, such as Android's main thread, during bursts of events.
+ * <p>
+ * In net-change mode, the events are deduplicated through {@link ServiceDiff} first, and the events of each service within
+ * a batch are collapsed into their net effect: a service that is added and removed again within the same batch doesn't
+ * appear in it at all, while multiple updates of a service are merged into a single update.
+ */
+public final class EventBatcher implements Observable.Transformer<BonjourEvent, List<BonjourEvent>> {
+
+	private static final Func1<List<BonjourEvent>, List<BonjourEvent>> COLLAPSE = new Func1<List<BonjourEvent>, List<BonjourEvent>>() {
+		@Override public List<BonjourEvent> call(List<BonjourEvent> events) {
+			return collapse(events);
+		}
+	};
+
+	private static final Func1<List<BonjourEvent>, Boolean> NOT_EMPTY = new Func1<List<BonjourEvent>, Boolean>() {
+		@Override public Boolean call(List<BonjourEvent> events) {
+			return !events.isEmpty();
+		}
+	};
+
+	private final long timespan;
+	private final TimeUnit unit;
+	private final int maxSize;
+	private final boolean netChanges;
+	private final Scheduler scheduler;
+
+	/**
+	 * Constructor, timing windows on the computation scheduler
+	 *
+	 * @param timespan   Length of each window
+	 * @param unit       Unit of the window length
+	 * @param maxSize    Maximum number of events per batch, causing a batch to be emitted early once reached
+	 * @param netChanges Whether to collapse the events of each batch into their net effect
+	 */
+	public EventBatcher(long timespan, TimeUnit unit, int maxSize, boolean netChanges) {
+		this(timespan, unit, maxSize, netChanges, Schedulers.computation());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param timespan   Length of each window
+	 * @param unit       Unit of the window length
+	 * @param maxSize    Maximum number of events per batch, causing a batch to be emitted early once reached
+	 * @param netChanges Whether to collapse the events of each batch into their net effect
+	 * @param scheduler  Scheduler timing the windows
+	 */
+	public EventBatcher(long timespan, TimeUnit unit, int maxSize, boolean netChanges, Scheduler scheduler) {
+		if (timespan <= 0) throw new IllegalArgumentException("timespan must be positive: " + timespan);
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		this.timespan = timespan;
+		this.unit = unit;
+		this.maxSize = maxSize;
+		this.netChanges = netChanges;
+		this.scheduler = scheduler;
+	}
+
+	@Override public Observable<List<BonjourEvent>> call(Observable<BonjourEvent> source) {
+		Observable<List<BonjourEvent>> batches = netChanges
+				? source.compose(ServiceDiff.get()).buffer(timespan, unit, maxSize, scheduler).map(COLLAPSE)
+				: source.buffer(timespan, unit, maxSize, scheduler);
+
+		return batches.filter(NOT_EMPTY);
+	}
+
+	/**
+	 * Collapses the provided events into their net effect per service, preserving the order in which services first appear.
+	 * The events are expected to be deduplicated by {@link ServiceDiff}, i.e. additions of known services are reported as updates.
+	 *
+	 * @param events Events to collapse
+	 * @return The net changes
+	 */
+	static List<BonjourEvent> collapse(List<BonjourEvent> events) {
+		Map<String, NetChange> changes = new LinkedHashMap<>();
+		for (BonjourEvent event : events) {
+			BonjourService service = event.getService();
+			String key = ServiceKeys.keyOf(service.getName(), service.getType());
+
+			NetChange change = changes.get(key);
+			if (change == null) {
+				change = new NetChange();
+				changes.put(key, change);
+			}
+			change.apply(event);
+		}
+
+		List<BonjourEvent> result = new ArrayList<>(changes.size());
+		for (NetChange change : changes.values()) {
+			if (change.removal != null) result.add(change.removal);
+			if (change.change != null) result.add(change.change);
+		}
+		return result;
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Net effect of the events of a single service within a batch: the removal of a service known before the batch,
+	 * followed by its addition or update
+	 */
+	private static final class NetChange {
+
+		BonjourEvent removal;
+		BonjourEvent change;
+
+		void apply(BonjourEvent event) {
+			switch (event.getType()) {
+				case REMOVED:
+					if (change == null) {
+						if (removal == null) removal = event;
+
+					} else if (change.getType() == BonjourEvent.Type.ADDED) {
+						// Added within this batch, so the removal cancels it out
+						change = null;
+
+					} else {
+						change = null;
+						removal = event;
+					}
+					break;
+
+				default:
+					if (change == null) {
+						change = event;
+
+					} else if (change.getType() == BonjourEvent.Type.ADDED) {
+						change = new BonjourEvent(BonjourEvent.Type.ADDED, event.getService());
+
+					} else {
+						BonjourService previous = change.getPreviousService();
+						Set<BonjourEvent.Change> diff = ServiceDiff.diff(previous, event.getService());
+						change = diff.isEmpty() ? null : new BonjourEvent(previous, event.getService(), diff);
+					}
+					break;
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package rxbonjour.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.BooleanSubscription;
+import rx.subscriptions.Subscriptions;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Hot stream of Bonjour events, which shares a single subscription to its source among any number of subscribers.
+ * Subscribers joining later first receive an ADDED event for each service that is currently live, and then the live events.
+ * <p>
+ * The source is subscribed to along with the first subscriber, and unsubscribed from once the last subscriber leaves.
+ * Events are delivered to all subscribers while holding the stream's lock, so that joining subscribers neither miss
+ * nor duplicate any event.
+ */
+public final class LiveEventStream {
+
+	private final Observable<BonjourEvent> source;
+	private final Action0 onIdle;
+
+	// Guarded by the stream's monitor
+	private final List<Subscriber<? super BonjourEvent>> subscribers = new ArrayList<>();
+	private final Map<String, BonjourService> live = new LinkedHashMap<>();
+	private Subscription connection;
+
+	/**
+	 * Constructor
+	 *
+	 * @param source Source of the events, which is subscribed to at most once at a time
+	 * @param onIdle Action invoked after the last subscriber has left and the source was unsubscribed from
+	 */
+	public LiveEventStream(Observable<BonjourEvent> source, Action0 onIdle) {
+		this.source = source;
+		this.onIdle = onIdle;
+	}
+
+	/**
+	 * @return An Observable replaying the live services to each subscriber, followed by the events of the shared source
+	 */
+	public Observable<BonjourEvent> observe() {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(final Subscriber<? super BonjourEvent> subscriber) {
+				Subscription pending = null;
+				synchronized (LiveEventStream.this) {
+					for (BonjourService service : live.values()) {
+						subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+					}
+					subscribers.add(subscriber);
+					if (connection == null) {
+						// Placeholder for the connection to the source, until it has been established
+						pending = BooleanSubscription.create();
+						connection = pending;
+					}
+				}
+
+				subscriber.add(Subscriptions.create(new Action0() {
+					@Override public void call() {
+						remove(subscriber);
+					}
+				}));
+
+				if (pending != null) connect(pending);
+			}
+		});
+	}
+
+	/**
+	 * @return The number of current subscribers
+	 */
+	public synchronized int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/* Begin private */
+
+	private void connect(Subscription pending) {
+		Subscription subscription = source.unsafeSubscribe(new Subscriber<BonjourEvent>() {
+			@Override public void onNext(BonjourEvent event) {
+				synchronized (LiveEventStream.this) {
+					BonjourService service = event.getService();
+					String key = ServiceKeys.keyOf(service.getName(), service.getType());
+					if (event.getType() == BonjourEvent.Type.ADDED) {
+						live.put(key, service);
+					} else {
+						live.remove(key);
+					}
+
+					for (Subscriber<? super BonjourEvent> subscriber : snapshot()) {
+						subscriber.onNext(event);
+					}
+				}
+			}
+
+			@Override public void onError(Throwable e) {
+				for (Subscriber<? super BonjourEvent> subscriber : terminate()) {
+					subscriber.onError(e);
+				}
+				onIdle.call();
+			}
+
+			@Override public void onCompleted() {
+				for (Subscriber<? super BonjourEvent> subscriber : terminate()) {
+					subscriber.onCompleted();
+				}
+				onIdle.call();
+			}
+		});
+
+		synchronized (this) {
+			if (connection == pending) {
+				connection = subscription;
+				return;
+			}
+		}
+
+		// The source has terminated, or all subscribers have left in the meantime
+		subscription.unsubscribe();
+	}
+
+	private void remove(Subscriber<? super BonjourEvent> subscriber) {
+		Subscription disconnect = null;
+		synchronized (this) {
+			if (!subscribers.remove(subscriber) || !subscribers.isEmpty()) return;
+
+			live.clear();
+			disconnect = connection;
+			connection = null;
+		}
+
+		if (disconnect != null) {
+			disconnect.unsubscribe();
+			onIdle.call();
+		}
+	}
+
+	private synchronized List<Subscriber<? super BonjourEvent>> terminate() {
+		List<Subscriber<? super BonjourEvent>> terminated = snapshot();
+		subscribers.clear();
+		live.clear();
+		connection = null;
+		return terminated;
+	}
+
+	private List<Subscriber<? super BonjourEvent>> snapshot() {
+		return new ArrayList<>(subscribers);
+	}
+}
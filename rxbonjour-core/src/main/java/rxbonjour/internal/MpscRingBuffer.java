@@ -0,0 +1,123 @@
+package rxbonjour.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, bounded ring buffer for multiple producers. Each cell carries a sequence number
+ * telling producers and consumers whose turn it is to access it, so neither side ever blocks.
+ * Polling is safe to call from several threads as well, which allows producers to evict the oldest
+ * element when the buffer is full.
+ */
+final class MpscRingBuffer<E> {
+
+	/** Elements of the buffer */
+	private final AtomicReferenceArray<E> buffer;
+
+	/** Sequence number of each cell */
+	private final AtomicLongArray sequences;
+
+	/** Mask applied to positions in order to obtain a cell index */
+	private final int mask;
+
+	/** Position of the next element to be enqueued */
+	private final AtomicLong producerPosition = new AtomicLong();
+
+	/** Position of the next element to be dequeued */
+	private final AtomicLong consumerPosition = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param capacity	Minimum capacity of the buffer, rounded up to the next power of two
+	 */
+	MpscRingBuffer(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+
+		this.buffer = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			sequences.lazySet(i, i);
+		}
+	}
+
+	/**
+	 * @return The number of elements the buffer can hold
+	 */
+	int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Adds the provided element to the buffer
+	 * @param element	Element to add
+	 * @return True if the element was added, false if the buffer is full
+	 */
+	boolean offer(E element) {
+		long position = producerPosition.get();
+		int index;
+		for (;;) {
+			index = (int) (position & mask);
+			long delta = sequences.get(index) - position;
+			if (delta == 0) {
+				// The cell is free: claim it
+				if (producerPosition.compareAndSet(position, position + 1)) break;
+				position = producerPosition.get();
+
+			} else if (delta < 0) {
+				// The cell still holds an element from the previous lap
+				return false;
+
+			} else {
+				// Another producer claimed the cell in the meantime
+				position = producerPosition.get();
+			}
+		}
+
+		buffer.lazySet(index, element);
+		sequences.lazySet(index, position + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element from the buffer
+	 * @return The oldest element, or null if the buffer is empty
+	 */
+	E poll() {
+		long position = consumerPosition.get();
+		int index;
+		for (;;) {
+			index = (int) (position & mask);
+			long delta = sequences.get(index) - (position + 1);
+			if (delta == 0) {
+				// The cell holds an element: claim it
+				if (consumerPosition.compareAndSet(position, position + 1)) break;
+				position = consumerPosition.get();
+
+			} else if (delta < 0) {
+				// The cell has not been written yet
+				return null;
+
+			} else {
+				// Another consumer claimed the cell in the meantime
+				position = consumerPosition.get();
+			}
+		}
+
+		E element = buffer.get(index);
+		buffer.lazySet(index, null);
+		sequences.lazySet(index, position + mask + 1);
+		return element;
+	}
+
+	/**
+	 * @return The approximate number of elements currently held by the buffer
+	 */
+	int size() {
+		long size = producerPosition.get() - consumerPosition.get();
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+}
@@ -0,0 +1,15 @@
+package rxbonjour.internal;
+
+/**
+ * Strategy applied by bounded queues when an item is added while they are full.
+ */
+public enum OverflowPolicy {
+	/** Discard the oldest queued item to make room for the new one */
+	DROP_OLDEST,
+
+	/** Replace a queued item with the same key instead of queueing the new one; spill over into an unbounded queue if none matches */
+	COALESCE,
+
+	/** Spill over into an unbounded queue */
+	GROW
+}
@@ -0,0 +1,195 @@
+package rxbonjour.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rxbonjour.metrics.Metrics;
+import rxbonjour.metrics.MetricsSink;
+
+/**
+ * Non-blocking, bounded queue built on a {@link MpscRingBuffer}, applying an {@link OverflowPolicy}
+ * once it is full. Also keeps track of its depth and of the time items spend waiting in it,
+ * optionally reporting both to the {@link MetricsSink} of {@link Metrics}.
+ */
+final class OverflowQueue<T> {
+
+	/** Ring buffer holding queued items */
+	private final MpscRingBuffer<Entry<T>> ring;
+
+	/** Queued entries by key, used with {@link OverflowPolicy#COALESCE} */
+	private final ConcurrentMap<Object, Entry<T>> keyed;
+
+	/** Unbounded queue receiving items that don't fit into the ring buffer, used with {@link OverflowPolicy#GROW} and {@link OverflowPolicy#COALESCE} */
+	private final Queue<Entry<T>> spill;
+
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dequeued = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	/** Names of the metrics reporting the depth of the queue and the wait time of its items, or null */
+	private final String depthMetric;
+	private final String waitMetric;
+
+	OverflowQueue(int capacity, OverflowPolicy policy) {
+		this(capacity, policy, null, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity		Number of items held before applying the overflow policy
+	 * @param policy		Policy applied to items added to a full queue
+	 * @param depthMetric	Name of the gauge reporting the queue's depth, or null
+	 * @param waitMetric	Name of the histogram reporting the wait time of dequeued items in nanoseconds, or null
+	 */
+	OverflowQueue(int capacity, OverflowPolicy policy, String depthMetric, String waitMetric) {
+		this.depthMetric = depthMetric;
+		this.waitMetric = waitMetric;
+		this.ring = new MpscRingBuffer<>(capacity);
+		this.keyed = (policy == OverflowPolicy.COALESCE) ? new ConcurrentHashMap<Object, Entry<T>>() : null;
+		this.spill = (policy != OverflowPolicy.DROP_OLDEST) ? new ConcurrentLinkedQueue<Entry<T>>() : null;
+	}
+
+	/**
+	 * Adds the provided item to the queue
+	 * @param item	Item to add
+	 * @param key	Key of the item, used to coalesce items with the same key
+	 * @return The item dropped to make room for the new one, or null if none was dropped
+	 */
+	T offer(T item, Object key) {
+		Entry<T> entry = new Entry<>(item, key, System.nanoTime());
+
+		if (keyed != null && key != null) {
+			for (;;) {
+				Entry<T> existing = keyed.putIfAbsent(key, entry);
+				if (existing == null) break;
+
+				// Replace the item of the queued entry. If the entry is still registered after that,
+				// the consumer has not taken it yet and is guaranteed to pick up the new item
+				existing.item = item;
+				if (keyed.get(key) == existing) {
+					coalesced.incrementAndGet();
+					return null;
+				}
+			}
+		}
+
+		T evicted = null;
+		if (spill != null) {
+			// Keep spilling while older items are still waiting in the spill queue
+			if (!spill.isEmpty() || !ring.offer(entry)) {
+				spill.offer(entry);
+			}
+
+		} else {
+			while (!ring.offer(entry)) {
+				Entry<T> oldest = ring.poll();
+				if (oldest != null) {
+					release(oldest);
+					dropped.incrementAndGet();
+					evicted = oldest.item;
+				}
+			}
+		}
+
+		// Update depth statistics
+		int current = depth.incrementAndGet();
+		int max;
+		while (current > (max = maxDepth.get())) {
+			if (maxDepth.compareAndSet(max, current)) break;
+		}
+		if (depthMetric != null) Metrics.sink().gauge(depthMetric, current);
+		return evicted;
+	}
+
+	/**
+	 * Removes the oldest item from the queue
+	 * @return The oldest item, or null if the queue is empty
+	 */
+	T poll() {
+		Entry<T> entry = ring.poll();
+		if (entry == null && spill != null) entry = spill.poll();
+		if (entry == null) return null;
+
+		release(entry);
+		dequeued.incrementAndGet();
+		long wait = System.nanoTime() - entry.enqueuedAt;
+		totalWaitNanos.addAndGet(wait);
+		if (waitMetric != null) {
+			MetricsSink sink = Metrics.sink();
+			sink.record(waitMetric, wait);
+			sink.gauge(depthMetric, depth.get());
+		}
+
+		// Read the item only after the entry was released, so that no coalesced item is lost
+		return entry.item;
+	}
+
+	/**
+	 * Removes all items from the queue
+	 */
+	void clear() {
+		Entry<T> entry;
+		while ((entry = ring.poll()) != null) {
+			release(entry);
+		}
+		if (spill != null) {
+			while ((entry = spill.poll()) != null) {
+				release(entry);
+			}
+		}
+	}
+
+	int depth() {
+		return depth.get();
+	}
+
+	int maxDepth() {
+		return maxDepth.get();
+	}
+
+	long droppedCount() {
+		return dropped.get();
+	}
+
+	long coalescedCount() {
+		return coalesced.get();
+	}
+
+	long dequeuedCount() {
+		return dequeued.get();
+	}
+
+	long totalWaitNanos() {
+		return totalWaitNanos.get();
+	}
+
+	/* Begin private */
+
+	private void release(Entry<T> entry) {
+		depth.decrementAndGet();
+		if (keyed != null && entry.key != null) {
+			keyed.remove(entry.key, entry);
+		}
+	}
+
+	/* Begin inner classes */
+
+	private static final class Entry<T> {
+		volatile T item;
+		final Object key;
+		final long enqueuedAt;
+
+		Entry(T item, Object key, long enqueuedAt) {
+			this.item = item;
+			this.key = key;
+			this.enqueuedAt = enqueuedAt;
+		}
+	}
+}
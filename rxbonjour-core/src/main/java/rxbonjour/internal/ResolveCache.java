@@ -0,0 +1,165 @@
+package rxbonjour.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rxbonjour.model.BonjourService;
+
+/**
+ * Process-wide cache of resolved services, keyed by service name and type. Entries expire once the lifetime of
+ * the DNS records they were resolved from has passed, and the least recently used entries are evicted
+ * once the cache exceeds its maximum size.
+ */
+public final class ResolveCache {
+
+	/** Maximum number of entries held by default */
+	public static final int DEFAULT_MAX_SIZE = 256;
+
+	/** Lifetime of entries without known record TTLs, matching the recommended TTL of host records (RFC 6762, section 10) */
+	public static final long DEFAULT_TTL_MILLIS = 120 * 1000L;
+
+	private static final ResolveCache INSTANCE = new ResolveCache(DEFAULT_MAX_SIZE);
+
+	/** Cache entries in access order, the least recently used entry coming first */
+	@SuppressWarnings("serial")
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	/** Maximum number of entries */
+	private int maxSize;
+
+	ResolveCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public static ResolveCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Sets the maximum number of entries held by the cache, evicting the least recently used entries if necessary.
+	 *
+	 * @param maxSize Maximum number of entries, 0 disabling the cache
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		if (maxSize < 0) throw new IllegalArgumentException("maxSize must not be negative: " + maxSize);
+		this.maxSize = maxSize;
+
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (entries.size() > maxSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Adds the provided service to the cache, replacing any previous entry with the same name and type.
+	 *
+	 * @param service   Resolved service
+	 * @param ttlMillis Remaining lifetime of the records the service was resolved from
+	 */
+	public void put(BonjourService service, long ttlMillis) {
+		put(service, ttlMillis, System.currentTimeMillis());
+	}
+
+	synchronized void put(BonjourService service, long ttlMillis, long now) {
+		if (maxSize == 0 || ttlMillis <= 0) return;
+		String type = ServiceKeys.normalizeType(service.getType());
+		entries.put(ServiceKeys.keyOfNormalized(service.getName(), type), new Entry(service, type, now + ttlMillis));
+	}
+
+	/**
+	 * Removes the service with the provided name and type from the cache.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 */
+	public synchronized void remove(String name, String type) {
+		entries.remove(ServiceKeys.keyOf(name, type));
+	}
+
+	/**
+	 * Returns the service with the provided name and type, if it is cached and hasn't expired yet.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 * @return The cached service, or null if there is none
+	 */
+	public BonjourService getService(String name, String type) {
+		return getService(name, type, System.currentTimeMillis());
+	}
+
+	synchronized BonjourService getService(String name, String type, long now) {
+		String key = ServiceKeys.keyOf(name, type);
+		Entry entry = entries.get(key);
+		if (entry == null) return null;
+
+		if (entry.expiresAt <= now) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.service;
+	}
+
+	/**
+	 * Returns all non-expired services of the provided type, purging expired entries along the way.
+	 *
+	 * @param type Type of the services
+	 * @return The cached services of the type
+	 */
+	public List<BonjourService> getServices(String type) {
+		return getServices(type, System.currentTimeMillis());
+	}
+
+	synchronized List<BonjourService> getServices(String type, long now) {
+		String normalized = ServiceKeys.normalizeType(type);
+		List<BonjourService> services = new ArrayList<>();
+
+		// Iterating over the values doesn't affect the access order
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.expiresAt <= now) {
+				iterator.remove();
+
+			} else if (entry.type.equals(normalized)) {
+				services.add(entry.service);
+			}
+		}
+		return services;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return The number of entries in the cache, including those that have expired but weren't purged yet
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/* Begin inner classes */
+
+	private static final class Entry {
+		final BonjourService service;
+		final String type;
+		final long expiresAt;
+
+		Entry(BonjourService service, String type, long expiresAt) {
+			this.service = service;
+			this.type = type;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
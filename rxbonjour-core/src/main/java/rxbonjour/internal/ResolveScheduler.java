@@ -0,0 +1,255 @@
+package rxbonjour.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rxbonjour.metrics.Metrics;
+
+/**
+ * Resolve scheduler, dispatching enqueued items to a fixed number of slots so that several of them
+ * can be processed at the same time. Each slot handles one item at a time; once the caller is done
+ * with an item, it reports back through the slot using either {@link Slot#complete()} or {@link Slot#retry()}.
+ * The number of waiting items and their wait time are reported as {@link Metrics#RESOLVE_QUEUE_DEPTH}
+ * and {@link Metrics#RESOLVE_QUEUE_WAIT_NANOS}.
+ */
+public abstract class ResolveScheduler<T> {
+
+	/** Number of slots used by default */
+	public static final int DEFAULT_SLOT_COUNT = 4;
+
+	/** Number of pending items held by default before applying the overflow policy */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/** Delay before the first retry of an item, doubled on each subsequent attempt */
+	private static final long INITIAL_BACKOFF_MS = 50;
+
+	/** Upper bound for the delay between retries of an item */
+	private static final long MAX_BACKOFF_MS = 2000;
+
+	/** Number of attempts after which an item is dropped */
+	private static final int MAX_ATTEMPTS = 8;
+
+	/** Items waiting for a free slot */
+	private final OverflowQueue<Pending<T>> pending;
+
+	/** Slots currently not processing any item */
+	private final Queue<Slot> idleSlots = new ConcurrentLinkedQueue<>();
+
+	/** Worker on which delayed retries are scheduled */
+	private final Scheduler.Worker retryWorker = Schedulers.computation().createWorker();
+
+	/** Work-in-progress counter, ensuring that only one thread dispatches items at a time */
+	private final AtomicInteger wip = new AtomicInteger();
+
+	/** Number of slots created for this scheduler */
+	private final int slotCount;
+
+	/** Quit flag, set upon calling {@link #quit()} */
+	private volatile boolean quit;
+
+	/**
+	 * Constructor, using the default capacity and growing beyond it if necessary
+	 * @param slotCount	Number of items to process concurrently
+	 */
+	public ResolveScheduler(int slotCount) {
+		this(slotCount, DEFAULT_CAPACITY, OverflowPolicy.GROW);
+	}
+
+	/**
+	 * Constructor
+	 * @param slotCount	Number of items to process concurrently
+	 * @param capacity	Number of pending items held before applying the overflow policy
+	 * @param policy	Policy applied to items added while the scheduler is full
+	 */
+	public ResolveScheduler(int slotCount, int capacity, OverflowPolicy policy) {
+		if (slotCount < 1) throw new IllegalArgumentException("slotCount must be positive: " + slotCount);
+		this.slotCount = slotCount;
+		this.pending = new OverflowQueue<>(capacity, policy, Metrics.RESOLVE_QUEUE_DEPTH, Metrics.RESOLVE_QUEUE_WAIT_NANOS);
+		for (int i = 0; i < slotCount; i++) {
+			idleSlots.offer(new Slot(i));
+		}
+	}
+
+	/**
+	 * @return The number of items this scheduler processes concurrently
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Adds the provided item to the scheduler, processing it right away if a slot is available
+	 * @param item	Item enqueued to the scheduler
+	 */
+	public void add(T item) {
+		if (quit) return;
+		offer(new Pending<>(item, 0));
+		drain();
+	}
+
+	/**
+	 * Terminates the work of this scheduler instance, discarding pending items and scheduled retries
+	 */
+	public void quit() {
+		quit = true;
+		retryWorker.unsubscribe();
+		pending.clear();
+	}
+
+	/**
+	 * @return The number of items currently waiting for a free slot
+	 */
+	public int getQueueDepth() {
+		return pending.depth();
+	}
+
+	/**
+	 * @return The number of items discarded because the scheduler was full
+	 */
+	public long getDroppedCount() {
+		return pending.droppedCount();
+	}
+
+	/**
+	 * @return The total time in nanoseconds that dispatched items spent waiting for a free slot
+	 */
+	public long getTotalWaitNanos() {
+		return pending.totalWaitNanos();
+	}
+
+	/**
+	 * Returns the key of the provided item, used by {@link OverflowPolicy#COALESCE} to detect items that replace each other.
+	 * By default, this is the item itself.
+	 * @param item	Item to obtain the key for
+	 * @return The item's key
+	 */
+	protected Object keyOf(T item) {
+		return item;
+	}
+
+	/**
+	 * Callback invoked for items discarded because the scheduler was full, which are never dispatched.
+	 * Does nothing by default.
+	 * @param item	Item that was dropped
+	 */
+	protected void onDropped(T item) {
+	}
+
+	/* Begin private */
+
+	private void offer(Pending<T> item) {
+		Pending<T> dropped = pending.offer(item, keyOf(item.item));
+		if (dropped != null) onDropped(dropped.item);
+	}
+
+	private void drain() {
+		// Only one caller dispatches at a time; others leave a note for it to check again.
+		// This keeps slots completing synchronously from recursing into drain()
+		if (wip.getAndIncrement() != 0) return;
+
+		int missed = 1;
+		do {
+			// Pair pending items with idle slots until either of them runs out
+			while (!quit && pending.depth() > 0) {
+				Slot slot = idleSlots.poll();
+				if (slot == null) break;
+
+				Pending<T> next = pending.poll();
+				if (next == null) {
+					idleSlots.offer(slot);
+					break;
+				}
+
+				slot.current = next;
+				onNext(slot, next.item);
+			}
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private void release(Slot slot) {
+		slot.current = null;
+		idleSlots.offer(slot);
+		drain();
+	}
+
+	private void schedule(final Pending<T> item) {
+		long backoff = Math.min(INITIAL_BACKOFF_MS << (item.attempt - 1), MAX_BACKOFF_MS);
+		retryWorker.schedule(new Action0() {
+			@Override public void call() {
+				if (quit) return;
+				offer(item);
+				drain();
+			}
+		}, backoff, TimeUnit.MILLISECONDS);
+	}
+
+	/* Begin abstract */
+
+	/**
+	 * Callback invoked upon dispatching an item to a slot. This method is executed on the thread that added the item
+	 * or released the previous slot; after the caller is done processing the item, it is his responsibility to call
+	 * {@link Slot#complete()} or {@link Slot#retry()} on the provided slot.
+	 * @param slot	Slot the item was dispatched to
+	 * @param item	Item to be processed next
+	 */
+	public abstract void onNext(Slot slot, T item);
+
+	/* Begin inner classes */
+
+	/**
+	 * Unit of concurrency of the scheduler, processing one item at a time
+	 */
+	public final class Slot {
+
+		private final int index;
+		private volatile Pending<T> current;
+
+		private Slot(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * @return The index of this slot, between 0 (inclusive) and the scheduler's slot count (exclusive)
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Signalizes that the slot's current item is done, and that the slot can proceed with the next item
+		 */
+		public void complete() {
+			release(this);
+		}
+
+		/**
+		 * Signalizes that the slot's current item should be processed again after a backoff delay,
+		 * freeing the slot for other items in the meantime.
+		 * @return True if a retry was scheduled, false if the item exceeded its maximum number of attempts and was dropped
+		 */
+		public boolean retry() {
+			Pending<T> item = current;
+			release(this);
+
+			if (item == null || item.attempt + 1 >= MAX_ATTEMPTS) return false;
+			schedule(new Pending<>(item.item, item.attempt + 1));
+			return true;
+		}
+	}
+
+	private static final class Pending<T> {
+		final T item;
+		final int attempt;
+
+		Pending(T item, int attempt) {
+			this.item = item;
+			this.attempt = attempt;
+		}
+	}
+}
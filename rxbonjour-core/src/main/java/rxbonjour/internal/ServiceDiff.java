@@ -0,0 +1,109 @@
+package rxbonjour.internal;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import rx.Observable;
+import rx.Subscriber;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Transformer deduplicating a stream of Bonjour events. Each subscription keeps track of the services it has seen,
+ * keyed by name and type, and suppresses repeated resolves of a service that didn't change. If the address, port or
+ * TXT records of a known service change, an event of type {@link BonjourEvent.Type#UPDATED} is emitted instead,
+ * describing the properties that differ.
+ */
+public final class ServiceDiff implements Observable.Transformer<BonjourEvent, BonjourEvent> {
+
+	private static final ServiceDiff INSTANCE = new ServiceDiff();
+
+	private ServiceDiff() {
+	}
+
+	public static ServiceDiff get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Determines the properties that differ between two states of the same service.
+	 *
+	 * @param previous Previous state of the service
+	 * @param current  Current state of the service
+	 * @return The properties that changed, which is empty if both states are equal
+	 */
+	public static Set<BonjourEvent.Change> diff(BonjourService previous, BonjourService current) {
+		Set<BonjourEvent.Change> changes = EnumSet.noneOf(BonjourEvent.Change.class);
+		if (!previous.hasSameHosts(current)) {
+			changes.add(BonjourEvent.Change.ADDRESS);
+		}
+		if (previous.getPort() != current.getPort()) {
+			changes.add(BonjourEvent.Change.PORT);
+		}
+		if (!previous.getTxtRecords().equals(current.getTxtRecords())) {
+			changes.add(BonjourEvent.Change.TXT_RECORDS);
+		}
+		return changes;
+	}
+
+	@Override public Observable<BonjourEvent> call(Observable<BonjourEvent> source) {
+		return source.lift(new Observable.Operator<BonjourEvent, BonjourEvent>() {
+			@Override public Subscriber<? super BonjourEvent> call(final Subscriber<? super BonjourEvent> child) {
+				return new DiffSubscriber(child);
+			}
+		});
+	}
+
+	/* Begin inner classes */
+
+	private static final class DiffSubscriber extends Subscriber<BonjourEvent> {
+
+		private final Subscriber<? super BonjourEvent> child;
+
+		/** Services known to the subscriber, keyed by name and type */
+		private final Map<String, BonjourService> known = new HashMap<>();
+
+		DiffSubscriber(Subscriber<? super BonjourEvent> child) {
+			super(child);
+			this.child = child;
+		}
+
+		@Override public void onNext(BonjourEvent event) {
+			BonjourService service = event.getService();
+			String key = ServiceKeys.keyOf(service.getName(), service.getType());
+
+			switch (event.getType()) {
+				case REMOVED:
+					known.remove(key);
+					child.onNext(event);
+					break;
+
+				default:
+					BonjourService previous = known.put(key, service);
+					if (previous == null) {
+						child.onNext(event.getType() == BonjourEvent.Type.ADDED ? event : new BonjourEvent(BonjourEvent.Type.ADDED, service));
+						break;
+					}
+
+					Set<BonjourEvent.Change> changes = diff(previous, service);
+					if (changes.isEmpty()) {
+						// Identical re-resolve; request a replacement from upstream, since this event isn't passed on
+						request(1);
+					} else {
+						child.onNext(new BonjourEvent(previous, service, changes));
+					}
+					break;
+			}
+		}
+
+		@Override public void onError(Throwable e) {
+			child.onError(e);
+		}
+
+		@Override public void onCompleted() {
+			child.onCompleted();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package rxbonjour.internal;
+
+/**
+ * Keys identifying services by name and type, regardless of the implementation that reported them.
+ */
+public final class ServiceKeys {
+
+	/** Domain suffix ignored when comparing service types */
+	private static final String LOCAL_DOMAIN = "local.";
+
+	private ServiceKeys() {
+		//no instance
+	}
+
+	/**
+	 * Creates the key identifying a service by its name and type.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 * @return The service's key
+	 */
+	public static String keyOf(String name, String type) {
+		return keyOfNormalized(name, normalizeType(type));
+	}
+
+	/**
+	 * Creates the key identifying a service by its name and a type that was already normalized.
+	 *
+	 * @param name           Name of the service
+	 * @param normalizedType Type of the service, as returned by {@link #normalizeType(String)}
+	 * @return The service's key
+	 */
+	public static String keyOfNormalized(String name, String normalizedType) {
+		return name + '\u0000' + normalizedType;
+	}
+
+	/**
+	 * Strips the local domain and trailing dots from the provided type, so that types
+	 * reported by JmDNS ("_http._tcp.local.") and NsdManager ("_http._tcp.") match.
+	 *
+	 * @param type Type to normalize
+	 * @return The normalized type
+	 */
+	public static String normalizeType(String type) {
+		int end = type.length();
+		if (type.endsWith(LOCAL_DOMAIN)) end -= LOCAL_DOMAIN.length();
+		while (end > 0 && type.charAt(end - 1) == '.') end--;
+		return type.substring(0, end);
+	}
+}
@@ -0,0 +1,404 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSEntry;
+import javax.jmdns.impl.DNSIncoming;
+import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.DNSTaskStarter;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.ServiceInfoImpl;
+import javax.jmdns.impl.constants.DNSConstants;
+import javax.jmdns.impl.constants.DNSRecordClass;
+import javax.jmdns.impl.constants.DNSRecordType;
+import javax.jmdns.impl.tasks.resolver.DNSResolverTask;
+
+/**
+ * Task starter of JmDNS instances, which packs the service type queries of JmDNS into as few packets as possible.
+ * <p>
+ * JmDNS queries the type of each added service listener on its own, sending three packets for each of them.
+ * Instead, types requested while a query is still waiting for its first packet are added to that query, which asks for
+ * all of them in the same packets; queries list the PTR records known for their types as known answers. All other tasks
+ * are left to the default implementation of JmDNS.
+ * <p>
+ * Types monitored by a {@link ServiceMonitor} aren't queried at all, neither for new listeners nor whenever JmDNS renews
+ * the records of a type in its cache; the monitor times the queries for them instead. This also applies to regular
+ * discoveries of a monitored type on the same instance.
+ * <p>
+ * The starter also keeps track of the questions asked by other hosts, which it sees as JmDNS starts responding to them.
+ * Type queries, as well as the {@link KnownAnswerQuery queries} of discoveries on the instance, leave out questions that
+ * another host has asked within the last {@link #DUPLICATE_QUESTION_MILLIS}, since its query has the responders answer
+ * them for everyone (RFC 6762, section 7.3).
+ * <p>
+ * JmDNS only allows for replacing the task starters of all of its instances at once. The starter is therefore installed
+ * as a process-wide factory, which only hands out batching starters to the instances created through {@link #create(InetAddress, String)};
+ * all other instances of the process, e.g. those created by the host application itself, get JmDNS' default starter.
+ * If the application has configured a factory of its own already, that one is left in place and no queries are batched.
+ */
+final class BatchingTaskStarter implements DNSTaskStarter {
+
+	/** Period after a question asked by another host during which the same question isn't asked (RFC 6762, section 7.3) */
+	static final long DUPLICATE_QUESTION_MILLIS = 1000;
+
+	/** Addresses of the JmDNS instances currently being created through {@link #create(InetAddress, String)}; guarded by the class lock */
+	private static final Set<InetAddress> CREATING = new HashSet<>();
+
+	/** Starter of each JmDNS instance until its timers are cancelled; guarded by the class lock */
+	private static final Map<JmDNSImpl, BatchingTaskStarter> STARTERS = new IdentityHashMap<>();
+
+	private final JmDNSImpl jmdns;
+	private final DNSTaskStarter delegate;
+
+	// Guarded by the starter's monitor
+	private Timer timer;
+	private TypeQuery pending;
+
+	/** Number of monitors of each type whose queries are suppressed, keyed by lower-case type; guarded by the starter's monitor */
+	private final Map<String, Integer> suppressed = new HashMap<>();
+
+	/** Time at which another host last asked each question, keyed by {@link #keyOf(DNSEntry)} */
+	private final ConcurrentMap<String, Long> askedByOthers = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param jmdns    JmDNS instance to start tasks for
+	 * @param delegate Starter of all tasks other than the type queries
+	 */
+	BatchingTaskStarter(JmDNSImpl jmdns, DNSTaskStarter delegate) {
+		this.jmdns = jmdns;
+		this.delegate = delegate;
+		synchronized (BatchingTaskStarter.class) {
+			STARTERS.put(jmdns, this);
+		}
+	}
+
+	/* Begin static */
+
+	/**
+	 * Creates a JmDNS instance using a batching task starter, unless the application has configured a task starter factory of its own.
+	 * JmDNS obtains the starter of an instance while constructing it, so the instance is recognized by its address until then.
+	 *
+	 * @param address Address to bind JmDNS to
+	 * @param name    Name of the JmDNS instance
+	 * @return The new JmDNS instance
+	 * @throws IOException In case JmDNS can't be created
+	 */
+	static JmDNS create(InetAddress address, String name) throws IOException {
+		synchronized (BatchingTaskStarter.class) {
+			install();
+			CREATING.add(address);
+		}
+		try {
+			return JmDNS.create(address, name);
+		} finally {
+			synchronized (BatchingTaskStarter.class) {
+				CREATING.remove(address);
+			}
+		}
+	}
+
+	/**
+	 * @param jmdns JmDNS instance
+	 * @return The batching task starter of the provided instance, or null if it doesn't use one
+	 */
+	static BatchingTaskStarter of(JmDNS jmdns) {
+		synchronized (BatchingTaskStarter.class) {
+			return STARTERS.get(jmdns);
+		}
+	}
+
+	/**
+	 * Installs the process-wide task starter factory handing out batching starters, unless a factory has been configured already.
+	 */
+	static synchronized void install() {
+		if (Factory.classDelegate() != null) return;
+
+		Factory.setClassDelegate(new Factory.ClassDelegate() {
+			@Override public DNSTaskStarter newDNSTaskStarter(JmDNSImpl jmdns) {
+				DNSTaskStarter starter = new DNSTaskStarterImpl(jmdns);
+				try {
+					InetAddress address = jmdns.getInetAddress();
+					synchronized (BatchingTaskStarter.class) {
+						if (CREATING.contains(address)) return new BatchingTaskStarter(jmdns, starter);
+					}
+				} catch (IOException ignored) {
+					// Not bound to any address yet, so not created through create()
+				}
+				return starter;
+			}
+		});
+	}
+
+	/**
+	 * Stops querying the provided types, whose queries are timed by a monitor from now on.
+	 *
+	 * @param types Fully qualified service types
+	 */
+	synchronized void suppressQueries(Collection<String> types) {
+		for (String type : types) {
+			String key = type.toLowerCase(Locale.US);
+			Integer count = suppressed.get(key);
+			suppressed.put(key, (count == null) ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Undoes {@link #suppressQueries(Collection)} once the monitor of the provided types has stopped.
+	 *
+	 * @param types Fully qualified service types
+	 */
+	synchronized void resumeQueries(Collection<String> types) {
+		for (String type : types) {
+			String key = type.toLowerCase(Locale.US);
+			Integer count = suppressed.get(key);
+			if (count == null || count <= 1) {
+				suppressed.remove(key);
+			} else {
+				suppressed.put(key, count - 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether another host has asked the provided question within the last {@link #DUPLICATE_QUESTION_MILLIS}.
+	 *
+	 * @param question Question to ask
+	 * @param now      Current time in milliseconds
+	 * @return True if the question should be left out of queries
+	 */
+	boolean isAskedByOthers(DNSQuestion question, long now) {
+		Long askedAt = askedByOthers.get(keyOf(question));
+		return askedAt != null && now - askedAt < DUPLICATE_QUESTION_MILLIS;
+	}
+
+	/**
+	 * Remembers the questions of a query sent by another host. Questions asking for unicast responses are left out, and so
+	 * are those whose known answers include records missing from the cache, since responders might suppress answers
+	 * the instance needs then.
+	 *
+	 * @param in      Incoming query
+	 * @param address Address of the sender
+	 * @param port    Port of the sender
+	 * @param now     Current time in milliseconds
+	 */
+	void rememberQuestions(DNSIncoming in, InetAddress address, int port, long now) {
+		// Legacy unicast queries are answered to their sender only
+		if (port != DNSConstants.MDNS_PORT) return;
+		try {
+			if (address.equals(jmdns.getInetAddress())) return;
+		} catch (IOException ignored) {
+			// Not bound to any address
+		}
+
+		for (Iterator<Long> iterator = askedByOthers.values().iterator(); iterator.hasNext(); ) {
+			if (now - iterator.next() >= DUPLICATE_QUESTION_MILLIS) iterator.remove();
+		}
+
+		DNSCache cache = jmdns.getCache();
+		for (DNSQuestion question : in.getQuestions()) {
+			if (question.isUnique()) continue;
+
+			boolean duplicate = true;
+			for (DNSRecord record : in.getAnswers()) {
+				if (isAnsweredBy(question, record) && (cache == null || cache.getDNSEntry(record) == null)) {
+					duplicate = false;
+					break;
+				}
+			}
+			if (duplicate) askedByOthers.put(keyOf(question), now);
+		}
+	}
+
+	/* Begin overrides */
+
+	@Override public void startServiceResolver(String type) {
+		synchronized (this) {
+			if (suppressed.containsKey(type.toLowerCase(Locale.US))) return;
+			if (pending != null && pending.add(type)) return;
+
+			if (timer == null) timer = new Timer("JmDNS(" + jmdns.getName() + ").TypeQuery.Timer", true);
+			pending = new TypeQuery(type);
+			pending.start(timer);
+		}
+	}
+
+	@Override public void purgeTimer() {
+		delegate.purgeTimer();
+		synchronized (this) {
+			if (timer != null) timer.purge();
+		}
+	}
+
+	@Override public void cancelTimer() {
+		delegate.cancelTimer();
+		synchronized (BatchingTaskStarter.class) {
+			if (STARTERS.get(jmdns) == this) STARTERS.remove(jmdns);
+		}
+		synchronized (this) {
+			if (timer != null) timer.cancel();
+			timer = null;
+			pending = null;
+		}
+	}
+
+	@Override public void purgeStateTimer() {
+		delegate.purgeStateTimer();
+	}
+
+	@Override public void cancelStateTimer() {
+		delegate.cancelStateTimer();
+	}
+
+	@Override public void startProber() {
+		delegate.startProber();
+	}
+
+	@Override public void startAnnouncer() {
+		delegate.startAnnouncer();
+	}
+
+	@Override public void startRenewer() {
+		delegate.startRenewer();
+	}
+
+	@Override public void startCanceler() {
+		delegate.startCanceler();
+	}
+
+	@Override public void startReaper() {
+		delegate.startReaper();
+	}
+
+	@Override public void startServiceInfoResolver(ServiceInfoImpl info) {
+		delegate.startServiceInfoResolver(info);
+	}
+
+	@Override public void startTypeResolver() {
+		delegate.startTypeResolver();
+	}
+
+	@Override public void startResponder(DNSIncoming in, InetAddress address, int port) {
+		// JmDNS starts a responder for each query it receives
+		rememberQuestions(in, address, port, System.currentTimeMillis());
+		delegate.startResponder(in, address, port);
+	}
+
+	/* Begin private */
+
+	private static String keyOf(DNSEntry entry) {
+		return entry.getKey() + '|' + entry.getRecordType() + '|' + entry.getRecordClass();
+	}
+
+	private static boolean isAnsweredBy(DNSQuestion question, DNSRecord record) {
+		return question.getKey().equals(record.getKey())
+				&& (question.getRecordType() == DNSRecordType.TYPE_ANY || question.getRecordType() == record.getRecordType());
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Query for any number of service types, which accepts more types until its first packet is sent.
+	 * Types that another host has just queried are left out of each packet, along with their known answers.
+	 */
+	private final class TypeQuery extends DNSResolverTask {
+
+		// Guarded by the starter's monitor
+		private final Set<String> types = new LinkedHashSet<>();
+		private boolean sealed;
+
+		/** Types asked in the packet being assembled, only accessed on the timer thread */
+		private List<String> asked = new ArrayList<>(0);
+
+		TypeQuery(String type) {
+			super(jmdns);
+			types.add(type.toLowerCase(Locale.US));
+		}
+
+		/**
+		 * Adds the provided type to the query.
+		 *
+		 * @param type Fully qualified service type
+		 * @return True if the type is queried along with the others, false if the query has been sent already
+		 */
+		boolean add(String type) {
+			if (sealed) return false;
+			types.add(type.toLowerCase(Locale.US));
+			return true;
+		}
+
+		@Override public String getName() {
+			return "TypeQuery(" + getDns().getName() + ")";
+		}
+
+		@Override protected DNSOutgoing addQuestions(DNSOutgoing out) throws IOException {
+			long now = System.currentTimeMillis();
+			asked = new ArrayList<>();
+			DNSOutgoing newOut = out;
+			for (String type : seal()) {
+				DNSQuestion question = DNSQuestion.newQuestion(type, DNSRecordType.TYPE_PTR, DNSRecordClass.CLASS_IN, DNSRecordClass.NOT_UNIQUE);
+				if (isAskedByOthers(question, now)) continue;
+
+				asked.add(type);
+				newOut = addQuestion(newOut, question);
+			}
+			return newOut;
+		}
+
+		@Override protected DNSOutgoing addAnswers(DNSOutgoing out) throws IOException {
+			DNSCache cache = getDns().getCache();
+			if (cache == null) return out;
+
+			// Only records with more than half of their lifetime left are worth suppressing answers for
+			long now = System.currentTimeMillis();
+			DNSOutgoing newOut = out;
+			for (String type : asked) {
+				Collection<? extends DNSEntry> entries = cache.getDNSEntryList(type, DNSRecordType.TYPE_PTR, DNSRecordClass.CLASS_IN);
+				if (entries == null) continue;
+				for (DNSEntry entry : entries) {
+					if (!(entry instanceof DNSRecord)) continue;
+
+					DNSRecord record = (DNSRecord) entry;
+					if (!record.isStale(now)) newOut = addAnswer(newOut, record, now);
+				}
+			}
+			return newOut;
+		}
+
+		@Override protected String description() {
+			return "querying service types";
+		}
+
+		/**
+		 * Stops accepting more types.
+		 *
+		 * @return The types of the query
+		 */
+		private List<String> seal() {
+			synchronized (BatchingTaskStarter.this) {
+				sealed = true;
+				if (pending == this) pending = null;
+				return new ArrayList<>(types);
+			}
+		}
+	}
+}
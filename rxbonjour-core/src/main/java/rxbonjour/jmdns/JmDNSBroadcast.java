@@ -0,0 +1,238 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceInfo;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.Subscriptions;
+import rxbonjour.exc.BroadcastFailed;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.metrics.Metrics;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Bonjour service broadcast engine utilizing the JmDNS library for registrations. This class doesn't depend on any platform APIs;
+ * platform-specific requirements, such as the address to bind to or a multicast lock, are provided by its {@link JmDNSEnvironment}.
+ */
+public final class JmDNSBroadcast {
+
+	private final JmDNSEnvironment environment;
+	private final JmDNSManager manager;
+
+	/**
+	 * Constructor, using the JmDNS instances shared among all discoveries and broadcasts
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 */
+	public JmDNSBroadcast(JmDNSEnvironment environment) {
+		this(environment, JmDNSManager.get());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 * @param manager     Pool of the JmDNS instances to use
+	 */
+	public JmDNSBroadcast(JmDNSEnvironment environment, JmDNSManager manager) {
+		this.environment = environment;
+		this.manager = manager;
+	}
+
+	/**
+	 * Registers the provided service, and unregisters it again once the returned Observable is unsubscribed from.
+	 *
+	 * @param service Service to register, whose type has to be fully qualified
+	 * @return An Observable emitting the registered service
+	 */
+	public Observable<BonjourEvent> start(final BonjourService service) {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				long startTime = System.nanoTime();
+				final Subscription multicast = environment.acquireMulticast();
+
+				// Create a JmDNS service using the BonjourService information and register that
+				final ServiceInfo jmdnsService = createJmdnsService(service);
+				final JmDNSManager.Lease lease;
+				try {
+					lease = manager.acquire(environment.getAddress());
+				} catch (IOException e) {
+					multicast.unsubscribe();
+					subscriber.onError(new BroadcastFailed(JmDNSBroadcast.class, service.getType()));
+					return;
+				}
+
+				final JmDNS jmdns = lease.getJmDNS();
+				try {
+					jmdns.registerService(jmdnsService);
+				} catch (IOException e) {
+					multicast.unsubscribe();
+					lease.unsubscribe();
+					subscriber.onError(new BroadcastFailed(JmDNSBroadcast.class, service.getType()));
+					return;
+				}
+
+				// Add onUnsubscribe() hook
+				subscriber.add(environment.createUnsubscribeHook(new Action0() {
+					@Override public void call() {
+						jmdns.unregisterService(jmdnsService);
+
+						Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
+							@Override public void call(final Subscriber<? super Void> subscriber) {
+								multicast.unsubscribe();
+								lease.unsubscribe();
+								subscriber.unsubscribe();
+							}
+						});
+
+						cleanUpObservable
+								.compose(environment.<Void>cleanupSchedulers())
+								.subscribe();
+					}
+				}));
+
+				Metrics.sink().record(Metrics.BROADCAST_REGISTRATION_NANOS, System.nanoTime() - startTime);
+				subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+			}
+		}).lift(EventBackpressure.withDefaults());
+	}
+
+	/**
+	 * Registers all of the provided services through a single JmDNS instance, and unregisters them again
+	 * once the returned Observable is unsubscribed from. Registrations run concurrently on the {@link Schedulers#io() I/O scheduler}.
+	 *
+	 * @param services Services to register, whose types have to be fully qualified
+	 * @return An Observable emitting each registered service
+	 * @see #startBatch(Collection, Scheduler)
+	 */
+	public Observable<BonjourEvent> startBatch(Collection<BonjourService> services) {
+		return startBatch(services, Schedulers.io());
+	}
+
+	/**
+	 * Registers all of the provided services through a single JmDNS instance, and unregisters them again
+	 * once the returned Observable is unsubscribed from. The batch holds a single multicast lock and lease on the instance.
+	 * <p>
+	 * Since JmDNS blocks each registration until the service has been probed and announced, the registrations run concurrently
+	 * on the provided scheduler; this way, the services share JmDNS's probe and announce cycles, which combine all pending services
+	 * into the same packets. Each service is emitted as soon as its registration has completed. If any registration fails,
+	 * the batch emits a {@link BroadcastFailed} error, unregistering all of its services.
+	 *
+	 * @param services  Services to register, whose types have to be fully qualified
+	 * @param scheduler Scheduler on which the registrations run, which should be able to run all of them at the same time
+	 * @return An Observable emitting each registered service
+	 */
+	public Observable<BonjourEvent> startBatch(final Collection<BonjourService> services, final Scheduler scheduler) {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				final Subscription multicast = environment.acquireMulticast();
+
+				final JmDNSManager.Lease lease;
+				try {
+					lease = manager.acquire(environment.getAddress());
+				} catch (IOException e) {
+					multicast.unsubscribe();
+					subscriber.onError(new BroadcastFailed(JmDNSBroadcast.class, typesOf(services)));
+					return;
+				}
+
+				// Unregistrations of completed registrations, which are undone right away if the batch has already stopped
+				final JmDNS jmdns = lease.getJmDNS();
+				final CompositeSubscription registrations = new CompositeSubscription();
+
+				// Add onUnsubscribe() hook
+				subscriber.add(environment.createUnsubscribeHook(new Action0() {
+					@Override public void call() {
+						Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
+							@Override public void call(final Subscriber<? super Void> subscriber) {
+								// Unregistering waits for goodbye packets, so keep it off the calling thread
+								registrations.unsubscribe();
+								multicast.unsubscribe();
+								lease.unsubscribe();
+								subscriber.unsubscribe();
+							}
+						});
+
+						cleanUpObservable
+								.compose(environment.<Void>cleanupSchedulers())
+								.subscribe();
+					}
+				}));
+
+				Observable.from(new ArrayList<>(services))
+						.flatMap(new Func1<BonjourService, Observable<BonjourEvent>>() {
+							@Override public Observable<BonjourEvent> call(BonjourService service) {
+								return register(jmdns, service, registrations).subscribeOn(scheduler);
+							}
+						})
+						// Keep the services registered after the last registration has completed
+						.concatWith(Observable.<BonjourEvent>never())
+						.unsafeSubscribe(subscriber);
+			}
+		}).lift(EventBackpressure.withDefaults());
+	}
+
+	/* Begin private */
+
+	private Observable<BonjourEvent> register(final JmDNS jmdns, final BonjourService service, final CompositeSubscription registrations) {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				if (registrations.isUnsubscribed()) return;
+
+				long startTime = System.nanoTime();
+				final ServiceInfo jmdnsService = createJmdnsService(service);
+				try {
+					jmdns.registerService(jmdnsService);
+				} catch (IOException e) {
+					subscriber.onError(new BroadcastFailed(JmDNSBroadcast.class, service.getType()));
+					return;
+				}
+
+				registrations.add(Subscriptions.create(new Action0() {
+					@Override public void call() {
+						jmdns.unregisterService(jmdnsService);
+					}
+				}));
+
+				Metrics.sink().record(Metrics.BROADCAST_REGISTRATION_NANOS, System.nanoTime() - startTime);
+				subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+				subscriber.onCompleted();
+			}
+		});
+	}
+
+	private static String typesOf(Collection<BonjourService> services) {
+		Set<String> types = new LinkedHashSet<>();
+		for (BonjourService service : services) {
+			types.add(service.getType());
+		}
+		return types.toString();
+	}
+
+
+	private ServiceInfo createJmdnsService(BonjourService serviceInfo) {
+		return ServiceInfo.create(
+				serviceInfo.getType(),
+				serviceInfo.getName(),
+				serviceInfo.getPort(),
+				0,
+				0,
+				true,
+				serviceInfo.getTxtRecords().toRdata()
+		);
+	}
+}
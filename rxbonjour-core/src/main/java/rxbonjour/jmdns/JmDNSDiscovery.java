@@ -0,0 +1,944 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.ServiceListener;
+import javax.jmdns.ServiceTypeListener;
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSEntry;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.constants.DNSConstants;
+import javax.jmdns.impl.constants.DNSRecordClass;
+import javax.jmdns.impl.constants.DNSRecordType;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rxbonjour.exc.DiscoveryFailed;
+import rxbonjour.exc.ResolveFailed;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.internal.LiveEventStream;
+import rxbonjour.internal.ResolveCache;
+import rxbonjour.internal.ServiceKeys;
+import rxbonjour.metrics.LatencyTracker;
+import rxbonjour.metrics.Metrics;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+import rxbonjour.model.BonjourTypeEvent;
+import rxbonjour.model.ServiceType;
+
+/**
+ * Bonjour service discovery engine utilizing the JmDNS library for lookups. This class doesn't depend on any platform APIs;
+ * platform-specific requirements, such as the address to bind to or a multicast lock, are provided by its {@link JmDNSEnvironment}.
+ */
+public final class JmDNSDiscovery {
+
+	/** Time after which on-demand resolves give up, matching JmDNS' own resolve timeout */
+	private static final long RESOLVE_TIMEOUT_MILLIS = DNSConstants.SERVICE_INFO_TIMEOUT;
+
+	/** Running discovery sessions shared among all subscribers, keyed by JmDNS pool, interface address and type */
+	private static final Map<SessionKey, LiveEventStream> SHARED_SESSIONS = new HashMap<>();
+
+	/** Cache of resolved services, shared among all discoveries */
+	private final ResolveCache cache = ResolveCache.get();
+
+	private final JmDNSEnvironment environment;
+	private final JmDNSManager manager;
+
+	/**
+	 * Constructor, using the JmDNS instances shared among all discoveries and broadcasts
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 */
+	public JmDNSDiscovery(JmDNSEnvironment environment) {
+		this(environment, JmDNSManager.get());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 * @param manager     Pool of the JmDNS instances to use
+	 */
+	public JmDNSDiscovery(JmDNSEnvironment environment, JmDNSManager manager) {
+		this.environment = environment;
+		this.manager = manager;
+	}
+
+	/* Begin static */
+
+	/**
+	 * Creates a new BonjourEvent instance from a JmDNS ServiceEvent.
+	 *
+	 * @param type  Type of event, either ADDED or REMOVED
+	 * @param event Event containing information about the changed service
+	 * @return A BonjourEvent containing the necessary information
+	 */
+	public static BonjourEvent newBonjourEvent(BonjourEvent.Type type, ServiceEvent event) {
+		// Construct a new BonjourService
+		ServiceInfo info = event.getInfo();
+		BonjourService.Builder serviceBuilder = new BonjourService.Builder(event.getName(), event.getType());
+
+		// Keep the raw TXT records, which are only decoded upon access
+		serviceBuilder.setTxtRecords(info.getTextBytes());
+
+		// Add non-null host addresses and port
+		InetAddress[] addresses = info.getInetAddresses();
+		for (InetAddress address : addresses) {
+			if (address == null) continue;
+			serviceBuilder.addAddress(address);
+		}
+		serviceBuilder.setPort(info.getPort());
+
+		// Create and return an event wrapping the BonjourService
+		return new BonjourEvent(type, serviceBuilder.build());
+	}
+
+	/* Begin public */
+
+	/**
+	 * Starts a Bonjour service discovery for the provided service type.
+	 *
+	 * @param type Type of service to discover
+	 * @return An Observable for Bonjour events
+	 */
+	public Observable<BonjourEvent> start(String type) {
+		return start(Collections.singletonList(type));
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types. The discovery of each type is shared
+	 * with all other subscribers of that type, running a single service listener; subscribers joining a running discovery
+	 * are sent the services it currently knows of first.
+	 *
+	 * @param types Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public Observable<BonjourEvent> start(Collection<String> types) {
+		return start(types, true);
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, asking for all of them in the same query packets.
+	 * Unless resolving services eagerly, services are reported as soon as they are found, with their name and type only;
+	 * services resolved earlier are still reported with all of their information. Services of interest can then be
+	 * resolved on demand using {@link #resolve(BonjourService)}, which saves the resolve traffic for all others.
+	 *
+	 * @param types   Types of service to discover
+	 * @param resolve Whether to resolve each found service eagerly
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public Observable<BonjourEvent> start(Collection<String> types, boolean resolve) {
+		return discover(types, resolve, null);
+	}
+
+	/**
+	 * Starts a long-lived Bonjour service discovery for all of the provided service types, which keeps network traffic low
+	 * by relying on announcements of services and the lifetime of their records. The types are queried with an exponentially
+	 * increasing interval, from one second up to an hour. Known services are only queried again once their records are about
+	 * to expire, and reported as removed if they don't respond. JmDNS itself doesn't query the monitored types meanwhile,
+	 * neither for new listeners nor to renew the records in its cache.
+	 *
+	 * @param types Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public Observable<BonjourEvent> monitor(Collection<String> types) {
+		return monitor(types, Schedulers.computation());
+	}
+
+	/**
+	 * Starts a long-lived Bonjour service discovery for all of the provided service types.
+	 *
+	 * @param types     Types of service to discover
+	 * @param scheduler Scheduler on which queries and the lifetime of records are timed
+	 * @return An Observable for Bonjour events of all types
+	 * @see #monitor(Collection)
+	 */
+	public Observable<BonjourEvent> monitor(Collection<String> types, Scheduler scheduler) {
+		return discover(types, true, scheduler);
+	}
+
+	/**
+	 * Resolves the provided service on demand, e.g. after it was found by a discovery that doesn't resolve services eagerly.
+	 * Services resolved earlier are emitted right away. Otherwise, the service is resolved on all of the environment's
+	 * interfaces, and the first result is emitted.
+	 *
+	 * @param service Service to resolve
+	 * @return An Observable emitting the resolved service, or a {@link ResolveFailed} error if it can't be resolved in time
+	 */
+	public Observable<BonjourService> resolve(BonjourService service) {
+		final String name = service.getName();
+		final String dnsType = ServiceType.of(service.getType()).getFullyQualifiedName();
+
+		return Observable.create(new Observable.OnSubscribe<BonjourService>() {
+			@Override public void call(final Subscriber<? super BonjourService> subscriber) {
+				BonjourService cached = cache.getService(name, dnsType);
+				if (cached != null) {
+					subscriber.onNext(cached);
+					subscriber.onCompleted();
+					return;
+				}
+
+				final List<InetAddress> addresses;
+				try {
+					addresses = environment.getAddresses();
+				} catch (IOException e) {
+					subscriber.onError(new ResolveFailed(JmDNSDiscovery.class, name, dnsType));
+					return;
+				}
+
+				// Only the first result is emitted, even if several interfaces resolve the service at the same time
+				final AtomicBoolean done = new AtomicBoolean();
+				int started = 0;
+				for (InetAddress address : addresses) {
+					// Listen for the resolved service, which JmDNS reports to all listeners of its type
+					final ServiceListener listener = new ServiceListener() {
+						@Override public void serviceAdded(ServiceEvent event) {
+						}
+
+						@Override public void serviceRemoved(ServiceEvent event) {
+						}
+
+						@Override public void serviceResolved(ServiceEvent event) {
+							if (!name.equalsIgnoreCase(event.getName())) return;
+
+							BonjourService resolved = newBonjourEvent(BonjourEvent.Type.ADDED, event).getService();
+							cache.put(resolved, getTtlMillis(event));
+							if (done.compareAndSet(false, true) && !subscriber.isUnsubscribed()) {
+								subscriber.onNext(resolved);
+								subscriber.onCompleted();
+							}
+						}
+					};
+
+					try {
+						JmDNS jmdns = openSession(subscriber, address, new Action1<JmDNS>() {
+							@Override public void call(JmDNS jmdns) {
+								jmdns.removeServiceListener(dnsType, listener);
+							}
+						});
+						jmdns.addServiceListener(dnsType, listener);
+						jmdns.requestServiceInfo(dnsType, name);
+						started++;
+
+					} catch (IOException ignored) {
+						// Continue with the remaining interfaces
+					}
+				}
+
+				if (started == 0) {
+					subscriber.onError(new ResolveFailed(JmDNSDiscovery.class, name, dnsType));
+				}
+			}
+		})
+				.take(1)
+				.timeout(RESOLVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, Observable.<BonjourService>error(new ResolveFailed(JmDNSDiscovery.class, name, dnsType)));
+	}
+
+	/**
+	 * Starts enumerating the service types present on the network. A type is reported as added once it is first enumerated,
+	 * and as removed once none of its records remain in JmDNS' cache.
+	 *
+	 * @return An Observable for service type events
+	 */
+	public Observable<BonjourTypeEvent> startTypeDiscovery() {
+		return Observable.create(new Observable.OnSubscribe<BonjourTypeEvent>() {
+			@Override public void call(final Subscriber<? super BonjourTypeEvent> subscriber) {
+				// JmDNS never reports types as gone, so their presence is tracked through the records in its cache
+				final TypeTracker tracker = new TypeTracker();
+				final ServiceTypeListener typeListener = new ServiceTypeListener() {
+					@Override public void serviceTypeAdded(ServiceEvent event) {
+						if (tracker.add(event.getType()) && !subscriber.isUnsubscribed()) {
+							subscriber.onNext(new BonjourTypeEvent(BonjourEvent.Type.ADDED, event.getType()));
+						}
+					}
+
+					@Override public void subTypeForServiceTypeAdded(ServiceEvent event) {
+					}
+				};
+
+				try {
+					// Obtain the shared JmDNS instance, removing the listener again upon unsubscribing
+					final JmDNS jmdns = openSession(subscriber, environment.getAddress(), new Action1<JmDNS>() {
+						@Override public void call(JmDNS jmdns) {
+							synchronized (tracker) {
+								jmdns.removeServiceTypeListener(typeListener);
+							}
+						}
+					});
+
+					// Start enumerating service types. Checked again afterwards, in case the subscriber has left meanwhile
+					synchronized (tracker) {
+						jmdns.addServiceTypeListener(typeListener);
+						if (subscriber.isUnsubscribed()) {
+							jmdns.removeServiceTypeListener(typeListener);
+							return;
+						}
+					}
+
+					if (jmdns instanceof JmDNSImpl) {
+						// Only created once the session is open, and stopped along with it
+						Scheduler.Worker worker = Schedulers.computation().createWorker();
+						subscriber.add(worker);
+						worker.schedulePeriodically(new Action0() {
+							@Override public void call() {
+								for (BonjourTypeEvent event : tracker.sweep((JmDNSImpl) jmdns, System.currentTimeMillis())) {
+									if (!subscriber.isUnsubscribed()) subscriber.onNext(event);
+								}
+							}
+						}, TypeTracker.SWEEP_INTERVAL_MILLIS, TypeTracker.SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+					}
+
+				} catch (IOException e) {
+					subscriber.onError(new DiscoveryFailed(JmDNSDiscovery.class, TypeTracker.TYPE_ENUMERATION));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all service types present on the network,
+	 * starting the discovery of each type lazily once it is first enumerated.
+	 *
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public Observable<BonjourEvent> startAllTypes() {
+		return startTypeDiscovery()
+				.filter(new Func1<BonjourTypeEvent, Boolean>() {
+					@Override public Boolean call(BonjourTypeEvent event) {
+						// Skip types announced by peers that don't obey the DNS-SD format
+						return event.getType() == BonjourEvent.Type.ADDED && ServiceType.isValid(event.getServiceType());
+					}
+				})
+				.map(new Func1<BonjourTypeEvent, String>() {
+					@Override public String call(BonjourTypeEvent event) {
+						return event.getServiceType();
+					}
+				})
+				.distinct()
+				.flatMap(new Func1<String, Observable<BonjourEvent>>() {
+					@Override public Observable<BonjourEvent> call(String dnsType) {
+						return start(dnsType);
+					}
+				});
+	}
+
+	/* Begin private */
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types on each of the environment's interfaces.
+	 *
+	 * @param types            Types of service to discover
+	 * @param resolve          Whether to resolve each found service eagerly
+	 * @param monitorScheduler Scheduler timing the queries of a long-lived discovery, or null to leave this up to JmDNS
+	 * @return An Observable for Bonjour events of all types
+	 */
+	private Observable<BonjourEvent> discover(Collection<String> types, final boolean resolve, final Scheduler monitorScheduler) {
+		// Use fully qualified types in order to have JmDNS pick up on the services
+		final Set<String> dnsTypes = new LinkedHashSet<>(types.size());
+		for (String type : types) {
+			dnsTypes.add(ServiceType.of(type).getFullyQualifiedName());
+		}
+
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(final Subscriber<? super BonjourEvent> subscriber) {
+				final List<InetAddress> addresses;
+				try {
+					addresses = environment.getAddresses();
+				} catch (IOException e) {
+					subscriber.onError(new DiscoveryFailed(JmDNSDiscovery.class, dnsTypes.toString()));
+					return;
+				}
+
+				// Emit services resolved earlier right away, unless a shared session is going to replay the live ones
+				boolean shared = resolve && monitorScheduler == null;
+				Map<String, BonjourService> replayed = new ConcurrentHashMap<>();
+				for (String dnsType : dnsTypes) {
+					if (shared && hasSharedSession(addresses, dnsType)) continue;
+					for (BonjourService service : cache.getServices(dnsType)) {
+						replayed.put(ServiceKeys.keyOf(service.getName(), service.getType()), service);
+						subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+					}
+				}
+
+				// Don't report those services again once the sessions find them, unless they changed in the meantime
+				Subscriber<? super BonjourEvent> target = subscriber;
+				if (!replayed.isEmpty()) target = skipReplayed(subscriber, replayed);
+
+				if (shared) {
+					// Regular discoveries share one session per type and interface among all of their subscribers
+					joinSharedSessions(target, addresses, dnsTypes);
+					return;
+				}
+
+				// Start discovery on each of the environment's interfaces, merging services visible on more than one of them
+				ServiceMerger merger = new ServiceMerger();
+				int started = 0;
+				for (InetAddress address : addresses) {
+					try {
+						startSession(target, address, dnsTypes, merger, resolve,
+								(monitorScheduler != null) ? new ServiceMonitor(monitorScheduler) : null);
+						started++;
+					} catch (IOException ignored) {
+						// Continue with the remaining interfaces
+					}
+				}
+
+				if (started == 0) {
+					target.onError(new DiscoveryFailed(JmDNSDiscovery.class, dnsTypes.toString()));
+				}
+			}
+		}).lift(EventBackpressure.withDefaults());
+	}
+
+	/**
+	 * Subscribes to the shared sessions discovering each of the provided types on each of the provided interfaces,
+	 * merging the services visible on more than one of them. The discovery only fails if none of the sessions can be started.
+	 *
+	 * @param subscriber Subscriber of the discovery
+	 * @param addresses  Addresses of the network interfaces to discover services on
+	 * @param dnsTypes   Fully qualified service types to discover
+	 */
+	private void joinSharedSessions(Subscriber<? super BonjourEvent> subscriber, List<InetAddress> addresses, Collection<String> dnsTypes) {
+		final ServiceMerger merger = new ServiceMerger();
+		final int total = addresses.size() * dnsTypes.size();
+		final AtomicInteger failed = new AtomicInteger();
+
+		List<Observable<BonjourEvent>> sessions = new ArrayList<>(total);
+		for (final InetAddress address : addresses) {
+			for (String dnsType : dnsTypes) {
+				sessions.add(sharedSession(address, dnsType)
+						.onErrorResumeNext(new Func1<Throwable, Observable<BonjourEvent>>() {
+							@Override public Observable<BonjourEvent> call(Throwable e) {
+								return (failed.incrementAndGet() < total) ? Observable.<BonjourEvent>never() : Observable.<BonjourEvent>error(e);
+							}
+						})
+						.map(new Func1<BonjourEvent, BonjourEvent>() {
+							@Override public BonjourEvent call(BonjourEvent event) {
+								if (event.getType() == BonjourEvent.Type.REMOVED) return removed(address, merger, event);
+
+								BonjourService service = event.getService();
+								BonjourService merged = merger.resolved(address, service);
+								if (merged != service) cache.put(merged, ResolveCache.DEFAULT_TTL_MILLIS);
+								return new BonjourEvent(BonjourEvent.Type.ADDED, merged);
+							}
+						}));
+			}
+		}
+
+		// The sessions of all types start together, so the task starter of the JmDNS instances packs their queries into the same packets
+		Observable.merge(sessions).unsafeSubscribe(subscriber);
+	}
+
+	/**
+	 * Obtains the session discovering the provided type on the JmDNS instance bound to the provided address, which is shared
+	 * among all subscribers of the type and runs a single service listener. Subscribers joining a running session are sent
+	 * the services it currently knows of first.
+	 *
+	 * @param address Address of the network interface to discover services on
+	 * @param dnsType Fully qualified service type to discover
+	 * @return An Observable for Bonjour events of the type, as seen on the interface
+	 */
+	private Observable<BonjourEvent> sharedSession(final InetAddress address, final String dnsType) {
+		final SessionKey key = new SessionKey(manager, address, dnsType);
+		LiveEventStream stream;
+		synchronized (SHARED_SESSIONS) {
+			stream = SHARED_SESSIONS.get(key);
+			if (stream == null) {
+				Observable<BonjourEvent> source = Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+					@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+						try {
+							startSession(subscriber, address, Collections.singleton(dnsType), new ServiceMerger(), true, null);
+						} catch (IOException e) {
+							subscriber.onError(new DiscoveryFailed(JmDNSDiscovery.class, dnsType));
+						}
+					}
+				});
+
+				stream = new LiveEventStream(source, new Action0() {
+					@Override public void call() {
+						synchronized (SHARED_SESSIONS) {
+							LiveEventStream idle = SHARED_SESSIONS.get(key);
+							if (idle != null && idle.getSubscriberCount() == 0) SHARED_SESSIONS.remove(key);
+						}
+					}
+				});
+				SHARED_SESSIONS.put(key, stream);
+			}
+		}
+
+		return stream.observe();
+	}
+
+	/**
+	 * Returns whether a shared session is running for the provided type on any of the provided interfaces.
+	 */
+	private boolean hasSharedSession(List<InetAddress> addresses, String dnsType) {
+		synchronized (SHARED_SESSIONS) {
+			for (InetAddress address : addresses) {
+				LiveEventStream stream = SHARED_SESSIONS.get(new SessionKey(manager, address, dnsType));
+				if (stream != null && stream.getSubscriberCount() > 0) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Wraps the provided subscriber, which was sent the provided services upon subscribing. Once found again,
+	 * these services are only reported if they changed in the meantime.
+	 *
+	 * @param subscriber Subscriber of the discovery
+	 * @param replayed   Services sent to the subscriber, keyed by name and type
+	 * @return The subscriber to start the discovery for
+	 */
+	private static Subscriber<BonjourEvent> skipReplayed(final Subscriber<? super BonjourEvent> subscriber,
+	                                                     final Map<String, BonjourService> replayed) {
+		return new Subscriber<BonjourEvent>(subscriber) {
+			@Override public void onNext(BonjourEvent event) {
+				BonjourService service = event.getService();
+				String key = ServiceKeys.keyOf(service.getName(), service.getType());
+				if (event.getType() == BonjourEvent.Type.ADDED && service.equals(replayed.get(key))) return;
+
+				replayed.remove(key);
+				subscriber.onNext(event);
+			}
+
+			@Override public void onError(Throwable e) {
+				subscriber.onError(e);
+			}
+
+			@Override public void onCompleted() {
+				subscriber.onCompleted();
+			}
+		};
+	}
+
+	/**
+	 * Starts discovering the provided types on the JmDNS instance bound to the provided address, sharing one service listener.
+	 *
+	 * @param subscriber Subscriber for whom the discovery is started
+	 * @param address    Address of the network interface to discover services on
+	 * @param dnsTypes   Fully qualified service types to discover
+	 * @param merger     Merger of the services discovered on all interfaces of the subscriber
+	 * @param resolve    Whether to resolve each found service eagerly
+	 * @param monitor    Monitor timing the queries of a long-lived discovery, or null to leave this up to JmDNS
+	 * @throws IOException In case the JmDNS instance can't be created
+	 */
+	private void startSession(final Subscriber<? super BonjourEvent> subscriber, final InetAddress address,
+	                          final Collection<String> dnsTypes, final ServiceMerger merger, final boolean resolve,
+	                          final ServiceMonitor monitor) throws IOException {
+		// Time from finding services to reporting them resolved; resolves still pending are abandoned along with the session
+		final LatencyTracker resolveLatency = new LatencyTracker(Metrics.RESOLVE_LATENCY_NANOS);
+
+		// Host names of the services tracked by the monitor, whose address records are refreshed along with them
+		final Map<String, String> servers = new ConcurrentHashMap<>();
+
+		// Services reported as removed by the monitor, whose removal by JmDNS is not reported again
+		final Set<String> expired = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		// Create the service listener, shared among all requested types
+		final ServiceListener listener = new ServiceListener() {
+			@Override public void serviceAdded(ServiceEvent event) {
+				if (monitor != null && monitor.isTracked(event.getName(), event.getType())) {
+					// Announced again while its records are still valid; no need to ask for them
+					return;
+				}
+
+				// Services resolved earlier aren't resolved again while their cache entry is fresh, unless the monitor needs their lifetime
+				BonjourService service = (monitor == null) ? cache.getService(event.getName(), event.getType()) : null;
+				if (service == null) {
+					if (resolve) {
+						resolveLatency.start(event.getName(), event.getType());
+						event.getDNS().requestServiceInfo(event.getType(), event.getName());
+						return;
+					}
+
+					// Report the service right away, leaving it up to the subscriber to resolve it
+					service = new BonjourService.Builder(event.getName(), event.getType())
+							.setResolved(false)
+							.build();
+				}
+				service = merger.resolved(address, service);
+				if (!subscriber.isUnsubscribed()) {
+					subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+				}
+			}
+
+			@Override public void serviceRemoved(ServiceEvent event) {
+				if (monitor != null) {
+					String key = ServiceKeys.keyOf(event.getName(), event.getType());
+					servers.remove(key);
+					if (!monitor.untrack(event.getName(), event.getType()) && expired.remove(key)) return;
+				}
+				resolveLatency.cancel(event.getName(), event.getType());
+				onServiceRemoved(subscriber, address, merger, newBonjourEvent(BonjourEvent.Type.REMOVED, event));
+			}
+
+			@Override public void serviceResolved(ServiceEvent event) {
+				// Resolved on behalf of another subscriber, or on demand
+				if (!resolve) return;
+
+				long ttlMillis = getTtlMillis(event);
+				if (monitor != null) {
+					String key = ServiceKeys.keyOf(event.getName(), event.getType());
+					String server = event.getInfo().getServer();
+					if (server != null) servers.put(key, server);
+					expired.remove(key);
+					// Records that have expired already are left to JmDNS, which reports the service's removal
+					if (ttlMillis > 0) monitor.track(event.getName(), event.getType(), ttlMillis);
+				}
+
+				BonjourService service = merger.resolved(address, newBonjourEvent(BonjourEvent.Type.ADDED, event).getService());
+				cache.put(service, ttlMillis);
+				if (!subscriber.isUnsubscribed()) {
+					subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+				}
+				resolveLatency.stop(event.getName(), event.getType());
+			}
+		};
+
+		// Obtain the shared JmDNS instance, removing the listener again upon unsubscribing
+		final JmDNS jmdns = openSession(subscriber, address, new Action1<JmDNS>() {
+			@Override public void call(JmDNS jmdns) {
+				if (monitor != null) {
+					monitor.stop();
+					BatchingTaskStarter starter = BatchingTaskStarter.of(jmdns);
+					if (starter != null) starter.resumeQueries(dnsTypes);
+				}
+				for (String dnsType : dnsTypes) {
+					jmdns.removeServiceListener(dnsType, listener);
+				}
+			}
+		});
+
+		if (monitor != null) {
+			monitor.start(new ServiceMonitor.Callback() {
+				@Override public void queryTypes() {
+					sendQuery(jmdns, dnsTypes);
+				}
+
+				@Override public void refresh(String name, String type) {
+					// Records refreshed by an earlier query only need to be tracked again
+					String server = servers.get(ServiceKeys.keyOf(name, type));
+					if (!retrack(jmdns, monitor, name, type, server)) sendRefreshQuery(jmdns, name, type, server, monitor.now());
+				}
+
+				@Override public void expired(String name, String type) {
+					String key = ServiceKeys.keyOf(name, type);
+					if (retrack(jmdns, monitor, name, type, servers.get(key))) return;
+					servers.remove(key);
+					expired.add(key);
+					onServiceRemoved(subscriber, address, merger,
+							new BonjourEvent(BonjourEvent.Type.REMOVED, new BonjourService.Builder(name, type).build()));
+				}
+			});
+		}
+
+		// JmDNS queries the types of new listeners, which the task starter of its instances packs into the same packets.
+		// Monitored types are queried by the monitor only, so that JmDNS neither queries them for the listeners
+		// nor whenever it renews their records
+		if (monitor != null) {
+			BatchingTaskStarter starter = BatchingTaskStarter.of(jmdns);
+			if (starter != null) starter.suppressQueries(dnsTypes);
+		}
+		for (String dnsType : dnsTypes) {
+			jmdns.addServiceListener(dnsType, listener);
+		}
+	}
+
+	/**
+	 * Reports the removal of a service from one of the interfaces of a discovery.
+	 *
+	 * @param subscriber Subscriber of the discovery
+	 * @param address    Address of the interface the service was removed from
+	 * @param merger     Merger of the services discovered on all interfaces of the subscriber
+	 * @param event      Event of type REMOVED
+	 */
+	private void onServiceRemoved(Subscriber<? super BonjourEvent> subscriber, InetAddress address, ServiceMerger merger, BonjourEvent event) {
+		BonjourEvent bonjourEvent = removed(address, merger, event);
+		if (!subscriber.isUnsubscribed()) {
+			subscriber.onNext(bonjourEvent);
+		}
+	}
+
+	/**
+	 * Records the removal of a service from one of the interfaces of a discovery, and updates the resolve cache accordingly.
+	 *
+	 * @param address Address of the interface the service was removed from
+	 * @param merger  Merger of the services discovered on all interfaces of the discovery
+	 * @param event   Event of type REMOVED
+	 * @return The event to report, as returned by {@link ServiceMerger#removed(InetAddress, BonjourEvent)}
+	 */
+	private BonjourEvent removed(InetAddress address, ServiceMerger merger, BonjourEvent event) {
+		BonjourService service = event.getService();
+		BonjourEvent bonjourEvent = merger.removed(address, event);
+		if (bonjourEvent.getType() == BonjourEvent.Type.REMOVED) {
+			cache.remove(service.getName(), service.getType());
+		} else {
+			cache.put(bonjourEvent.getService(), ResolveCache.DEFAULT_TTL_MILLIS);
+		}
+		return bonjourEvent;
+	}
+
+	/**
+	 * Acquires the resources required to receive multicast packets and a lease on the JmDNS instance shared among all subscribers,
+	 * and releases both once the provided subscriber unsubscribes.
+	 *
+	 * @param subscriber    Subscriber for whom the session is opened
+	 * @param address       Address of the network interface to bind JmDNS to
+	 * @param onUnsubscribe Callback invoked with the JmDNS instance upon unsubscribing, before anything is released
+	 * @return The JmDNS instance
+	 * @throws IOException In case the JmDNS instance can't be created
+	 */
+	private JmDNS openSession(Subscriber<?> subscriber, InetAddress address, final Action1<JmDNS> onUnsubscribe) throws IOException {
+		final Subscription multicast = environment.acquireMulticast();
+
+		// Lease the JmDNS instance bound to the address
+		final JmDNSManager.Lease lease;
+		try {
+			lease = manager.acquire(address);
+		} catch (IOException e) {
+			multicast.unsubscribe();
+			throw e;
+		}
+
+		// Add onUnsubscribe() hook
+		subscriber.add(environment.createUnsubscribeHook(new Action0() {
+			@Override public void call() {
+				// Release the multicast resources and the lease on the JmDNS client
+				onUnsubscribe.call(lease.getJmDNS());
+
+				Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
+					@Override public void call(final Subscriber<? super Void> subscriber) {
+						multicast.unsubscribe();
+
+						// The JmDNS instance is closed once no more leases remain
+						lease.unsubscribe();
+
+						// Unsubscribe from the observable automatically
+						subscriber.unsubscribe();
+					}
+				});
+				cleanUpObservable
+						.compose(environment.<Void>cleanupSchedulers())
+						.subscribe();
+			}
+		}));
+
+		return lease.getJmDNS();
+	}
+
+	/**
+	 * Obtains the remaining lifetime of a resolved service, using the shortest remaining TTL among its SRV, TXT and address records.
+	 * If the records can't be looked up in JmDNS' cache, the default lifetime of the resolve cache is used instead.
+	 *
+	 * @param event Event containing information about the resolved service
+	 * @return The remaining lifetime of the service in milliseconds, which is 0 if its records have expired already
+	 */
+	private long getTtlMillis(ServiceEvent event) {
+		JmDNS dns = event.getDNS();
+		if (!(dns instanceof JmDNSImpl)) return ResolveCache.DEFAULT_TTL_MILLIS;
+
+		ServiceInfo info = event.getInfo();
+		return getTtlMillis(((JmDNSImpl) dns).getCache(), info.getQualifiedName(), info.getServer(), System.currentTimeMillis());
+	}
+
+	private long getTtlMillis(DNSCache cache, String qualifiedName, String server, long now) {
+		int ttl = getMinimumTtl(cache, qualifiedName, Integer.MAX_VALUE, now);
+		if (server != null && server.length() > 0) ttl = getMinimumTtl(cache, server, ttl, now);
+
+		return (ttl == Integer.MAX_VALUE) ? ResolveCache.DEFAULT_TTL_MILLIS : ttl * 1000L;
+	}
+
+	private int getMinimumTtl(DNSCache cache, String name, int ttl, long now) {
+		Collection<? extends DNSEntry> entries = cache.getDNSEntryList(name);
+		if (entries != null) {
+			for (DNSEntry entry : entries) {
+				if (entry instanceof DNSRecord) ttl = Math.min(ttl, getRemainingTtl((DNSRecord) entry, now));
+			}
+		}
+		return ttl;
+	}
+
+	/**
+	 * Returns the number of seconds until the provided record expires. Records answered from JmDNS' cache may have
+	 * used up most of their TTL already, which {@link DNSRecord#getTTL()} doesn't account for.
+	 * JmDNS doesn't expose the remaining TTL of its records, so it is searched for through {@link DNSRecord#isExpired(long)}.
+	 *
+	 * @param record Record to obtain the remaining TTL of
+	 * @param now    Current time in milliseconds
+	 * @return The remaining TTL in seconds, which is 0 if the record has expired already
+	 */
+	static int getRemainingTtl(DNSRecord record, long now) {
+		int low = 0;
+		int high = record.getTTL();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (record.isExpired(now + mid * 1000L)) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sends a PTR query for all of the provided types, packing as many questions into each packet as possible.
+	 * The PTR records of the types with more than half of their lifetime left are listed as known answers, and types
+	 * that another host has just queried are left out. This is done only if the JmDNS instance allows sending raw packets.
+	 *
+	 * @param jmdns    JmDNS instance to send the query with
+	 * @param dnsTypes Fully qualified service types to query
+	 */
+	private void sendQuery(JmDNS jmdns, Collection<String> dnsTypes) {
+		if (!(jmdns instanceof JmDNSImpl)) return;
+		JmDNSImpl impl = (JmDNSImpl) jmdns;
+		DNSCache cache = impl.getCache();
+
+		try {
+			KnownAnswerQuery query = new KnownAnswerQuery(impl, System.currentTimeMillis());
+			for (String dnsType : dnsTypes) {
+				DNSQuestion question = DNSQuestion.newQuestion(dnsType, DNSRecordType.TYPE_PTR, DNSRecordClass.CLASS_IN, DNSRecordClass.NOT_UNIQUE);
+				if (query.addQuestion(question) && cache != null) {
+					query.addKnownAnswers(cache, dnsType, DNSRecordType.TYPE_PTR);
+				}
+			}
+			query.send();
+
+		} catch (IOException ignored) {
+			// Queried again on the monitor's next attempt
+		}
+	}
+
+	/**
+	 * Tracks the lifetime of a monitored service again if its records have been refreshed in JmDNS' cache in the meantime.
+	 * JmDNS only renews the lifetime of cached records that are received again, without reporting the service anew.
+	 *
+	 * @param jmdns   JmDNS instance holding the records
+	 * @param monitor Monitor tracking the service
+	 * @param name    Name of the service
+	 * @param type    Fully qualified type of the service
+	 * @param server  Host name of the service, or null if unknown
+	 * @return True if the service's records are fresh and tracked again, false otherwise
+	 */
+	private boolean retrack(JmDNS jmdns, ServiceMonitor monitor, String name, String type, String server) {
+		if (!(jmdns instanceof JmDNSImpl)) return false;
+		DNSCache cache = ((JmDNSImpl) jmdns).getCache();
+		if (cache == null) return false;
+
+		String qualifiedName = name + "." + type;
+		DNSEntry srv = cache.getDNSEntry(qualifiedName, DNSRecordType.TYPE_SRV, DNSRecordClass.CLASS_IN);
+		long now = monitor.now();
+		if (!(srv instanceof DNSRecord) || srv.isStale(now)) return false;
+
+		// Only the lifetime the records have left is tracked, so that their refreshes are timed before they expire
+		long ttlMillis = getTtlMillis(cache, qualifiedName, server, now);
+		if (ttlMillis <= 0) return false;
+
+		monitor.track(name, type, ttlMillis);
+		return true;
+	}
+
+	/**
+	 * Queries the SRV and TXT records of a monitored service and the address records of its host, skipping those that are
+	 * still fresh in JmDNS' cache, or that another host has just asked. The questions are sent explicitly, because JmDNS
+	 * answers requests for service info from its cache while it holds the records, without querying the network.
+	 *
+	 * @param jmdns  JmDNS instance to send the query with
+	 * @param name   Name of the service
+	 * @param type   Fully qualified type of the service
+	 * @param server Host name of the service, or null if unknown
+	 * @param now    Current time in milliseconds
+	 */
+	private void sendRefreshQuery(JmDNS jmdns, String name, String type, String server, long now) {
+		if (!(jmdns instanceof JmDNSImpl) || ((JmDNSImpl) jmdns).getCache() == null) {
+			jmdns.requestServiceInfo(type, name);
+			return;
+		}
+		JmDNSImpl impl = (JmDNSImpl) jmdns;
+		DNSCache cache = impl.getCache();
+		String qualifiedName = name + "." + type;
+
+		try {
+			KnownAnswerQuery query = new KnownAnswerQuery(impl, now);
+			addStaleQuestion(query, cache, qualifiedName, DNSRecordType.TYPE_SRV, now);
+			addStaleQuestion(query, cache, qualifiedName, DNSRecordType.TYPE_TXT, now);
+			if (server != null && server.length() > 0) {
+				addStaleQuestion(query, cache, server, DNSRecordType.TYPE_A, now);
+				addStaleQuestion(query, cache, server, DNSRecordType.TYPE_AAAA, now);
+			}
+			query.send();
+
+		} catch (IOException ignored) {
+			// Queried again at the next refresh
+		}
+	}
+
+	private void addStaleQuestion(KnownAnswerQuery query, DNSCache cache, String name, DNSRecordType type, long now) throws IOException {
+		Collection<? extends DNSEntry> entries = cache.getDNSEntryList(name, type, DNSRecordClass.CLASS_IN);
+		if (entries != null) {
+			for (DNSEntry entry : entries) {
+				if (entry instanceof DNSRecord && !entry.isStale(now)) return;
+			}
+		}
+		query.addQuestion(DNSQuestion.newQuestion(name, type, DNSRecordClass.CLASS_IN, DNSRecordClass.NOT_UNIQUE));
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Key of a shared discovery session
+	 */
+	private static final class SessionKey {
+
+		private final JmDNSManager manager;
+		private final InetAddress address;
+		private final String dnsType;
+
+		SessionKey(JmDNSManager manager, InetAddress address, String dnsType) {
+			this.manager = manager;
+			this.address = address;
+			this.dnsType = dnsType.toLowerCase(Locale.US);
+		}
+
+		@Override public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof SessionKey)) return false;
+
+			SessionKey that = (SessionKey) o;
+			return manager == that.manager && address.equals(that.address) && dnsType.equals(that.dnsType);
+		}
+
+		@Override public int hashCode() {
+			int result = System.identityHashCode(manager);
+			result = 31 * result + address.hashCode();
+			result = 31 * result + dnsType.hashCode();
+			return result;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Platform hooks used by the JmDNS engine: the address to bind JmDNS to, resources required to receive multicast packets,
+ * and the threads on which subscriptions are torn down. The default implementations suit a plain JVM;
+ * platforms such as Android override them to acquire a multicast lock or to unsubscribe on the main thread.
+ */
+public abstract class JmDNSEnvironment {
+
+	/**
+	 * Returns an environment binding JmDNS to the provided address, without any further platform requirements.
+	 *
+	 * @param address Address of the network interface to use
+	 * @return The environment
+	 */
+	public static JmDNSEnvironment forAddress(final InetAddress address) {
+		return new JmDNSEnvironment() {
+			@Override public InetAddress getAddress() {
+				return address;
+			}
+		};
+	}
+
+	/**
+	 * Returns an environment running discoveries on all network interfaces that are up and support multicast,
+	 * such as Wi-Fi, Ethernet or USB tethering, over both IPv4 and IPv6. Interfaces are enumerated anew for each discovery.
+	 * Broadcasts and type discoveries bind to the first of these addresses.
+	 *
+	 * @return The environment
+	 */
+	public static JmDNSEnvironment forAllInterfaces() {
+		return new JmDNSEnvironment() {
+			@Override public InetAddress getAddress() throws IOException {
+				return getAddresses().get(0);
+			}
+
+			@Override public List<InetAddress> getAddresses() throws IOException {
+				List<InetAddress> addresses = getMulticastAddresses();
+				if (addresses.isEmpty()) throw new IOException("No network interface supports multicast");
+				return addresses;
+			}
+		};
+	}
+
+	/**
+	 * Enumerates the addresses of all network interfaces that are up, support multicast and aren't loopback interfaces.
+	 * For each interface, at most one IPv4 and one IPv6 address are returned, preferring link-local IPv6 addresses,
+	 * since mDNS only operates on the local link anyway.
+	 *
+	 * @return The addresses, which may be empty
+	 * @throws IOException In case the network interfaces can't be enumerated
+	 */
+	public static List<InetAddress> getMulticastAddresses() throws IOException {
+		Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+		if (interfaces == null) return Collections.emptyList();
+
+		List<InetAddress> result = new ArrayList<>();
+		for (NetworkInterface networkInterface : Collections.list(interfaces)) {
+			if (!networkInterface.isUp() || networkInterface.isLoopback() || !networkInterface.supportsMulticast()) continue;
+
+			InetAddress v4 = null;
+			InetAddress v6 = null;
+			for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+				if (address instanceof Inet4Address) {
+					if (v4 == null) v4 = address;
+
+				} else if (address instanceof Inet6Address) {
+					if (v6 == null || (!v6.isLinkLocalAddress() && address.isLinkLocalAddress())) v6 = address;
+				}
+			}
+
+			if (v4 != null) result.add(v4);
+			if (v6 != null) result.add(v6);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The address of the network interface to bind JmDNS to
+	 * @throws IOException In case the address can't be determined
+	 */
+	public abstract InetAddress getAddress() throws IOException;
+
+	/**
+	 * Returns the addresses to run discoveries on, each of which is served by a JmDNS instance of its own.
+	 * By default, this is only the address returned by {@link #getAddress()}.
+	 *
+	 * @return The addresses of the network interfaces to discover services on
+	 * @throws IOException In case the addresses can't be determined
+	 */
+	public List<InetAddress> getAddresses() throws IOException {
+		return Collections.singletonList(getAddress());
+	}
+
+	/**
+	 * Acquires the resources required to receive multicast packets, which are held until the returned Subscription is unsubscribed.
+	 *
+	 * @return A Subscription releasing the resources upon unsubscribing
+	 */
+	public Subscription acquireMulticast() {
+		return Subscriptions.empty();
+	}
+
+	/**
+	 * Creates the Subscription added to each subscriber of the engine, which tears down its discovery or broadcast.
+	 *
+	 * @param action Action to execute upon unsubscribing
+	 * @return A Subscription executing the action upon unsubscribing
+	 */
+	public Subscription createUnsubscribeHook(Action0 action) {
+		return Subscriptions.create(action);
+	}
+
+	/**
+	 * @return The Transformer applied to work done after unsubscribing, such as closing JmDNS
+	 */
+	public <T> Observable.Transformer<T, T> cleanupSchedulers() {
+		return new Observable.Transformer<T, T>() {
+			@Override public Observable<T> call(Observable<T> obs) {
+				return obs
+						.subscribeOn(Schedulers.computation())
+						.observeOn(Schedulers.computation());
+			}
+		};
+	}
+}
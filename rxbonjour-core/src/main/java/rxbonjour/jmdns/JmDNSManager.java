@@ -0,0 +1,377 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.impl.DNSStatefulObject;
+
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rxbonjour.metrics.Metrics;
+
+/**
+ * Pool of the JmDNS instances shared among all discoveries and broadcasts, holding one instance per network address.
+ * <p>
+ * Each user of an instance holds a {@link Lease} on it, which is acquired and released atomically. Once the last lease
+ * on an instance is released, it is kept open for a grace period before being closed, so that discoveries restarted
+ * in quick succession (e.g. upon configuration changes) don't pay for the costly setup of JmDNS again.
+ * Acquiring a lease within the grace period cancels the pending close.
+ * <p>
+ * Instances are created outside of the manager's monitor, since setting up JmDNS takes a while. Until an instance is
+ * created, its entry in the pool is a placeholder; acquiring a lease on the same address in the meantime waits for
+ * that instance, while leases on other addresses can be acquired and released as usual.
+ * <p>
+ * The number of open instances and of the leases held on them are reported as {@link Metrics#JMDNS_INSTANCES}
+ * and {@link Metrics#JMDNS_SUBSCRIBERS}.
+ */
+public class JmDNSManager {
+
+	/** Default time for which unused JmDNS instances are kept open */
+	public static final long DEFAULT_GRACE_PERIOD_MILLIS = 10000;
+
+	private static final JmDNSManager INSTANCE = new JmDNSManager();
+
+	/** Pooled instances by the address they are bound to, guarded by the manager's monitor */
+	private final Map<InetAddress, Entry> entries = new HashMap<>();
+
+	/** Scheduler on which unused instances are closed after the grace period */
+	private final Scheduler scheduler;
+
+	private volatile long gracePeriodMillis;
+
+	/**
+	 * Constructor, keeping unused instances open for {@link #DEFAULT_GRACE_PERIOD_MILLIS}
+	 */
+	protected JmDNSManager() {
+		this(DEFAULT_GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS, Schedulers.computation());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param gracePeriod Time for which unused instances are kept open, 0 closing them right away
+	 * @param unit        Unit of the grace period
+	 * @param scheduler   Scheduler on which unused instances are closed after the grace period
+	 */
+	public JmDNSManager(long gracePeriod, TimeUnit unit, Scheduler scheduler) {
+		setGracePeriod(gracePeriod, unit);
+		this.scheduler = scheduler;
+	}
+
+	public static JmDNSManager get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Sets the time for which unused instances are kept open. This setting is applied to leases released afterwards.
+	 *
+	 * @param gracePeriod Time for which unused instances are kept open, 0 closing them right away
+	 * @param unit        Unit of the grace period
+	 */
+	public void setGracePeriod(long gracePeriod, TimeUnit unit) {
+		if (gracePeriod < 0) throw new IllegalArgumentException("gracePeriod must not be negative: " + gracePeriod);
+		this.gracePeriodMillis = unit.toMillis(gracePeriod);
+	}
+
+	/**
+	 * Acquires a lease on the JmDNS instance bound to the provided address, creating the instance if necessary.
+	 * The instance stays open at least until the lease is released.
+	 *
+	 * @param address Address to bind a newly created JmDNS instance to
+	 * @return The lease on the JmDNS instance
+	 * @throws IOException In case JmDNS can't be created
+	 */
+	public Lease acquire(InetAddress address) throws IOException {
+		Entry entry;
+		boolean creating = false;
+		synchronized (this) {
+			entry = entries.get(address);
+			if (entry != null && entry.isCreated() && !isAvailable(entry.jmdns)) {
+				// Closed behind our back, e.g. because the network went away
+				entry.cancelClose();
+				entries.remove(address);
+				entry = null;
+			}
+
+			if (entry == null) {
+				// Reserve the address, so that concurrent acquirers wait for the instance created below
+				entry = new Entry(address);
+				entries.put(address, entry);
+				creating = true;
+			}
+
+			entry.cancelClose();
+			entry.leases++;
+			reportUsage();
+		}
+
+		if (creating) {
+			createInstance(entry);
+		} else {
+			awaitInstance(entry);
+		}
+		return new Lease(entry);
+	}
+
+	/**
+	 * Returns the number of leases held on the instance bound to the provided address.
+	 *
+	 * @param address Address of the instance
+	 * @return The number of leases, which is 0 if there is no such instance or it is about to be closed
+	 */
+	public synchronized int getLeaseCount(InetAddress address) {
+		Entry entry = entries.get(address);
+		return (entry != null) ? entry.leases : 0;
+	}
+
+	/**
+	 * Closes all pooled instances right away, regardless of any leases held on them.
+	 */
+	public void close() {
+		Entry[] closing;
+		synchronized (this) {
+			closing = entries.values().toArray(new Entry[entries.size()]);
+			for (Entry entry : closing) {
+				entry.cancelClose();
+			}
+			entries.clear();
+			reportUsage();
+		}
+
+		for (Entry entry : closing) {
+			// Instances still being created are closed by their creator, once it notices that they aren't pooled anymore
+			if (entry.isCreated()) closeQuietly(entry.jmdns);
+		}
+	}
+
+	/**
+	 * Creates a new JmDNS instance bound to the provided address, which packs the type queries of its service listeners
+	 * into as few packets as possible.
+	 *
+	 * @param address Address to bind JmDNS to
+	 * @return The new JmDNS instance
+	 * @throws IOException In case JmDNS can't be created
+	 */
+	protected JmDNS create(InetAddress address) throws IOException {
+		return BatchingTaskStarter.create(address, address.toString());
+	}
+
+	/* Begin private */
+
+	/**
+	 * Creates the instance of the provided placeholder entry, and hands it to the acquirers waiting for it.
+	 * If creation fails, the placeholder is removed from the pool, so that the next acquirer tries again.
+	 *
+	 * @param entry Entry reserved by the calling acquirer
+	 * @throws IOException In case JmDNS can't be created, or the pool was closed in the meantime
+	 */
+	private void createInstance(Entry entry) throws IOException {
+		JmDNS jmdns;
+		try {
+			jmdns = create(entry.address);
+
+		} catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				if (entries.get(entry.address) == entry) entries.remove(entry.address);
+				reportUsage();
+			}
+			entry.fail((e instanceof IOException) ? (IOException) e : new IOException(e));
+			throw e;
+		}
+
+		boolean pooled;
+		synchronized (this) {
+			pooled = entries.get(entry.address) == entry;
+			if (pooled) {
+				entry.jmdns = jmdns;
+				reportUsage();
+			}
+		}
+
+		if (!pooled) {
+			// Closed while being created
+			closeQuietly(jmdns);
+			IOException e = new IOException("JmDNS manager was closed while creating an instance for " + entry.address);
+			entry.fail(e);
+			throw e;
+		}
+		entry.created.countDown();
+	}
+
+	/**
+	 * Waits for the instance of the provided entry to be created by another acquirer.
+	 * The lease taken on the entry is released again if the calling thread is interrupted while waiting.
+	 *
+	 * @param entry Entry on which the calling acquirer took a lease
+	 * @throws IOException In case the instance can't be created, or waiting for it was interrupted
+	 */
+	private void awaitInstance(Entry entry) throws IOException {
+		try {
+			entry.created.await();
+		} catch (InterruptedException e) {
+			release(entry);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for JmDNS to be created for " + entry.address);
+		}
+
+		if (entry.failure != null) {
+			throw new IOException("JmDNS couldn't be created for " + entry.address, entry.failure);
+		}
+	}
+
+	private void release(final Entry entry) {
+		long grace = gracePeriodMillis;
+		synchronized (this) {
+			entry.leases--;
+			reportUsage();
+			if (entry.leases > 0 || entries.get(entry.address) != entry) return;
+
+			if (grace > 0) {
+				// Keep the instance around for a while, in case it is needed again shortly
+				final Scheduler.Worker worker = scheduler.createWorker();
+				entry.pendingClose = worker;
+				worker.schedule(new Action0() {
+					@Override public void call() {
+						worker.unsubscribe();
+						closeIfUnused(entry);
+					}
+				}, grace, TimeUnit.MILLISECONDS);
+				return;
+			}
+
+			entries.remove(entry.address);
+			reportUsage();
+		}
+
+		closeQuietly(entry.jmdns);
+	}
+
+	private void closeIfUnused(Entry entry) {
+		synchronized (this) {
+			if (entry.leases > 0 || entries.get(entry.address) != entry) return;
+			entry.pendingClose = null;
+			entries.remove(entry.address);
+			reportUsage();
+		}
+
+		closeQuietly(entry.jmdns);
+	}
+
+	/**
+	 * Reports the number of instances and leases, called while holding the manager's monitor.
+	 * Instances still being created and the leases waiting for them aren't counted.
+	 */
+	private void reportUsage() {
+		if (!Metrics.isEnabled()) return;
+
+		int instances = 0;
+		int leases = 0;
+		for (Entry entry : entries.values()) {
+			if (!entry.isCreated()) continue;
+			instances++;
+			leases += entry.leases;
+		}
+		Metrics.sink().gauge(Metrics.JMDNS_INSTANCES, instances);
+		Metrics.sink().gauge(Metrics.JMDNS_SUBSCRIBERS, leases);
+	}
+
+	/**
+	 * Returns whether the provided JmDNS instance is not closing or closed.
+	 */
+	private static boolean isAvailable(JmDNS jmdns) {
+		if (jmdns instanceof DNSStatefulObject) {
+			DNSStatefulObject dso = (DNSStatefulObject) jmdns;
+			return !(dso.isClosing() || dso.isClosed());
+		}
+
+		return true;
+	}
+
+	private static void closeQuietly(JmDNS jmdns) {
+		try {
+			jmdns.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Pooled JmDNS instance, along with the number of leases held on it. Until the instance is created,
+	 * the entry serves as a placeholder, which acquirers of the same address wait for.
+	 */
+	private static final class Entry {
+
+		final InetAddress address;
+		/** Released once the instance is created or its creation failed */
+		final CountDownLatch created = new CountDownLatch(1);
+		/** Set once created, guarded by the manager's monitor; safely read by lease holders after awaiting {@link #created} */
+		JmDNS jmdns;
+		/** Cause of a failed creation, written before releasing {@link #created} */
+		volatile IOException failure;
+		int leases;
+		Subscription pendingClose;
+
+		Entry(InetAddress address) {
+			this.address = address;
+		}
+
+		/**
+		 * @return True if the instance has been created, false if it is still being created. Called while holding the manager's monitor
+		 */
+		boolean isCreated() {
+			return jmdns != null;
+		}
+
+		void fail(IOException e) {
+			failure = e;
+			created.countDown();
+		}
+
+		void cancelClose() {
+			if (pendingClose != null) {
+				pendingClose.unsubscribe();
+				pendingClose = null;
+			}
+		}
+	}
+
+	/**
+	 * Lease on a pooled JmDNS instance, which is released upon unsubscribing. Releasing a lease more than once has no effect.
+	 */
+	public final class Lease implements Subscription {
+
+		private final Entry entry;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Lease(Entry entry) {
+			this.entry = entry;
+		}
+
+		/**
+		 * @return The JmDNS instance, which must not be used anymore after releasing the lease
+		 */
+		public JmDNS getJmDNS() {
+			return entry.jmdns;
+		}
+
+		@Override public void unsubscribe() {
+			if (released.compareAndSet(false, true)) {
+				release(entry);
+			}
+		}
+
+		@Override public boolean isUnsubscribed() {
+			return released.get();
+		}
+	}
+}
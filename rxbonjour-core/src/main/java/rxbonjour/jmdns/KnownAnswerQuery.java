@@ -0,0 +1,108 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSEntry;
+import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.constants.DNSConstants;
+import javax.jmdns.impl.constants.DNSRecordClass;
+import javax.jmdns.impl.constants.DNSRecordType;
+
+/**
+ * Query sent through a JmDNS instance, packing its questions into as few packets as possible. Known answers that don't
+ * fit into the packet of their questions continue in further packets, with the TC bit set on all but the last one
+ * (RFC 6762, section 7.2). Questions that another host has just asked are left out, if the instance uses a
+ * {@link BatchingTaskStarter} keeping track of them (RFC 6762, section 7.3).
+ */
+final class KnownAnswerQuery {
+
+	private final JmDNSImpl jmdns;
+	private final BatchingTaskStarter starter;
+	private final long now;
+
+	private DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+	private int questions;
+
+	/**
+	 * Constructor
+	 *
+	 * @param jmdns JmDNS instance to send the query with
+	 * @param now   Current time in milliseconds
+	 */
+	KnownAnswerQuery(JmDNSImpl jmdns, long now) {
+		this.jmdns = jmdns;
+		this.starter = BatchingTaskStarter.of(jmdns);
+		this.now = now;
+	}
+
+	/**
+	 * Adds a question to the query, sending the current packet and starting a new one if it is full.
+	 *
+	 * @param question Question to add
+	 * @return True if the question was added, false if another host has just asked it
+	 * @throws IOException In case a packet can't be sent
+	 */
+	boolean addQuestion(DNSQuestion question) throws IOException {
+		if (starter != null && starter.isAskedByOthers(question, now)) return false;
+
+		try {
+			out.addQuestion(question);
+		} catch (IOException full) {
+			jmdns.send(out);
+			out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+			out.addQuestion(question);
+		}
+		questions++;
+		return true;
+	}
+
+	/**
+	 * Adds a known answer to the query. If the current packet is full, it is sent with the TC bit set,
+	 * telling responders to wait for the known answers continuing in the next packet.
+	 *
+	 * @param record Record to list as known answer
+	 * @throws IOException In case a packet can't be sent
+	 */
+	void addKnownAnswer(DNSRecord record) throws IOException {
+		try {
+			out.addAnswer(record, now);
+		} catch (IOException full) {
+			out.setFlags(out.getFlags() | DNSConstants.FLAGS_TC);
+			jmdns.send(out);
+			out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+			out.addAnswer(record, now);
+		}
+	}
+
+	/**
+	 * Adds the records held by the cache for the provided name and type as known answers, as long as more than half
+	 * of their lifetime is left. Responders would refresh the other records anyway.
+	 *
+	 * @param cache Cache of the JmDNS instance
+	 * @param name  Name of the records
+	 * @param type  Type of the records
+	 * @throws IOException In case a packet can't be sent
+	 */
+	void addKnownAnswers(DNSCache cache, String name, DNSRecordType type) throws IOException {
+		Collection<? extends DNSEntry> entries = cache.getDNSEntryList(name, type, DNSRecordClass.CLASS_IN);
+		if (entries == null) return;
+
+		for (DNSEntry entry : entries) {
+			if (entry instanceof DNSRecord && !entry.isStale(now)) addKnownAnswer((DNSRecord) entry);
+		}
+	}
+
+	/**
+	 * Sends the last packet of the query, unless all of its questions were left out.
+	 *
+	 * @throws IOException In case the packet can't be sent
+	 */
+	void send() throws IOException {
+		if (questions > 0 && !out.isEmpty()) jmdns.send(out);
+	}
+}
@@ -0,0 +1,182 @@
+package rxbonjour.jmdns;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rxbonjour.metrics.Metrics;
+
+/**
+ * Reference-counted holder of the platform's multicast lock, shared by all discoveries and broadcasts of the process.
+ * <p>
+ * The platform lock is only acquired when the first {@link Hold} is taken, and released after the last hold was released
+ * and an idle delay has passed, so that subscriptions coming and going in quick succession don't acquire and release
+ * the platform lock each time. The manager also keeps track of how long the platform lock was held in total, and reports
+ * the number of holds and the duration of each period the platform lock was held as {@link Metrics#MULTICAST_LOCK_HOLDS}
+ * and {@link Metrics#MULTICAST_LOCK_HOLD_MILLIS}.
+ * <p>
+ * Subclasses acquire and release the actual lock through {@link #onAcquire()} and {@link #onRelease()}, which are called
+ * while holding the manager's monitor.
+ */
+public abstract class MulticastLockManager implements SharedMulticastLock {
+
+	/** Default time for which the platform lock is held after its last hold was released */
+	public static final long DEFAULT_IDLE_DELAY_MILLIS = 10000;
+
+	/** Scheduler on which the platform lock is released after the idle delay, also serving as the clock for hold times */
+	private final Scheduler scheduler;
+
+	private volatile long idleDelayMillis;
+
+	// Guarded by the manager's monitor
+	private int holds;
+	private boolean locked;
+	private long lockedSince;
+	private long totalHoldMillis;
+	private int acquisitions;
+	private Scheduler.Worker pendingRelease;
+
+	/**
+	 * Constructor, holding the platform lock for {@link #DEFAULT_IDLE_DELAY_MILLIS} after its last hold was released
+	 */
+	protected MulticastLockManager() {
+		this(DEFAULT_IDLE_DELAY_MILLIS, TimeUnit.MILLISECONDS, Schedulers.computation());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param idleDelay Time for which the platform lock is held after its last hold was released, 0 releasing it right away
+	 * @param unit      Unit of the idle delay
+	 * @param scheduler Scheduler on which the platform lock is released after the idle delay
+	 */
+	protected MulticastLockManager(long idleDelay, TimeUnit unit, Scheduler scheduler) {
+		setIdleDelay(idleDelay, unit);
+		this.scheduler = scheduler;
+	}
+
+	@Override public void setIdleDelay(long idleDelay, TimeUnit unit) {
+		if (idleDelay < 0) throw new IllegalArgumentException("idleDelay must not be negative: " + idleDelay);
+		this.idleDelayMillis = unit.toMillis(idleDelay);
+	}
+
+	/**
+	 * Takes a hold on the platform lock, acquiring it if it isn't held already.
+	 *
+	 * @return The hold, which is released upon unsubscribing
+	 */
+	public synchronized Hold acquire() {
+		cancelRelease();
+		if (!locked) {
+			onAcquire();
+			locked = true;
+			lockedSince = scheduler.now();
+			acquisitions++;
+		}
+
+		holds++;
+		Metrics.sink().gauge(Metrics.MULTICAST_LOCK_HOLDS, holds);
+		return new Hold();
+	}
+
+	@Override public synchronized int getHoldCount() {
+		return holds;
+	}
+
+	@Override public synchronized boolean isHeld() {
+		return locked;
+	}
+
+	@Override public synchronized int getAcquisitionCount() {
+		return acquisitions;
+	}
+
+	@Override public synchronized long getHoldTime(TimeUnit unit) {
+		long millis = totalHoldMillis;
+		if (locked) millis += scheduler.now() - lockedSince;
+		return unit.convert(millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Acquires the platform lock.
+	 */
+	protected abstract void onAcquire();
+
+	/**
+	 * Releases the platform lock.
+	 */
+	protected abstract void onRelease();
+
+	/* Begin private */
+
+	private void release() {
+		long delay = idleDelayMillis;
+		synchronized (this) {
+			Metrics.sink().gauge(Metrics.MULTICAST_LOCK_HOLDS, --holds);
+			if (holds > 0) return;
+
+			if (delay > 0) {
+				// Hold on to the platform lock for a while, in case it is needed again shortly
+				final Scheduler.Worker worker = scheduler.createWorker();
+				pendingRelease = worker;
+				worker.schedule(new Action0() {
+					@Override public void call() {
+						worker.unsubscribe();
+						releaseIfUnused(worker);
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+				return;
+			}
+
+			unlock();
+		}
+	}
+
+	private synchronized void releaseIfUnused(Scheduler.Worker worker) {
+		if (holds > 0 || pendingRelease != worker) return;
+		pendingRelease = null;
+		unlock();
+	}
+
+	private void cancelRelease() {
+		if (pendingRelease != null) {
+			pendingRelease.unsubscribe();
+			pendingRelease = null;
+		}
+	}
+
+	private void unlock() {
+		if (!locked) return;
+		locked = false;
+		long holdMillis = scheduler.now() - lockedSince;
+		totalHoldMillis += holdMillis;
+		Metrics.sink().record(Metrics.MULTICAST_LOCK_HOLD_MILLIS, holdMillis);
+		onRelease();
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Hold on the platform lock, which is released upon unsubscribing. Releasing a hold more than once has no effect.
+	 */
+	public final class Hold implements Subscription {
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Hold() {
+		}
+
+		@Override public void unsubscribe() {
+			if (released.compareAndSet(false, true)) {
+				release();
+			}
+		}
+
+		@Override public boolean isUnsubscribed() {
+			return released.get();
+		}
+	}
+}
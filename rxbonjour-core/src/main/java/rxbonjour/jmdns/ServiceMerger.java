@@ -0,0 +1,82 @@
+package rxbonjour.jmdns;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rxbonjour.internal.ServiceKeys;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Merges the services of a discovery running on multiple network interfaces, so that a service visible on several of them
+ * is reported as a single service, holding the host addresses resolved on each interface. A merged service is only reported
+ * as removed once it has disappeared from all interfaces; until then, its removal from one interface is reported
+ * as another addition, without the addresses of that interface.
+ */
+final class ServiceMerger {
+
+	/** Latest state of each service per interface address, keyed by name and type */
+	private final Map<String, Map<InetAddress, BonjourService>> services = new HashMap<>();
+
+	/**
+	 * Records a service resolved on the provided interface.
+	 *
+	 * @param iface   Address of the interface the service was resolved on
+	 * @param service Resolved service
+	 * @return The merged service
+	 */
+	synchronized BonjourService resolved(InetAddress iface, BonjourService service) {
+		String key = ServiceKeys.keyOf(service.getName(), service.getType());
+		Map<InetAddress, BonjourService> byInterface = services.get(key);
+		if (byInterface == null) {
+			byInterface = new LinkedHashMap<>(2);
+			services.put(key, byInterface);
+		}
+
+		// Re-insert to have the latest resolve determine the port and TXT records of the merged service
+		byInterface.remove(iface);
+		byInterface.put(iface, service);
+		return merge(byInterface);
+	}
+
+	/**
+	 * Records the removal of a service from the provided interface.
+	 *
+	 * @param iface Address of the interface the service was removed from
+	 * @param event Event of type REMOVED
+	 * @return The provided event if the service is gone from all interfaces, or an event of type ADDED for the remaining merged service otherwise
+	 */
+	synchronized BonjourEvent removed(InetAddress iface, BonjourEvent event) {
+		BonjourService service = event.getService();
+		String key = ServiceKeys.keyOf(service.getName(), service.getType());
+		Map<InetAddress, BonjourService> byInterface = services.get(key);
+		if (byInterface == null) return event;
+
+		byInterface.remove(iface);
+		if (byInterface.isEmpty()) {
+			services.remove(key);
+			return event;
+		}
+		return new BonjourEvent(BonjourEvent.Type.ADDED, merge(byInterface));
+	}
+
+	/* Begin private */
+
+	private static BonjourService merge(Map<InetAddress, BonjourService> byInterface) {
+		BonjourService latest = null;
+		for (BonjourService service : byInterface.values()) {
+			latest = service;
+		}
+		if (byInterface.size() == 1) return latest;
+
+		BonjourService.Builder builder = new BonjourService.Builder(latest);
+		for (BonjourService service : byInterface.values()) {
+			for (InetAddress host : service.getHosts()) {
+				builder.addAddress(host);
+			}
+		}
+		return builder.build();
+	}
+}
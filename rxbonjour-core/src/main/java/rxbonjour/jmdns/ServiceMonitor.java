@@ -0,0 +1,191 @@
+package rxbonjour.jmdns;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rxbonjour.internal.ServiceKeys;
+
+/**
+ * Timer of the queries sent by a long-lived monitoring discovery, following the continuous querying rules of mDNS (RFC 6762, section 5.2).
+ * <p>
+ * The service types are queried with an exponentially increasing interval, starting at {@link #INITIAL_QUERY_INTERVAL_MILLIS}
+ * and capped at {@link #MAX_QUERY_INTERVAL_MILLIS}; in between, announcements of services are picked up passively.
+ * Each known service is only queried again once its records approach the end of their lifetime, at 80%, 85%, 90% and 95%
+ * of it. A service whose records aren't refreshed in time is reported as expired.
+ */
+final class ServiceMonitor {
+
+	/** Delay before the first query for the service types, doubled after each query */
+	static final long INITIAL_QUERY_INTERVAL_MILLIS = 1000;
+
+	/** Upper bound for the interval between queries for the service types */
+	static final long MAX_QUERY_INTERVAL_MILLIS = 60 * 60 * 1000;
+
+	/** Percentages of a record's lifetime at which it is refreshed, before it expires at 100% */
+	private static final int[] REFRESH_PERCENTAGES = { 80, 85, 90, 95, 100 };
+
+	private final Scheduler.Worker worker;
+	private volatile Callback callback;
+
+	/** Pending refresh of each known service, keyed by name and type; guarded by the monitor's lock */
+	private final Map<String, Refresh> refreshes = new HashMap<>();
+
+	private long queryInterval = INITIAL_QUERY_INTERVAL_MILLIS;
+
+	/**
+	 * Constructor
+	 *
+	 * @param scheduler Scheduler on which queries and refreshes are timed
+	 */
+	ServiceMonitor(Scheduler scheduler) {
+		this.worker = scheduler.createWorker();
+	}
+
+	/**
+	 * Starts querying the service types periodically. Services may only be tracked afterwards.
+	 *
+	 * @param callback Callback sending the queries
+	 */
+	void start(Callback callback) {
+		this.callback = callback;
+		scheduleTypeQuery(INITIAL_QUERY_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Stops all queries and pending refreshes.
+	 */
+	void stop() {
+		worker.unsubscribe();
+		synchronized (this) {
+			refreshes.clear();
+		}
+	}
+
+	/**
+	 * Starts tracking the lifetime of a service, whose records were just received or refreshed. Refreshes scheduled for
+	 * earlier records of the service are replaced.
+	 *
+	 * @param name      Name of the service
+	 * @param type      Type of the service
+	 * @param ttlMillis Remaining lifetime of the service's records
+	 */
+	void track(String name, String type, long ttlMillis) {
+		Refresh refresh = new Refresh(name, type, ttlMillis);
+		synchronized (this) {
+			refreshes.put(ServiceKeys.keyOf(name, type), refresh);
+		}
+		scheduleRefresh(refresh, 0);
+	}
+
+	/**
+	 * Stops tracking the lifetime of a service, e.g. because it was removed.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 * @return True if the service was tracked, false otherwise
+	 */
+	synchronized boolean untrack(String name, String type) {
+		return refreshes.remove(ServiceKeys.keyOf(name, type)) != null;
+	}
+
+	/**
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 * @return True if the lifetime of the service is tracked, false otherwise
+	 */
+	synchronized boolean isTracked(String name, String type) {
+		return refreshes.containsKey(ServiceKeys.keyOf(name, type));
+	}
+
+	/**
+	 * @return Current time in milliseconds, according to the scheduler timing the refreshes
+	 */
+	long now() {
+		return worker.now();
+	}
+
+	/* Begin private */
+
+	private void scheduleTypeQuery(long delayMillis) {
+		worker.schedule(new Action0() {
+			@Override public void call() {
+				callback.queryTypes();
+
+				long next;
+				synchronized (ServiceMonitor.this) {
+					next = queryInterval = Math.min(queryInterval * 2, MAX_QUERY_INTERVAL_MILLIS);
+				}
+				scheduleTypeQuery(next);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void scheduleRefresh(final Refresh refresh, final int step) {
+		int previous = (step == 0) ? 0 : REFRESH_PERCENTAGES[step - 1];
+		long delay = refresh.ttlMillis * (REFRESH_PERCENTAGES[step] - previous) / 100;
+
+		worker.schedule(new Action0() {
+			@Override public void call() {
+				String key = ServiceKeys.keyOf(refresh.name, refresh.type);
+				boolean expired = (step == REFRESH_PERCENTAGES.length - 1);
+				synchronized (ServiceMonitor.this) {
+					// Skip refreshes of records that were replaced or removed in the meantime
+					if (refreshes.get(key) != refresh) return;
+					if (expired) refreshes.remove(key);
+				}
+
+				if (expired) {
+					callback.expired(refresh.name, refresh.type);
+				} else {
+					callback.refresh(refresh.name, refresh.type);
+					scheduleRefresh(refresh, step + 1);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Callback sending the queries timed by the monitor
+	 */
+	interface Callback {
+
+		/**
+		 * Queries for all instances of the monitored service types.
+		 */
+		void queryTypes();
+
+		/**
+		 * Queries for the records of a service, which are about to expire.
+		 *
+		 * @param name Name of the service
+		 * @param type Type of the service
+		 */
+		void refresh(String name, String type);
+
+		/**
+		 * Invoked once the records of a service have expired without being refreshed.
+		 *
+		 * @param name Name of the service
+		 * @param type Type of the service
+		 */
+		void expired(String name, String type);
+	}
+
+	private static final class Refresh {
+
+		final String name;
+		final String type;
+		final long ttlMillis;
+
+		Refresh(String name, String type, long ttlMillis) {
+			this.name = name;
+			this.type = type;
+			this.ttlMillis = ttlMillis;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package rxbonjour.jmdns;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * View on the multicast lock shared by all discoveries and broadcasts, which allows for tuning it and monitoring its use.
+ * Holds on the lock are only taken by the environments of the discoveries and broadcasts themselves.
+ *
+ * @see MulticastLockManager
+ */
+public interface SharedMulticastLock {
+
+	/**
+	 * Sets the time for which the platform lock is held after its last hold was released.
+	 * This setting is applied to holds released afterwards.
+	 *
+	 * @param idleDelay Time for which the platform lock is held, 0 releasing it right away
+	 * @param unit      Unit of the idle delay
+	 */
+	void setIdleDelay(long idleDelay, TimeUnit unit);
+
+	/**
+	 * @return The number of holds currently taken on the platform lock
+	 */
+	int getHoldCount();
+
+	/**
+	 * @return True if the platform lock is currently held, which includes the idle delay after its last hold was released
+	 */
+	boolean isHeld();
+
+	/**
+	 * @return The number of times the platform lock was acquired
+	 */
+	int getAcquisitionCount();
+
+	/**
+	 * Returns the total time for which the platform lock was held, including the time it has been held for so far
+	 * if it is currently held.
+	 *
+	 * @param unit Unit of the returned time
+	 * @return The total hold time of the platform lock
+	 */
+	long getHoldTime(TimeUnit unit);
+}
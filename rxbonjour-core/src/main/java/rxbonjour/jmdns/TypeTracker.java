@@ -0,0 +1,146 @@
+package rxbonjour.jmdns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSEntry;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.constants.DNSRecordClass;
+import javax.jmdns.impl.constants.DNSRecordType;
+
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourTypeEvent;
+
+/**
+ * Tracker of the presence of the service types enumerated by a type discovery.
+ * <p>
+ * JmDNS only reports types as they are added. Rather than listening to the instances of each type, which would have JmDNS
+ * query every type on the network, the tracker sweeps JmDNS' cache periodically: a type counts as present as long as
+ * the cache holds a PTR record enumerating it or naming one of its instances, and as gone once all of them have expired
+ * or were withdrawn by goodbye packets. Types whose records are past half of their lifetime are refreshed by a single
+ * enumeration query, which lists the records that are still fresh as known answers, continued in further packets if necessary.
+ */
+final class TypeTracker {
+
+	/** Meta-query type used by DNS-SD to enumerate service types */
+	static final String TYPE_ENUMERATION = "_services._dns-sd._udp.local.";
+
+	/** Interval between sweeps of the cache */
+	static final long SWEEP_INTERVAL_MILLIS = 10 * 1000;
+
+	/** Minimum interval between enumeration queries refreshing the types */
+	static final long REFRESH_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+	/** Presence of each enumerated type; guarded by the tracker's lock */
+	private final Map<String, Boolean> types = new LinkedHashMap<>();
+
+	private long lastRefresh = Long.MIN_VALUE;
+
+	/**
+	 * Records a type reported by JmDNS as present.
+	 *
+	 * @param dnsType Fully qualified service type
+	 * @return True if the type wasn't present before
+	 */
+	synchronized boolean add(String dnsType) {
+		return !Boolean.TRUE.equals(types.put(dnsType, Boolean.TRUE));
+	}
+
+	/**
+	 * Checks the records of all known types in the cache of the provided JmDNS instance, and refreshes them if necessary.
+	 *
+	 * @param jmdns JmDNS instance holding the records
+	 * @param now   Current time in milliseconds
+	 * @return Events for the types that have appeared or disappeared since the last sweep
+	 */
+	List<BonjourTypeEvent> sweep(JmDNSImpl jmdns, long now) {
+		DNSCache cache = jmdns.getCache();
+		if (cache == null) return new ArrayList<>(0);
+
+		// Collect the enumerated types, and those of them whose records are still fresh
+		Set<String> enumerated = new HashSet<>();
+		Set<String> fresh = new HashSet<>();
+		List<DNSRecord> knownAnswers = new ArrayList<>();
+		for (DNSRecord record : records(cache, TYPE_ENUMERATION, now)) {
+			ServiceInfo info = record.getServiceInfo();
+			if (info == null) continue;
+
+			String dnsType = info.getType().toLowerCase(Locale.US);
+			enumerated.add(dnsType);
+			if (!record.isStale(now)) {
+				fresh.add(dnsType);
+				knownAnswers.add(record);
+			}
+		}
+
+		List<BonjourTypeEvent> events = new ArrayList<>(0);
+		boolean refresh = false;
+		synchronized (this) {
+			for (Map.Entry<String, Boolean> entry : types.entrySet()) {
+				String dnsType = entry.getKey().toLowerCase(Locale.US);
+				boolean present = enumerated.contains(dnsType);
+				boolean stale = !fresh.contains(dnsType);
+				for (DNSRecord record : records(cache, dnsType, now)) {
+					present = true;
+					if (!record.isStale(now)) stale = false;
+				}
+
+				if (present != entry.getValue()) {
+					entry.setValue(present);
+					events.add(new BonjourTypeEvent(present ? BonjourEvent.Type.ADDED : BonjourEvent.Type.REMOVED, entry.getKey()));
+				}
+				refresh |= present && stale;
+			}
+
+			refresh &= (lastRefresh == Long.MIN_VALUE || now - lastRefresh >= REFRESH_INTERVAL_MILLIS);
+			if (refresh) lastRefresh = now;
+		}
+
+		if (refresh) sendQuery(jmdns, knownAnswers, now);
+		return events;
+	}
+
+	/* Begin private */
+
+	/**
+	 * Returns the unexpired PTR records of the provided name held by the cache.
+	 */
+	private static List<DNSRecord> records(DNSCache cache, String name, long now) {
+		Collection<? extends DNSEntry> entries = cache.getDNSEntryList(name, DNSRecordType.TYPE_PTR, DNSRecordClass.CLASS_IN);
+		if (entries == null || entries.isEmpty()) return new ArrayList<>(0);
+
+		List<DNSRecord> records = new ArrayList<>(entries.size());
+		for (DNSEntry entry : entries) {
+			if (entry instanceof DNSRecord && !entry.isExpired(now)) records.add((DNSRecord) entry);
+		}
+		return records;
+	}
+
+	private static void sendQuery(JmDNSImpl jmdns, List<DNSRecord> knownAnswers, long now) {
+		try {
+			KnownAnswerQuery query = new KnownAnswerQuery(jmdns, now);
+			if (!query.addQuestion(DNSQuestion.newQuestion(TYPE_ENUMERATION, DNSRecordType.TYPE_PTR, DNSRecordClass.CLASS_IN, DNSRecordClass.NOT_UNIQUE))) {
+				// Another host has just enumerated the types, refreshing them for everyone
+				return;
+			}
+			for (DNSRecord record : knownAnswers) {
+				query.addKnownAnswer(record);
+			}
+			query.send();
+
+		} catch (IOException ignored) {
+			// Queried again after the next interval
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package rxbonjour.mdns;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct buffers large enough to hold any mDNS packet. Direct buffers are costly to allocate, but spare the channel
+ * a copy of each packet; pooling them keeps packet handling free of allocations once the pool has warmed up.
+ */
+final class BufferPool {
+
+	/** Maximum number of idle buffers retained by the shared pool */
+	static final int DEFAULT_MAX_IDLE = 8;
+
+	private static final BufferPool INSTANCE = new BufferPool(DEFAULT_MAX_IDLE);
+
+	private final ArrayDeque<ByteBuffer> idle = new ArrayDeque<>();
+	private final int maxIdle;
+
+	BufferPool(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	static BufferPool get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return A cleared buffer of {@link DnsMessage#MAX_PACKET_SIZE}, which should be released again once it's no longer used
+	 */
+	ByteBuffer acquire() {
+		ByteBuffer buffer;
+		synchronized (this) {
+			buffer = idle.pollFirst();
+		}
+
+		if (buffer == null) buffer = ByteBuffer.allocateDirect(DnsMessage.MAX_PACKET_SIZE);
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns the provided buffer to the pool, unless the pool is full already.
+	 *
+	 * @param buffer Buffer obtained through {@link #acquire()}
+	 */
+	synchronized void release(ByteBuffer buffer) {
+		if (idle.size() < maxIdle) idle.addFirst(buffer);
+	}
+
+	synchronized int getIdleCount() {
+		return idle.size();
+	}
+}
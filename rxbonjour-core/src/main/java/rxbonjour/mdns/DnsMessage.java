@@ -0,0 +1,258 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DNS message as exchanged by mDNS (RFC 6762), along with its wire format encoding. Records of types other than those
+ * supported by {@link DnsRecord} are skipped when decoding. Compressed names are understood when decoding,
+ * but never produced when encoding. Decoding is based on {@link DnsReader}.
+ */
+final class DnsMessage {
+
+	/** Maximum size of an mDNS packet, which may exceed the 512 bytes of unicast DNS (RFC 6762, section 17) */
+	static final int MAX_PACKET_SIZE = 9000;
+
+	/** Size of a packet fitting into a single Ethernet frame along with its IPv6 and UDP headers */
+	static final int MTU_PACKET_SIZE = 1500 - 40 - 8;
+
+	static final int FLAGS_QUERY = 0x0000;
+	static final int FLAGS_RESPONSE = 0x8400;
+
+	private static final int FLAG_QR = 0x8000;
+	private static final int FLAG_TC = 0x0200;
+	private static final int HEADER_SIZE = 12;
+	private static final int CACHE_FLUSH = 0x8000;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final int flags;
+	private final List<DnsQuestion> questions;
+	private final List<DnsRecord> answers;
+	private final List<DnsRecord> additionals;
+
+	DnsMessage(int flags, List<DnsQuestion> questions, List<DnsRecord> answers, List<DnsRecord> additionals) {
+		this.flags = flags;
+		this.questions = questions;
+		this.answers = answers;
+		this.additionals = additionals;
+	}
+
+	/* Begin static */
+
+	static DnsMessage query(List<DnsQuestion> questions) {
+		return new DnsMessage(FLAGS_QUERY, questions, Collections.<DnsRecord>emptyList(), Collections.<DnsRecord>emptyList());
+	}
+
+	static DnsMessage response(List<DnsRecord> answers, List<DnsRecord> additionals) {
+		return new DnsMessage(FLAGS_RESPONSE, Collections.<DnsQuestion>emptyList(), answers, additionals);
+	}
+
+	/**
+	 * Creates the packets of a query along with its known answers (RFC 6762, section 7.1). In case the known answers don't fit
+	 * into a single packet of the provided size, the query is split up: the first packet carries all questions and as many
+	 * known answers as fit, the following packets carry the remaining known answers only. All packets but the last have
+	 * their truncated flag set, so that responders wait for the rest of the known answers (RFC 6762, section 7.2).
+	 *
+	 * @param questions    Questions to ask
+	 * @param knownAnswers Records answering the questions, which the querier holds already
+	 * @param maxSize      Maximum size of each packet
+	 * @return The messages to send, in order
+	 */
+	static List<DnsMessage> queries(List<DnsQuestion> questions, List<DnsRecord> knownAnswers, int maxSize) {
+		List<DnsMessage> messages = new ArrayList<>(1);
+		int size = HEADER_SIZE;
+		for (DnsQuestion question : questions) {
+			size += sizeOf(question.getName()) + 4;
+		}
+
+		List<DnsQuestion> packetQuestions = questions;
+		List<DnsRecord> packetAnswers = new ArrayList<>();
+		for (DnsRecord record : knownAnswers) {
+			int recordSize = sizeOf(record);
+			if (size + recordSize > maxSize && !packetAnswers.isEmpty()) {
+				messages.add(new DnsMessage(FLAGS_QUERY | FLAG_TC, packetQuestions, packetAnswers, Collections.<DnsRecord>emptyList()));
+				packetQuestions = Collections.emptyList();
+				packetAnswers = new ArrayList<>();
+				size = HEADER_SIZE;
+			}
+			packetAnswers.add(record);
+			size += recordSize;
+		}
+		messages.add(new DnsMessage(FLAGS_QUERY, packetQuestions, packetAnswers, Collections.<DnsRecord>emptyList()));
+		return messages;
+	}
+
+	/**
+	 * Decodes a DNS message from the provided buffer, reading from its position up to its limit.
+	 * All supported records are materialized; to pick only the records of interest, use a {@link DnsReader} instead.
+	 *
+	 * @param in Buffer containing the message
+	 * @return The decoded message
+	 * @throws IOException In case the message is malformed
+	 */
+	static DnsMessage decode(ByteBuffer in) throws IOException {
+		DnsReader reader = new DnsReader();
+		reader.reset(in);
+
+		List<DnsQuestion> questions = new ArrayList<>();
+		List<DnsRecord> answers = new ArrayList<>();
+		List<DnsRecord> additionals = new ArrayList<>();
+		while (reader.next()) {
+			switch (reader.section()) {
+				case DnsReader.SECTION_QUESTION:
+					questions.add(reader.toQuestion());
+					break;
+
+				case DnsReader.SECTION_ANSWER:
+					addRecord(answers, reader);
+					break;
+
+				case DnsReader.SECTION_ADDITIONAL:
+					addRecord(additionals, reader);
+					break;
+
+				// Authority records are only used for probe tiebreaking, which isn't needed
+			}
+		}
+		return new DnsMessage(reader.getFlags(), questions, answers, additionals);
+	}
+
+	/* Begin public */
+
+	boolean isResponse() {
+		return (flags & FLAG_QR) != 0;
+	}
+
+	/**
+	 * @return True if this message is a query whose known answers are continued in the following packets
+	 */
+	boolean isTruncated() {
+		return (flags & FLAG_TC) != 0;
+	}
+
+	List<DnsQuestion> getQuestions() {
+		return questions;
+	}
+
+	List<DnsRecord> getAnswers() {
+		return answers;
+	}
+
+	List<DnsRecord> getAdditionals() {
+		return additionals;
+	}
+
+	/**
+	 * Encodes this message into the provided buffer, starting at its position.
+	 *
+	 * @param out Buffer to write to
+	 * @throws BufferOverflowException In case the message doesn't fit into the buffer
+	 */
+	void encode(ByteBuffer out) {
+		out.putShort((short) 0);
+		out.putShort((short) flags);
+		out.putShort((short) questions.size());
+		out.putShort((short) answers.size());
+		out.putShort((short) 0);
+		out.putShort((short) additionals.size());
+
+		for (DnsQuestion question : questions) {
+			writeName(out, question.getName());
+			out.putShort((short) question.getType());
+			out.putShort((short) DnsRecord.CLASS_IN);
+		}
+		for (DnsRecord record : answers) {
+			writeRecord(out, record);
+		}
+		for (DnsRecord record : additionals) {
+			writeRecord(out, record);
+		}
+	}
+
+	/* Begin private */
+
+	private static void addRecord(List<DnsRecord> records, DnsReader reader) throws IOException {
+		DnsRecord record = reader.toRecord();
+		if (record != null) records.add(record);
+	}
+
+	private static int sizeOf(DnsRecord record) {
+		int size = sizeOf(record.getName()) + 10;
+		switch (record.getType()) {
+			case DnsRecord.TYPE_PTR:
+				return size + sizeOf(record.getTarget());
+
+			case DnsRecord.TYPE_SRV:
+				return size + 6 + sizeOf(record.getTarget());
+
+			case DnsRecord.TYPE_TXT:
+				return size + Math.max(1, record.getTxt().length);
+
+			default:
+				return size + record.getAddress().getAddress().length;
+		}
+	}
+
+	private static int sizeOf(String name) {
+		int size = 1;
+		for (String label : DnsName.labels(name)) {
+			if (!label.isEmpty()) size += label.getBytes(UTF_8).length + 1;
+		}
+		return size;
+	}
+
+	private static void writeName(ByteBuffer out, String name) {
+		for (String label : DnsName.labels(name)) {
+			if (label.isEmpty()) continue;
+			byte[] bytes = label.getBytes(UTF_8);
+			out.put((byte) bytes.length);
+			out.put(bytes);
+		}
+		out.put((byte) 0);
+	}
+
+	private static void writeRecord(ByteBuffer out, DnsRecord record) {
+		writeName(out, record.getName());
+		out.putShort((short) record.getType());
+		out.putShort((short) (record.isUnique() ? (DnsRecord.CLASS_IN | CACHE_FLUSH) : DnsRecord.CLASS_IN));
+		out.putInt(record.getTtl());
+
+		// Reserve the length of the data, and fill it in afterwards
+		int lengthPosition = out.position();
+		out.putShort((short) 0);
+		switch (record.getType()) {
+			case DnsRecord.TYPE_PTR:
+				writeName(out, record.getTarget());
+				break;
+
+			case DnsRecord.TYPE_SRV:
+				out.putShort((short) 0);
+				out.putShort((short) 0);
+				out.putShort((short) record.getPort());
+				writeName(out, record.getTarget());
+				break;
+
+			case DnsRecord.TYPE_TXT:
+				byte[] txt = record.getTxt();
+				if (txt.length == 0) {
+					// Empty TXT records consist of a single empty string (RFC 6763, section 6.1)
+					out.put((byte) 0);
+				} else {
+					out.put(txt);
+				}
+				break;
+
+			case DnsRecord.TYPE_A:
+			case DnsRecord.TYPE_AAAA:
+				out.put(record.getAddress().getAddress());
+				break;
+		}
+		out.putShort(lengthPosition, (short) (out.position() - lengthPosition - 2));
+	}
+}
@@ -0,0 +1,115 @@
+package rxbonjour.mdns;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Helpers for the domain names used by mDNS. Names are handled in their textual form, with a trailing dot;
+ * dots and backslashes within a label, which commonly occur in service instance names, are escaped with a backslash.
+ */
+final class DnsName {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private DnsName() {
+		//no instance
+	}
+
+	/**
+	 * Creates the full name of a service instance.
+	 *
+	 * @param instance Unescaped name of the instance
+	 * @param dnsType  Fully qualified type of the service
+	 * @return The full name of the instance
+	 */
+	static String instanceName(String instance, String dnsType) {
+		return escape(instance) + '.' + dnsType;
+	}
+
+	/**
+	 * Extracts the unescaped instance label from the full name of a service instance.
+	 *
+	 * @param name Full name of the instance
+	 * @return The first label of the name
+	 */
+	static String instanceLabel(String name) {
+		List<String> labels = labels(name);
+		return labels.isEmpty() ? "" : labels.get(0);
+	}
+
+	/**
+	 * Splits the provided name into its unescaped labels.
+	 *
+	 * @param name Name to split
+	 * @return The labels of the name, excluding the empty root label
+	 */
+	static List<String> labels(String name) {
+		List<String> labels = new ArrayList<>(6);
+		StringBuilder label = new StringBuilder(16);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '\\' && i + 1 < name.length()) {
+				label.append(name.charAt(++i));
+			} else if (c == '.') {
+				labels.add(label.toString());
+				label.setLength(0);
+			} else {
+				label.append(c);
+			}
+		}
+		if (label.length() > 0) labels.add(label.toString());
+		return labels;
+	}
+
+	/**
+	 * Escapes dots and backslashes within the provided label.
+	 *
+	 * @param label Label to escape
+	 * @return The escaped label
+	 */
+	static String escape(String label) {
+		if (label.indexOf('.') < 0 && label.indexOf('\\') < 0) return label;
+
+		StringBuilder sb = new StringBuilder(label.length() + 4);
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (c == '.' || c == '\\') sb.append('\\');
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the form of the provided name used for comparisons, since DNS names are case-insensitive.
+	 *
+	 * @param name Name to normalize
+	 * @return The lower-case name
+	 */
+	static String key(String name) {
+		return name.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Encodes the provided name into its uncompressed wire format, with ASCII letters in lower case,
+	 * for comparisons through {@link DnsReader#nameEquals(int, byte[])}.
+	 *
+	 * @param name Name to encode
+	 * @return The length-prefixed labels of the name, terminated by the empty root label
+	 */
+	static byte[] toWire(String name) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(name.length() + 2);
+		for (String label : labels(name)) {
+			if (label.isEmpty()) continue;
+			byte[] bytes = label.getBytes(UTF_8);
+			out.write(bytes.length);
+			for (byte b : bytes) {
+				out.write((b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b);
+			}
+		}
+		out.write(0);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,38 @@
+package rxbonjour.mdns;
+
+/**
+ * Question section entry of a DNS message
+ */
+final class DnsQuestion {
+
+	private final String name;
+	private final int type;
+
+	DnsQuestion(String name, int type) {
+		this.name = name;
+		this.type = type;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getType() {
+		return type;
+	}
+
+	/**
+	 * @param record Record to check
+	 * @return True if the provided record answers this question
+	 */
+	boolean isAnsweredBy(DnsRecord record) {
+		return (type == DnsRecord.TYPE_ANY || type == record.getType()) && name.equalsIgnoreCase(record.getName());
+	}
+
+	@Override public String toString() {
+		return "DnsQuestion{" +
+				"name='" + name + '\'' +
+				", type=" + type +
+				'}';
+	}
+}
@@ -0,0 +1,365 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Flyweight cursor over a DNS message in its wire format. The reader walks the questions and records of the message
+ * in place, exposing each entry through accessors that read straight from the buffer; names can be compared against
+ * the names of interest, following compression pointers, without creating any Strings. Only entries that turn out to be
+ * of interest need to be materialized as {@link DnsQuestion}s or {@link DnsRecord}s.
+ * <p>
+ * A reader can be reused for any number of messages, but only by one thread at a time. The buffer must not be modified
+ * while it is being read.
+ */
+final class DnsReader {
+
+	static final int SECTION_QUESTION = 0;
+	static final int SECTION_ANSWER = 1;
+	static final int SECTION_AUTHORITY = 2;
+	static final int SECTION_ADDITIONAL = 3;
+
+	private static final int HEADER_SIZE = 12;
+	private static final int FLAG_QR = 0x8000;
+	private static final int POINTER_MASK = 0xc0;
+	private static final int MAX_POINTERS = 64;
+
+	/** Maximum number of labels of a name, which is at most 255 bytes long (RFC 1035, section 3.1) */
+	private static final int MAX_LABELS = 128;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final int[] counts = new int[4];
+	private ByteBuffer buffer;
+	private int start;
+	private int flags;
+
+	// Position of the cursor
+	private int section;
+	private int index;
+	private int next;
+
+	// Current entry
+	private int nameOffset;
+	private int type;
+	private int ttl;
+	private int dataOffset;
+	private int dataLength;
+
+	/**
+	 * Points the reader to the header of the message in the provided buffer, which spans from the buffer's position to its limit.
+	 * The buffer's position isn't modified.
+	 *
+	 * @param buffer Buffer containing the message
+	 * @throws IOException In case the message is too short to contain a header
+	 */
+	void reset(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER_SIZE) throw new IOException("Malformed DNS message: header truncated");
+
+		this.buffer = buffer;
+		this.start = buffer.position();
+		this.flags = u16(start + 2);
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = u16(start + 4 + 2 * i);
+		}
+		rewind();
+	}
+
+	/**
+	 * Moves the cursor back before the first entry of the message.
+	 */
+	void rewind() {
+		section = SECTION_QUESTION;
+		index = 0;
+		next = start + HEADER_SIZE;
+	}
+
+	boolean isResponse() {
+		return (flags & FLAG_QR) != 0;
+	}
+
+	int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Advances the cursor to the next question or record.
+	 *
+	 * @return True if there is another entry, false if the end of the message has been reached
+	 * @throws IOException In case the entry is malformed
+	 */
+	boolean next() throws IOException {
+		while (index >= counts[section]) {
+			if (section == SECTION_ADDITIONAL) return false;
+			section++;
+			index = 0;
+		}
+		index++;
+
+		try {
+			nameOffset = next;
+			int position = skipName(next);
+			type = u16(position);
+			u16(position + 2); // Class, along with the unicast-response or cache-flush bit
+
+			if (section == SECTION_QUESTION) {
+				ttl = 0;
+				dataOffset = position + 4;
+				dataLength = 0;
+				next = dataOffset;
+
+			} else {
+				ttl = buffer.getInt(position + 4);
+				dataLength = u16(position + 8);
+				dataOffset = position + 10;
+				next = dataOffset + dataLength;
+				if (next > buffer.limit()) throw new IOException("Malformed DNS message: record data exceeds message");
+			}
+			return true;
+
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Malformed DNS message", e);
+		}
+	}
+
+	/**
+	 * @return The section of the current entry, one of the SECTION constants
+	 */
+	int section() {
+		return section;
+	}
+
+	int type() {
+		return type;
+	}
+
+	int ttl() {
+		return ttl;
+	}
+
+	/**
+	 * @return The offset of the current entry's name within the buffer
+	 */
+	int nameOffset() {
+		return nameOffset;
+	}
+
+	/**
+	 * @return The offset of the name the current PTR or SRV record points to, or -1 for other types
+	 */
+	int targetOffset() {
+		switch (type) {
+			case DnsRecord.TYPE_PTR:
+				return dataOffset;
+
+			case DnsRecord.TYPE_SRV:
+				return dataOffset + 6;
+
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Compares the name at the provided offset to a name in the format of {@link DnsName#toWire(String)}, ignoring case.
+	 *
+	 * @param offset Offset of the name within the buffer
+	 * @param wire   Uncompressed, lower-case wire format of the name to compare to
+	 * @return True if both names are equal
+	 * @throws IOException In case the name is malformed
+	 */
+	boolean nameEquals(int offset, byte[] wire) throws IOException {
+		try {
+			return compare(offset, wire);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Malformed DNS message", e);
+		}
+	}
+
+	/**
+	 * Compares the name at the provided offset without its first label, such as the type of a service instance name,
+	 * to a name in the format of {@link DnsName#toWire(String)}, ignoring case.
+	 *
+	 * @param offset Offset of the name within the buffer
+	 * @param wire   Uncompressed, lower-case wire format of the name to compare to
+	 * @return True if the name's parent equals the provided name
+	 * @throws IOException In case the name is malformed
+	 */
+	boolean parentEquals(int offset, byte[] wire) throws IOException {
+		try {
+			int position = follow(offset);
+			int length = u8(position);
+			return length != 0 && compare(position + 1 + length, wire);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Malformed DNS message", e);
+		}
+	}
+
+	/**
+	 * Compares the names at the provided offsets, ignoring case.
+	 *
+	 * @param offset      Offset of the first name within the buffer
+	 * @param otherOffset Offset of the second name within the buffer
+	 * @return True if both names are equal
+	 * @throws IOException In case either name is malformed
+	 */
+	boolean namesEqual(int offset, int otherOffset) throws IOException {
+		try {
+			int position = offset;
+			int otherPosition = otherOffset;
+			int labels = 0;
+			while (true) {
+				position = follow(position);
+				otherPosition = follow(otherPosition);
+				if (++labels > MAX_LABELS) throw new IOException("Malformed DNS message: name too long");
+
+				int length = u8(position);
+				if (length != u8(otherPosition)) return false;
+				if (length == 0) return true;
+				for (int i = 1; i <= length; i++) {
+					if (lower(buffer.get(position + i)) != lower(buffer.get(otherPosition + i))) return false;
+				}
+				position += length + 1;
+				otherPosition += length + 1;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Malformed DNS message", e);
+		}
+	}
+
+	/**
+	 * Materializes the name at the provided offset.
+	 *
+	 * @param offset Offset of the name within the buffer
+	 * @return The name, with dots and backslashes within its labels escaped
+	 * @throws IOException In case the name is malformed
+	 */
+	String readName(int offset) throws IOException {
+		try {
+			StringBuilder name = new StringBuilder(32);
+			int position = offset;
+			int labels = 0;
+			while (true) {
+				position = follow(position);
+				int length = u8(position);
+				if (length == 0) break;
+				if (++labels > MAX_LABELS) throw new IOException("Malformed DNS message: name too long");
+
+				byte[] label = new byte[length];
+				for (int i = 0; i < length; i++) {
+					label[i] = buffer.get(position + 1 + i);
+				}
+				name.append(DnsName.escape(new String(label, UTF_8))).append('.');
+				position += length + 1;
+			}
+			return name.length() == 0 ? "." : name.toString();
+
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Malformed DNS message", e);
+		}
+	}
+
+	/**
+	 * @return The current entry as a question
+	 * @throws IOException In case its name is malformed
+	 */
+	DnsQuestion toQuestion() throws IOException {
+		return new DnsQuestion(readName(nameOffset), type);
+	}
+
+	/**
+	 * @return The current entry as a record, or null if its type isn't supported
+	 * @throws IOException In case the record is malformed
+	 */
+	DnsRecord toRecord() throws IOException {
+		switch (type) {
+			case DnsRecord.TYPE_PTR:
+				return DnsRecord.ptr(readName(nameOffset), ttl, readName(dataOffset));
+
+			case DnsRecord.TYPE_SRV:
+				if (dataLength < 7) throw new IOException("Malformed DNS message: SRV record too short");
+				return DnsRecord.srv(readName(nameOffset), ttl, u16(dataOffset + 4), readName(dataOffset + 6));
+
+			case DnsRecord.TYPE_TXT:
+				return DnsRecord.txt(readName(nameOffset), ttl, copyData());
+
+			case DnsRecord.TYPE_A:
+			case DnsRecord.TYPE_AAAA:
+				if (dataLength != 4 && dataLength != 16) return null;
+				return DnsRecord.address(readName(nameOffset), ttl, InetAddress.getByAddress(copyData()));
+
+			default:
+				return null;
+		}
+	}
+
+	/* Begin private */
+
+	private byte[] copyData() {
+		byte[] data = new byte[dataLength];
+		for (int i = 0; i < dataLength; i++) {
+			data[i] = buffer.get(dataOffset + i);
+		}
+		return data;
+	}
+
+	private boolean compare(int offset, byte[] wire) throws IOException {
+		int position = offset;
+		int w = 0;
+		int labels = 0;
+		while (true) {
+			position = follow(position);
+			if (++labels > MAX_LABELS) throw new IOException("Malformed DNS message: name too long");
+
+			int length = u8(position);
+			if (w >= wire.length || wire[w] != length) return false;
+			if (length == 0) return true;
+			if (w + length >= wire.length) return false;
+			for (int i = 1; i <= length; i++) {
+				if (lower(buffer.get(position + i)) != wire[w + i]) return false;
+			}
+			position += length + 1;
+			w += length + 1;
+		}
+	}
+
+	/**
+	 * Follows compression pointers at the provided offset, if any.
+	 *
+	 * @return The offset of the next label
+	 */
+	private int follow(int offset) throws IOException {
+		int position = offset;
+		int pointers = 0;
+		int length;
+		while (((length = u8(position)) & POINTER_MASK) == POINTER_MASK) {
+			if (++pointers > MAX_POINTERS) throw new IOException("Malformed DNS message: name compression loop");
+			position = start + (((length & ~POINTER_MASK) << 8) | u8(position + 1));
+		}
+		return position;
+	}
+
+	private int skipName(int offset) {
+		int position = offset;
+		while (true) {
+			int length = u8(position);
+			if (length == 0) return position + 1;
+			if ((length & POINTER_MASK) == POINTER_MASK) return position + 2;
+			position += length + 1;
+		}
+	}
+
+	private int u8(int offset) {
+		return buffer.get(offset) & 0xff;
+	}
+
+	private int u16(int offset) {
+		return buffer.getShort(offset) & 0xffff;
+	}
+
+	private static byte lower(byte b) {
+		return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+	}
+}
@@ -0,0 +1,163 @@
+package rxbonjour.mdns;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * Resource record of a DNS message, limited to the record types used by DNS-SD: PTR, SRV, TXT, A and AAAA.
+ * Records are equal if they carry the same data, regardless of their TTL.
+ */
+final class DnsRecord {
+
+	static final int TYPE_A = 1;
+	static final int TYPE_PTR = 12;
+	static final int TYPE_TXT = 16;
+	static final int TYPE_AAAA = 28;
+	static final int TYPE_SRV = 33;
+	static final int TYPE_ANY = 255;
+
+	static final int CLASS_IN = 1;
+
+	/** Recommended TTL of records containing a host name, in seconds (RFC 6762, section 10) */
+	static final int TTL_HOST = 120;
+
+	/** Recommended TTL of all other records, in seconds */
+	static final int TTL_OTHER = 4500;
+
+	private final String name;
+	private final int type;
+	private final int ttl;
+	private final boolean unique;
+
+	// Record data, depending on the type
+	private final String target;
+	private final int port;
+	private final byte[] txt;
+	private final InetAddress address;
+
+	private DnsRecord(String name, int type, int ttl, boolean unique, String target, int port, byte[] txt, InetAddress address) {
+		this.name = name;
+		this.type = type;
+		this.ttl = ttl;
+		this.unique = unique;
+		this.target = target;
+		this.port = port;
+		this.txt = txt;
+		this.address = address;
+	}
+
+	/* Begin static */
+
+	static DnsRecord ptr(String name, int ttl, String target) {
+		return new DnsRecord(name, TYPE_PTR, ttl, false, target, 0, null, null);
+	}
+
+	static DnsRecord srv(String name, int ttl, int port, String target) {
+		return new DnsRecord(name, TYPE_SRV, ttl, true, target, port, null, null);
+	}
+
+	static DnsRecord txt(String name, int ttl, byte[] txt) {
+		return new DnsRecord(name, TYPE_TXT, ttl, true, null, 0, txt, null);
+	}
+
+	static DnsRecord address(String name, int ttl, InetAddress address) {
+		return new DnsRecord(name, (address instanceof Inet4Address) ? TYPE_A : TYPE_AAAA, ttl, true, null, 0, null, address);
+	}
+
+	/* Begin public */
+
+	String getName() {
+		return name;
+	}
+
+	int getType() {
+		return type;
+	}
+
+	/**
+	 * @return The lifetime of the record in seconds, 0 announcing that the record is gone
+	 */
+	int getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @return True if the record is the only one of its name and type, in which case it is sent with the cache-flush bit
+	 */
+	boolean isUnique() {
+		return unique;
+	}
+
+	/**
+	 * @return The name pointed to by a PTR record, or the host name of an SRV record
+	 */
+	String getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return The port of an SRV record
+	 */
+	int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return The raw data of a TXT record
+	 */
+	byte[] getTxt() {
+		return txt;
+	}
+
+	/**
+	 * @return The address of an A or AAAA record
+	 */
+	InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * @param ttl Lifetime of the copy in seconds
+	 * @return A copy of this record with the provided lifetime
+	 */
+	DnsRecord withTtl(int ttl) {
+		return new DnsRecord(name, type, ttl, unique, target, port, txt, address);
+	}
+
+	/* Begin overrides */
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof DnsRecord)) return false;
+
+		DnsRecord that = (DnsRecord) o;
+		return type == that.type
+				&& port == that.port
+				&& name.equalsIgnoreCase(that.name)
+				&& (target != null ? target.equalsIgnoreCase(that.target) : that.target == null)
+				&& Arrays.equals(txt, that.txt)
+				&& (address != null ? address.equals(that.address) : that.address == null);
+	}
+
+	@Override public int hashCode() {
+		int result = DnsName.key(name).hashCode();
+		result = 31 * result + type;
+		result = 31 * result + (target != null ? DnsName.key(target).hashCode() : 0);
+		result = 31 * result + port;
+		result = 31 * result + Arrays.hashCode(txt);
+		result = 31 * result + (address != null ? address.hashCode() : 0);
+		return result;
+	}
+
+	@Override public String toString() {
+		return "DnsRecord{" +
+				"name='" + name + '\'' +
+				", type=" + type +
+				", ttl=" + ttl +
+				", target='" + target + '\'' +
+				", port=" + port +
+				", address=" + address +
+				'}';
+	}
+}
@@ -0,0 +1,102 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * In-memory stand-in for a multicast group, connecting any number of transports without touching the network.
+ * Each packet sent through one of its transports is delivered to all started transports, including the sender,
+ * just like multicast packets looped back by the operating system. Deliveries run in order on a worker of the network's
+ * scheduler; with a {@link rx.schedulers.TestScheduler}, tests control exactly when packets arrive.
+ */
+public final class LoopbackNetwork implements Transport.Factory {
+
+	private final Scheduler.Worker worker;
+	private final List<LoopbackTransport> transports = new CopyOnWriteArrayList<>();
+	private final AtomicInteger packetCount = new AtomicInteger();
+
+	/**
+	 * Constructor, delivering packets right away on the sending thread, after the current delivery has completed
+	 */
+	public LoopbackNetwork() {
+		this(Schedulers.trampoline());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param scheduler Scheduler on which packets are delivered
+	 */
+	public LoopbackNetwork(Scheduler scheduler) {
+		this.worker = scheduler.createWorker();
+	}
+
+	/**
+	 * @return A new transport connected to this network
+	 */
+	public Transport newTransport() {
+		return new LoopbackTransport();
+	}
+
+	/**
+	 * @return The number of packets sent through this network so far
+	 */
+	public int getPacketCount() {
+		return packetCount.get();
+	}
+
+	/* Begin overrides */
+
+	@Override public Transport create(InetAddress address) {
+		return newTransport();
+	}
+
+	/* Begin private */
+
+	private void deliver(ByteBuffer packet) {
+		packetCount.incrementAndGet();
+
+		// Copy the packet, since the sender may reuse its buffer right away
+		final byte[] data = new byte[packet.remaining()];
+		packet.get(data);
+
+		for (final LoopbackTransport transport : transports) {
+			worker.schedule(new Action0() {
+				@Override public void call() {
+					Transport.Receiver receiver = transport.receiver;
+					if (receiver != null) receiver.onPacket(ByteBuffer.wrap(data).asReadOnlyBuffer());
+				}
+			});
+		}
+	}
+
+	/* Begin inner classes */
+
+	private final class LoopbackTransport implements Transport {
+
+		volatile Receiver receiver;
+
+		@Override public void start(Receiver receiver) {
+			this.receiver = receiver;
+			transports.add(this);
+		}
+
+		@Override public void send(ByteBuffer packet) throws IOException {
+			if (receiver == null) throw new IOException("Transport not started");
+			deliver(packet);
+		}
+
+		@Override public void close() {
+			transports.remove(this);
+			receiver = null;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rxbonjour.exc.BroadcastFailed;
+import rxbonjour.jmdns.JmDNSEnvironment;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Bonjour service broadcast utilizing the lightweight {@link MdnsEngine} instead of JmDNS. Services are registered on the
+ * network interface given by the {@link JmDNSEnvironment}. Unlike JmDNS, the engine doesn't block until the service has been
+ * announced, so the service is emitted right away.
+ */
+public final class MdnsBroadcast {
+
+	private final JmDNSEnvironment environment;
+	private final MdnsManager manager;
+
+	/**
+	 * Constructor, using the engines shared among all discoveries and broadcasts
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 */
+	public MdnsBroadcast(JmDNSEnvironment environment) {
+		this(environment, MdnsManager.get());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 * @param manager     Pool of the engines to use
+	 */
+	public MdnsBroadcast(JmDNSEnvironment environment, MdnsManager manager) {
+		this.environment = environment;
+		this.manager = manager;
+	}
+
+	/**
+	 * Registers the provided service, and unregisters it again once the returned Observable is unsubscribed from.
+	 *
+	 * @param service Service to register, whose type has to be fully qualified
+	 * @return An Observable emitting the registered service
+	 */
+	public Observable<BonjourEvent> start(final BonjourService service) {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				final Subscription multicast = environment.acquireMulticast();
+
+				final MdnsManager.Lease lease;
+				try {
+					lease = manager.acquire(environment.getAddress());
+				} catch (IOException e) {
+					multicast.unsubscribe();
+					subscriber.onError(new BroadcastFailed(MdnsBroadcast.class, service.getType()));
+					return;
+				}
+
+				// Add onUnsubscribe() hook; should the engine close before unregistering, it sends the goodbye packets itself
+				subscriber.add(environment.createUnsubscribeHook(new Action0() {
+					@Override public void call() {
+						Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
+							@Override public void call(final Subscriber<? super Void> subscriber) {
+								multicast.unsubscribe();
+								lease.unsubscribe();
+								subscriber.unsubscribe();
+							}
+						});
+
+						cleanUpObservable
+								.compose(environment.<Void>cleanupSchedulers())
+								.subscribe();
+					}
+				}));
+
+				lease.getEngine().register(service).unsafeSubscribe(subscriber);
+			}
+		});
+	}
+}
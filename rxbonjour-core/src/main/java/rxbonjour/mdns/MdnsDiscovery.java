@@ -0,0 +1,104 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rxbonjour.exc.DiscoveryFailed;
+import rxbonjour.jmdns.JmDNSEnvironment;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.ServiceType;
+
+/**
+ * Bonjour service discovery utilizing the lightweight {@link MdnsEngine} instead of JmDNS. Discoveries run on the single
+ * network interface given by the {@link JmDNSEnvironment}, whose platform hooks, such as the multicast lock, are shared with
+ * the JmDNS engine. Services are always resolved; discoveries of the same types share the services known to their engine.
+ */
+public final class MdnsDiscovery {
+
+	private final JmDNSEnvironment environment;
+	private final MdnsManager manager;
+
+	/**
+	 * Constructor, using the engines shared among all discoveries and broadcasts
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 */
+	public MdnsDiscovery(JmDNSEnvironment environment) {
+		this(environment, MdnsManager.get());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param environment Environment providing platform-specific requirements
+	 * @param manager     Pool of the engines to use
+	 */
+	public MdnsDiscovery(JmDNSEnvironment environment, MdnsManager manager) {
+		this.environment = environment;
+		this.manager = manager;
+	}
+
+	/**
+	 * Starts a discovery for the provided type.
+	 *
+	 * @param type Type of service to discover
+	 * @return An Observable for Bonjour events
+	 */
+	public Observable<BonjourEvent> start(String type) {
+		return start(Collections.singletonList(type));
+	}
+
+	/**
+	 * Starts a discovery for all of the provided types, through a single engine.
+	 *
+	 * @param types Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public Observable<BonjourEvent> start(Collection<String> types) {
+		final List<String> dnsTypes = new ArrayList<>(types.size());
+		for (String type : types) {
+			dnsTypes.add(ServiceType.of(type).getFullyQualifiedName());
+		}
+
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				final Subscription multicast = environment.acquireMulticast();
+
+				final MdnsManager.Lease lease;
+				try {
+					lease = manager.acquire(environment.getAddress());
+				} catch (IOException e) {
+					multicast.unsubscribe();
+					subscriber.onError(new DiscoveryFailed(MdnsDiscovery.class, dnsTypes.toString()));
+					return;
+				}
+
+				// Add onUnsubscribe() hook
+				subscriber.add(environment.createUnsubscribeHook(new Action0() {
+					@Override public void call() {
+						Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
+							@Override public void call(final Subscriber<? super Void> subscriber) {
+								multicast.unsubscribe();
+								lease.unsubscribe();
+								subscriber.unsubscribe();
+							}
+						});
+
+						cleanUpObservable
+								.compose(environment.<Void>cleanupSchedulers())
+								.subscribe();
+					}
+				}));
+
+				lease.getEngine().discover(dnsTypes).unsafeSubscribe(subscriber);
+			}
+		});
+	}
+}
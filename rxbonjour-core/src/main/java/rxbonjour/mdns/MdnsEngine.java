@@ -0,0 +1,850 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+import rxbonjour.exc.BroadcastFailed;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.internal.ServiceDiff;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Lightweight mDNS engine, discovering and registering DNS-SD services on a single network interface through a {@link Transport}.
+ * Unlike JmDNS, the engine doesn't start any threads of its own: packets are received by the transport, and all of the engine's
+ * state is confined to a single worker of its scheduler, on which packets are handled, timers run and events are emitted.
+ * <p>
+ * Discoveries query their types with an exponentially increasing interval, from one second up to an hour. Received records are
+ * held in a small cache; once all records of a service are known, it is reported as added. Records of discovered services
+ * are queried again from 80% of their TTL on; services whose PTR or SRV records expire or are withdrawn are reported as removed.
+ * Queries list the fresh records the engine holds already as known answers, so that responders don't send them again,
+ * and questions another host has just asked aren't asked again (RFC 6762, sections 7.1 and 7.3).
+ * <p>
+ * Registered services are announced twice, one second apart, and withdrawn with goodbye packets once unregistered.
+ * The engine doesn't probe for name conflicts before announcing.
+ */
+public final class MdnsEngine {
+
+	private static final Logger LOGGER = Logger.getLogger(MdnsEngine.class.getName());
+
+	/** Interval between the first two queries for a type, which doubles after each query (RFC 6762, section 5.2) */
+	static final long QUERY_INTERVAL_MILLIS = 1000;
+
+	/** Maximum interval between two queries for a type */
+	static final long MAX_QUERY_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	/** Minimum interval between queries for missing records of the same service */
+	static final long RECORD_QUERY_INTERVAL_MILLIS = 1000;
+
+	/** Interval between the announcements of a registered service */
+	static final long ANNOUNCE_INTERVAL_MILLIS = 1000;
+
+	/** Number of announcements of a registered service (RFC 6762, section 8.3) */
+	static final int ANNOUNCE_COUNT = 2;
+
+	/** Period after a question asked by another host during which the engine doesn't ask the same question (RFC 6762, section 7.3) */
+	static final long DUPLICATE_QUESTION_MILLIS = 1000;
+
+	/** Minimum delay of responses to queries whose known answers span several packets (RFC 6762, section 7.2) */
+	static final long KNOWN_ANSWER_DELAY_MILLIS = 400;
+
+	/** Number of queries sent most recently, which are recognized when the network loops them back */
+	private static final int SENT_QUERY_HISTORY = 8;
+
+	/**
+	 * Period after sending a query during which an identical packet is taken for the query looped back by the network,
+	 * rather than for the same query sent by another host
+	 */
+	private static final long LOOPBACK_MILLIS = 100;
+
+	private static final Random RANDOM = new Random();
+
+	private final Transport transport;
+	private final Scheduler.Worker worker;
+	private final String hostName;
+
+	// The following state is only accessed on the worker
+	private final RecordCache cache = new RecordCache(RecordCache.DEFAULT_MAX_SIZE);
+	private final List<Browser> browsers = new ArrayList<>();
+	private final Map<String, TypeQuery> typeQueries = new HashMap<>();
+	private final Map<String, Instance> instances = new LinkedHashMap<>();
+	private final Map<String, LocalService> localServices = new LinkedHashMap<>();
+	private final Map<String, Long> askedByOthers = new HashMap<>();
+	private PendingResponse pendingResponse;
+	private Subscription sweep;
+	private long sweepAt = Long.MAX_VALUE;
+	private boolean filterChanged;
+	private boolean closed;
+
+	/** Names of interest, published by the worker to the receiving thread of the transport */
+	private volatile PacketFilter filter = PacketFilter.NONE;
+
+	/** Queries sent most recently, added by the worker and compared to incoming packets by the receiving thread */
+	private final Queue<SentQuery> sentQueries = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor, confining the engine to a worker of the {@link Schedulers#computation() computation scheduler}
+	 *
+	 * @param transport Transport to exchange packets through
+	 */
+	public MdnsEngine(Transport transport) {
+		this(transport, Schedulers.computation());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param transport Transport to exchange packets through
+	 * @param scheduler Scheduler providing the worker to which the engine is confined, and the time of its record cache
+	 */
+	public MdnsEngine(Transport transport, Scheduler scheduler) {
+		this.transport = transport;
+		this.worker = scheduler.createWorker();
+		this.hostName = "RxBonjour-" + Integer.toHexString(RANDOM.nextInt()) + ".local.";
+	}
+
+	/**
+	 * Starts the engine's transport.
+	 *
+	 * @throws IOException In case the transport can't be started
+	 */
+	public void start() throws IOException {
+		transport.start(new Transport.Receiver() {
+			private final DnsReader reader = new DnsReader();
+
+			@Override public void onPacket(ByteBuffer packet) {
+				// Pick the relevant records in place, so that packets concerning other services are dropped without allocations
+				final DnsMessage message;
+				final boolean own;
+				try {
+					reader.reset(packet);
+					message = filter.filter(reader);
+					own = message != null && !message.isResponse() && isOwnQuery(packet);
+				} catch (IOException e) {
+					LOGGER.log(Level.FINE, "Dropping malformed packet", e);
+					return;
+				}
+				if (message == null) return;
+
+				worker.schedule(new Action0() {
+					@Override public void call() {
+						handle(message, own);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Closes the engine, sending goodbye packets for all services still registered before closing the transport.
+	 * Observables obtained from the engine don't emit any events afterwards.
+	 */
+	public void close() {
+		worker.schedule(new Action0() {
+			@Override public void call() {
+				if (closed) return;
+				closed = true;
+
+				List<DnsRecord> goodbyes = new ArrayList<>();
+				for (LocalService local : localServices.values()) {
+					if (local.announcement != null) local.announcement.unsubscribe();
+					goodbyes.addAll(goodbyesOf(local.records));
+				}
+				if (!goodbyes.isEmpty()) send(DnsMessage.response(goodbyes, Collections.<DnsRecord>emptyList()));
+
+				localServices.clear();
+				browsers.clear();
+				typeQueries.clear();
+				transport.close();
+				worker.unsubscribe();
+			}
+		});
+	}
+
+	/**
+	 * Discovers services of the provided types until the returned Observable is unsubscribed from.
+	 * Services discovered by earlier discoveries of the engine are emitted right away.
+	 *
+	 * @param dnsTypes Fully qualified types of the services to discover
+	 * @return An Observable for the events of services of all types
+	 */
+	public Observable<BonjourEvent> discover(final Collection<String> dnsTypes) {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				final Browser browser = new Browser(dnsTypes, subscriber);
+				worker.schedule(new Action0() {
+					@Override public void call() {
+						addBrowser(browser);
+					}
+				});
+
+				subscriber.add(Subscriptions.create(new Action0() {
+					@Override public void call() {
+						worker.schedule(new Action0() {
+							@Override public void call() {
+								removeBrowser(browser);
+							}
+						});
+					}
+				}));
+			}
+		}).lift(EventBackpressure.withDefaults());
+	}
+
+	/**
+	 * Registers the provided service until the returned Observable is unsubscribed from.
+	 * The service is advertised on a host name unique to this engine, under all of its addresses.
+	 *
+	 * @param service Service to register, whose type has to be fully qualified
+	 * @return An Observable emitting the registered service
+	 */
+	public Observable<BonjourEvent> register(final BonjourService service) {
+		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(final Subscriber<? super BonjourEvent> subscriber) {
+				if (service.getHosts().isEmpty()) {
+					subscriber.onError(new BroadcastFailed(MdnsEngine.class, service.getType()));
+					return;
+				}
+
+				final LocalService local = new LocalService(service, recordsOf(service));
+				worker.schedule(new Action0() {
+					@Override public void call() {
+						if (closed || subscriber.isUnsubscribed()) return;
+
+						localServices.put(local.key, local);
+						filterChanged = true;
+						announce(local);
+						subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+					}
+				});
+
+				subscriber.add(Subscriptions.create(new Action0() {
+					@Override public void call() {
+						worker.schedule(new Action0() {
+							@Override public void call() {
+								unregister(local);
+							}
+						});
+					}
+				}));
+			}
+		}).lift(EventBackpressure.withDefaults());
+	}
+
+	/**
+	 * @return The host name under which registered services are advertised
+	 */
+	public String getHostName() {
+		return hostName;
+	}
+
+	/* Begin private */
+
+	private void handle(DnsMessage message, boolean own) {
+		if (closed) return;
+
+		if (message.isResponse()) {
+			handleResponse(message);
+		} else {
+			handleQuery(message, own);
+		}
+	}
+
+	private void handleQuery(DnsMessage message, boolean own) {
+		if (!own && !message.isTruncated()) rememberQuestions(message, worker.now());
+
+		if (pendingResponse != null && (message.isTruncated() || message.getQuestions().isEmpty())) {
+			// Further known answers of a query whose response is delayed
+			pendingResponse.questions.addAll(message.getQuestions());
+			pendingResponse.knownAnswers.addAll(message.getAnswers());
+
+		} else if (message.isTruncated()) {
+			// Wait for the rest of the known answers
+			final PendingResponse pending = new PendingResponse(message);
+			pendingResponse = pending;
+			long delay = KNOWN_ANSWER_DELAY_MILLIS + RANDOM.nextInt(100);
+			worker.schedule(new Action0() {
+				@Override public void call() {
+					pendingResponse = null;
+					if (!closed) respond(pending.questions, pending.knownAnswers);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+
+		} else {
+			respond(message.getQuestions(), message.getAnswers());
+		}
+	}
+
+	private void respond(List<DnsQuestion> questions, List<DnsRecord> knownAnswers) {
+		List<DnsRecord> answers = new ArrayList<>();
+		Set<DnsRecord> additionals = new LinkedHashSet<>();
+		for (DnsQuestion question : questions) {
+			for (LocalService local : localServices.values()) {
+				for (DnsRecord record : local.records) {
+					if (question.isAnsweredBy(record) && !answers.contains(record) && !isKnown(record, knownAnswers)) {
+						answers.add(record);
+						additionals.addAll(local.additionalsOf(record));
+					}
+				}
+			}
+		}
+
+		if (answers.isEmpty()) return;
+		additionals.removeAll(answers);
+		for (Iterator<DnsRecord> iterator = additionals.iterator(); iterator.hasNext(); ) {
+			if (isKnown(iterator.next(), knownAnswers)) iterator.remove();
+		}
+		send(DnsMessage.response(answers, new ArrayList<>(additionals)));
+	}
+
+	/**
+	 * Remembers the questions of a query sent by another host, unless its known answers contain records the engine doesn't hold,
+	 * since responders might suppress answers the engine needs then.
+	 */
+	private void rememberQuestions(DnsMessage message, long now) {
+		for (DnsQuestion question : message.getQuestions()) {
+			List<DnsRecord> known = cache.knownAnswers(question.getName(), question.getType(), now);
+			boolean duplicate = true;
+			for (DnsRecord record : message.getAnswers()) {
+				if (question.isAnsweredBy(record) && !known.contains(record)) {
+					duplicate = false;
+					break;
+				}
+			}
+			if (duplicate) askedByOthers.put(keyOf(question), now);
+		}
+	}
+
+	/**
+	 * @return True if the provided local record is listed among the known answers with at least half of its TTL remaining
+	 */
+	private static boolean isKnown(DnsRecord record, List<DnsRecord> knownAnswers) {
+		for (DnsRecord known : knownAnswers) {
+			if (known.equals(record) && known.getTtl() >= record.getTtl() / 2) return true;
+		}
+		return false;
+	}
+
+	private void handleResponse(DnsMessage message) {
+		long now = worker.now();
+		List<DnsRecord> records = new ArrayList<>(message.getAnswers().size() + message.getAdditionals().size());
+		records.addAll(message.getAnswers());
+		records.addAll(message.getAdditionals());
+
+		for (DnsRecord record : records) {
+			cache.put(record, now);
+		}
+
+		update(affectedBy(records, true), now);
+		scheduleSweep();
+	}
+
+	private void addBrowser(Browser browser) {
+		if (closed || browser.subscriber.isUnsubscribed()) return;
+		browsers.add(browser);
+
+		for (String dnsType : browser.dnsTypes) {
+			// Replay the services discovered already
+			String typeKey = DnsName.key(dnsType);
+			for (Instance instance : instances.values()) {
+				if (instance.service != null && instance.typeKey.equals(typeKey)) {
+					browser.subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, instance.service));
+				}
+			}
+
+			TypeQuery query = typeQueries.get(typeKey);
+			if (query == null) {
+				query = new TypeQuery(dnsType);
+				typeQueries.put(typeKey, query);
+				filterChanged = true;
+				query.task = worker.schedule(query);
+			}
+			query.browsers++;
+		}
+	}
+
+	private void removeBrowser(Browser browser) {
+		if (!browsers.remove(browser)) return;
+
+		for (String dnsType : browser.dnsTypes) {
+			String typeKey = DnsName.key(dnsType);
+			TypeQuery query = typeQueries.get(typeKey);
+			if (query == null || --query.browsers > 0) continue;
+
+			// Last discovery of the type, so stop tracking its services
+			query.task.unsubscribe();
+			typeQueries.remove(typeKey);
+			filterChanged = true;
+			for (Iterator<Instance> iterator = instances.values().iterator(); iterator.hasNext(); ) {
+				if (iterator.next().typeKey.equals(typeKey)) iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the keys of the tracked service instances affected by the provided records.
+	 *
+	 * @param records Records that were received or have expired
+	 * @param create  Whether to start tracking new instances of discovered types
+	 * @return The keys of the affected instances
+	 */
+	private Set<String> affectedBy(List<DnsRecord> records, boolean create) {
+		Set<String> affected = new LinkedHashSet<>();
+
+		// Instances are announced by PTR records, so handle these first
+		for (DnsRecord record : records) {
+			if (record.getType() != DnsRecord.TYPE_PTR) continue;
+
+			TypeQuery query = typeQueries.get(DnsName.key(record.getName()));
+			if (query == null) continue;
+
+			String key = DnsName.key(record.getTarget());
+			if (create && record.getTtl() > 0 && !instances.containsKey(key)) {
+				instances.put(key, new Instance(record.getTarget(), query.dnsType));
+			}
+			if (instances.containsKey(key)) affected.add(key);
+		}
+
+		for (DnsRecord record : records) {
+			switch (record.getType()) {
+				case DnsRecord.TYPE_SRV:
+				case DnsRecord.TYPE_TXT:
+					String key = DnsName.key(record.getName());
+					if (instances.containsKey(key)) affected.add(key);
+					break;
+
+				case DnsRecord.TYPE_A:
+				case DnsRecord.TYPE_AAAA:
+					for (Map.Entry<String, Instance> entry : instances.entrySet()) {
+						String host = entry.getValue().host;
+						if (host != null && host.equalsIgnoreCase(record.getName())) affected.add(entry.getKey());
+					}
+					break;
+			}
+		}
+		return affected;
+	}
+
+	private void update(Set<String> keys, long now) {
+		List<DnsQuestion> questions = new ArrayList<>();
+		for (String key : keys) {
+			Instance instance = instances.get(key);
+			if (instance != null) update(instance, now, questions);
+		}
+
+		if (!questions.isEmpty()) query(questions);
+	}
+
+	private void update(Instance instance, long now, List<DnsQuestion> questions) {
+		if (!cache.get(instance.dnsType, DnsRecord.TYPE_PTR, now).contains(DnsRecord.ptr(instance.dnsType, 0, instance.name))) {
+			// Withdrawn or expired
+			remove(instance);
+			return;
+		}
+
+		List<DnsRecord> srv = cache.get(instance.name, DnsRecord.TYPE_SRV, now);
+		if (srv.isEmpty() && instance.service != null) {
+			// No longer reachable
+			remove(instance);
+			return;
+		}
+
+		List<DnsRecord> txt = cache.get(instance.name, DnsRecord.TYPE_TXT, now);
+		List<DnsRecord> addresses = new ArrayList<>(2);
+		if (!srv.isEmpty()) {
+			String host = srv.get(0).getTarget();
+			if (!host.equalsIgnoreCase(instance.host)) {
+				instance.host = host;
+				filterChanged = true;
+			}
+			addresses.addAll(cache.get(instance.host, DnsRecord.TYPE_A, now));
+			addresses.addAll(cache.get(instance.host, DnsRecord.TYPE_AAAA, now));
+		}
+
+		if (srv.isEmpty() || txt.isEmpty() || addresses.isEmpty()) {
+			// Ask for the missing records, unless that has happened just now
+			if (instance.queriedAt != Long.MIN_VALUE && now - instance.queriedAt < RECORD_QUERY_INTERVAL_MILLIS) return;
+			instance.queriedAt = now;
+
+			if (srv.isEmpty()) questions.add(new DnsQuestion(instance.name, DnsRecord.TYPE_SRV));
+			if (txt.isEmpty()) questions.add(new DnsQuestion(instance.name, DnsRecord.TYPE_TXT));
+			if (!srv.isEmpty() && addresses.isEmpty()) {
+				questions.add(new DnsQuestion(instance.host, DnsRecord.TYPE_A));
+				questions.add(new DnsQuestion(instance.host, DnsRecord.TYPE_AAAA));
+			}
+			return;
+		}
+
+		BonjourService.Builder builder = new BonjourService.Builder(DnsName.instanceLabel(instance.name), instance.dnsType)
+				.setPort(srv.get(0).getPort())
+				.setTxtRecords(txt.get(0).getTxt());
+		for (DnsRecord address : addresses) {
+			builder.addAddress(address.getAddress());
+		}
+		BonjourService service = builder.build();
+
+		BonjourService previous = instance.service;
+		instance.service = service;
+		if (previous == null) {
+			emit(instance.typeKey, new BonjourEvent(BonjourEvent.Type.ADDED, service));
+		} else if (!previous.equals(service)) {
+			emit(instance.typeKey, new BonjourEvent(previous, service, ServiceDiff.diff(previous, service)));
+		}
+	}
+
+	private void remove(Instance instance) {
+		instances.remove(DnsName.key(instance.name));
+		if (instance.host != null) filterChanged = true;
+		if (instance.service != null) emit(instance.typeKey, new BonjourEvent(BonjourEvent.Type.REMOVED, instance.service));
+	}
+
+	private void emit(String typeKey, BonjourEvent event) {
+		for (Browser browser : new ArrayList<>(browsers)) {
+			if (browser.typeKeys.contains(typeKey) && !browser.subscriber.isUnsubscribed()) {
+				browser.subscriber.onNext(event);
+			}
+		}
+	}
+
+	/**
+	 * Schedules the next sweep of the record cache, unless an earlier sweep is scheduled already.
+	 */
+	private void scheduleSweep() {
+		long deadline = cache.nextDeadline();
+		if (deadline >= sweepAt) return;
+
+		if (sweep != null) sweep.unsubscribe();
+		sweepAt = deadline;
+		sweep = worker.schedule(new Action0() {
+			@Override public void call() {
+				sweep = null;
+				sweepAt = Long.MAX_VALUE;
+				sweep();
+			}
+		}, Math.max(0, deadline - worker.now()), TimeUnit.MILLISECONDS);
+	}
+
+	private void sweep() {
+		if (closed) return;
+		long now = worker.now();
+
+		// Renew records that are still in use before they expire
+		List<DnsQuestion> questions = new ArrayList<>();
+		Set<String> asked = new HashSet<>();
+		List<DnsRecord> due = cache.refresh(now);
+		for (String key : affectedBy(due, false)) {
+			Instance instance = instances.get(key);
+			if (instance.service == null) continue;
+
+			for (DnsRecord record : due) {
+				if (isRecordOf(instance, record) && asked.add(DnsName.key(record.getName()) + '/' + record.getType())) {
+					questions.add(new DnsQuestion(record.getName(), record.getType()));
+				}
+			}
+		}
+		if (!questions.isEmpty()) query(questions);
+
+		update(affectedBy(cache.expire(now), false), now);
+		scheduleSweep();
+	}
+
+	private boolean isRecordOf(Instance instance, DnsRecord record) {
+		switch (record.getType()) {
+			case DnsRecord.TYPE_PTR:
+				return record.getTarget().equalsIgnoreCase(instance.name);
+
+			case DnsRecord.TYPE_SRV:
+			case DnsRecord.TYPE_TXT:
+				return record.getName().equalsIgnoreCase(instance.name);
+
+			default:
+				return record.getName().equalsIgnoreCase(instance.host);
+		}
+	}
+
+	private void announce(final LocalService local) {
+		send(DnsMessage.response(local.records, Collections.<DnsRecord>emptyList()));
+		if (++local.announcements >= ANNOUNCE_COUNT) {
+			local.announcement = null;
+			return;
+		}
+
+		local.announcement = worker.schedule(new Action0() {
+			@Override public void call() {
+				if (localServices.get(local.key) == local) announce(local);
+			}
+		}, ANNOUNCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void unregister(LocalService local) {
+		if (closed || localServices.get(local.key) != local) return;
+
+		localServices.remove(local.key);
+		filterChanged = true;
+		if (local.announcement != null) local.announcement.unsubscribe();
+		send(DnsMessage.response(goodbyesOf(local.records), Collections.<DnsRecord>emptyList()));
+	}
+
+	/**
+	 * Sends a query for the provided questions along with their known answers, leaving out questions that another host
+	 * has just asked.
+	 */
+	private void query(List<DnsQuestion> questions) {
+		long now = worker.now();
+		for (Iterator<Long> iterator = askedByOthers.values().iterator(); iterator.hasNext(); ) {
+			if (now - iterator.next() >= DUPLICATE_QUESTION_MILLIS) iterator.remove();
+		}
+
+		List<DnsQuestion> asked = new ArrayList<>(questions.size());
+		Set<DnsRecord> knownAnswers = new LinkedHashSet<>();
+		for (DnsQuestion question : questions) {
+			if (askedByOthers.containsKey(keyOf(question))) continue;
+			asked.add(question);
+			knownAnswers.addAll(cache.knownAnswers(question.getName(), question.getType(), now));
+		}
+		if (asked.isEmpty()) return;
+
+		for (DnsMessage message : DnsMessage.queries(asked, new ArrayList<>(knownAnswers), DnsMessage.MTU_PACKET_SIZE)) {
+			send(message);
+		}
+	}
+
+	private void send(DnsMessage message) {
+		// Make sure that responses to this message pass the filter
+		if (filterChanged) publishFilter();
+
+		ByteBuffer buffer = BufferPool.get().acquire();
+		try {
+			message.encode(buffer);
+			buffer.flip();
+			if (!message.isResponse()) rememberQuery(buffer);
+			transport.send(buffer);
+
+		} catch (BufferOverflowException e) {
+			LOGGER.log(Level.WARNING, "Message exceeds the maximum packet size", e);
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Failed to send packet", e);
+		} finally {
+			BufferPool.get().release(buffer);
+		}
+	}
+
+	/**
+	 * Keeps a copy of the provided query packet, so that the engine doesn't mistake it for a question of another host
+	 * once the network loops it back.
+	 */
+	private void rememberQuery(ByteBuffer packet) {
+		ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+		copy.put(packet.duplicate()).flip();
+		sentQueries.add(new SentQuery(copy, worker.now()));
+		while (sentQueries.size() > SENT_QUERY_HISTORY) sentQueries.poll();
+	}
+
+	/**
+	 * Called on the receiving thread.
+	 *
+	 * @return True if the provided packet is a query the engine has just sent
+	 */
+	private boolean isOwnQuery(ByteBuffer packet) {
+		long now = worker.now();
+		for (SentQuery query : sentQueries) {
+			if (now - query.sentAt < LOOPBACK_MILLIS && query.packet.equals(packet)) return true;
+		}
+		return false;
+	}
+
+	private void publishFilter() {
+		filterChanged = false;
+
+		List<String> types = new ArrayList<>(typeQueries.size());
+		for (TypeQuery query : typeQueries.values()) {
+			types.add(query.dnsType);
+		}
+
+		Set<String> hosts = new HashSet<>();
+		for (Instance instance : instances.values()) {
+			if (instance.host != null) hosts.add(DnsName.key(instance.host));
+		}
+
+		Set<String> localNames = new HashSet<>();
+		for (LocalService local : localServices.values()) {
+			for (DnsRecord record : local.records) {
+				localNames.add(DnsName.key(record.getName()));
+			}
+		}
+
+		filter = new PacketFilter(types, hosts, localNames);
+	}
+
+	private List<DnsRecord> recordsOf(BonjourService service) {
+		String name = DnsName.instanceName(service.getName(), service.getType());
+		List<DnsRecord> records = new ArrayList<>(3 + service.getHosts().size());
+		records.add(DnsRecord.ptr(service.getType(), DnsRecord.TTL_OTHER, name));
+		records.add(DnsRecord.srv(name, DnsRecord.TTL_HOST, service.getPort(), hostName));
+		records.add(DnsRecord.txt(name, DnsRecord.TTL_OTHER, service.getTxtRecords().toRdata()));
+		for (InetAddress address : service.getHosts()) {
+			records.add(DnsRecord.address(hostName, DnsRecord.TTL_HOST, address));
+		}
+		return records;
+	}
+
+	private static String keyOf(DnsQuestion question) {
+		return DnsName.key(question.getName()) + '/' + question.getType();
+	}
+
+	private static List<DnsRecord> goodbyesOf(List<DnsRecord> records) {
+		List<DnsRecord> goodbyes = new ArrayList<>(records.size());
+		for (DnsRecord record : records) {
+			goodbyes.add(record.withTtl(0));
+		}
+		return goodbyes;
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Discovery subscribed to the events of one or more types
+	 */
+	private static final class Browser {
+
+		final List<String> dnsTypes;
+		final Set<String> typeKeys = new HashSet<>();
+		final Subscriber<? super BonjourEvent> subscriber;
+
+		Browser(Collection<String> dnsTypes, Subscriber<? super BonjourEvent> subscriber) {
+			this.dnsTypes = new ArrayList<>(dnsTypes);
+			this.subscriber = subscriber;
+			for (String dnsType : dnsTypes) {
+				typeKeys.add(DnsName.key(dnsType));
+			}
+		}
+	}
+
+	/**
+	 * Periodic query for the services of a type, shared among all discoveries of the type
+	 */
+	private final class TypeQuery implements Action0 {
+
+		final String dnsType;
+		int browsers;
+		long interval = QUERY_INTERVAL_MILLIS;
+		Subscription task;
+
+		TypeQuery(String dnsType) {
+			this.dnsType = dnsType;
+		}
+
+		@Override public void call() {
+			// Suppressed if another host has just asked, which counts as sent
+			query(Collections.singletonList(new DnsQuestion(dnsType, DnsRecord.TYPE_PTR)));
+			task = worker.schedule(this, interval, TimeUnit.MILLISECONDS);
+			interval = Math.min(interval * 2, MAX_QUERY_INTERVAL_MILLIS);
+		}
+	}
+
+	/**
+	 * Service instance of a discovered type, which is emitted once all of its records are known
+	 */
+	private static final class Instance {
+
+		final String name;
+		final String dnsType;
+		final String typeKey;
+		String host;
+		BonjourService service;
+		long queriedAt = Long.MIN_VALUE;
+
+		Instance(String name, String dnsType) {
+			this.name = name;
+			this.dnsType = dnsType;
+			this.typeKey = DnsName.key(dnsType);
+		}
+	}
+
+	/**
+	 * Copy of a query packet sent by the engine
+	 */
+	private static final class SentQuery {
+
+		final ByteBuffer packet;
+		final long sentAt;
+
+		SentQuery(ByteBuffer packet, long sentAt) {
+			this.packet = packet;
+			this.sentAt = sentAt;
+		}
+	}
+
+	/**
+	 * Response to a query whose known answers span several packets, which is delayed until all of them have been received
+	 */
+	private static final class PendingResponse {
+
+		final List<DnsQuestion> questions;
+		final List<DnsRecord> knownAnswers;
+
+		PendingResponse(DnsMessage query) {
+			this.questions = new ArrayList<>(query.getQuestions());
+			this.knownAnswers = new ArrayList<>(query.getAnswers());
+		}
+	}
+
+	/**
+	 * Service registered through the engine, along with the records advertising it
+	 */
+	private static final class LocalService {
+
+		final String key;
+		final List<DnsRecord> records;
+		int announcements;
+		Subscription announcement;
+
+		LocalService(BonjourService service, List<DnsRecord> records) {
+			this.key = DnsName.key(DnsName.instanceName(service.getName(), service.getType()));
+			this.records = records;
+		}
+
+		/**
+		 * @param answer Record of this service sent as an answer
+		 * @return The records of this service that the receiver of the answer will need next
+		 */
+		List<DnsRecord> additionalsOf(DnsRecord answer) {
+			switch (answer.getType()) {
+				case DnsRecord.TYPE_PTR:
+					return records.subList(1, records.size());
+
+				case DnsRecord.TYPE_SRV:
+					return records.subList(3, records.size());
+
+				default:
+					return Collections.emptyList();
+			}
+		}
+	}
+}
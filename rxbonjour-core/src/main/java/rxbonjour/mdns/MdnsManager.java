@@ -0,0 +1,132 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Pool of the mDNS engines shared among all discoveries and broadcasts, holding one engine and thus one channel per network address.
+ * <p>
+ * Each user of an engine holds a {@link Lease} on it, which is acquired and released atomically. Since engines start
+ * within milliseconds, an engine is closed as soon as the last lease on it is released, without any grace period.
+ */
+public final class MdnsManager {
+
+	private static final MdnsManager INSTANCE = new MdnsManager(MulticastTransport.FACTORY, Schedulers.computation());
+
+	/** Pooled engines by the address they are bound to, guarded by the manager's monitor */
+	private final Map<InetAddress, Entry> entries = new HashMap<>();
+
+	private final Transport.Factory factory;
+	private final Scheduler scheduler;
+
+	/**
+	 * Constructor
+	 *
+	 * @param factory   Factory creating the transports of the engines
+	 * @param scheduler Scheduler to which the engines are confined
+	 */
+	public MdnsManager(Transport.Factory factory, Scheduler scheduler) {
+		this.factory = factory;
+		this.scheduler = scheduler;
+	}
+
+	public static MdnsManager get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Acquires a lease on the engine bound to the provided address, creating and starting the engine if necessary.
+	 *
+	 * @param address Address of the network interface to use
+	 * @return The lease on the engine
+	 * @throws IOException In case the engine's transport can't be started
+	 */
+	public synchronized Lease acquire(InetAddress address) throws IOException {
+		Entry entry = entries.get(address);
+		if (entry == null) {
+			MdnsEngine engine = new MdnsEngine(factory.create(address), scheduler);
+			engine.start();
+			entry = new Entry(address, engine);
+			entries.put(address, entry);
+		}
+
+		entry.leases++;
+		return new Lease(entry);
+	}
+
+	/**
+	 * Returns the number of leases held on the engine bound to the provided address.
+	 *
+	 * @param address Address of the engine
+	 * @return The number of leases, which is 0 if there is no such engine
+	 */
+	public synchronized int getLeaseCount(InetAddress address) {
+		Entry entry = entries.get(address);
+		return (entry != null) ? entry.leases : 0;
+	}
+
+	/* Begin private */
+
+	private void release(Entry entry) {
+		synchronized (this) {
+			if (--entry.leases > 0 || entries.get(entry.address) != entry) return;
+			entries.remove(entry.address);
+		}
+
+		entry.engine.close();
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Pooled engine, along with the number of leases held on it
+	 */
+	private static final class Entry {
+
+		final InetAddress address;
+		final MdnsEngine engine;
+		int leases;
+
+		Entry(InetAddress address, MdnsEngine engine) {
+			this.address = address;
+			this.engine = engine;
+		}
+	}
+
+	/**
+	 * Lease on a pooled engine, which is released upon unsubscribing. Releasing a lease more than once has no effect.
+	 */
+	public final class Lease implements Subscription {
+
+		private final Entry entry;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Lease(Entry entry) {
+			this.entry = entry;
+		}
+
+		/**
+		 * @return The engine, which must not be used anymore after releasing the lease
+		 */
+		public MdnsEngine getEngine() {
+			return entry.engine;
+		}
+
+		@Override public void unsubscribe() {
+			if (released.compareAndSet(false, true)) {
+				release(entry);
+			}
+		}
+
+		@Override public boolean isUnsubscribed() {
+			return released.get();
+		}
+	}
+}
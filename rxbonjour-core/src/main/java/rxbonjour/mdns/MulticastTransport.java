@@ -0,0 +1,105 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Transport exchanging packets with the mDNS multicast group of a single network interface, through a non-blocking
+ * {@link DatagramChannel}. Packets are read by the process-wide {@link SelectorLoop}, so that any number of transports
+ * is served by a single thread. Sending never blocks; packets that don't fit into the socket's send buffer are dropped,
+ * just like packets lost on the network, and recovered from by the engine's retransmissions.
+ */
+public final class MulticastTransport implements Transport {
+
+	/** Port of mDNS */
+	public static final int MDNS_PORT = 5353;
+
+	/** Factory creating multicast transports for actual network interfaces */
+	public static final Factory FACTORY = new Factory() {
+		@Override public Transport create(InetAddress address) {
+			return new MulticastTransport(address);
+		}
+	};
+
+	private static final String GROUP_V4 = "224.0.0.251";
+	private static final String GROUP_V6 = "FF02::FB";
+
+	/** TTL of outgoing packets, which receivers check to reject packets from off the local link (RFC 6762, section 11) */
+	private static final int MULTICAST_TTL = 255;
+
+	private final InetAddress address;
+	private DatagramChannel channel;
+	private InetSocketAddress group;
+
+	/**
+	 * Constructor
+	 *
+	 * @param address Address of the network interface to use, which also determines whether IPv4 or IPv6 is used
+	 */
+	public MulticastTransport(InetAddress address) {
+		this.address = address;
+	}
+
+	/* Begin overrides */
+
+	@Override public synchronized void start(Receiver receiver) throws IOException {
+		if (channel != null) throw new IllegalStateException("Transport already started");
+
+		NetworkInterface networkInterface = NetworkInterface.getByInetAddress(address);
+		if (networkInterface == null) throw new IOException("No network interface for " + address);
+
+		boolean v6 = address instanceof Inet6Address;
+		InetAddress groupAddress = InetAddress.getByName(v6 ? GROUP_V6 : GROUP_V4);
+		DatagramChannel channel = DatagramChannel.open(v6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+		try {
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, true)
+					.bind(new InetSocketAddress(MDNS_PORT))
+					.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+					.setOption(StandardSocketOptions.IP_MULTICAST_TTL, MULTICAST_TTL);
+			channel.join(groupAddress, networkInterface);
+			channel.configureBlocking(false);
+
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+		this.channel = channel;
+		this.group = new InetSocketAddress(groupAddress, MDNS_PORT);
+		SelectorLoop.get().register(channel, receiver);
+	}
+
+	@Override public void send(ByteBuffer packet) throws IOException {
+		DatagramChannel channel;
+		InetSocketAddress group;
+		synchronized (this) {
+			channel = this.channel;
+			group = this.group;
+		}
+
+		if (channel == null) throw new IOException("Transport not started");
+		channel.send(packet, group);
+	}
+
+	@Override public void close() {
+		DatagramChannel channel;
+		synchronized (this) {
+			channel = this.channel;
+			this.channel = null;
+		}
+		if (channel == null) return;
+
+		try {
+			channel.close();
+			SelectorLoop.get().wakeup();
+		} catch (IOException ignored) {
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable set of the names an mDNS engine is interested in, which picks the relevant questions and records from incoming
+ * packets before anything is materialized. Packets are inspected in place through a {@link DnsReader}; on a busy network,
+ * most packets concern other services and are dropped without allocating anything.
+ * <p>
+ * Responses are relevant if they contain PTR records of a discovered type, SRV or TXT records of one of its instances,
+ * or address records of a known host or of a host named by a relevant SRV record of the same packet.
+ * Queries are relevant if they ask for any name of a registered service, or for any of the names above, since the engine
+ * suppresses its own query if another host has just asked the same question. The known answers of queries are picked
+ * by the same rules.
+ */
+final class PacketFilter {
+
+	/** Filter of an engine without any discoveries or registrations, which drops all packets */
+	static final PacketFilter NONE = new PacketFilter(
+			Collections.<String>emptyList(), Collections.<String>emptyList(), Collections.<String>emptyList());
+
+	private static final String SUBTYPE_LABEL = "._sub.";
+
+	private final byte[][] types;
+	private final byte[][] hosts;
+	private final byte[][] localNames;
+
+	/**
+	 * Constructor
+	 *
+	 * @param types      Fully qualified types of the discovered services
+	 * @param hosts      Host names of the discovered services
+	 * @param localNames Names of the records of the registered services
+	 */
+	PacketFilter(Collection<String> types, Collection<String> hosts, Collection<String> localNames) {
+		List<byte[]> typeNames = new ArrayList<>(types.size());
+		for (String type : types) {
+			typeNames.add(DnsName.toWire(type));
+
+			// Instances of subtypes are named after their parent type
+			int subtype = type.indexOf(SUBTYPE_LABEL);
+			if (subtype >= 0) typeNames.add(DnsName.toWire(type.substring(subtype + SUBTYPE_LABEL.length())));
+		}
+
+		this.types = typeNames.toArray(new byte[typeNames.size()][]);
+		this.hosts = toWire(hosts);
+		this.localNames = toWire(localNames);
+	}
+
+	/**
+	 * Picks the relevant part of the message the provided reader has been reset to.
+	 *
+	 * @param reader Reader positioned before the first entry of the message
+	 * @return A message containing only the relevant questions or records, or null if there are none
+	 * @throws IOException In case the message is malformed
+	 */
+	DnsMessage filter(DnsReader reader) throws IOException {
+		return reader.isResponse() ? filterResponse(reader) : filterQuery(reader);
+	}
+
+	/* Begin private */
+
+	private DnsMessage filterQuery(DnsReader reader) throws IOException {
+		if (localNames.length == 0 && types.length == 0) return null;
+
+		List<DnsQuestion> questions = null;
+		List<DnsRecord> knownAnswers = null;
+		while (reader.next()) {
+			int section = reader.section();
+			if (section != DnsReader.SECTION_QUESTION && section != DnsReader.SECTION_ANSWER) break;
+			if (!matches(reader, reader.nameOffset(), localNames) && !isRelevant(reader, null, 0)) continue;
+
+			if (section == DnsReader.SECTION_QUESTION) {
+				if (questions == null) questions = new ArrayList<>(2);
+				questions.add(reader.toQuestion());
+			} else {
+				DnsRecord record = reader.toRecord();
+				if (record == null) continue;
+				if (knownAnswers == null) knownAnswers = new ArrayList<>(4);
+				knownAnswers.add(record);
+			}
+		}
+
+		if (questions == null && knownAnswers == null) return null;
+		return new DnsMessage(reader.getFlags(),
+				(questions != null) ? questions : Collections.<DnsQuestion>emptyList(),
+				(knownAnswers != null) ? knownAnswers : Collections.<DnsRecord>emptyList(),
+				Collections.<DnsRecord>emptyList());
+	}
+
+	private DnsMessage filterResponse(DnsReader reader) throws IOException {
+		if (types.length == 0) return null;
+
+		// Remember the host names of relevant SRV records, since their address records are relevant as well
+		int[] targets = null;
+		int targetCount = 0;
+		while (reader.next()) {
+			if (reader.type() == DnsRecord.TYPE_SRV && isRecordSection(reader) && matchesParent(reader, reader.nameOffset())) {
+				if (targets == null) {
+					targets = new int[4];
+				} else if (targetCount == targets.length) {
+					targets = Arrays.copyOf(targets, targetCount * 2);
+				}
+				targets[targetCount++] = reader.targetOffset();
+			}
+		}
+
+		List<DnsRecord> answers = null;
+		List<DnsRecord> additionals = null;
+		reader.rewind();
+		while (reader.next()) {
+			if (!isRecordSection(reader) || !isRelevant(reader, targets, targetCount)) continue;
+
+			DnsRecord record = reader.toRecord();
+			if (record == null) continue;
+
+			if (reader.section() == DnsReader.SECTION_ANSWER) {
+				if (answers == null) answers = new ArrayList<>(4);
+				answers.add(record);
+			} else {
+				if (additionals == null) additionals = new ArrayList<>(4);
+				additionals.add(record);
+			}
+		}
+
+		if (answers == null && additionals == null) return null;
+		return DnsMessage.response(
+				(answers != null) ? answers : Collections.<DnsRecord>emptyList(),
+				(additionals != null) ? additionals : Collections.<DnsRecord>emptyList());
+	}
+
+	private boolean isRelevant(DnsReader reader, int[] targets, int targetCount) throws IOException {
+		int name = reader.nameOffset();
+		switch (reader.type()) {
+			case DnsRecord.TYPE_PTR:
+				return matches(reader, name, types);
+
+			case DnsRecord.TYPE_SRV:
+			case DnsRecord.TYPE_TXT:
+				return matchesParent(reader, name);
+
+			case DnsRecord.TYPE_A:
+			case DnsRecord.TYPE_AAAA:
+				if (matches(reader, name, hosts)) return true;
+				for (int i = 0; i < targetCount; i++) {
+					if (reader.namesEqual(name, targets[i])) return true;
+				}
+				return false;
+
+			default:
+				return false;
+		}
+	}
+
+	private boolean matchesParent(DnsReader reader, int offset) throws IOException {
+		for (byte[] type : types) {
+			if (reader.parentEquals(offset, type)) return true;
+		}
+		return false;
+	}
+
+	private static boolean matches(DnsReader reader, int offset, byte[][] names) throws IOException {
+		for (byte[] name : names) {
+			if (reader.nameEquals(offset, name)) return true;
+		}
+		return false;
+	}
+
+	private static boolean isRecordSection(DnsReader reader) {
+		int section = reader.section();
+		return section == DnsReader.SECTION_ANSWER || section == DnsReader.SECTION_ADDITIONAL;
+	}
+
+	private static byte[][] toWire(Collection<String> names) {
+		byte[][] result = new byte[names.size()][];
+		int i = 0;
+		for (String name : names) {
+			result[i++] = DnsName.toWire(name);
+		}
+		return result;
+	}
+}
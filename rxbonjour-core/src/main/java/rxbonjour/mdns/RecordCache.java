@@ -0,0 +1,232 @@
+package rxbonjour.mdns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the records received by an mDNS engine, keyed by name and type. Records expire once their TTL has passed,
+ * and records announced with a TTL of 0 are removed right away. Records become due for refresh queries at 80%, 85%, 90% and 95% of their TTL,
+ * so that records still in use can be renewed before they expire (RFC 6762, section 5.2). Once the cache exceeds its maximum size,
+ * the records closest to their expiry are evicted first. Not thread-safe.
+ */
+final class RecordCache {
+
+	/** Maximum number of records held by default */
+	static final int DEFAULT_MAX_SIZE = 512;
+
+	/** Percentages of a record's TTL after which it is due for a refresh */
+	private static final int[] REFRESH_PERCENTS = {80, 85, 90, 95};
+
+	/** Age beyond which records are flushed by cache-flush records of the same name and type */
+	private static final long FLUSH_DELAY_MILLIS = 1000;
+
+	private final Map<String, List<Entry>> entries = new HashMap<>();
+	private final int maxSize;
+	private int size;
+
+	RecordCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds or refreshes the provided record, or removes it if its TTL is 0.
+	 *
+	 * @param record Received record
+	 * @param now    Current time in milliseconds
+	 * @return True if the record is new or was removed, false if a known record was merely renewed
+	 */
+	boolean put(DnsRecord record, long now) {
+		String key = keyOf(record.getName(), record.getType());
+		List<Entry> list = entries.get(key);
+
+		if (record.getTtl() == 0) {
+			// Goodbye packet
+			return list != null && remove(key, list, record);
+		}
+
+		if (list == null) {
+			list = new ArrayList<>(2);
+			entries.put(key, list);
+		}
+
+		long lifetime = record.getTtl() * 1000L;
+		boolean changed = true;
+		for (Iterator<Entry> iterator = list.iterator(); iterator.hasNext(); ) {
+			Entry entry = iterator.next();
+			if (entry.record.equals(record)) {
+				iterator.remove();
+				size--;
+				changed = false;
+
+			} else if (record.isUnique() && entry.received <= now - FLUSH_DELAY_MILLIS) {
+				// Cache-flush records replace the earlier records of their name and type, except for those received
+				// within the last second, which are likely part of the same announcement (RFC 6762, section 10.2)
+				iterator.remove();
+				size--;
+			}
+		}
+
+		list.add(new Entry(record, now, lifetime));
+		size++;
+		if (size > maxSize) evict();
+		return changed;
+	}
+
+	/**
+	 * @param name Name of the records
+	 * @param type Type of the records
+	 * @param now  Current time in milliseconds
+	 * @return The records of the provided name and type that haven't expired yet
+	 */
+	List<DnsRecord> get(String name, int type, long now) {
+		List<Entry> list = entries.get(keyOf(name, type));
+		if (list == null) return Collections.emptyList();
+
+		List<DnsRecord> result = new ArrayList<>(list.size());
+		for (Entry entry : list) {
+			if (entry.expiry > now) result.add(entry.record);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the records of the provided name and type that a query may list as known answers, which are those
+	 * with more than half of their TTL remaining (RFC 6762, section 7.1).
+	 *
+	 * @param name Name of the records
+	 * @param type Type of the records
+	 * @param now  Current time in milliseconds
+	 * @return The records, carrying their remaining TTL
+	 */
+	List<DnsRecord> knownAnswers(String name, int type, long now) {
+		List<Entry> list = entries.get(keyOf(name, type));
+		if (list == null) return Collections.emptyList();
+
+		List<DnsRecord> result = new ArrayList<>(list.size());
+		for (Entry entry : list) {
+			long remaining = entry.expiry - now;
+			if (remaining * 2 > entry.lifetime) result.add(entry.record.withTtl((int) (remaining / 1000)));
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all expired records.
+	 *
+	 * @param now Current time in milliseconds
+	 * @return The removed records
+	 */
+	List<DnsRecord> expire(long now) {
+		List<DnsRecord> expired = new ArrayList<>();
+		for (Iterator<List<Entry>> lists = entries.values().iterator(); lists.hasNext(); ) {
+			List<Entry> list = lists.next();
+			for (Iterator<Entry> iterator = list.iterator(); iterator.hasNext(); ) {
+				Entry entry = iterator.next();
+				if (entry.expiry <= now) {
+					expired.add(entry.record);
+					iterator.remove();
+					size--;
+				}
+			}
+			if (list.isEmpty()) lists.remove();
+		}
+		return expired;
+	}
+
+	/**
+	 * Returns the records that have become due for a refresh since the last call. Each record is returned once
+	 * per refresh; receiving the record again starts its refreshes over.
+	 *
+	 * @param now Current time in milliseconds
+	 * @return The records due for a refresh
+	 */
+	List<DnsRecord> refresh(long now) {
+		List<DnsRecord> due = new ArrayList<>();
+		for (List<Entry> list : entries.values()) {
+			for (Entry entry : list) {
+				if (entry.nextRefresh() <= now) {
+					// Skip refreshes missed in the meantime
+					while (entry.nextRefresh() <= now) entry.refreshes++;
+					due.add(entry.record);
+				}
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * @return The time at which the next record expires or becomes due for a refresh, or {@link Long#MAX_VALUE} if the cache is empty
+	 */
+	long nextDeadline() {
+		long next = Long.MAX_VALUE;
+		for (List<Entry> list : entries.values()) {
+			for (Entry entry : list) {
+				next = Math.min(next, Math.min(entry.nextRefresh(), entry.expiry));
+			}
+		}
+		return next;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/* Begin private */
+
+	private boolean remove(String key, List<Entry> list, DnsRecord record) {
+		for (Iterator<Entry> iterator = list.iterator(); iterator.hasNext(); ) {
+			if (iterator.next().record.equals(record)) {
+				iterator.remove();
+				size--;
+				if (list.isEmpty()) entries.remove(key);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void evict() {
+		String evictKey = null;
+		Entry evict = null;
+		for (Map.Entry<String, List<Entry>> e : entries.entrySet()) {
+			for (Entry entry : e.getValue()) {
+				if (evict == null || entry.expiry < evict.expiry) {
+					evictKey = e.getKey();
+					evict = entry;
+				}
+			}
+		}
+
+		if (evict != null) remove(evictKey, entries.get(evictKey), evict.record);
+	}
+
+	private static String keyOf(String name, int type) {
+		return DnsName.key(name) + '/' + type;
+	}
+
+	/* Begin inner classes */
+
+	private static final class Entry {
+
+		final DnsRecord record;
+		final long received;
+		final long lifetime;
+		final long expiry;
+		int refreshes;
+
+		Entry(DnsRecord record, long received, long lifetime) {
+			this.record = record;
+			this.received = received;
+			this.lifetime = lifetime;
+			this.expiry = received + lifetime;
+		}
+
+		long nextRefresh() {
+			return (refreshes < REFRESH_PERCENTS.length) ? received + lifetime * REFRESH_PERCENTS[refreshes] / 100 : Long.MAX_VALUE;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide selector loop, reading the packets of all {@link MulticastTransport}s on a single daemon thread.
+ * The thread is started along with the first transport and runs for the remainder of the process, blocking in
+ * {@link Selector#select()} while there is nothing to read. Packets are read into a pooled direct buffer,
+ * which is reused for all packets.
+ */
+final class SelectorLoop implements Runnable {
+
+	private static final Logger LOGGER = Logger.getLogger(SelectorLoop.class.getName());
+
+	private static SelectorLoop instance;
+
+	private final Selector selector;
+
+	/** Channels waiting to be registered with the selector, which may only happen on the loop's thread without blocking */
+	private final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+
+	private SelectorLoop(Selector selector) {
+		this.selector = selector;
+	}
+
+	/* Begin static */
+
+	/**
+	 * @return The selector loop, whose thread is started upon the first call
+	 * @throws IOException In case the selector can't be opened
+	 */
+	static synchronized SelectorLoop get() throws IOException {
+		if (instance == null) {
+			instance = new SelectorLoop(Selector.open());
+			Thread thread = new Thread(instance, "RxBonjour-mDNS");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return instance;
+	}
+
+	/* Begin public */
+
+	/**
+	 * Starts reading packets from the provided channel, which has to be in non-blocking mode.
+	 * The channel is unregistered automatically once it is closed.
+	 *
+	 * @param channel  Channel to read from
+	 * @param receiver Receiver of the channel's packets, called on the loop's thread
+	 */
+	void register(DatagramChannel channel, Transport.Receiver receiver) {
+		pending.add(new Registration(channel, receiver));
+		selector.wakeup();
+	}
+
+	/**
+	 * Wakes up the loop, so that the keys of closed channels are discarded right away.
+	 */
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	/* Begin overrides */
+
+	@Override public void run() {
+		ByteBuffer buffer = BufferPool.get().acquire();
+		while (true) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Selector failed", e);
+				continue;
+			}
+
+			Registration registration;
+			while ((registration = pending.poll()) != null) {
+				try {
+					registration.channel.register(selector, SelectionKey.OP_READ, registration.receiver);
+				} catch (ClosedChannelException ignored) {
+					// Closed before it was registered
+				}
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				if (key.isValid() && key.isReadable()) read(key, buffer);
+			}
+		}
+	}
+
+	/* Begin private */
+
+	private static void read(SelectionKey key, ByteBuffer buffer) {
+		DatagramChannel channel = (DatagramChannel) key.channel();
+		Transport.Receiver receiver = (Transport.Receiver) key.attachment();
+		try {
+			// Drain all packets that have arrived since the last wakeup
+			buffer.clear();
+			while (channel.receive(buffer) != null) {
+				buffer.flip();
+				try {
+					receiver.onPacket(buffer);
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Receiver failed", e);
+				}
+				buffer.clear();
+			}
+
+		} catch (IOException e) {
+			// Channel closed concurrently, or the network went away
+			key.cancel();
+		}
+	}
+
+	/* Begin inner classes */
+
+	private static final class Registration {
+
+		final DatagramChannel channel;
+		final Transport.Receiver receiver;
+
+		Registration(DatagramChannel channel, Transport.Receiver receiver) {
+			this.channel = channel;
+			this.receiver = receiver;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package rxbonjour.mdns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Packet transport of the mDNS engine, sending packets to and receiving them from the mDNS multicast group
+ * of a single network interface. Implemented by {@link MulticastTransport} for actual networks,
+ * and by {@link LoopbackNetwork} for tests.
+ */
+public interface Transport {
+
+	/**
+	 * Starts receiving packets, passing each of them to the provided receiver.
+	 *
+	 * @param receiver Receiver of the packets
+	 * @throws IOException In case the transport can't be opened
+	 */
+	void start(Receiver receiver) throws IOException;
+
+	/**
+	 * Sends the provided packet to the multicast group, reading from the buffer's position up to its limit.
+	 *
+	 * @param packet Packet to send
+	 * @throws IOException In case the packet can't be sent
+	 */
+	void send(ByteBuffer packet) throws IOException;
+
+	/**
+	 * Stops receiving packets and releases the transport's resources. Closing a transport more than once has no effect.
+	 */
+	void close();
+
+	/**
+	 * Receiver of the packets of a transport
+	 */
+	interface Receiver {
+
+		/**
+		 * Called for each received packet, one packet at a time. The buffer is only valid for the duration of the call,
+		 * since it is reused for subsequent packets.
+		 *
+		 * @param packet Buffer containing the packet between its position and limit
+		 */
+		void onPacket(ByteBuffer packet);
+	}
+
+	/**
+	 * Creates the transports used by the engines of mDNS discoveries and broadcasts
+	 */
+	interface Factory {
+
+		/**
+		 * @param address Address of the network interface to use
+		 * @return A new, unstarted transport
+		 * @throws IOException In case the transport can't be created
+		 */
+		Transport create(InetAddress address) throws IOException;
+	}
+}
@@ -0,0 +1,97 @@
+package rxbonjour.metrics;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import rxbonjour.internal.ServiceKeys;
+
+/**
+ * Measures the time between two callbacks concerning the same service, such as finding and resolving it,
+ * and records it to a histogram of the current {@link MetricsSink}. Services are only tracked while metrics are enabled,
+ * so that the default sink doesn't cost any allocations. Measurements that are neither stopped nor cancelled, e.g. because
+ * a resolve never completes, are discarded once they exceed {@link #MAX_AGE_NANOS} and room for new ones is needed. Thread-safe.
+ */
+public final class LatencyTracker {
+
+	/** Maximum number of services tracked at the same time, bounding memory if services are never resolved */
+	static final int MAX_TRACKED = 256;
+
+	/** Age after which a measurement is considered abandoned, well beyond the time any resolve may take */
+	static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final String metric;
+	private final long maxAgeNanos;
+	private final ConcurrentMap<String, Long> startTimes = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param metric Name of the histogram to record to, in nanoseconds
+	 */
+	public LatencyTracker(String metric) {
+		this(metric, MAX_AGE_NANOS);
+	}
+
+	LatencyTracker(String metric, long maxAgeNanos) {
+		this.metric = metric;
+		this.maxAgeNanos = maxAgeNanos;
+	}
+
+	/**
+	 * Starts measuring for the provided service, unless measuring has started already.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 */
+	public void start(String name, String type) {
+		if (!Metrics.isEnabled()) return;
+
+		long now = System.nanoTime();
+		if (startTimes.size() >= MAX_TRACKED) {
+			expire(now);
+			if (startTimes.size() >= MAX_TRACKED) return;
+		}
+		startTimes.putIfAbsent(ServiceKeys.keyOf(name, type), now);
+	}
+
+	/**
+	 * Stops measuring for the provided service, and records the time since {@link #start(String, String)}.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 */
+	public void stop(String name, String type) {
+		if (startTimes.isEmpty()) return;
+
+		Long startTime = startTimes.remove(ServiceKeys.keyOf(name, type));
+		if (startTime != null) Metrics.sink().record(metric, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Stops measuring for the provided service without recording anything, for instance because it was lost.
+	 *
+	 * @param name Name of the service
+	 * @param type Type of the service
+	 */
+	public void cancel(String name, String type) {
+		if (startTimes.isEmpty()) return;
+		startTimes.remove(ServiceKeys.keyOf(name, type));
+	}
+
+	/**
+	 * Stops measuring for all services without recording anything, for instance because their discovery was stopped.
+	 */
+	public void clear() {
+		startTimes.clear();
+	}
+
+	/* Begin private */
+
+	private void expire(long now) {
+		for (Iterator<Long> iterator = startTimes.values().iterator(); iterator.hasNext(); ) {
+			if (now - iterator.next() > maxAgeNanos) iterator.remove();
+		}
+	}
+}
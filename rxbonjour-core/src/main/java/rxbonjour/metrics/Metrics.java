@@ -0,0 +1,110 @@
+package rxbonjour.metrics;
+
+import rxbonjour.model.BonjourEvent;
+
+/**
+ * Holder of the {@link MetricsSink} to which all discoveries, broadcasts and engines of the process report,
+ * along with the names of the reported metrics. By default, metrics are discarded by a sink that does nothing;
+ * code on the hot path only measures what it reports while another sink is set, so that the default doesn't
+ * allocate any objects.
+ */
+public final class Metrics {
+
+	/** Counter of the ADDED events emitted to subscribers */
+	public static final String EVENTS_ADDED = "rxbonjour.events.added";
+
+	/** Counter of the UPDATED events emitted to subscribers */
+	public static final String EVENTS_UPDATED = "rxbonjour.events.updated";
+
+	/** Counter of the REMOVED events emitted to subscribers */
+	public static final String EVENTS_REMOVED = "rxbonjour.events.removed";
+
+	/** Histogram of the time from finding a service to reporting it resolved, in nanoseconds */
+	public static final String RESOLVE_LATENCY_NANOS = "rxbonjour.resolve.latency_nanos";
+
+	/** Histogram of the time from starting a broadcast to its service being registered, in nanoseconds */
+	public static final String BROADCAST_REGISTRATION_NANOS = "rxbonjour.broadcast.registration_nanos";
+
+	/** Gauge of the number of found services waiting for a resolve slot */
+	public static final String RESOLVE_QUEUE_DEPTH = "rxbonjour.resolve_queue.depth";
+
+	/** Histogram of the time found services waited for a resolve slot, in nanoseconds */
+	public static final String RESOLVE_QUEUE_WAIT_NANOS = "rxbonjour.resolve_queue.wait_nanos";
+
+	/** Gauge of the number of open JmDNS instances, including those kept open for their grace period */
+	public static final String JMDNS_INSTANCES = "rxbonjour.jmdns.instances";
+
+	/** Gauge of the number of discoveries and broadcasts currently using a JmDNS instance */
+	public static final String JMDNS_SUBSCRIBERS = "rxbonjour.jmdns.subscribers";
+
+	/** Gauge of the number of discoveries and broadcasts currently holding the multicast lock */
+	public static final String MULTICAST_LOCK_HOLDS = "rxbonjour.multicast_lock.holds";
+
+	/** Histogram of the time for which the platform's multicast lock was held each time, in milliseconds */
+	public static final String MULTICAST_LOCK_HOLD_MILLIS = "rxbonjour.multicast_lock.hold_millis";
+
+	/** Sink discarding all metrics */
+	public static final MetricsSink NONE = new MetricsSink() {
+		@Override public void count(String name, long delta) {
+		}
+
+		@Override public void record(String name, long value) {
+		}
+
+		@Override public void gauge(String name, long value) {
+		}
+	};
+
+	private static volatile MetricsSink sink = NONE;
+
+	private Metrics() {
+		//no instance
+	}
+
+	/**
+	 * Sets the sink to which metrics are reported from now on.
+	 *
+	 * @param sink Sink receiving the metrics, or null to discard them
+	 */
+	public static void setSink(MetricsSink sink) {
+		Metrics.sink = (sink != null) ? sink : NONE;
+	}
+
+	/**
+	 * @return The sink to which metrics are currently reported
+	 */
+	public static MetricsSink sink() {
+		return sink;
+	}
+
+	/**
+	 * @return True if metrics are reported to a sink other than {@link #NONE}, so that they are worth measuring
+	 */
+	public static boolean isEnabled() {
+		return sink != NONE;
+	}
+
+	/**
+	 * Counts the emission of an event of the provided type.
+	 *
+	 * @param type Type of the emitted event
+	 */
+	public static void countEvent(BonjourEvent.Type type) {
+		MetricsSink current = sink;
+		if (current == NONE) return;
+
+		switch (type) {
+			case ADDED:
+				current.count(EVENTS_ADDED, 1);
+				break;
+
+			case UPDATED:
+				current.count(EVENTS_UPDATED, 1);
+				break;
+
+			case REMOVED:
+				current.count(EVENTS_REMOVED, 1);
+				break;
+		}
+	}
+}
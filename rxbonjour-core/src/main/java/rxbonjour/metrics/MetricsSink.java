@@ -0,0 +1,36 @@
+package rxbonjour.metrics;
+
+/**
+ * Receiver of the metrics reported by RxBonjour, to be bridged to the metrics library of the application.
+ * Metrics are identified by the names defined in {@link Metrics}; their units are part of their names.
+ * <p>
+ * Sinks are called from the threads on which RxBonjour does its work, including the network threads of the engines
+ * and the main thread, sometimes while holding internal locks. Implementations therefore have to be thread-safe,
+ * must not block, and must not call back into RxBonjour.
+ */
+public interface MetricsSink {
+
+	/**
+	 * Increments a counter.
+	 *
+	 * @param name  Name of the counter
+	 * @param delta Amount to add
+	 */
+	void count(String name, long delta);
+
+	/**
+	 * Records a sample of a histogram, such as a latency.
+	 *
+	 * @param name  Name of the histogram
+	 * @param value Value of the sample
+	 */
+	void record(String name, long value);
+
+	/**
+	 * Sets the current value of a gauge, such as the depth of a queue.
+	 *
+	 * @param name  Name of the gauge
+	 * @param value Current value
+	 */
+	void gauge(String name, long value);
+}
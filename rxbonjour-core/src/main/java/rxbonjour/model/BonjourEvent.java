@@ -0,0 +1,105 @@
+package rxbonjour.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Event container class broadcast by service discovery and broadcast implementations.
+ * Contains Bonjour service data, as well as information on whether the service was just discovered,
+ * lost or changed.
+ */
+public class BonjourEvent {
+
+	public enum Type {
+		ADDED,
+		REMOVED,
+		/** A previously added service changed; see {@link #getChanges()} and {@link #getPreviousService()} */
+		UPDATED
+	}
+
+	/**
+	 * Properties of a service that may change between resolves
+	 */
+	public enum Change {
+		ADDRESS,
+		PORT,
+		TXT_RECORDS
+	}
+
+	private Type mType;
+	private BonjourService mService;
+	private BonjourService mPreviousService;
+	private Set<Change> mChanges;
+
+	public BonjourEvent(Type type, BonjourService service) {
+		mType = type;
+		mService = service;
+		mChanges = Collections.emptySet();
+	}
+
+	/**
+	 * Constructor for events of type {@link Type#UPDATED}.
+	 *
+	 * @param previousService State of the service prior to the change
+	 * @param service         State of the service after the change
+	 * @param changes         Properties that differ between both states
+	 */
+	public BonjourEvent(BonjourService previousService, BonjourService service, Set<Change> changes) {
+		mType = Type.UPDATED;
+		mService = service;
+		mPreviousService = previousService;
+		mChanges = Collections.unmodifiableSet(changes.isEmpty() ? EnumSet.noneOf(Change.class) : EnumSet.copyOf(changes));
+	}
+
+	public Type getType() {
+		return mType;
+	}
+
+	public BonjourService getService() {
+		return mService;
+	}
+
+	/**
+	 * @return The state of the service prior to an update, or null if this isn't an {@link Type#UPDATED} event
+	 */
+	public BonjourService getPreviousService() {
+		return mPreviousService;
+	}
+
+	/**
+	 * @return The properties of the service that changed with an update, which is empty unless this is an {@link Type#UPDATED} event
+	 */
+	public Set<Change> getChanges() {
+		return mChanges;
+	}
+
+	@Override public String toString() {
+		return "BonjourEvent{" +
+				"type=" + mType +
+				", service=" + mService +
+				(mType == Type.UPDATED ? ", changes=" + mChanges : "") +
+				'}';
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BonjourEvent)) return false;
+
+		BonjourEvent that = (BonjourEvent) o;
+
+		if (mType != that.mType) return false;
+		if (!mChanges.equals(that.mChanges)) return false;
+		if (mPreviousService != null ? !mPreviousService.equals(that.mPreviousService) : that.mPreviousService != null) return false;
+		return !(mService != null ? !mService.equals(that.mService) : that.mService != null);
+
+	}
+
+	@Override public int hashCode() {
+		int result = mType != null ? mType.hashCode() : 0;
+		result = 31 * result + (mService != null ? mService.hashCode() : 0);
+		result = 31 * result + (mPreviousService != null ? mPreviousService.hashCode() : 0);
+		result = 31 * result + mChanges.hashCode();
+		return result;
+	}
+}
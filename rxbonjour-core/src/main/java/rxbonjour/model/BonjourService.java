@@ -0,0 +1,316 @@
+package rxbonjour.model;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolved Bonjour service detected within the device's local network.
+ */
+public class BonjourService {
+
+	private String mName;
+	private String mType;
+	private Inet4Address mV4Host;
+	private Inet6Address mV6Host;
+	private List<InetAddress> mHosts;
+	private int mPort;
+	private TxtRecords mTxtRecords;
+	private boolean mResolved;
+
+	private BonjourService(String name, String type, List<InetAddress> hosts, int port, TxtRecords txtRecords, boolean resolved) {
+		mName = name;
+		mType = type;
+		mHosts = hosts;
+		mResolved = resolved;
+		for (InetAddress host : hosts) {
+			if (mV4Host == null && host instanceof Inet4Address) {
+				mV4Host = (Inet4Address) host;
+			} else if (mV6Host == null && host instanceof Inet6Address) {
+				mV6Host = (Inet6Address) host;
+			}
+		}
+		mPort = port;
+		mTxtRecords = txtRecords;
+	}
+
+	/**
+	 * @return The service's display name, e.g. 'Office Printer'
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * @return The service's type, e.g. '_http._tcp.local.'
+	 */
+	public String getType() {
+		return mType;
+	}
+
+	/**
+	 * Returns whether the service was resolved. Discoveries that don't resolve services eagerly report them with their
+	 * name and type only, without any addresses, port or TXT records; these are obtained by resolving the service on demand.
+	 *
+	 * @return True if the service's addresses, port and TXT records are known, false otherwise
+	 */
+	public boolean isResolved() {
+		return mResolved;
+	}
+
+	/**
+	 * Obtains the host address of the service.
+	 * For services with both an IPv4 <strong>and</strong> an IPv6 address, the former address takes precedence over the latter,
+	 * so that it always favors the v4 address over the v6 one.
+	 * 
+	 * If you need to access specific addresses, consider using {@link #getV4Host()} and {@link #getV6Host()}, respectively,
+	 * or {@link #getHosts()} for all of them. To find out which addresses can actually be reached,
+	 * use a {@link rxbonjour.probe.ReachabilityProber}.
+	 *
+	 * @return A host address of the service
+	 */
+	public InetAddress getHost() {
+		return (mV4Host != null) ? mV4Host : mV6Host;
+	}
+
+	/**
+	 * @return The first IPv4 host address of the service, or null if it doesn't provide any
+	 */
+	public Inet4Address getV4Host() {
+		return mV4Host;
+	}
+
+	/**
+	 * @return The first IPv6 host address of the service, or null if it doesn't provide any
+	 */
+	public Inet6Address getV6Host() {
+		return mV6Host;
+	}
+
+	/**
+	 * Obtains all host addresses of the service, in the order they were resolved. Services discovered on multiple
+	 * network interfaces provide the addresses resolved on each of them.
+	 *
+	 * @return A read-only list of the service's host addresses, which is empty if it doesn't provide any
+	 */
+	public List<InetAddress> getHosts() {
+		return mHosts;
+	}
+
+	/**
+	 * @return The port on which the service is being broadcast
+	 */
+	public int getPort() {
+		return mPort;
+	}
+
+	/**
+	 * @return The number of TXT records associated with the service
+	 */
+	public int getTxtRecordCount() {
+		return mTxtRecords.size();
+	}
+
+	/**
+	 * Returns all TXT records associated with the service, stored as &lt;String, String&gt; key-value pairs.
+	 * 
+	 * If the service doesn't have any TXT records, or none could be resolved, this returns an empty instance
+	 *
+	 * @return The service's TXT records
+	 */
+	public TxtRecords getTxtRecords() {
+		return mTxtRecords;
+	}
+
+	/**
+	 * Returns the specific TXT record with the provided key, falling back to the default value if this TXT record doesn't exist.
+	 *
+	 * @param key          Key of the TXT record
+	 * @param defaultValue Value to return if the TXT record isn't contained in the service's records
+	 * @return The associated value for the provided key, or the default value if absent
+	 */
+	public String getTxtRecord(String key, String defaultValue) {
+		String value = mTxtRecords.get(key);
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Returns the specific TXT record with the provided key, or null if no such mapping exists.
+	 * This method is a shorthand for <pre>getTxtRecord(key, null)</pre>
+	 *
+	 * @param key Key of the TXT record
+	 * @return The associated value for the provided key, or null if absent
+	 */
+	public String getTxtRecord(String key) {
+		return getTxtRecord(key, null);
+	}
+
+	/**
+	 * Returns the raw value of the TXT record with the provided key, for records holding binary data rather than text.
+	 *
+	 * @param key Key of the TXT record
+	 * @return The associated bytes for the provided key, an empty array for attributes without a value, or null if absent
+	 */
+	public byte[] getTxtRecordBytes(String key) {
+		return mTxtRecords.getBytes(key);
+	}
+
+	@Override public String toString() {
+		return "BonjourService{" +
+				"name='" + mName + '\'' +
+				", type='" + mType + '\'' +
+				", v4Host=" + mV4Host +
+				", v6Host=" + mV6Host +
+				", port=" + mPort +
+				'}';
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BonjourService)) return false;
+
+		BonjourService that = (BonjourService) o;
+
+		if (mPort != that.mPort) return false;
+		if (mResolved != that.mResolved) return false;
+		if (!mName.equals(that.mName)) return false;
+		if (!mType.equals(that.mType)) return false;
+		if (!hasSameHosts(that)) return false;
+		return mTxtRecords.equals(that.mTxtRecords);
+	}
+
+	@Override public int hashCode() {
+		int result = mName != null ? mName.hashCode() : 0;
+		result = 31 * result + (mType != null ? mType.hashCode() : 0);
+		for (InetAddress host : mHosts) {
+			// Independent of the order of the addresses
+			result += host.hashCode();
+		}
+		result = 31 * result + mPort;
+		result = 31 * result + mTxtRecords.hashCode();
+		result = 31 * result + (mResolved ? 1 : 0);
+		return result;
+	}
+
+	/**
+	 * Returns whether the provided service has the same host addresses as this one, regardless of their order.
+	 *
+	 * @param other Service to compare to
+	 * @return True if both services have the same host addresses, false otherwise
+	 */
+	public boolean hasSameHosts(BonjourService other) {
+		return mHosts.size() == other.mHosts.size() && mHosts.containsAll(other.mHosts);
+	}
+
+	/* Begin static */
+
+	public static final class Builder {
+
+		private String mName;
+		private String mType;
+		private List<InetAddress> mHosts = new ArrayList<>(2);
+		private int mPort;
+		private TxtRecords.Builder mTxtRecords;
+		private TxtRecords mRawTxtRecords;
+		private boolean mResolved = true;
+
+		public Builder(String name, String type) {
+			mName = name;
+			mType = type;
+		}
+
+		/**
+		 * Constructor, copying the provided service
+		 *
+		 * @param service Service to copy
+		 */
+		public Builder(BonjourService service) {
+			this(service.mName, service.mType);
+			mHosts.addAll(service.mHosts);
+			mPort = service.mPort;
+			mRawTxtRecords = service.mTxtRecords;
+			mResolved = service.mResolved;
+		}
+
+		/**
+		 * Adds a host address of the service. Addresses added before are kept, and duplicates are ignored.
+		 *
+		 * @param address Host address, either IPv4 or IPv6
+		 * @return This Builder
+		 */
+		public Builder addAddress(InetAddress address) {
+			if (address != null && !mHosts.contains(address)) {
+				mHosts.add(address);
+			}
+			return this;
+		}
+
+		/**
+		 * Sets whether the service was resolved, which is the default. Services that weren't resolved
+		 * only provide their name and type.
+		 *
+		 * @param resolved Whether the service was resolved
+		 * @return This Builder
+		 */
+		public Builder setResolved(boolean resolved) {
+			mResolved = resolved;
+			return this;
+		}
+
+		public Builder setPort(int port) {
+			mPort = port;
+			return this;
+		}
+
+		public Builder addTxtRecord(String key, String value) {
+			txtRecordsBuilder().put(key, value);
+			return this;
+		}
+
+		public Builder addTxtRecord(String key, byte[] value) {
+			txtRecordsBuilder().put(key, value);
+			return this;
+		}
+
+		/**
+		 * Sets the service's TXT records from their raw rdata, replacing any records added before.
+		 * Decoding of the individual records is deferred until they are accessed
+		 *
+		 * @param rdata Raw TXT rdata, consisting of length-prefixed "key=value" strings
+		 * @return This Builder
+		 */
+		public Builder setTxtRecords(byte[] rdata) {
+			mTxtRecords = null;
+			mRawTxtRecords = TxtRecords.fromRdata(rdata);
+			return this;
+		}
+
+		public BonjourService build() {
+			TxtRecords txtRecords;
+			if (mTxtRecords != null) {
+				txtRecords = mTxtRecords.build();
+			} else if (mRawTxtRecords != null) {
+				txtRecords = mRawTxtRecords;
+			} else {
+				txtRecords = TxtRecords.empty();
+			}
+			List<InetAddress> hosts = mHosts.isEmpty()
+					? Collections.<InetAddress>emptyList()
+					: Collections.unmodifiableList(new ArrayList<>(mHosts));
+			return new BonjourService(mName, mType, hosts, mPort, txtRecords, mResolved);
+		}
+
+		/* Begin private */
+
+		private TxtRecords.Builder txtRecordsBuilder() {
+			if (mTxtRecords == null) {
+				mTxtRecords = (mRawTxtRecords != null) ? new TxtRecords.Builder(mRawTxtRecords) : new TxtRecords.Builder();
+				mRawTxtRecords = null;
+			}
+			return mTxtRecords;
+		}
+	}
+}
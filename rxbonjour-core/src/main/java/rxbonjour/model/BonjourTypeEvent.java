@@ -0,0 +1,49 @@
+package rxbonjour.model;
+
+/**
+ * Event container class broadcast by service discovery implementations during service type enumeration.
+ * Contains a service type, as well as information on whether the type was just discovered
+ * or has no more instances on the network.
+ */
+public class BonjourTypeEvent {
+
+	private BonjourEvent.Type mType;
+	private String mServiceType;
+
+	public BonjourTypeEvent(BonjourEvent.Type type, String serviceType) {
+		mType = type;
+		mServiceType = serviceType;
+	}
+
+	public BonjourEvent.Type getType() {
+		return mType;
+	}
+
+	public String getServiceType() {
+		return mServiceType;
+	}
+
+	@Override public String toString() {
+		return "BonjourTypeEvent{" +
+				"type=" + mType +
+				", serviceType='" + mServiceType + '\'' +
+				'}';
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BonjourTypeEvent)) return false;
+
+		BonjourTypeEvent that = (BonjourTypeEvent) o;
+
+		if (mType != that.mType) return false;
+		return !(mServiceType != null ? !mServiceType.equals(that.mServiceType) : that.mServiceType != null);
+
+	}
+
+	@Override public int hashCode() {
+		int result = mType != null ? mType.hashCode() : 0;
+		result = 31 * result + (mServiceType != null ? mServiceType.hashCode() : 0);
+		return result;
+	}
+}
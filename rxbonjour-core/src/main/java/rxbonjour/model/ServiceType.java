@@ -0,0 +1,214 @@
+package rxbonjour.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import rxbonjour.exc.TypeMalformedException;
+
+/**
+ * Parsed DNS-SD service type, consisting of a service name, a protocol, a domain and an optional subtype,
+ * e.g. "_printer._sub._http._tcp.local.". Instances are immutable and obtained through {@link #of(String)},
+ * which returns the same instance for repeated requests of the same type.
+ */
+public final class ServiceType {
+
+	/** Domain assumed for types that don't specify one */
+	public static final String LOCAL_DOMAIN = "local";
+
+	/** Label separating a subtype from its parent type (RFC 6763, section 7.1) */
+	private static final String SUBTYPE_LABEL = "_sub.";
+
+	private static final String TCP = "_tcp";
+	private static final String UDP = "_udp";
+
+	/** Maximum number of parsed types held by the interning cache */
+	private static final int MAX_INTERNED = 256;
+
+	private static final ConcurrentMap<String, ServiceType> INTERNED = new ConcurrentHashMap<>();
+
+	/* Indices of the boundaries written by scan() */
+	private static final int SUBTYPE_END = 0;
+	private static final int SERVICE_START = 1;
+	private static final int SERVICE_END = 2;
+	private static final int PROTOCOL_START = 3;
+	private static final int DOMAIN_START = 4;
+	private static final int BOUNDARY_COUNT = 5;
+
+	private final String mType;
+	private final String mSubtype;
+	private final String mService;
+	private final String mProtocol;
+	private final String mDomain;
+	private final String mFullyQualifiedName;
+
+	private ServiceType(String type, int[] bounds) {
+		mType = type;
+		mSubtype = (bounds[SUBTYPE_END] < 0) ? null : type.substring(0, bounds[SUBTYPE_END]);
+		mService = type.substring(bounds[SERVICE_START], bounds[SERVICE_END]);
+		mProtocol = type.substring(bounds[PROTOCOL_START], bounds[PROTOCOL_START] + TCP.length());
+		mDomain = (bounds[DOMAIN_START] < 0) ? LOCAL_DOMAIN : type.substring(bounds[DOMAIN_START], type.length() - 1);
+		mFullyQualifiedName = (bounds[DOMAIN_START] < 0) ? type + '.' + LOCAL_DOMAIN + '.' : type;
+	}
+
+	/**
+	 * Parses the provided type, returning a cached instance if the type was parsed before.
+	 *
+	 * @param type Type to parse, e.g. "_http._tcp" or "_http._tcp.local."
+	 * @return The parsed type
+	 * @throws TypeMalformedException If the type doesn't conform to the DNS-SD format
+	 */
+	public static ServiceType of(String type) {
+		ServiceType serviceType = INTERNED.get(type);
+		if (serviceType != null) return serviceType;
+
+		int[] bounds = new int[BOUNDARY_COUNT];
+		if (!scan(type, bounds)) throw new TypeMalformedException(type);
+		serviceType = new ServiceType(type, bounds);
+
+		// Stop interning once the cache is full, rather than letting arbitrary input grow it
+		if (INTERNED.size() < MAX_INTERNED) {
+			ServiceType existing = INTERNED.putIfAbsent(type, serviceType);
+			if (existing != null) serviceType = existing;
+		}
+		return serviceType;
+	}
+
+	/**
+	 * Checks the provided type against the DNS-SD format without allocating any objects.
+	 *
+	 * @param type Type to check
+	 * @return True if the type is valid, false otherwise
+	 */
+	public static boolean isValid(String type) {
+		return type != null && (INTERNED.containsKey(type) || scan(type, null));
+	}
+
+	/**
+	 * @return The subtype including its leading underscore, e.g. "_printer", or null if the type has no subtype
+	 */
+	public String getSubtype() {
+		return mSubtype;
+	}
+
+	/**
+	 * @return The service name including its leading underscore, e.g. "_http"
+	 */
+	public String getService() {
+		return mService;
+	}
+
+	/**
+	 * @return The protocol, either "_tcp" or "_udp"
+	 */
+	public String getProtocol() {
+		return mProtocol;
+	}
+
+	/**
+	 * @return The domain without a trailing dot, defaulting to "local"
+	 */
+	public String getDomain() {
+		return mDomain;
+	}
+
+	/**
+	 * @return The fully qualified type including its domain and trailing dot, e.g. "_http._tcp.local."
+	 */
+	public String getFullyQualifiedName() {
+		return mFullyQualifiedName;
+	}
+
+	@Override public String toString() {
+		return mType;
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof ServiceType)) return false;
+
+		ServiceType that = (ServiceType) o;
+		return mFullyQualifiedName.equals(that.mFullyQualifiedName);
+	}
+
+	@Override public int hashCode() {
+		return mFullyQualifiedName.hashCode();
+	}
+
+	/* Begin private */
+
+	/**
+	 * Scans the provided type, optionally recording the boundaries of its components.
+	 * The accepted format is "[_subtype._sub.]_service._tcp|_udp[.domain.]".
+	 *
+	 * @param type   Type to scan
+	 * @param bounds Array receiving the boundaries, or null if only validity is of interest
+	 * @return True if the type is valid, false otherwise
+	 */
+	private static boolean scan(String type, int[] bounds) {
+		int length = type.length();
+
+		// Leading label, either the subtype or the service name
+		int end = scanServiceLabel(type, 0);
+		if (end < 0 || end >= length || type.charAt(end) != '.') return false;
+
+		int subtypeEnd = -1;
+		int serviceStart = 0;
+		if (type.startsWith(SUBTYPE_LABEL, end + 1)) {
+			subtypeEnd = end;
+			serviceStart = end + 1 + SUBTYPE_LABEL.length();
+			end = scanServiceLabel(type, serviceStart);
+			if (end < 0 || end >= length || type.charAt(end) != '.') return false;
+		}
+		int serviceEnd = end;
+
+		// Protocol label
+		int protocolStart = serviceEnd + 1;
+		if (!type.startsWith(TCP, protocolStart) && !type.startsWith(UDP, protocolStart)) return false;
+		int pos = protocolStart + TCP.length();
+
+		// Optional domain label, which has to be followed by a trailing dot
+		int domainStart = -1;
+		if (pos < length) {
+			if (type.charAt(pos) != '.') return false;
+			domainStart = pos + 1;
+			end = scanDomainLabel(type, domainStart);
+			if (end < 0 || end != length - 1 || type.charAt(end) != '.') return false;
+		}
+
+		if (bounds != null) {
+			bounds[SUBTYPE_END] = subtypeEnd;
+			bounds[SERVICE_START] = serviceStart;
+			bounds[SERVICE_END] = serviceEnd;
+			bounds[PROTOCOL_START] = protocolStart;
+			bounds[DOMAIN_START] = domainStart;
+		}
+		return true;
+	}
+
+	/**
+	 * Scans a label consisting of an underscore, followed by at least one letter, digit, hyphen or underscore.
+	 *
+	 * @return The index after the label, or -1 if there is no valid label at the start index
+	 */
+	private static int scanServiceLabel(String type, int start) {
+		if (start >= type.length() || type.charAt(start) != '_') return -1;
+		int end = start + 1;
+		while (end < type.length() && (isLabelChar(type.charAt(end)) || type.charAt(end) == '_')) end++;
+		return (end > start + 1) ? end : -1;
+	}
+
+	/**
+	 * Scans a label consisting of at least one letter, digit or hyphen.
+	 *
+	 * @return The index after the label, or -1 if there is no valid label at the start index
+	 */
+	private static int scanDomainLabel(String type, int start) {
+		int end = start;
+		while (end < type.length() && isLabelChar(type.charAt(end))) end++;
+		return (end > start) ? end : -1;
+	}
+
+	private static boolean isLabelChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-';
+	}
+}
@@ -0,0 +1,449 @@
+package rxbonjour.model;
+
+import java.nio.charset.Charset;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable collection of the TXT records associated with a Bonjour service, stored as &lt;String, String&gt; key-value pairs
+ * in the order they were added.
+ * <p>
+ * The records are kept in their wire format, i.e. the raw TXT rdata made up of length-prefixed "key=value" strings,
+ * together with an index of offsets into it. Keys and values are only decoded to Strings once they are accessed for the first time,
+ * so that services with large TXT record sets don't cost more than a single byte array per event unless they are actually read.
+ * Keys are looked up linearly, since services rarely carry more than a handful of records.
+ * <p>
+ * Attributes without a value (i.e. without an '=' sign) are reported with the value "true", in line with JmDNS.
+ */
+public final class TxtRecords {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final int[] NO_INTS = new int[0];
+	private static final String[] NO_STRINGS = new String[0];
+
+	private static final TxtRecords EMPTY = new TxtRecords(NO_BYTES, NO_INTS, NO_STRINGS, NO_STRINGS);
+
+	/** Value reported for attributes without a value */
+	private static final String BOOLEAN_VALUE = "true";
+
+	/** Maximum length of a single "key=value" string within TXT rdata */
+	private static final int MAX_STRING_LENGTH = 255;
+
+	/** Number of index entries per record: key offset, key length & value length (or -1 for attributes without a value) */
+	private static final int STRIDE = 3;
+
+	private final byte[] mRdata;
+	private final int[] mIndex;
+
+	// Lazily decoded keys & values. Racing threads may decode the same String twice,
+	// which is harmless since Strings are immutable and safely published
+	private final String[] mKeys;
+	private final String[] mValues;
+
+	private TxtRecords(byte[] rdata, int[] index, String[] keys, String[] values) {
+		mRdata = rdata;
+		mIndex = index;
+		mKeys = keys;
+		mValues = values;
+	}
+
+	/**
+	 * @return An instance without any TXT records
+	 */
+	public static TxtRecords empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Creates an instance from raw TXT rdata, consisting of a sequence of length-prefixed "key=value" strings.
+	 * Empty strings and all but the first occurrence of a key are ignored, while malformed trailing data is cut off.
+	 *
+	 * @param rdata Raw TXT rdata, which is copied
+	 * @return An instance holding the records contained in the rdata
+	 */
+	public static TxtRecords fromRdata(byte[] rdata) {
+		if (rdata == null || rdata.length == 0) return EMPTY;
+
+		// Count the strings first, so that the index doesn't need to grow
+		int count = 0;
+		for (int pos = 0; pos < rdata.length; pos += 1 + (rdata[pos] & 0xff)) {
+			count++;
+		}
+
+		byte[] copy = rdata.clone();
+		int[] index = new int[count * STRIDE];
+		int size = 0;
+		int pos = 0;
+		while (pos < copy.length) {
+			int length = copy[pos] & 0xff;
+			int start = pos + 1;
+			int end = start + length;
+			pos = end;
+			if (length == 0) continue;
+			if (end > copy.length) break;
+
+			// Find the separator between key and value. A missing one indicates a boolean attribute,
+			// whereas a leading one indicates a string without a key, which is invalid
+			int separator = start;
+			while (separator < end && copy[separator] != '=') separator++;
+			if (separator == start) continue;
+
+			int keyLength = separator - start;
+			int valueLength = (separator < end) ? end - separator - 1 : -1;
+			if (indexOf(copy, index, size, copy, start, keyLength) >= 0) continue;
+
+			index[size * STRIDE] = start;
+			index[size * STRIDE + 1] = keyLength;
+			index[size * STRIDE + 2] = valueLength;
+			size++;
+		}
+
+		if (size == 0) return EMPTY;
+		if (size < count) index = Arrays.copyOf(index, size * STRIDE);
+		return new TxtRecords(copy, index, new String[size], new String[size]);
+	}
+
+	/**
+	 * @return The number of TXT records
+	 */
+	public int size() {
+		return mKeys.length;
+	}
+
+	/**
+	 * @return True if there are no TXT records, false otherwise
+	 */
+	public boolean isEmpty() {
+		return mKeys.length == 0;
+	}
+
+	/**
+	 * @param key Key of the TXT record
+	 * @return True if a TXT record with the provided key exists, false otherwise
+	 */
+	public boolean containsKey(String key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Returns the TXT record with the provided key, or null if no such mapping exists.
+	 *
+	 * @param key Key of the TXT record
+	 * @return The associated value for the provided key, or null if absent
+	 */
+	public String get(String key) {
+		int index = indexOf(key);
+		return (index >= 0) ? valueAt(index) : null;
+	}
+
+	/**
+	 * Returns the TXT record with the provided key. This method mirrors the Bundle API previously used to expose TXT records.
+	 *
+	 * @param key Key of the TXT record
+	 * @return The associated value for the provided key, or null if absent
+	 */
+	public String getString(String key) {
+		return get(key);
+	}
+
+	/**
+	 * Returns the raw value of the TXT record with the provided key, for records holding binary data.
+	 *
+	 * @param key Key of the TXT record
+	 * @return A copy of the value's bytes, an empty array for attributes without a value, or null if absent
+	 */
+	public byte[] getBytes(String key) {
+		int index = indexOf(key);
+		if (index < 0) return null;
+
+		int valueLength = mIndex[index * STRIDE + 2];
+		if (valueLength <= 0) return NO_BYTES;
+
+		int valueOffset = mIndex[index * STRIDE] + mIndex[index * STRIDE + 1] + 1;
+		return Arrays.copyOfRange(mRdata, valueOffset, valueOffset + valueLength);
+	}
+
+	/**
+	 * @return A read-only view of the keys of all TXT records, in the order they were added
+	 */
+	public Set<String> keySet() {
+		return new KeySet();
+	}
+
+	/**
+	 * @return A modifiable copy of all TXT records, in the order they were added
+	 */
+	public Map<String, String> toMap() {
+		Map<String, String> map = new LinkedHashMap<>(mKeys.length);
+		for (int i = 0; i < mKeys.length; i++) {
+			map.put(keyAt(i), valueAt(i));
+		}
+		return map;
+	}
+
+	/**
+	 * @return A copy of the TXT records in their wire format, i.e. as a sequence of length-prefixed "key=value" strings
+	 */
+	public byte[] toRdata() {
+		return mRdata.clone();
+	}
+
+	@Override public String toString() {
+		return "TxtRecords" + toMap();
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof TxtRecords)) return false;
+
+		TxtRecords that = (TxtRecords) o;
+		if (mKeys.length != that.mKeys.length) return false;
+
+		for (int i = 0; i < mIndex.length; i += STRIDE) {
+			if (mIndex[i + 1] != that.mIndex[i + 1] || mIndex[i + 2] != that.mIndex[i + 2]) return false;
+
+			// Compare the key and value in one go, including the separator in between
+			int length = mIndex[i + 1] + Math.max(0, mIndex[i + 2] + 1);
+			if (!regionEquals(mRdata, mIndex[i], that.mRdata, that.mIndex[i], length)) return false;
+		}
+		return true;
+	}
+
+	@Override public int hashCode() {
+		int result = 1;
+		for (int i = 0; i < mIndex.length; i += STRIDE) {
+			int end = mIndex[i] + mIndex[i + 1] + Math.max(0, mIndex[i + 2] + 1);
+			for (int j = mIndex[i]; j < end; j++) {
+				result = 31 * result + mRdata[j];
+			}
+			result = 31 * result + mIndex[i + 2];
+		}
+		return result;
+	}
+
+	/* Begin private */
+
+	private int indexOf(String key) {
+		if (key == null) return -1;
+		for (int i = 0; i < mKeys.length; i++) {
+			String decoded = mKeys[i];
+			if (decoded != null ? decoded.equals(key) : keyMatches(i, key)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares the provided key against a key in the rdata without decoding the latter, as long as it's pure ASCII
+	 * (which RFC 6763 mandates). Other keys are decoded for comparison
+	 */
+	private boolean keyMatches(int index, String key) {
+		int offset = mIndex[index * STRIDE];
+		int length = mIndex[index * STRIDE + 1];
+		for (int i = 0; i < length; i++) {
+			if (mRdata[offset + i] < 0) return keyAt(index).equals(key);
+		}
+
+		if (key.length() != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (key.charAt(i) != mRdata[offset + i]) return false;
+		}
+		return true;
+	}
+
+	private String keyAt(int index) {
+		String key = mKeys[index];
+		if (key == null) {
+			key = new String(mRdata, mIndex[index * STRIDE], mIndex[index * STRIDE + 1], UTF_8);
+			mKeys[index] = key;
+		}
+		return key;
+	}
+
+	private String valueAt(int index) {
+		String value = mValues[index];
+		if (value == null) {
+			int valueLength = mIndex[index * STRIDE + 2];
+			if (valueLength < 0) {
+				value = BOOLEAN_VALUE;
+
+			} else {
+				int valueOffset = mIndex[index * STRIDE] + mIndex[index * STRIDE + 1] + 1;
+				value = new String(mRdata, valueOffset, valueLength, UTF_8);
+			}
+			mValues[index] = value;
+		}
+		return value;
+	}
+
+	private static int indexOf(byte[] rdata, int[] index, int size, byte[] key, int keyOffset, int keyLength) {
+		for (int i = 0; i < size; i++) {
+			if (index[i * STRIDE + 1] == keyLength && regionEquals(rdata, index[i * STRIDE], key, keyOffset, keyLength)) return i;
+		}
+		return -1;
+	}
+
+	private static boolean regionEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			if (a[aOffset + i] != b[bOffset + i]) return false;
+		}
+		return true;
+	}
+
+	/* Begin inner classes */
+
+	private final class KeySet extends AbstractSet<String> {
+		@Override public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private int index;
+
+				@Override public boolean hasNext() {
+					return index < mKeys.length;
+				}
+
+				@Override public String next() {
+					if (index >= mKeys.length) throw new NoSuchElementException();
+					return keyAt(index++);
+				}
+
+				@Override public void remove() {
+					throw new UnsupportedOperationException("TxtRecords are read-only");
+				}
+			};
+		}
+
+		@Override public int size() {
+			return mKeys.length;
+		}
+
+		@Override public boolean contains(Object o) {
+			return (o instanceof String) && indexOf((String) o) >= 0;
+		}
+	}
+
+	public static final class Builder {
+
+		private String[] mKeys = NO_STRINGS;
+		private byte[][] mEncodedKeys = new byte[0][];
+		private byte[][] mValues = new byte[0][];
+		private String[] mDecodedValues = NO_STRINGS;
+		private int mSize;
+
+		public Builder() {
+		}
+
+		/**
+		 * Constructor, starting off with the records of an existing instance
+		 *
+		 * @param source Records to copy
+		 */
+		Builder(TxtRecords source) {
+			for (int i = 0; i < source.size(); i++) {
+				int valueLength = source.mIndex[i * STRIDE + 2];
+				int valueOffset = source.mIndex[i * STRIDE] + source.mIndex[i * STRIDE + 1] + 1;
+				byte[] value = (valueLength >= 0) ? Arrays.copyOfRange(source.mRdata, valueOffset, valueOffset + valueLength) : null;
+				put(source.keyAt(i), value, source.mValues[i]);
+			}
+		}
+
+		/**
+		 * Adds a TXT record, replacing any previous record with the same key
+		 *
+		 * @param key   Key of the TXT record
+		 * @param value Value of the TXT record, or null for an attribute without a value
+		 * @return This Builder
+		 */
+		public Builder put(String key, String value) {
+			return put(key, (value != null) ? value.getBytes(UTF_8) : null, value);
+		}
+
+		/**
+		 * Adds a TXT record holding binary data, replacing any previous record with the same key
+		 *
+		 * @param key   Key of the TXT record
+		 * @param value Value of the TXT record, or null for an attribute without a value
+		 * @return This Builder
+		 */
+		public Builder put(String key, byte[] value) {
+			return put(key, (value != null) ? value.clone() : null, null);
+		}
+
+		public TxtRecords build() {
+			if (mSize == 0) return EMPTY;
+
+			// Encode the records in their wire format, creating the index along the way
+			int length = 0;
+			for (int i = 0; i < mSize; i++) {
+				length += 1 + stringLength(i);
+			}
+
+			byte[] rdata = new byte[length];
+			int[] index = new int[mSize * STRIDE];
+			int pos = 0;
+			for (int i = 0; i < mSize; i++) {
+				byte[] key = mEncodedKeys[i];
+				byte[] value = mValues[i];
+
+				rdata[pos++] = (byte) stringLength(i);
+				index[i * STRIDE] = pos;
+				index[i * STRIDE + 1] = key.length;
+				index[i * STRIDE + 2] = (value != null) ? value.length : -1;
+
+				System.arraycopy(key, 0, rdata, pos, key.length);
+				pos += key.length;
+				if (value != null) {
+					rdata[pos++] = '=';
+					System.arraycopy(value, 0, rdata, pos, value.length);
+					pos += value.length;
+				}
+			}
+
+			// Keys & values added as Strings don't need to be decoded again
+			return new TxtRecords(rdata, index, Arrays.copyOf(mKeys, mSize), Arrays.copyOf(mDecodedValues, mSize));
+		}
+
+		/* Begin private */
+
+		private Builder put(String key, byte[] value, String decodedValue) {
+			if (key == null) throw new IllegalArgumentException("key must not be null");
+			if (key.isEmpty() || key.indexOf('=') >= 0) throw new IllegalArgumentException("Invalid TXT record key: '" + key + "'");
+
+			byte[] encodedKey = key.getBytes(UTF_8);
+			int length = encodedKey.length + ((value != null) ? value.length + 1 : 0);
+			if (length > MAX_STRING_LENGTH) {
+				throw new IllegalArgumentException("TXT record '" + key + "' exceeds " + MAX_STRING_LENGTH + " bytes");
+			}
+
+			int index = 0;
+			while (index < mSize && !mKeys[index].equals(key)) index++;
+
+			if (index == mSize) {
+				if (mSize == mKeys.length) {
+					int capacity = Math.max(4, mSize * 2);
+					mKeys = Arrays.copyOf(mKeys, capacity);
+					mEncodedKeys = Arrays.copyOf(mEncodedKeys, capacity);
+					mValues = Arrays.copyOf(mValues, capacity);
+					mDecodedValues = Arrays.copyOf(mDecodedValues, capacity);
+				}
+				mSize++;
+			}
+
+			mKeys[index] = key;
+			mEncodedKeys[index] = encodedKey;
+			mValues[index] = value;
+			mDecodedValues[index] = (value != null) ? decodedValue : BOOLEAN_VALUE;
+			return this;
+		}
+
+		private int stringLength(int index) {
+			byte[] value = mValues[index];
+			return mEncodedKeys[index].length + ((value != null) ? value.length + 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package rxbonjour.probe;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Prober measuring which host addresses of a service can actually be reached, by opening a TCP connection to the service's port
+ * on each of them. Addresses advertised by a service may be stale, or belong to a network that isn't routable from the device;
+ * ranking them by their connect latency allows clients to connect to the fastest working endpoint instead.
+ * <p>
+ * Probes run concurrently on a bounded pool of threads, and each of them gives up after a timeout. Unreachable addresses
+ * are omitted from the results. Since probes establish real connections, they should only be used for services
+ * that tolerate being connected to without exchanging any data, such as most HTTP services.
+ */
+public class ReachabilityProber {
+
+	/** Default number of probes running at the same time */
+	public static final int DEFAULT_CONCURRENCY = 4;
+
+	/** Default time after which a probe gives up */
+	public static final int DEFAULT_TIMEOUT_MILLIS = 2000;
+
+	private static final Func2<Endpoint, Endpoint, Integer> BY_LATENCY = new Func2<Endpoint, Endpoint, Integer>() {
+		@Override public Integer call(Endpoint e1, Endpoint e2) {
+			return (e1.latencyNanos < e2.latencyNanos) ? -1 : ((e1.latencyNanos == e2.latencyNanos) ? 0 : 1);
+		}
+	};
+
+	private final Scheduler scheduler;
+	private final int timeoutMillis;
+
+	/**
+	 * Constructor, running up to {@link #DEFAULT_CONCURRENCY} probes at the same time
+	 */
+	public ReachabilityProber() {
+		this(DEFAULT_CONCURRENCY, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Constructor, running probes on a pool of daemon threads owned by this prober
+	 *
+	 * @param concurrency Number of probes running at the same time
+	 * @param timeout     Time after which a probe gives up
+	 * @param unit        Unit of the timeout
+	 */
+	public ReachabilityProber(int concurrency, long timeout, TimeUnit unit) {
+		this(Schedulers.from(newExecutor(concurrency)), timeout, unit);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param scheduler Scheduler running the probes, which should be backed by a bounded number of threads
+	 * @param timeout   Time after which a probe gives up
+	 * @param unit      Unit of the timeout
+	 */
+	public ReachabilityProber(Scheduler scheduler, long timeout, TimeUnit unit) {
+		if (timeout <= 0) throw new IllegalArgumentException("timeout must be positive: " + timeout);
+		this.scheduler = scheduler;
+		this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(timeout));
+	}
+
+	/**
+	 * Probes all host addresses of the provided service, and emits the reachable ones once all probes have finished.
+	 *
+	 * @param service Service to probe
+	 * @return An Observable emitting a single list of the reachable endpoints, ordered by their connect latency
+	 */
+	public Observable<List<Endpoint>> rank(BonjourService service) {
+		return probeAll(service).toSortedList(BY_LATENCY);
+	}
+
+	/**
+	 * Probes all host addresses of the provided service, and emits the first of them to be reached.
+	 * Probes that are still running afterwards are abandoned.
+	 *
+	 * @param service Service to probe
+	 * @return An Observable emitting the fastest endpoint, or completing without any item if none is reachable
+	 */
+	public Observable<Endpoint> fastest(BonjourService service) {
+		return probeAll(service).take(1);
+	}
+
+	/**
+	 * Opens and closes a TCP connection to the provided address.
+	 *
+	 * @param address       Address to connect to
+	 * @param timeoutMillis Time after which to give up
+	 * @return The time it took to establish the connection, in nanoseconds
+	 * @throws IOException In case the address can't be reached
+	 */
+	protected long connect(InetSocketAddress address, int timeoutMillis) throws IOException {
+		Socket socket = new Socket();
+		try {
+			long start = System.nanoTime();
+			socket.connect(address, timeoutMillis);
+			return System.nanoTime() - start;
+
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/* Begin private */
+
+	private Observable<Endpoint> probeAll(BonjourService service) {
+		final int port = service.getPort();
+		return Observable.from(new ArrayList<>(service.getHosts()))
+				.flatMap(new Func1<InetAddress, Observable<Endpoint>>() {
+					@Override public Observable<Endpoint> call(InetAddress host) {
+						return probe(new InetSocketAddress(host, port)).subscribeOn(scheduler);
+					}
+				});
+	}
+
+	private Observable<Endpoint> probe(final InetSocketAddress address) {
+		return Observable.create(new Observable.OnSubscribe<Endpoint>() {
+			@Override public void call(Subscriber<? super Endpoint> subscriber) {
+				if (subscriber.isUnsubscribed()) return;
+
+				Endpoint endpoint = null;
+				try {
+					endpoint = new Endpoint(address, connect(address, timeoutMillis));
+				} catch (IOException ignored) {
+					// Unreachable
+				}
+
+				if (!subscriber.isUnsubscribed()) {
+					if (endpoint != null) subscriber.onNext(endpoint);
+					subscriber.onCompleted();
+				}
+			}
+		});
+	}
+
+	private static ExecutorService newExecutor(int concurrency) {
+		if (concurrency < 1) throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		return Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "RxBonjour-Probe-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Reachable address of a service, along with the time it took to connect to it
+	 */
+	public static final class Endpoint {
+
+		private final InetSocketAddress address;
+		private final long latencyNanos;
+
+		Endpoint(InetSocketAddress address, long latencyNanos) {
+			this.address = address;
+			this.latencyNanos = latencyNanos;
+		}
+
+		/**
+		 * @return The host address and port of the endpoint
+		 */
+		public InetSocketAddress getSocketAddress() {
+			return address;
+		}
+
+		/**
+		 * @return The host address of the endpoint
+		 */
+		public InetAddress getAddress() {
+			return address.getAddress();
+		}
+
+		/**
+		 * @param unit Unit of the returned latency
+		 * @return The time it took to connect to the endpoint
+		 */
+		public long getLatency(TimeUnit unit) {
+			return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+		}
+
+		@Override public String toString() {
+			return "Endpoint{" +
+					"address=" + address +
+					", latencyNanos=" + latencyNanos +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package rxbonjour.registry;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rxbonjour.internal.ServiceKeys;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+/**
+ * Registry of the services that are currently visible on the network, maintained from a stream of Bonjour events.
+ * <p>
+ * The state of the registry is published as a sequence of immutable, versioned {@link Snapshot}s, which are indexed
+ * by service, type and host so that lookups don't need to scan all services. Each change to the set of services produces
+ * a new snapshot (copy-on-write), which is shared among all subscribers; new subscribers receive the latest snapshot
+ * right away, rather than replaying the events that led to it.
+ * <p>
+ * The underlying discovery is started with the first subscriber to {@link #snapshots()}, and stopped once
+ * all of them have unsubscribed, resetting the registry.
+ */
+public final class ServiceRegistry {
+
+	private final Observable<Snapshot> snapshots;
+
+	/** Latest snapshot, read without synchronization by {@link #getSnapshot()} */
+	private volatile Snapshot current = Snapshot.EMPTY;
+
+	/**
+	 * Constructor
+	 *
+	 * @param events Stream of Bonjour events to maintain the registry from
+	 */
+	public ServiceRegistry(final Observable<BonjourEvent> events) {
+		this.snapshots = Observable
+				.defer(new Func0<Observable<Snapshot>>() {
+					@Override public Observable<Snapshot> call() {
+						// Start from scratch for each run of the discovery
+						return events.scan(Snapshot.EMPTY, new Func2<Snapshot, BonjourEvent, Snapshot>() {
+							@Override public Snapshot call(Snapshot snapshot, BonjourEvent event) {
+								return snapshot.apply(event);
+							}
+						});
+					}
+				})
+				.distinctUntilChanged(new Func1<Snapshot, Long>() {
+					@Override public Long call(Snapshot snapshot) {
+						return snapshot.getVersion();
+					}
+				})
+				.doOnNext(new Action1<Snapshot>() {
+					@Override public void call(Snapshot snapshot) {
+						current = snapshot;
+					}
+				})
+				.doOnUnsubscribe(new Action0() {
+					@Override public void call() {
+						current = Snapshot.EMPTY;
+					}
+				})
+				.replay(1)
+				.refCount();
+	}
+
+	/**
+	 * Returns an Observable emitting a new snapshot whenever the set of visible services changes.
+	 * Subscribers immediately receive the latest snapshot, which is empty until the first service is discovered.
+	 *
+	 * @return An Observable for snapshots of the registry
+	 */
+	public Observable<Snapshot> snapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Returns the latest snapshot of the registry, without subscribing to it.
+	 *
+	 * @return The latest snapshot, which is empty while nobody is subscribed to {@link #snapshots()}
+	 */
+	public Snapshot getSnapshot() {
+		return current;
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Immutable state of a registry at a given point in time. Services are kept in the order they were discovered.
+	 */
+	public static final class Snapshot {
+
+		static final Snapshot EMPTY = new Snapshot(0,
+				Collections.<String, BonjourService>emptyMap(),
+				Collections.<String, List<BonjourService>>emptyMap(),
+				Collections.<InetAddress, List<BonjourService>>emptyMap());
+
+		private final long version;
+		private final Map<String, BonjourService> byKey;
+		private final Map<String, List<BonjourService>> byType;
+		private final Map<InetAddress, List<BonjourService>> byHost;
+
+		private Snapshot(long version, Map<String, BonjourService> byKey, Map<String, List<BonjourService>> byType, Map<InetAddress, List<BonjourService>> byHost) {
+			this.version = version;
+			this.byKey = byKey;
+			this.byType = byType;
+			this.byHost = byHost;
+		}
+
+		/**
+		 * @return The version of this snapshot, which is incremented with every change to the registry
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return The number of services in this snapshot
+		 */
+		public int size() {
+			return byKey.size();
+		}
+
+		/**
+		 * @return True if this snapshot doesn't contain any services, false otherwise
+		 */
+		public boolean isEmpty() {
+			return byKey.isEmpty();
+		}
+
+		/**
+		 * @return A read-only view of all services in this snapshot
+		 */
+		public Collection<BonjourService> getServices() {
+			return Collections.unmodifiableCollection(byKey.values());
+		}
+
+		/**
+		 * Looks up the service with the provided name and type. Types are matched regardless of the local domain,
+		 * i.e. "_http._tcp" and "_http._tcp.local." are considered equal.
+		 *
+		 * @param name Name of the service
+		 * @param type Type of the service
+		 * @return The service, or null if it isn't contained in this snapshot
+		 */
+		public BonjourService get(String name, String type) {
+			return byKey.get(ServiceKeys.keyOf(name, type));
+		}
+
+		/**
+		 * @param name Name of the service
+		 * @param type Type of the service
+		 * @return True if the service is contained in this snapshot, false otherwise
+		 */
+		public boolean contains(String name, String type) {
+			return byKey.containsKey(ServiceKeys.keyOf(name, type));
+		}
+
+		/**
+		 * @param type Type of service, with or without the local domain
+		 * @return A read-only list of all services of the type
+		 */
+		public List<BonjourService> getServicesOfType(String type) {
+			return listOrEmpty(byType.get(ServiceKeys.normalizeType(type)));
+		}
+
+		/**
+		 * @param host Host address, either IPv4 or IPv6
+		 * @return A read-only list of all services available on the host
+		 */
+		public List<BonjourService> getServicesOnHost(InetAddress host) {
+			return listOrEmpty(byHost.get(host));
+		}
+
+		@Override public String toString() {
+			return "Snapshot{" +
+					"version=" + version +
+					", services=" + byKey.values() +
+					'}';
+		}
+
+		/* Begin private */
+
+		/**
+		 * Applies the provided event to this snapshot.
+		 *
+		 * @param event Event to apply
+		 * @return The resulting snapshot, or this snapshot if the event doesn't change anything
+		 */
+		private Snapshot apply(BonjourEvent event) {
+			BonjourService service = event.getService();
+			String type = ServiceKeys.normalizeType(service.getType());
+			String key = ServiceKeys.keyOfNormalized(service.getName(), type);
+			BonjourService previous = byKey.get(key);
+
+			boolean removed = (event.getType() == BonjourEvent.Type.REMOVED);
+			if (removed ? previous == null : service.equals(previous)) return this;
+
+			Map<String, BonjourService> newByKey = new LinkedHashMap<>(byKey);
+			Map<String, List<BonjourService>> newByType = new HashMap<>(byType);
+			Map<InetAddress, List<BonjourService>> newByHost = new HashMap<>(byHost);
+
+			if (removed) {
+				newByKey.remove(key);
+				replace(newByType, type, previous, null);
+				for (InetAddress host : previous.getHosts()) {
+					replace(newByHost, host, previous, null);
+				}
+
+			} else {
+				newByKey.put(key, service);
+				replace(newByType, type, previous, service);
+				if (previous != null) {
+					for (InetAddress host : previous.getHosts()) {
+						replace(newByHost, host, previous, null);
+					}
+				}
+				for (InetAddress host : service.getHosts()) {
+					replace(newByHost, host, null, service);
+				}
+			}
+
+			return new Snapshot(version + 1, newByKey, newByType, newByHost);
+		}
+
+		/**
+		 * Replaces a service within one of the lists of an index, copying the affected list only.
+		 *
+		 * @param index       Index to update
+		 * @param indexKey    Key of the list to update
+		 * @param oldService  Service to replace, or null to append the new service
+		 * @param newService  Replacement, or null to remove the old service
+		 */
+		private static <K> void replace(Map<K, List<BonjourService>> index, K indexKey, BonjourService oldService, BonjourService newService) {
+			List<BonjourService> oldList = index.get(indexKey);
+			List<BonjourService> newList = (oldList != null) ? new ArrayList<>(oldList) : new ArrayList<BonjourService>(1);
+
+			int position = (oldService != null) ? newList.indexOf(oldService) : -1;
+			if (position >= 0) {
+				if (newService != null) {
+					newList.set(position, newService);
+				} else {
+					newList.remove(position);
+				}
+
+			} else if (newService != null) {
+				newList.add(newService);
+			}
+
+			if (newList.isEmpty()) {
+				index.remove(indexKey);
+			} else {
+				index.put(indexKey, Collections.unmodifiableList(newList));
+			}
+		}
+
+		private static List<BonjourService> listOrEmpty(List<BonjourService> list) {
+			return (list != null) ? list : Collections.<BonjourService>emptyList();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package rxbonjour.internal;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class EventBackpressureTest {
+
+	private static BonjourEvent added(String name, int port) {
+		return new BonjourEvent(BonjourEvent.Type.ADDED, new BonjourService.Builder(name, "_http._tcp.local.").setPort(port).build());
+	}
+
+	@After public void tearDown() throws Exception {
+		EventBackpressure.setDefault(BackpressureStrategy.LATEST_PER_SERVICE, EventBackpressure.DEFAULT_CAPACITY);
+	}
+
+	@Test public void testLatestPerService() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>(0);
+		events.lift(new EventBackpressure(BackpressureStrategy.LATEST_PER_SERVICE, 2)).subscribe(subscriber);
+
+		events.onNext(added("a", 1));
+		events.onNext(added("b", 1));
+		events.onNext(added("a", 2));
+		subscriber.assertNoValues();
+
+		// Newer events of a service replace older ones, so the subscriber only receives the latest states
+		subscriber.requestMore(1);
+		subscriber.assertValues(added("a", 2));
+		subscriber.requestMore(3);
+		subscriber.assertValues(added("a", 2), added("b", 1));
+
+		// Demand is honored for events arriving later on
+		events.onNext(added("c", 1));
+		events.onNext(added("d", 1));
+		subscriber.assertValueCount(4);
+
+		// More services than fit into the queue are all kept, in order
+		for (int i = 0; i < 4; i++) {
+			events.onNext(added("e" + i, 1));
+		}
+		subscriber.requestMore(10);
+		subscriber.assertValueCount(8);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(added("e" + i, 1), subscriber.getOnNextEvents().get(4 + i));
+		}
+		subscriber.assertNoErrors();
+	}
+
+	@Test public void testLatestPerServiceKeepsAllServices() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>(0);
+		events.lift(new EventBackpressure(BackpressureStrategy.LATEST_PER_SERVICE, 128)).subscribe(subscriber);
+
+		// Far more services than the capacity, each reported twice while nothing is requested
+		int count = 500;
+		for (int port = 1; port <= 2; port++) {
+			for (int i = 0; i < count; i++) {
+				events.onNext(added("Printer " + i, port));
+			}
+		}
+		subscriber.assertNoValues();
+
+		// Every service is delivered once, in order, with its latest state
+		subscriber.requestMore(Long.MAX_VALUE);
+		subscriber.assertValueCount(count);
+		for (int i = 0; i < count; i++) {
+			assertEquals(added("Printer " + i, 2), subscriber.getOnNextEvents().get(i));
+		}
+		subscriber.assertNoErrors();
+	}
+
+	@Test public void testBuffer() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>(0);
+		events.lift(new EventBackpressure(BackpressureStrategy.BUFFER, 2)).subscribe(subscriber);
+
+		events.onNext(added("a", 1));
+		events.onNext(added("a", 2));
+		events.onNext(added("a", 3));
+		events.onCompleted();
+		subscriber.assertNotCompleted();
+
+		// The oldest event was evicted, and completion waits for the pending events to be delivered
+		subscriber.requestMore(Long.MAX_VALUE);
+		subscriber.assertValues(added("a", 2), added("a", 3));
+		subscriber.assertCompleted();
+	}
+
+	@Test public void testDrop() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>(1);
+		events.lift(new EventBackpressure(BackpressureStrategy.DROP, 16)).subscribe(subscriber);
+
+		events.onNext(added("a", 1));
+		events.onNext(added("b", 1));
+		subscriber.requestMore(1);
+		events.onNext(added("c", 1));
+
+		subscriber.assertValues(added("a", 1), added("c", 1));
+	}
+
+	@Test public void testErrorsAreDeliveredRightAway() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>(0);
+		events.lift(EventBackpressure.withDefaults()).subscribe(subscriber);
+
+		events.onNext(added("a", 1));
+		events.onError(new IllegalStateException());
+		subscriber.assertError(IllegalStateException.class);
+		subscriber.assertNoValues();
+	}
+
+	@Test public void testConcurrentProducers() throws Exception {
+		final PublishSubject<BonjourEvent> events = PublishSubject.create();
+		final TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		events.lift(new EventBackpressure(BackpressureStrategy.BUFFER, 1024))
+				.observeOn(Schedulers.computation())
+				.subscribe(subscriber);
+
+		// Callback threads emit events concurrently, which isn't serialized upstream
+		int producers = 4;
+		final int perProducer = 200;
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			new Thread() {
+				@Override public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						events.onNext(added("p" + producer, i));
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		events.onCompleted();
+		subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		subscriber.assertNoErrors();
+		subscriber.assertValueCount(producers * perProducer);
+	}
+}
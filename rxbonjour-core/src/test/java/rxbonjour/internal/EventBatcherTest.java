@@ -0,0 +1,95 @@
+package rxbonjour.internal;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class EventBatcherTest {
+
+	private static BonjourService service(String name, int port) {
+		return new BonjourService.Builder(name, "_http._tcp.local.").setPort(port).build();
+	}
+
+	private static BonjourEvent added(BonjourService service) {
+		return new BonjourEvent(BonjourEvent.Type.ADDED, service);
+	}
+
+	private static BonjourEvent removed(BonjourService service) {
+		return new BonjourEvent(BonjourEvent.Type.REMOVED, service);
+	}
+
+	@Test public void testTimeAndSizeWindows() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<List<BonjourEvent>> subscriber = new TestSubscriber<>();
+		events.compose(new EventBatcher(100, TimeUnit.MILLISECONDS, 3, false, scheduler)).subscribe(subscriber);
+
+		events.onNext(added(service("a", 80)));
+		events.onNext(added(service("b", 80)));
+		subscriber.assertNoValues();
+		scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+		subscriber.assertValue(Arrays.asList(added(service("a", 80)), added(service("b", 80))));
+
+		// Empty windows are skipped, while full batches are emitted early
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		subscriber.assertValueCount(1);
+		events.onNext(added(service("c", 80)));
+		events.onNext(added(service("c", 80)));
+		events.onNext(removed(service("c", 80)));
+		subscriber.assertValueCount(2);
+		assertEquals(3, subscriber.getOnNextEvents().get(1).size());
+	}
+
+	@Test public void testNetChanges() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		TestSubscriber<List<BonjourEvent>> subscriber = new TestSubscriber<>();
+		events.compose(new EventBatcher(100, TimeUnit.MILLISECONDS, 100, true, scheduler)).subscribe(subscriber);
+
+		// Transient services cancel out, duplicates are suppressed and updates collapse into additions
+		events.onNext(added(service("known", 80)));
+		events.onNext(added(service("transient", 80)));
+		events.onNext(added(service("known", 80)));
+		events.onNext(removed(service("transient", 80)));
+		events.onNext(added(service("known", 81)));
+		scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+		subscriber.assertValue(Collections.singletonList(added(service("known", 81))));
+
+		// Multiple updates are merged, and updates reverting each other cancel out
+		events.onNext(added(service("known", 82)));
+		events.onNext(added(service("known", 83)));
+		scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+		events.onNext(added(service("known", 84)));
+		events.onNext(added(service("known", 83)));
+		scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+		subscriber.assertValueCount(2);
+		BonjourEvent update = subscriber.getOnNextEvents().get(1).get(0);
+		assertEquals(new BonjourEvent(service("known", 81), service("known", 83), EnumSet.of(BonjourEvent.Change.PORT)), update);
+	}
+
+	@Test public void testCollapseKeepsRemovalBeforeReAddition() throws Exception {
+		BonjourService known = service("known", 80);
+		List<BonjourEvent> collapsed = EventBatcher.collapse(Arrays.asList(
+				removed(known),
+				added(service("other", 80)),
+				added(known),
+				new BonjourEvent(known, service("known", 81), EnumSet.of(BonjourEvent.Change.PORT))));
+
+		assertEquals(Arrays.asList(removed(known), added(service("known", 81)), added(service("other", 80))), collapsed);
+		assertTrue(EventBatcher.collapse(Arrays.asList(added(known), removed(known))).isEmpty());
+	}
+}
@@ -0,0 +1,101 @@
+package rxbonjour.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveEventStreamTest {
+
+	private PublishSubject<BonjourEvent> source;
+	private AtomicInteger idle;
+	private LiveEventStream stream;
+
+	@Before public void setUp() {
+		source = PublishSubject.create();
+		idle = new AtomicInteger();
+		stream = new LiveEventStream(source, new Action0() {
+			@Override public void call() {
+				idle.incrementAndGet();
+			}
+		});
+	}
+
+	@Test public void testSourceIsShared() {
+		TestSubscriber<BonjourEvent> subscriber1 = new TestSubscriber<>();
+		TestSubscriber<BonjourEvent> subscriber2 = new TestSubscriber<>();
+
+		stream.observe().subscribe(subscriber1);
+		stream.observe().subscribe(subscriber2);
+		assertTrue(source.hasObservers());
+		assertEquals(2, stream.getSubscriberCount());
+
+		source.onNext(event(BonjourEvent.Type.ADDED, "Service"));
+		subscriber1.assertValueCount(1);
+		subscriber2.assertValueCount(1);
+
+		subscriber1.unsubscribe();
+		assertTrue(source.hasObservers());
+		subscriber2.unsubscribe();
+		assertFalse(source.hasObservers());
+		assertEquals(1, idle.get());
+	}
+
+	@Test public void testLiveServicesAreReplayed() {
+		TestSubscriber<BonjourEvent> subscriber1 = new TestSubscriber<>();
+		stream.observe().subscribe(subscriber1);
+
+		source.onNext(event(BonjourEvent.Type.ADDED, "Service 1"));
+		source.onNext(event(BonjourEvent.Type.ADDED, "Service 2"));
+		source.onNext(event(BonjourEvent.Type.ADDED, "Service 1"));
+		source.onNext(event(BonjourEvent.Type.REMOVED, "Service 2"));
+
+		TestSubscriber<BonjourEvent> subscriber2 = new TestSubscriber<>();
+		stream.observe().subscribe(subscriber2);
+		subscriber2.assertValueCount(1);
+		assertEquals("Service 1", subscriber2.getOnNextEvents().get(0).getService().getName());
+		assertEquals(BonjourEvent.Type.ADDED, subscriber2.getOnNextEvents().get(0).getType());
+	}
+
+	@Test public void testReconnectAfterIdle() {
+		TestSubscriber<BonjourEvent> subscriber1 = new TestSubscriber<>();
+		stream.observe().subscribe(subscriber1);
+		source.onNext(event(BonjourEvent.Type.ADDED, "Service"));
+		subscriber1.unsubscribe();
+
+		// The live services of the previous connection are forgotten
+		TestSubscriber<BonjourEvent> subscriber2 = new TestSubscriber<>();
+		stream.observe().subscribe(subscriber2);
+		subscriber2.assertNoValues();
+		assertTrue(source.hasObservers());
+	}
+
+	@Test public void testErrorTerminatesAllSubscribers() {
+		TestSubscriber<BonjourEvent> subscriber1 = new TestSubscriber<>();
+		TestSubscriber<BonjourEvent> subscriber2 = new TestSubscriber<>();
+		stream.observe().subscribe(subscriber1);
+		stream.observe().subscribe(subscriber2);
+
+		source.onError(new IllegalStateException());
+		subscriber1.assertError(IllegalStateException.class);
+		subscriber2.assertError(IllegalStateException.class);
+		assertEquals(0, stream.getSubscriberCount());
+		assertEquals(1, idle.get());
+	}
+
+	/* Begin private */
+
+	private static BonjourEvent event(BonjourEvent.Type type, String name) {
+		return new BonjourEvent(type, new BonjourService.Builder(name, "_http._tcp.local.").build());
+	}
+}
@@ -0,0 +1,189 @@
+package rxbonjour.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class OverflowQueueTest {
+
+	@Test public void testGrow() throws Exception {
+		int capacity = ResolveScheduler.DEFAULT_CAPACITY;
+		OverflowQueue<Integer> queue = new OverflowQueue<>(capacity, OverflowPolicy.GROW);
+
+		// Items beyond the capacity spill over instead of being dropped
+		for (int i = 0; i < capacity * 2; i++) {
+			assertNull(queue.offer(i, i));
+		}
+		assertEquals(capacity * 2, queue.depth());
+		assertEquals(0, queue.droppedCount());
+
+		// Items added while older ones are still spilled over queue up behind them, even if the ring buffer has room
+		for (int i = 0; i < capacity / 2; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		for (int i = capacity * 2; i < capacity * 3; i++) {
+			queue.offer(i, i);
+		}
+		for (int i = capacity / 2; i < capacity * 3; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+		assertEquals(0, queue.depth());
+	}
+
+	@Test public void testDropOldest() throws Exception {
+		OverflowQueue<String> queue = new OverflowQueue<>(4, OverflowPolicy.DROP_OLDEST);
+
+		for (int i = 0; i < 4; i++) {
+			assertNull(queue.offer(String.valueOf(i), null));
+		}
+		for (int i = 4; i < 10; i++) {
+			assertEquals(String.valueOf(i - 4), queue.offer(String.valueOf(i), null));
+		}
+		assertEquals(4, queue.depth());
+		assertEquals(6, queue.droppedCount());
+
+		assertEquals(Arrays.asList("6", "7", "8", "9"), drain(queue));
+	}
+
+	@Test public void testCoalesce() throws Exception {
+		OverflowQueue<String> queue = new OverflowQueue<>(4, OverflowPolicy.COALESCE);
+
+		queue.offer("a1", "a");
+		queue.offer("b1", "b");
+		queue.offer("b2", "b");
+		queue.offer("c1", "c");
+		queue.offer("b3", "b");
+		assertEquals(3, queue.depth());
+		assertEquals(2, queue.coalescedCount());
+		assertEquals(Arrays.asList("a1", "b3", "c1"), drain(queue));
+
+		// Once taken, an item is queued anew
+		queue.offer("b4", "b");
+		assertEquals(Arrays.asList("b4"), drain(queue));
+		assertEquals(2, queue.coalescedCount());
+	}
+
+	@Test public void testCounters() throws Exception {
+		OverflowQueue<String> queue = new OverflowQueue<>(2, OverflowPolicy.GROW);
+
+		queue.offer("1", null);
+		queue.offer("2", null);
+		queue.offer("3", null);
+		queue.poll();
+		queue.offer("4", null);
+		assertEquals(3, queue.maxDepth());
+
+		Thread.sleep(10);
+		drain(queue);
+		assertEquals(0, queue.depth());
+		assertEquals(3, queue.maxDepth());
+		assertEquals(4, queue.dequeuedCount());
+		assertTrue(queue.totalWaitNanos() > 0);
+	}
+
+	@Test public void testClear() throws Exception {
+		OverflowQueue<String> queue = new OverflowQueue<>(2, OverflowPolicy.COALESCE);
+
+		queue.offer("a1", "a");
+		queue.offer("b1", "b");
+		queue.offer("c1", "c");
+		queue.clear();
+		assertEquals(0, queue.depth());
+		assertNull(queue.poll());
+
+		// Cleared items aren't coalesced with new ones anymore
+		queue.offer("a2", "a");
+		assertEquals(Arrays.asList("a2"), drain(queue));
+	}
+
+	@Test public void testConcurrentProducers() throws Exception {
+		final int producers = 4;
+		final int itemsPerProducer = 10000;
+		final OverflowQueue<Integer> queue = new OverflowQueue<>(8, OverflowPolicy.GROW);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < producers; t++) {
+			final int offset = t * itemsPerProducer;
+			Thread thread = new Thread(new Runnable() {
+				@Override public void run() {
+					for (int i = 0; i < itemsPerProducer; i++) {
+						queue.offer(offset + i, null);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		// Consume while the producers are still adding items, overflowing the ring buffer time and again
+		boolean[] seen = new boolean[producers * itemsPerProducer];
+		int count = 0;
+		while (count < seen.length) {
+			Integer item = queue.poll();
+			if (item == null) {
+				Thread.yield();
+				continue;
+			}
+			assertTrue("Item taken twice: " + item, !seen[item]);
+			seen[item] = true;
+			count++;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(queue.poll());
+		assertEquals(0, queue.depth());
+		assertEquals(0, queue.droppedCount());
+		assertEquals(producers * itemsPerProducer, queue.dequeuedCount());
+	}
+
+	@Test public void testConcurrentEviction() throws Exception {
+		final int producers = 4;
+		final int itemsPerProducer = 10000;
+		final OverflowQueue<Integer> queue = new OverflowQueue<>(8, OverflowPolicy.DROP_OLDEST);
+		final AtomicBoolean failed = new AtomicBoolean();
+
+		// Producers evicting the oldest items contend with each other for them
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < producers; t++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override public void run() {
+					for (int i = 0; i < itemsPerProducer; i++) {
+						if (queue.depth() > 8 + producers) failed.set(true);
+						queue.offer(i, null);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		int remaining = drain(queue).size();
+		assertTrue(!failed.get());
+		assertEquals(8, remaining);
+		assertEquals(producers * itemsPerProducer, queue.droppedCount() + remaining);
+	}
+
+	/* Begin private */
+
+	private static <T> List<T> drain(OverflowQueue<T> queue) {
+		List<T> items = new ArrayList<>();
+		T item;
+		while ((item = queue.poll()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+}
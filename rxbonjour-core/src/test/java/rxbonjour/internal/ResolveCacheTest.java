@@ -0,0 +1,73 @@
+package rxbonjour.internal;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import rxbonjour.model.BonjourService;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class ResolveCacheTest {
+
+	private static BonjourService service(String name, String type) {
+		return new BonjourService.Builder(name, type).setPort(80).build();
+	}
+
+	@Test public void testTypeNormalization() throws Exception {
+		ResolveCache cache = new ResolveCache(8);
+		cache.put(service("printer", "_ipp._tcp.local."), 1000, 0);
+		cache.put(service("camera", "_rtsp._tcp."), 1000, 0);
+
+		assertEquals(1, cache.getServices("_ipp._tcp", 0).size());
+		assertEquals(1, cache.getServices("_ipp._tcp.local.", 0).size());
+		assertEquals(1, cache.getServices("_rtsp._tcp.local.", 0).size());
+
+		cache.remove("printer", "_ipp._tcp.");
+		assertEquals(0, cache.getServices("_ipp._tcp", 0).size());
+	}
+
+	@Test public void testExpiry() throws Exception {
+		ResolveCache cache = new ResolveCache(8);
+		cache.put(service("short", "_http._tcp"), 1000, 0);
+		cache.put(service("long", "_http._tcp"), 5000, 0);
+
+		assertEquals(2, cache.getServices("_http._tcp", 999).size());
+		List<BonjourService> services = cache.getServices("_http._tcp", 1000);
+		assertEquals(1, services.size());
+		assertEquals("long", services.get(0).getName());
+		assertEquals(1, cache.size());
+	}
+
+	@Test public void testServiceLookup() throws Exception {
+		ResolveCache cache = new ResolveCache(8);
+		cache.put(service("printer", "_ipp._tcp.local."), 1000, 0);
+
+		assertEquals("printer", cache.getService("printer", "_ipp._tcp", 999).getName());
+		assertNull(cache.getService("scanner", "_ipp._tcp", 999));
+		assertNull(cache.getService("printer", "_ipp._tcp", 1000));
+		assertEquals(0, cache.size());
+	}
+
+	@Test public void testLruEviction() throws Exception {
+		ResolveCache cache = new ResolveCache(2);
+		cache.put(service("a", "_http._tcp"), 1000, 0);
+		cache.put(service("b", "_http._tcp"), 1000, 0);
+
+		// Replacing "a" makes "b" the least recently used entry
+		cache.put(service("a", "_http._tcp"), 1000, 0);
+		cache.put(service("c", "_http._tcp"), 1000, 0);
+
+		List<BonjourService> services = cache.getServices("_http._tcp", 0);
+		assertEquals(2, services.size());
+		assertEquals("a", services.get(0).getName());
+		assertEquals("c", services.get(1).getName());
+
+		cache.setMaxSize(1);
+		assertEquals(1, cache.size());
+		cache.setMaxSize(0);
+		cache.put(service("d", "_http._tcp"), 1000, 0);
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,121 @@
+package rxbonjour.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ResolveSchedulerTest {
+
+	@Test public void testSlotLimit() throws Exception {
+		final List<ResolveScheduler<String>.Slot> inFlight = new ArrayList<>();
+		ResolveScheduler<String> scheduler = new ResolveScheduler<String>(2) {
+			@Override public void onNext(Slot slot, String item) {
+				inFlight.add(slot);
+			}
+		};
+
+		scheduler.add("1");
+		scheduler.add("2");
+		scheduler.add("3");
+		assertEquals(2, inFlight.size());
+
+		// Completing one item frees up its slot for the next one
+		inFlight.get(0).complete();
+		assertEquals(3, inFlight.size());
+		assertEquals(inFlight.get(0).getIndex(), inFlight.get(2).getIndex());
+		scheduler.quit();
+	}
+
+	@Test public void testSynchronousCompletion() throws Exception {
+		final AtomicInteger counter = new AtomicInteger(0);
+		ResolveScheduler<String> scheduler = new ResolveScheduler<String>(1) {
+			@Override public void onNext(Slot slot, String item) {
+				counter.incrementAndGet();
+				slot.complete();
+			}
+		};
+
+		for (int i = 0; i < 1000; i++) {
+			scheduler.add(String.valueOf(i));
+		}
+		scheduler.quit();
+
+		assertEquals(1000, counter.get());
+	}
+
+	@Test public void testCoalesceKeepsDistinctItems() throws Exception {
+		final List<ResolveScheduler<String>.Slot> inFlight = new ArrayList<>();
+		final List<String> dispatched = new ArrayList<>();
+		ResolveScheduler<String> scheduler = new ResolveScheduler<String>(4, 64, OverflowPolicy.COALESCE) {
+			@Override public void onNext(Slot slot, String item) {
+				inFlight.add(slot);
+				dispatched.add(item);
+			}
+		};
+
+		// More distinct items than the scheduler holds, along with duplicates of waiting ones
+		for (int i = 0; i < 200; i++) {
+			scheduler.add(String.valueOf(i));
+		}
+		scheduler.add("100");
+		scheduler.add("199");
+		assertEquals(196, scheduler.getQueueDepth());
+		assertEquals(0, scheduler.getDroppedCount());
+
+		for (int i = 0; i < inFlight.size(); i++) {
+			inFlight.get(i).complete();
+		}
+		scheduler.quit();
+
+		assertEquals(200, dispatched.size());
+		for (int i = 0; i < 200; i++) {
+			assertEquals(String.valueOf(i), dispatched.get(i));
+		}
+	}
+
+	@Test public void testDroppedItemsAreReported() throws Exception {
+		final List<String> dropped = new ArrayList<>();
+		ResolveScheduler<String> scheduler = new ResolveScheduler<String>(1, 4, OverflowPolicy.DROP_OLDEST) {
+			@Override public void onNext(Slot slot, String item) {
+				// Keep the only slot busy
+			}
+
+			@Override protected void onDropped(String item) {
+				dropped.add(item);
+			}
+		};
+
+		for (int i = 0; i < 7; i++) {
+			scheduler.add(String.valueOf(i));
+		}
+		scheduler.quit();
+
+		assertEquals(2, scheduler.getDroppedCount());
+		assertEquals(Arrays.asList("1", "2"), dropped);
+	}
+
+	@Test public void testRetry() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger(0);
+		ResolveScheduler<String> scheduler = new ResolveScheduler<String>(1) {
+			@Override public void onNext(Slot slot, String item) {
+				// Fail the first two attempts
+				if (attempts.incrementAndGet() < 3) {
+					slot.retry();
+				} else {
+					slot.complete();
+				}
+			}
+		};
+
+		scheduler.add("1");
+		Thread.sleep(500);
+		scheduler.quit();
+
+		assertEquals(3, attempts.get());
+	}
+}
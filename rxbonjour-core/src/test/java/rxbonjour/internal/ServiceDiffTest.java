@@ -0,0 +1,101 @@
+package rxbonjour.internal;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.EnumSet;
+import java.util.List;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+
+public class ServiceDiffTest {
+
+	private static BonjourService service(String host, int port, String txtValue) throws Exception {
+		return new BonjourService.Builder("printer", "_ipp._tcp.local.")
+				.addAddress(InetAddress.getByName(host))
+				.setPort(port)
+				.addTxtRecord("note", txtValue)
+				.build();
+	}
+
+	private static BonjourEvent added(BonjourService service) {
+		return new BonjourEvent(BonjourEvent.Type.ADDED, service);
+	}
+
+	@Test public void testEqualityCoversTxtRecords() throws Exception {
+		assertEquals(service("10.0.0.1", 631, "Office"), service("10.0.0.1", 631, "Office"));
+		assertEquals(service("10.0.0.1", 631, "Office").hashCode(), service("10.0.0.1", 631, "Office").hashCode());
+		assertFalse(service("10.0.0.1", 631, "Office").equals(service("10.0.0.1", 631, "Lobby")));
+	}
+
+	@Test public void testDiff() throws Exception {
+		BonjourService service = service("10.0.0.1", 631, "Office");
+
+		assertEquals(EnumSet.noneOf(BonjourEvent.Change.class), ServiceDiff.diff(service, service("10.0.0.1", 631, "Office")));
+		assertEquals(EnumSet.of(BonjourEvent.Change.ADDRESS), ServiceDiff.diff(service, service("10.0.0.2", 631, "Office")));
+		assertEquals(EnumSet.of(BonjourEvent.Change.PORT, BonjourEvent.Change.TXT_RECORDS), ServiceDiff.diff(service, service("10.0.0.1", 632, "Lobby")));
+	}
+
+	@Test public void testSuppressesIdenticalResolves() throws Exception {
+		BonjourService first = service("10.0.0.1", 631, "Office");
+		BonjourService moved = service("10.0.0.1", 632, "Office");
+
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		Observable.just(added(first), added(service("10.0.0.1", 631, "Office")), added(moved), added(moved))
+				.compose(ServiceDiff.get())
+				.subscribe(subscriber);
+
+		List<BonjourEvent> events = subscriber.getOnNextEvents();
+		assertEquals(2, events.size());
+		assertEquals(added(first), events.get(0));
+
+		BonjourEvent update = events.get(1);
+		assertEquals(BonjourEvent.Type.UPDATED, update.getType());
+		assertEquals(first, update.getPreviousService());
+		assertSame(moved, update.getService());
+		assertEquals(EnumSet.of(BonjourEvent.Change.PORT), update.getChanges());
+		subscriber.assertCompleted();
+	}
+
+	@Test public void testRemovalForgetsService() throws Exception {
+		BonjourService service = service("10.0.0.1", 631, "Office");
+
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		Observable.just(added(service), new BonjourEvent(BonjourEvent.Type.REMOVED, service), added(service))
+				.compose(ServiceDiff.get())
+				.subscribe(subscriber);
+
+		subscriber.assertValues(added(service), new BonjourEvent(BonjourEvent.Type.REMOVED, service), added(service));
+	}
+
+	@Test public void testStatePerSubscription() throws Exception {
+		Observable<BonjourEvent> events = Observable.just(added(service("10.0.0.1", 631, "Office"))).compose(ServiceDiff.get());
+
+		TestSubscriber<BonjourEvent> first = new TestSubscriber<>();
+		TestSubscriber<BonjourEvent> second = new TestSubscriber<>();
+		events.subscribe(first);
+		events.subscribe(second);
+
+		first.assertValueCount(1);
+		second.assertValueCount(1);
+	}
+
+	@Test public void testRequestsReplacementForSuppressedEvents() throws Exception {
+		BonjourService service = service("10.0.0.1", 631, "Office");
+
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>(2);
+		Observable.just(added(service), added(service), added(service), added(service("10.0.0.2", 631, "Office")))
+				.compose(ServiceDiff.get())
+				.subscribe(subscriber);
+
+		subscriber.assertValueCount(2);
+		assertEquals(BonjourEvent.Type.UPDATED, subscriber.getOnNextEvents().get(1).getType());
+	}
+}
@@ -0,0 +1,197 @@
+package rxbonjour.jmdns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSIncoming;
+import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.DNSTaskStarter;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.constants.DNSConstants;
+import javax.jmdns.impl.constants.DNSRecordClass;
+import javax.jmdns.impl.constants.DNSRecordType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchingTaskStarterTest {
+
+	private JmDNSImpl jmdns;
+	private DNSTaskStarter delegate;
+	private BatchingTaskStarter starter;
+
+	@Before public void setUp() throws Exception {
+		DNSCache cache = new DNSCache();
+		cache.addDNSEntry(new DNSRecord.Pointer("_http._tcp.local.", DNSRecordClass.CLASS_IN, false, DNSConstants.DNS_TTL, "Service._http._tcp.local."));
+
+		jmdns = mock(JmDNSImpl.class);
+		when(jmdns.getCache()).thenReturn(cache);
+		when(jmdns.isAnnounced()).thenReturn(true);
+		delegate = mock(DNSTaskStarter.class);
+		starter = new BatchingTaskStarter(jmdns, delegate);
+	}
+
+	@After public void tearDown() {
+		starter.cancelTimer();
+	}
+
+	@Test public void testTypesShareQueries() throws Exception {
+		starter.startServiceResolver("_http._tcp.local.");
+		starter.startServiceResolver("_ssh._tcp.local.");
+		starter.startServiceResolver("_http._tcp.local.");
+
+		// JmDNS sends each query three times
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(jmdns, timeout(2000).times(3)).send(captor.capture());
+		verify(delegate, never()).startServiceResolver("_http._tcp.local.");
+
+		DNSOutgoing out = captor.getAllValues().get(0);
+		List<String> questions = new ArrayList<>();
+		for (DNSQuestion question : out.getQuestions()) {
+			questions.add(question.getName());
+		}
+		assertEquals(2, questions.size());
+		assertEquals("_http._tcp.local.", questions.get(0));
+		assertEquals("_ssh._tcp.local.", questions.get(1));
+
+		// Known services are listed as known answers
+		assertEquals(1, out.getNumberOfAnswers());
+		assertEquals("Service._http._tcp.local.", out.getAnswers().iterator().next().getServiceInfo().getQualifiedName());
+	}
+
+	@Test public void testTypesAfterFirstPacketStartNewQuery() throws Exception {
+		starter.startServiceResolver("_http._tcp.local.");
+		verify(jmdns, timeout(2000)).send(any(DNSOutgoing.class));
+
+		starter.startServiceResolver("_ssh._tcp.local.");
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(jmdns, timeout(2000).times(6)).send(captor.capture());
+
+		int ssh = 0;
+		for (DNSOutgoing out : captor.getAllValues()) {
+			assertEquals(1, out.getNumberOfQuestions());
+			if (out.getQuestions().iterator().next().getName().startsWith("_ssh")) ssh++;
+		}
+		assertEquals(3, ssh);
+	}
+
+	@Test public void testOtherInstancesUseDefaultStarter() throws Exception {
+		BatchingTaskStarter.install();
+
+		// Instances created by the application itself don't get a batching starter
+		DNSTaskStarter other = DNSTaskStarter.Factory.classDelegate().newDNSTaskStarter(jmdns);
+		assertFalse(other instanceof BatchingTaskStarter);
+		other.cancelTimer();
+		other.cancelStateTimer();
+	}
+
+	@Test public void testOtherTasksAreDelegated() throws Exception {
+		starter.startProber();
+		starter.startTypeResolver();
+
+		verify(delegate).startProber();
+		verify(delegate).startTypeResolver();
+	}
+
+	@Test public void testTypesQueriedByOthersAreLeftOut() throws Exception {
+		starter.startResponder(query(ptrQuestion("_http._tcp.local.")), InetAddress.getByName("192.168.0.20"), DNSConstants.MDNS_PORT);
+		starter.startServiceResolver("_http._tcp.local.");
+		starter.startServiceResolver("_ssh._tcp.local.");
+
+		// The query of the other host has the responders answer the type for everyone, so neither it nor its known answers are sent
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(jmdns, timeout(2000)).send(captor.capture());
+		DNSOutgoing out = captor.getValue();
+		assertEquals(1, out.getNumberOfQuestions());
+		assertEquals("_ssh._tcp.local.", out.getQuestions().iterator().next().getName());
+		assertEquals(0, out.getNumberOfAnswers());
+	}
+
+	@Test public void testQuestionsAskedByOthersExpire() throws Exception {
+		long now = System.currentTimeMillis();
+		DNSQuestion question = ptrQuestion("_http._tcp.local.");
+		starter.rememberQuestions(query(question), InetAddress.getByName("192.168.0.20"), DNSConstants.MDNS_PORT, now);
+
+		assertTrue(starter.isAskedByOthers(ptrQuestion("_HTTP._tcp.local."), now + BatchingTaskStarter.DUPLICATE_QUESTION_MILLIS - 1));
+		assertFalse(starter.isAskedByOthers(question, now + BatchingTaskStarter.DUPLICATE_QUESTION_MILLIS));
+		assertFalse(starter.isAskedByOthers(DNSQuestion.newQuestion("_http._tcp.local.", DNSRecordType.TYPE_SRV, DNSRecordClass.CLASS_IN, false), now));
+	}
+
+	@Test public void testQuestionsAreOnlyRememberedIfRespondersAnswerThemForEveryone() throws Exception {
+		long now = System.currentTimeMillis();
+		InetAddress other = InetAddress.getByName("192.168.0.20");
+		InetAddress own = InetAddress.getByName("192.168.0.10");
+		when(jmdns.getInetAddress()).thenReturn(own);
+
+		// Queries of the instance itself, legacy unicast queries and questions asking for unicast responses
+		starter.rememberQuestions(query(ptrQuestion("_own._tcp.local.")), own, DNSConstants.MDNS_PORT, now);
+		starter.rememberQuestions(query(ptrQuestion("_legacy._tcp.local.")), other, 12345, now);
+		starter.rememberQuestions(unicastQuery(ptrQuestion("_qu._tcp.local.")), other, DNSConstants.MDNS_PORT, now);
+		assertFalse(starter.isAskedByOthers(ptrQuestion("_own._tcp.local."), now));
+		assertFalse(starter.isAskedByOthers(ptrQuestion("_legacy._tcp.local."), now));
+		assertFalse(starter.isAskedByOthers(ptrQuestion("_qu._tcp.local."), now));
+
+		// Known answers missing from the cache would suppress answers the instance needs
+		DNSOutgoing unknown = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+		unknown.addQuestion(ptrQuestion("_http._tcp.local."));
+		unknown.addAnswer(new DNSRecord.Pointer("_http._tcp.local.", DNSRecordClass.CLASS_IN, false, DNSConstants.DNS_TTL, "Other._http._tcp.local."), 0);
+		starter.rememberQuestions(incoming(unknown), other, DNSConstants.MDNS_PORT, now);
+		assertFalse(starter.isAskedByOthers(ptrQuestion("_http._tcp.local."), now));
+
+		DNSOutgoing known = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+		known.addQuestion(ptrQuestion("_http._tcp.local."));
+		known.addAnswer(new DNSRecord.Pointer("_http._tcp.local.", DNSRecordClass.CLASS_IN, false, DNSConstants.DNS_TTL, "Service._http._tcp.local."), 0);
+		starter.rememberQuestions(incoming(known), other, DNSConstants.MDNS_PORT, now);
+		assertTrue(starter.isAskedByOthers(ptrQuestion("_http._tcp.local."), now));
+	}
+
+	/* Begin private */
+
+	static DNSQuestion ptrQuestion(String name) {
+		return DNSQuestion.newQuestion(name, DNSRecordType.TYPE_PTR, DNSRecordClass.CLASS_IN, DNSRecordClass.NOT_UNIQUE);
+	}
+
+	/**
+	 * Creates an incoming query for the provided question, as received from another host.
+	 */
+	static DNSIncoming query(DNSQuestion question) throws Exception {
+		DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+		out.addQuestion(question);
+		return incoming(out);
+	}
+
+	/**
+	 * Creates an incoming query for the provided question, asking for unicast responses.
+	 * JmDNS doesn't write the unicast-response bit of questions, so it is set on the sent data.
+	 */
+	private static DNSIncoming unicastQuery(DNSQuestion question) throws Exception {
+		DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+		out.addQuestion(question);
+		byte[] data = out.data();
+		// The question class is written last
+		data[data.length - 2] |= (byte) 0x80;
+		return new DNSIncoming(new DatagramPacket(data, data.length, InetAddress.getByName("224.0.0.251"), DNSConstants.MDNS_PORT));
+	}
+
+	private static DNSIncoming incoming(DNSOutgoing out) throws Exception {
+		byte[] data = out.data();
+		return new DNSIncoming(new DatagramPacket(data, data.length, InetAddress.getByName("224.0.0.251"), DNSConstants.MDNS_PORT));
+	}
+}
@@ -0,0 +1,140 @@
+package rxbonjour.jmdns;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.impl.DNSStatefulObject;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rxbonjour.exc.BroadcastFailed;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class JmDNSBroadcastTest {
+
+	private TestJmDNS jmdns;
+	private JmDNSManager manager;
+	private JmDNSDiscoveryTest.TestEnvironment environment;
+
+	abstract class TestJmDNS extends JmDNS implements DNSStatefulObject {
+	}
+
+	@Before public void setUp() throws Exception {
+		jmdns = mock(TestJmDNS.class);
+		environment = new JmDNSDiscoveryTest.TestEnvironment();
+		manager = new JmDNSManager(0, TimeUnit.MILLISECONDS, Schedulers.immediate()) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				return jmdns;
+			}
+		};
+	}
+
+	@Test public void testAddAndRemoveOneCycle() throws Exception {
+		JmDNSBroadcast broadcast = new JmDNSBroadcast(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		ArgumentCaptor<ServiceInfo> captor = ArgumentCaptor.forClass(ServiceInfo.class);
+
+		broadcast.start(service("Service", "_http._tcp.local.")).subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		subscriber.assertValueCount(1);
+		assertEquals(1, environment.multicastHolders.get());
+		verify(jmdns, times(1)).registerService(captor.capture());
+
+		subscriber.unsubscribe();
+		verify(jmdns, times(1)).unregisterService(captor.getValue());
+		verify(jmdns, times(1)).close();
+		assertEquals(0, environment.multicastHolders.get());
+	}
+
+	@Test public void testBatchCycle() throws Exception {
+		JmDNSBroadcast broadcast = new JmDNSBroadcast(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		ArgumentCaptor<ServiceInfo> captor = ArgumentCaptor.forClass(ServiceInfo.class);
+
+		List<BonjourService> services = Arrays.asList(
+				service("Service 1", "_http._tcp.local."),
+				service("Service 2", "_http._tcp.local."),
+				service("Service 3", "_ssh._tcp.local."));
+		broadcast.startBatch(services, Schedulers.immediate()).subscribe(subscriber);
+
+		// All services are registered through a single lease and multicast lock, and the batch stays active
+		subscriber.assertNoErrors();
+		subscriber.assertNotCompleted();
+		subscriber.assertValueCount(3);
+		assertEquals(services.get(2), subscriber.getOnNextEvents().get(2).getService());
+		assertEquals(1, environment.multicastHolders.get());
+		assertEquals(1, manager.getLeaseCount(InetAddress.getLoopbackAddress()));
+		verify(jmdns, times(3)).registerService(captor.capture());
+
+		subscriber.unsubscribe();
+		for (ServiceInfo info : captor.getAllValues()) {
+			verify(jmdns, times(1)).unregisterService(info);
+		}
+		verify(jmdns, times(1)).close();
+		assertEquals(0, environment.multicastHolders.get());
+	}
+
+	@Test public void testBatchFailure() throws Exception {
+		doThrow(new IOException()).when(jmdns).registerService(argThat(new ServiceNamed("Service 2")));
+		JmDNSBroadcast broadcast = new JmDNSBroadcast(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+
+		List<BonjourService> services = Arrays.asList(
+				service("Service 1", "_http._tcp.local."),
+				service("Service 2", "_http._tcp.local."),
+				service("Service 3", "_http._tcp.local."));
+		broadcast.startBatch(services, Schedulers.immediate()).subscribe(subscriber);
+
+		// The registered service is unregistered again, and the remaining one isn't registered at all
+		subscriber.assertError(BroadcastFailed.class);
+		subscriber.assertValueCount(1);
+		verify(jmdns, times(2)).registerService(any(ServiceInfo.class));
+		verify(jmdns, times(1)).unregisterService(argThat(new ServiceNamed("Service 1")));
+		verify(jmdns, never()).unregisterService(argThat(new ServiceNamed("Service 3")));
+		verify(jmdns, times(1)).close();
+		assertEquals(0, environment.multicastHolders.get());
+	}
+
+	/* Begin private */
+
+	private static BonjourService service(String name, String type) {
+		return new BonjourService.Builder(name, type)
+				.setPort(80)
+				.addAddress(InetAddress.getLoopbackAddress())
+				.build();
+	}
+
+	private static final class ServiceNamed extends ArgumentMatcher<ServiceInfo> {
+
+		private final String name;
+
+		ServiceNamed(String name) {
+			this.name = name;
+		}
+
+		@Override public boolean matches(Object argument) {
+			return argument instanceof ServiceInfo && name.equals(((ServiceInfo) argument).getName());
+		}
+	}
+}
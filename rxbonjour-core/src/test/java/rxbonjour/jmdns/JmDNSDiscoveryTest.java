@@ -0,0 +1,545 @@
+package rxbonjour.jmdns;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.ServiceListener;
+import javax.jmdns.ServiceTypeListener;
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.DNSStatefulObject;
+import javax.jmdns.impl.DNSTaskStarter;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.constants.DNSConstants;
+import javax.jmdns.impl.constants.DNSRecordClass;
+import javax.jmdns.impl.constants.DNSRecordType;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subscriptions.Subscriptions;
+import rxbonjour.exc.DiscoveryFailed;
+import rxbonjour.internal.ResolveCache;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+import rxbonjour.model.BonjourTypeEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JmDNSDiscoveryTest {
+
+	private TestJmDNS jmdns;
+	private JmDNSManager manager;
+	private TestEnvironment environment;
+
+	abstract class TestJmDNS extends JmDNS implements DNSStatefulObject {
+	}
+
+	/**
+	 * Environment counting multicast acquisitions, and cleaning up on the calling thread
+	 */
+	static class TestEnvironment extends JmDNSEnvironment {
+		final AtomicInteger multicastHolders = new AtomicInteger();
+
+		@Override public InetAddress getAddress() throws IOException {
+			return InetAddress.getLoopbackAddress();
+		}
+
+		@Override public Subscription acquireMulticast() {
+			multicastHolders.incrementAndGet();
+			return Subscriptions.create(new Action0() {
+				@Override public void call() {
+					multicastHolders.decrementAndGet();
+				}
+			});
+		}
+
+		@Override public <T> Observable.Transformer<T, T> cleanupSchedulers() {
+			return new Observable.Transformer<T, T>() {
+				@Override public Observable<T> call(Observable<T> obs) {
+					return obs;
+				}
+			};
+		}
+	}
+
+	@Before public void setUp() throws Exception {
+		ResolveCache.get().clear();
+		jmdns = mock(TestJmDNS.class);
+		environment = new TestEnvironment();
+		manager = new JmDNSManager(0, TimeUnit.MILLISECONDS, Schedulers.immediate()) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				return jmdns;
+			}
+		};
+	}
+
+	@Test public void testAddAndRemoveOneCycle() throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+
+		discovery.start("_http._tcp").subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		assertEquals(1, environment.multicastHolders.get());
+		verify(jmdns, times(1)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		subscriber.unsubscribe();
+		verify(jmdns, times(1)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).close();
+		assertEquals(0, environment.multicastHolders.get());
+	}
+
+	@Test public void testAddAndRemoveTwoCycle() throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber1 = new TestSubscriber<>();
+		TestSubscriber<BonjourEvent> subscriber2 = new TestSubscriber<>();
+
+		discovery.start(Arrays.asList("_http._tcp", "_ssh._tcp")).subscribe(subscriber1);
+		discovery.start("_http._tcp").subscribe(subscriber2);
+
+		// Both subscribers share the listener for their common type
+		verify(jmdns, times(1)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).addServiceListener(eq("_ssh._tcp.local."), any(ServiceListener.class));
+		subscriber1.unsubscribe();
+		verify(jmdns, times(1)).removeServiceListener(eq("_ssh._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, never()).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, never()).close();
+		subscriber2.unsubscribe();
+		verify(jmdns, times(1)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).close();
+	}
+
+	@Test public void testSharedSessionsShareQueries() throws Exception {
+		JmDNSImpl impl = queryingJmDNS();
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager(impl));
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		discovery.start(Arrays.asList("_http._tcp", "_ssh._tcp")).subscribe(subscriber);
+
+		// The sessions of both types send their queries in the same packets
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(impl, timeout(2000).times(3)).send(captor.capture());
+		for (DNSOutgoing out : captor.getAllValues()) {
+			assertEquals(2, out.getNumberOfQuestions());
+		}
+		subscriber.unsubscribe();
+		BatchingTaskStarter.of(impl).cancelTimer();
+	}
+
+	@Test public void testSharedSessionReplaysLiveServices() throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber1 = new TestSubscriber<>();
+		TestSubscriber<BonjourEvent> subscriber2 = new TestSubscriber<>();
+		ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+
+		discovery.start("_http._tcp").subscribe(subscriber1);
+		verify(jmdns).addServiceListener(eq("_http._tcp.local."), captor.capture());
+		ServiceListener listener = captor.getValue();
+		listener.serviceResolved(serviceEvent(jmdns, "Service 1", "_http._tcp.local.", "10.0.0.1", 80));
+
+		// A late subscriber receives the live service first, then live events along with the first subscriber
+		discovery.start("_http._tcp").subscribe(subscriber2);
+		subscriber2.assertValueCount(1);
+		assertEquals("Service 1", subscriber2.getOnNextEvents().get(0).getService().getName());
+
+		listener.serviceResolved(serviceEvent(jmdns, "Service 2", "_http._tcp.local.", "10.0.0.2", 80));
+		listener.serviceRemoved(serviceEvent(jmdns, "Service 1", "_http._tcp.local.", "10.0.0.1", 80));
+		subscriber1.assertValueCount(3);
+		subscriber2.assertValueCount(3);
+		assertEquals(BonjourEvent.Type.REMOVED, subscriber2.getOnNextEvents().get(2).getType());
+		assertEquals(1, environment.multicastHolders.get());
+
+		// Removed services aren't replayed
+		TestSubscriber<BonjourEvent> subscriber3 = new TestSubscriber<>();
+		discovery.start("_http._tcp").subscribe(subscriber3);
+		subscriber3.assertValueCount(1);
+		assertEquals("Service 2", subscriber3.getOnNextEvents().get(0).getService().getName());
+
+		subscriber1.unsubscribe();
+		subscriber2.unsubscribe();
+		subscriber3.unsubscribe();
+		verify(jmdns, times(1)).removeServiceListener("_http._tcp.local.", listener);
+		assertEquals(0, environment.multicastHolders.get());
+	}
+
+	@Test public void testTypeDiscoveryCycle() throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourTypeEvent> subscriber = new TestSubscriber<>();
+
+		discovery.startTypeDiscovery().subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		verify(jmdns, times(1)).addServiceTypeListener(any(ServiceTypeListener.class));
+		subscriber.unsubscribe();
+		verify(jmdns, times(1)).removeServiceTypeListener(any(ServiceTypeListener.class));
+		verify(jmdns, times(1)).close();
+	}
+
+	@Test public void testAllInterfaces() throws Exception {
+		final InetAddress failing = InetAddress.getByName("10.0.0.2");
+		final TestJmDNS jmdns2 = mock(TestJmDNS.class);
+		JmDNSManager pool = new JmDNSManager(0, TimeUnit.MILLISECONDS, Schedulers.immediate()) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				if (address.equals(failing)) throw new IOException("no multicast");
+				return address.isLoopbackAddress() ? jmdns : jmdns2;
+			}
+		};
+		TestEnvironment multiEnvironment = new TestEnvironment() {
+			@Override public List<InetAddress> getAddresses() throws IOException {
+				return Arrays.asList(InetAddress.getLoopbackAddress(), failing, InetAddress.getByName("fe80::2"));
+			}
+		};
+		JmDNSDiscovery discovery = new JmDNSDiscovery(multiEnvironment, pool);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+
+		discovery.start("_http._tcp").subscribe(subscriber);
+
+		// Interfaces that can't be used are skipped
+		subscriber.assertNoErrors();
+		assertEquals(2, multiEnvironment.multicastHolders.get());
+		verify(jmdns, times(1)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns2, times(1)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		subscriber.unsubscribe();
+		verify(jmdns, times(1)).close();
+		verify(jmdns2, times(1)).close();
+		assertEquals(0, multiEnvironment.multicastHolders.get());
+	}
+
+	private static ServiceEvent serviceEvent(JmDNS jmdns, String name, String type, String host, int port) throws Exception {
+		ServiceInfo info = mock(ServiceInfo.class);
+		when(info.getTextBytes()).thenReturn(new byte[0]);
+		when(info.getInetAddresses()).thenReturn(new InetAddress[] { InetAddress.getByName(host) });
+		when(info.getPort()).thenReturn(port);
+
+		ServiceEvent event = mock(ServiceEvent.class);
+		when(event.getDNS()).thenReturn(jmdns);
+		when(event.getName()).thenReturn(name);
+		when(event.getType()).thenReturn(type);
+		when(event.getInfo()).thenReturn(info);
+		return event;
+	}
+
+	@Test public void testUnresolvedDiscovery() throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+
+		discovery.start(Collections.singletonList("_http._tcp"), false).subscribe(subscriber);
+		verify(jmdns).addServiceListener(eq("_http._tcp.local."), captor.capture());
+		captor.getValue().serviceAdded(serviceEvent(jmdns, "server", "_http._tcp.local.", "10.0.0.1", 80));
+
+		// Services are reported right away, without resolving them
+		verify(jmdns, never()).requestServiceInfo(anyString(), anyString());
+		BonjourService service = subscriber.getOnNextEvents().get(0).getService();
+		assertEquals("server", service.getName());
+		assertFalse(service.isResolved());
+		subscriber.unsubscribe();
+	}
+
+	@Test public void testCachedServicesAreNotResolvedAgain() throws Exception {
+		BonjourService cached = new BonjourService.Builder("server", "_http._tcp.local.")
+				.addAddress(InetAddress.getByName("10.0.0.1"))
+				.setPort(80)
+				.build();
+		ResolveCache.get().put(cached, ResolveCache.DEFAULT_TTL_MILLIS);
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+
+		discovery.start("_http._tcp").subscribe(subscriber);
+		verify(jmdns).addServiceListener(eq("_http._tcp.local."), captor.capture());
+		captor.getValue().serviceAdded(serviceEvent(jmdns, "server", "_http._tcp.local.", "10.0.0.1", 80));
+
+		// The cached service is reported once upon subscribing, and not resolved again once found
+		verify(jmdns, never()).requestServiceInfo(anyString(), anyString());
+		subscriber.assertValue(new BonjourEvent(BonjourEvent.Type.ADDED, cached));
+
+		// Services missing from the cache are resolved as usual
+		captor.getValue().serviceAdded(serviceEvent(jmdns, "other", "_http._tcp.local.", "10.0.0.2", 80));
+		verify(jmdns, times(1)).requestServiceInfo("_http._tcp.local.", "other");
+		subscriber.unsubscribe();
+	}
+
+	@Test public void testResolveOnDemand() throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager);
+		TestSubscriber<BonjourService> subscriber = new TestSubscriber<>();
+		ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+		BonjourService unresolved = new BonjourService.Builder("server", "_http._tcp.local.").setResolved(false).build();
+
+		discovery.resolve(unresolved).subscribe(subscriber);
+		verify(jmdns).addServiceListener(eq("_http._tcp.local."), captor.capture());
+		verify(jmdns).requestServiceInfo("_http._tcp.local.", "server");
+
+		// Other services of the type are ignored
+		captor.getValue().serviceResolved(serviceEvent(jmdns, "other", "_http._tcp.local.", "10.0.0.2", 80));
+		subscriber.assertNoValues();
+		captor.getValue().serviceResolved(serviceEvent(jmdns, "server", "_http._tcp.local.", "10.0.0.1", 8080));
+
+		subscriber.assertCompleted();
+		BonjourService service = subscriber.getOnNextEvents().get(0);
+		assertTrue(service.isResolved());
+		assertEquals(8080, service.getPort());
+		verify(jmdns, times(1)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		assertEquals(0, environment.multicastHolders.get());
+
+		// Resolved services are taken from the cache afterwards
+		subscriber = new TestSubscriber<>();
+		discovery.resolve(unresolved).subscribe(subscriber);
+		subscriber.assertValue(service);
+		verify(jmdns, times(1)).requestServiceInfo(anyString(), anyString());
+	}
+
+	@Test public void testRemainingTtl() throws Exception {
+		DNSRecord srv = new DNSRecord.Service("Service._http._tcp.local.", DNSRecordClass.CLASS_IN, true, 100, 0, 0, 80, "host.local.");
+		long now = System.currentTimeMillis();
+
+		// Records answered from JmDNS' cache only count with the lifetime they have left
+		assertEquals(100, JmDNSDiscovery.getRemainingTtl(srv, now), 1);
+		assertEquals(40, JmDNSDiscovery.getRemainingTtl(srv, now + 60000), 1);
+		assertEquals(0, JmDNSDiscovery.getRemainingTtl(srv, now + 100000));
+		assertEquals(0, JmDNSDiscovery.getRemainingTtl(srv, now + 200000));
+	}
+
+	@Test public void testMonitorQueriesStaleRecords() throws Exception {
+		DNSCache cache = new DNSCache();
+		DNSRecord srv = new DNSRecord.Service("Service._http._tcp.local.", DNSRecordClass.CLASS_IN, true, 100, 0, 0, 80, "host.local.");
+		cache.addDNSEntry(srv);
+		TestScheduler scheduler = new TestScheduler();
+		scheduler.advanceTimeTo(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		JmDNSImpl impl = mock(JmDNSImpl.class);
+		when(impl.getCache()).thenReturn(cache);
+
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		monitor(impl, scheduler, subscriber);
+
+		// Past 80% of their lifetime, the records are queried on the network
+		scheduler.advanceTimeBy(80, TimeUnit.SECONDS);
+		List<DNSQuestion> questions = refreshQuestions(impl);
+		assertEquals(4, questions.size());
+		assertEquals("Service._http._tcp.local.", questions.get(0).getName());
+		assertEquals(DNSRecordType.TYPE_SRV, questions.get(0).getRecordType());
+		assertEquals(DNSRecordType.TYPE_TXT, questions.get(1).getRecordType());
+		assertEquals("host.local.", questions.get(2).getName());
+		assertEquals(DNSRecordType.TYPE_A, questions.get(2).getRecordType());
+		assertEquals(DNSRecordType.TYPE_AAAA, questions.get(3).getRecordType());
+
+		// Once JmDNS has refreshed the records, the service is tracked again instead of expiring
+		cache.replaceDNSEntry(new DNSRecord.Service("Service._http._tcp.local.", DNSRecordClass.CLASS_IN, true, 1000, 0, 0, 80, "host.local."), srv);
+		scheduler.advanceTimeBy(200, TimeUnit.SECONDS);
+		assertEquals(4, refreshQuestions(impl).size());
+		assertEquals(1, subscriber.getOnNextEvents().size());
+		subscriber.unsubscribe();
+	}
+
+	@Test public void testMonitorTracksRemainingLifetimeOfRefreshedRecords() throws Exception {
+		DNSCache cache = new DNSCache();
+		DNSRecord srv = new DNSRecord.Service("Service._http._tcp.local.", DNSRecordClass.CLASS_IN, true, 100, 0, 0, 80, "host.local.");
+		cache.addDNSEntry(srv);
+		TestScheduler scheduler = new TestScheduler();
+		scheduler.advanceTimeTo(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		JmDNSImpl impl = mock(JmDNSImpl.class);
+		when(impl.getCache()).thenReturn(cache);
+
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		monitor(impl, scheduler, subscriber);
+		scheduler.advanceTimeBy(80, TimeUnit.SECONDS);
+		assertEquals(4, refreshQuestions(impl).size());
+
+		// Records refreshed 85 seconds ago with a TTL of 200 seconds are queried again past 80% of the 115 seconds left
+		cache.replaceDNSEntry(new DNSRecord.Service("Service._http._tcp.local.", DNSRecordClass.CLASS_IN, true, 200, 0, 0, 80, "host.local."), srv);
+		scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+		assertEquals(4, refreshQuestions(impl).size());
+		scheduler.advanceTimeBy(95, TimeUnit.SECONDS);
+		assertEquals(8, refreshQuestions(impl).size());
+		assertEquals(1, subscriber.getOnNextEvents().size());
+		subscriber.unsubscribe();
+	}
+
+	@Test public void testMonitorReportsExpiredRecords() throws Exception {
+		DNSCache cache = new DNSCache();
+		cache.addDNSEntry(new DNSRecord.Service("Service._http._tcp.local.", DNSRecordClass.CLASS_IN, true, 100, 0, 0, 80, "host.local."));
+		TestScheduler scheduler = new TestScheduler();
+		scheduler.advanceTimeTo(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		JmDNSImpl impl = mock(JmDNSImpl.class);
+		when(impl.getCache()).thenReturn(cache);
+
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		ServiceListener listener = monitor(impl, scheduler, subscriber);
+
+		scheduler.advanceTimeBy(100, TimeUnit.SECONDS);
+		assertEquals(16, refreshQuestions(impl).size());
+		assertEquals(2, subscriber.getOnNextEvents().size());
+		assertEquals(BonjourEvent.Type.REMOVED, subscriber.getOnNextEvents().get(1).getType());
+
+		// Once JmDNS drops the service as well, its removal isn't reported again
+		listener.serviceRemoved(serviceEvent(impl, "Service", "_http._tcp.local.", "10.0.0.1", 80));
+		assertEquals(2, subscriber.getOnNextEvents().size());
+		subscriber.unsubscribe();
+	}
+
+	@Test public void testMonitorSendsFewerQueriesThanDiscovery() throws Exception {
+		List<String> types = Collections.singletonList("_http._tcp");
+
+		// A regular discovery has JmDNS query the type for its listener, and again whenever it renews records of the type
+		JmDNSImpl discovering = queryingJmDNS();
+		BatchingTaskStarter starter = BatchingTaskStarter.of(discovering);
+		new JmDNSDiscovery(environment, manager(discovering)).start(types).subscribe(new TestSubscriber<BonjourEvent>());
+		verify(discovering, timeout(2000).times(3)).send(any(DNSOutgoing.class));
+		starter.startServiceResolver("_http._tcp.local.");
+		verify(discovering, timeout(2000).times(6)).send(any(DNSOutgoing.class));
+		starter.cancelTimer();
+
+		// A monitor over the same seven seconds only sends its own queries, at 1, 3 and 7 seconds
+		JmDNSImpl monitoring = queryingJmDNS();
+		starter = BatchingTaskStarter.of(monitoring);
+		TestScheduler scheduler = new TestScheduler();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		new JmDNSDiscovery(environment, manager(monitoring)).monitor(types, scheduler).subscribe(subscriber);
+		starter.startServiceResolver("_http._tcp.local.");
+		scheduler.advanceTimeBy(7, TimeUnit.SECONDS);
+		verify(monitoring, after(1000).times(3)).send(any(DNSOutgoing.class));
+
+		// JmDNS queries the type again once the monitor has stopped
+		subscriber.unsubscribe();
+		starter.startServiceResolver("_http._tcp.local.");
+		verify(monitoring, timeout(2000).times(6)).send(any(DNSOutgoing.class));
+		starter.cancelTimer();
+	}
+
+	@Test public void testMonitorQueriesListKnownAnswersAndLeaveOutQuestionsOfOthers() throws Exception {
+		DNSCache cache = new DNSCache();
+		cache.addDNSEntry(new DNSRecord.Pointer("_http._tcp.local.", DNSRecordClass.CLASS_IN, false, DNSConstants.DNS_TTL, "Fresh._http._tcp.local."));
+		cache.addDNSEntry(new DNSRecord.Pointer("_http._tcp.local.", DNSRecordClass.CLASS_IN, false, 0, "Stale._http._tcp.local."));
+		JmDNSImpl impl = mock(JmDNSImpl.class);
+		when(impl.getCache()).thenReturn(cache);
+		BatchingTaskStarter starter = new BatchingTaskStarter(impl, mock(DNSTaskStarter.class));
+		TestScheduler scheduler = new TestScheduler();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		new JmDNSDiscovery(environment, manager(impl)).monitor(Collections.singletonList("_http._tcp"), scheduler).subscribe(subscriber);
+
+		// Only records with more than half of their lifetime left are listed as known answers
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(impl, timeout(2000)).send(captor.capture());
+		DNSOutgoing out = captor.getValue();
+		assertEquals("_http._tcp.local.", out.getQuestions().iterator().next().getName());
+		assertEquals(1, out.getNumberOfAnswers());
+		assertEquals("Fresh", out.getAnswers().iterator().next().getServiceInfo().getName());
+
+		// The type isn't queried again right after another host has asked for it
+		starter.startResponder(BatchingTaskStarterTest.query(BatchingTaskStarterTest.ptrQuestion("_http._tcp.local.")), InetAddress.getByName("192.168.0.20"), DNSConstants.MDNS_PORT);
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		verify(impl, after(500).times(1)).send(any(DNSOutgoing.class));
+
+		subscriber.unsubscribe();
+		starter.cancelTimer();
+	}
+
+	/**
+	 * Starts monitoring a type on the provided JmDNS instance, and reports a resolved service of it.
+	 *
+	 * @return The listener of the monitor
+	 */
+	private ServiceListener monitor(JmDNSImpl impl, TestScheduler scheduler, TestSubscriber<BonjourEvent> subscriber) throws Exception {
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, manager(impl));
+		ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+
+		discovery.monitor(Collections.singletonList("_http._tcp"), scheduler).subscribe(subscriber);
+		verify(impl).addServiceListener(eq("_http._tcp.local."), captor.capture());
+		ServiceEvent event = serviceEvent(impl, "Service", "_http._tcp.local.", "10.0.0.1", 80);
+		when(event.getInfo().getQualifiedName()).thenReturn("Service._http._tcp.local.");
+		when(event.getInfo().getServer()).thenReturn("host.local.");
+		captor.getValue().serviceResolved(event);
+		subscriber.assertValueCount(1);
+		return captor.getValue();
+	}
+
+	private static JmDNSManager manager(final JmDNS jmdns) {
+		return new JmDNSManager(0, TimeUnit.MILLISECONDS, Schedulers.immediate()) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				return jmdns;
+			}
+		};
+	}
+
+	/**
+	 * Creates a JmDNS instance with a batching task starter, which queries the type of each new listener like JmDNS does.
+	 */
+	private static JmDNSImpl queryingJmDNS() {
+		JmDNSImpl impl = mock(JmDNSImpl.class);
+		when(impl.getCache()).thenReturn(new DNSCache());
+		when(impl.isAnnounced()).thenReturn(true);
+		final BatchingTaskStarter starter = new BatchingTaskStarter(impl, mock(DNSTaskStarter.class));
+		doAnswer(new Answer<Void>() {
+			@Override public Void answer(InvocationOnMock invocation) throws Throwable {
+				starter.startServiceResolver((String) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(impl).addServiceListener(anyString(), any(ServiceListener.class));
+		return impl;
+	}
+
+	/**
+	 * Collects the questions for the records of services sent so far, leaving out the queries for service types.
+	 */
+	private static List<DNSQuestion> refreshQuestions(JmDNSImpl impl) throws Exception {
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(impl, atLeast(0)).send(captor.capture());
+
+		List<DNSQuestion> questions = new ArrayList<>();
+		for (DNSOutgoing out : captor.getAllValues()) {
+			for (DNSQuestion question : out.getQuestions()) {
+				if (question.getRecordType() != DNSRecordType.TYPE_PTR) questions.add(question);
+			}
+		}
+		return questions;
+	}
+
+	@Test public void testCreationFailure() throws Exception {
+		JmDNSManager failingManager = new JmDNSManager(0, TimeUnit.MILLISECONDS, Schedulers.immediate()) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				throw new IOException("no network");
+			}
+		};
+		JmDNSDiscovery discovery = new JmDNSDiscovery(environment, failingManager);
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+
+		discovery.start("_http._tcp").subscribe(subscriber);
+
+		subscriber.assertError(DiscoveryFailed.class);
+		assertEquals(0, environment.multicastHolders.get());
+	}
+}
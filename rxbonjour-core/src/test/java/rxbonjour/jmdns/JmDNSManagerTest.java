@@ -0,0 +1,283 @@
+package rxbonjour.jmdns;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.impl.DNSStatefulObject;
+
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JmDNSManagerTest {
+
+	private static final long GRACE_MILLIS = 1000;
+
+	private final List<TestJmDNS> created = new ArrayList<>();
+	private TestScheduler scheduler;
+	private JmDNSManager manager;
+	private InetAddress address;
+
+	abstract class TestJmDNS extends JmDNS implements DNSStatefulObject {
+	}
+
+	@Before public void setUp() throws Exception {
+		scheduler = new TestScheduler();
+		address = InetAddress.getByName("192.168.0.10");
+		manager = new JmDNSManager(GRACE_MILLIS, TimeUnit.MILLISECONDS, scheduler) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				TestJmDNS jmdns = mock(TestJmDNS.class);
+				created.add(jmdns);
+				return jmdns;
+			}
+		};
+	}
+
+	@Test public void testLeasesShareInstance() throws Exception {
+		JmDNSManager.Lease lease1 = manager.acquire(address);
+		JmDNSManager.Lease lease2 = manager.acquire(address);
+
+		assertSame(lease1.getJmDNS(), lease2.getJmDNS());
+		assertEquals(1, created.size());
+		assertEquals(2, manager.getLeaseCount(address));
+
+		lease1.unsubscribe();
+		scheduler.advanceTimeBy(GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		verify(created.get(0), never()).close();
+		assertEquals(1, manager.getLeaseCount(address));
+	}
+
+	@Test public void testInstancePerAddress() throws Exception {
+		JmDNSManager.Lease lease1 = manager.acquire(address);
+		JmDNSManager.Lease lease2 = manager.acquire(InetAddress.getByName("10.0.0.2"));
+
+		assertNotSame(lease1.getJmDNS(), lease2.getJmDNS());
+		assertEquals(2, created.size());
+	}
+
+	@Test public void testCloseAfterGracePeriod() throws Exception {
+		JmDNSManager.Lease lease = manager.acquire(address);
+		lease.unsubscribe();
+
+		scheduler.advanceTimeBy(GRACE_MILLIS - 1, TimeUnit.MILLISECONDS);
+		verify(created.get(0), never()).close();
+		scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		verify(created.get(0), times(1)).close();
+
+		// A new instance is created afterwards
+		manager.acquire(address);
+		assertEquals(2, created.size());
+	}
+
+	@Test public void testAcquireWithinGracePeriodCancelsClose() throws Exception {
+		manager.acquire(address).unsubscribe();
+		scheduler.advanceTimeBy(GRACE_MILLIS / 2, TimeUnit.MILLISECONDS);
+
+		JmDNSManager.Lease lease = manager.acquire(address);
+		scheduler.advanceTimeBy(GRACE_MILLIS, TimeUnit.MILLISECONDS);
+
+		assertEquals(1, created.size());
+		verify(lease.getJmDNS(), never()).close();
+	}
+
+	@Test public void testReleaseIsIdempotent() throws Exception {
+		JmDNSManager.Lease lease1 = manager.acquire(address);
+		manager.acquire(address);
+
+		lease1.unsubscribe();
+		lease1.unsubscribe();
+
+		assertTrue(lease1.isUnsubscribed());
+		assertEquals(1, manager.getLeaseCount(address));
+	}
+
+	@Test public void testZeroGracePeriodClosesImmediately() throws Exception {
+		manager.setGracePeriod(0, TimeUnit.MILLISECONDS);
+		manager.acquire(address).unsubscribe();
+
+		verify(created.get(0), times(1)).close();
+		assertEquals(0, manager.getLeaseCount(address));
+	}
+
+	@Test public void testClosedInstanceIsReplaced() throws Exception {
+		JmDNSManager.Lease lease = manager.acquire(address);
+		when(created.get(0).isClosed()).thenReturn(true);
+
+		JmDNSManager.Lease replacement = manager.acquire(address);
+		assertNotSame(lease.getJmDNS(), replacement.getJmDNS());
+		assertEquals(1, manager.getLeaseCount(address));
+
+		// Releasing the stale lease doesn't affect the replacement
+		lease.unsubscribe();
+		scheduler.advanceTimeBy(GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		verify(replacement.getJmDNS(), never()).close();
+	}
+
+	@Test public void testCreationDoesNotBlockOtherAddresses() throws Exception {
+		final InetAddress slowAddress = InetAddress.getByName("192.168.0.11");
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final List<JmDNS> slowCreated = new ArrayList<>();
+		final JmDNSManager manager = new JmDNSManager(GRACE_MILLIS, TimeUnit.MILLISECONDS, scheduler) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				if (address.equals(slowAddress)) {
+					creating.countDown();
+					await(proceed);
+				}
+				JmDNS jmdns = mock(TestJmDNS.class);
+				synchronized (slowCreated) {
+					if (address.equals(slowAddress)) slowCreated.add(jmdns);
+				}
+				return jmdns;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<JmDNSManager.Lease> acquireSlow = new Callable<JmDNSManager.Lease>() {
+				@Override public JmDNSManager.Lease call() throws Exception {
+					return manager.acquire(slowAddress);
+				}
+			};
+			Future<JmDNSManager.Lease> first = executor.submit(acquireSlow);
+			assertTrue(creating.await(5, TimeUnit.SECONDS));
+			Future<JmDNSManager.Lease> second = executor.submit(acquireSlow);
+
+			while (manager.getLeaseCount(slowAddress) < 2) {
+				Thread.sleep(1);
+			}
+
+			// Other addresses are served while the instance is created
+			JmDNSManager.Lease other = manager.acquire(address);
+			other.unsubscribe();
+			assertFalse(first.isDone());
+			assertFalse(second.isDone());
+
+			// Acquirers of the same address share the instance once it is created
+			proceed.countDown();
+			assertSame(first.get(5, TimeUnit.SECONDS).getJmDNS(), second.get(5, TimeUnit.SECONDS).getJmDNS());
+			assertEquals(1, slowCreated.size());
+		} finally {
+			proceed.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test public void testCreationFailureRemovesPlaceholder() throws Exception {
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final JmDNSManager manager = new JmDNSManager(GRACE_MILLIS, TimeUnit.MILLISECONDS, scheduler) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				if (creating.getCount() > 0) {
+					creating.countDown();
+					await(proceed);
+					throw new IOException("no network");
+				}
+				TestJmDNS jmdns = mock(TestJmDNS.class);
+				created.add(jmdns);
+				return jmdns;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<JmDNSManager.Lease> acquire = new Callable<JmDNSManager.Lease>() {
+				@Override public JmDNSManager.Lease call() throws Exception {
+					return manager.acquire(address);
+				}
+			};
+			Future<JmDNSManager.Lease> first = executor.submit(acquire);
+			assertTrue(creating.await(5, TimeUnit.SECONDS));
+			Future<JmDNSManager.Lease> second = executor.submit(acquire);
+			while (manager.getLeaseCount(address) < 2) {
+				Thread.sleep(1);
+			}
+
+			// Both the creator and the acquirer waiting for it fail
+			proceed.countDown();
+			assertFailed(first);
+			assertFailed(second);
+			assertEquals(0, manager.getLeaseCount(address));
+
+			// The next acquirer creates the instance anew
+			JmDNSManager.Lease lease = manager.acquire(address);
+			assertSame(created.get(0), lease.getJmDNS());
+			assertEquals(1, manager.getLeaseCount(address));
+		} finally {
+			proceed.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test public void testCloseWhileCreating() throws Exception {
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final TestJmDNS jmdns = mock(TestJmDNS.class);
+		final JmDNSManager manager = new JmDNSManager(GRACE_MILLIS, TimeUnit.MILLISECONDS, scheduler) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				creating.countDown();
+				await(proceed);
+				return jmdns;
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<JmDNSManager.Lease> lease = executor.submit(new Callable<JmDNSManager.Lease>() {
+				@Override public JmDNSManager.Lease call() throws Exception {
+					return manager.acquire(address);
+				}
+			});
+			assertTrue(creating.await(5, TimeUnit.SECONDS));
+
+			// The instance created after closing the pool isn't handed out, but closed right away
+			manager.close();
+			proceed.countDown();
+			assertFailed(lease);
+			verify(jmdns, times(1)).close();
+			assertEquals(0, manager.getLeaseCount(address));
+		} finally {
+			proceed.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	/* Begin private */
+
+	private static void await(CountDownLatch latch) throws IOException {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void assertFailed(Future<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Acquiring the lease should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package rxbonjour.jmdns;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Subscription;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MulticastLockManagerTest {
+
+	private static final long IDLE_DELAY_MILLIS = 1000;
+
+	private TestScheduler scheduler;
+	private TestLockManager manager;
+
+	static class TestLockManager extends MulticastLockManager {
+
+		int acquired;
+		int released;
+
+		TestLockManager(TestScheduler scheduler) {
+			super(IDLE_DELAY_MILLIS, TimeUnit.MILLISECONDS, scheduler);
+		}
+
+		@Override protected void onAcquire() {
+			acquired++;
+		}
+
+		@Override protected void onRelease() {
+			released++;
+		}
+	}
+
+	@Before public void setUp() {
+		scheduler = new TestScheduler();
+		manager = new TestLockManager(scheduler);
+	}
+
+	@Test public void testHoldsShareLock() {
+		Subscription hold1 = manager.acquire();
+		Subscription hold2 = manager.acquire();
+
+		assertEquals(1, manager.acquired);
+		assertEquals(2, manager.getHoldCount());
+		assertTrue(manager.isHeld());
+
+		hold1.unsubscribe();
+		advance(IDLE_DELAY_MILLIS);
+		assertEquals(0, manager.released);
+		assertEquals(1, manager.getHoldCount());
+
+		hold2.unsubscribe();
+		assertTrue(manager.isHeld());
+	}
+
+	@Test public void testReleaseAfterIdleDelay() {
+		manager.acquire().unsubscribe();
+
+		advance(IDLE_DELAY_MILLIS - 1);
+		assertEquals(0, manager.released);
+		advance(1);
+		assertEquals(1, manager.released);
+		assertFalse(manager.isHeld());
+
+		// The lock is acquired again afterwards
+		manager.acquire();
+		assertEquals(2, manager.acquired);
+		assertEquals(2, manager.getAcquisitionCount());
+	}
+
+	@Test public void testAcquireWithinIdleDelayCancelsRelease() {
+		manager.acquire().unsubscribe();
+		advance(IDLE_DELAY_MILLIS / 2);
+
+		manager.acquire();
+		advance(IDLE_DELAY_MILLIS);
+
+		assertEquals(1, manager.acquired);
+		assertEquals(0, manager.released);
+	}
+
+	@Test public void testReleaseIsIdempotent() {
+		Subscription hold = manager.acquire();
+		manager.acquire();
+
+		hold.unsubscribe();
+		hold.unsubscribe();
+
+		assertTrue(hold.isUnsubscribed());
+		assertEquals(1, manager.getHoldCount());
+	}
+
+	@Test public void testZeroIdleDelayReleasesImmediately() {
+		manager.setIdleDelay(0, TimeUnit.MILLISECONDS);
+		manager.acquire().unsubscribe();
+
+		assertEquals(1, manager.released);
+		assertFalse(manager.isHeld());
+	}
+
+	@Test public void testHoldTime() {
+		Subscription hold = manager.acquire();
+		advance(3000);
+		assertEquals(3000, manager.getHoldTime(TimeUnit.MILLISECONDS));
+
+		// The idle delay counts towards the hold time
+		hold.unsubscribe();
+		advance(5000);
+		assertEquals(3000 + IDLE_DELAY_MILLIS, manager.getHoldTime(TimeUnit.MILLISECONDS));
+
+		manager.acquire();
+		advance(2000);
+		assertEquals(5 + IDLE_DELAY_MILLIS / 1000, manager.getHoldTime(TimeUnit.SECONDS));
+	}
+
+	/* Begin private */
+
+	private void advance(long millis) {
+		scheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+	}
+}
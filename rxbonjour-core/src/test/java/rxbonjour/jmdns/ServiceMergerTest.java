@@ -0,0 +1,54 @@
+package rxbonjour.jmdns;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ServiceMergerTest {
+
+	private static BonjourService service(String host, int port) throws Exception {
+		return new BonjourService.Builder("printer", "_ipp._tcp.local.")
+				.addAddress(InetAddress.getByName(host))
+				.setPort(port)
+				.build();
+	}
+
+	@Test public void testSingleInterfacePassesThrough() throws Exception {
+		ServiceMerger merger = new ServiceMerger();
+		InetAddress wifi = InetAddress.getByName("192.168.0.2");
+		BonjourService service = service("192.168.0.10", 631);
+
+		assertSame(service, merger.resolved(wifi, service));
+
+		BonjourEvent removed = new BonjourEvent(BonjourEvent.Type.REMOVED, service);
+		assertSame(removed, merger.removed(wifi, removed));
+	}
+
+	@Test public void testMergeAcrossInterfaces() throws Exception {
+		ServiceMerger merger = new ServiceMerger();
+		InetAddress wifi = InetAddress.getByName("192.168.0.2");
+		InetAddress ethernet = InetAddress.getByName("fe80::2");
+
+		merger.resolved(wifi, service("192.168.0.10", 631));
+		BonjourService merged = merger.resolved(ethernet, service("fe80::10", 632));
+
+		// The latest resolve determines the port
+		assertEquals(632, merged.getPort());
+		assertEquals(Arrays.asList(InetAddress.getByName("fe80::10"), InetAddress.getByName("192.168.0.10")), merged.getHosts());
+
+		// Removal from one interface keeps the service, without that interface's addresses
+		BonjourEvent event = merger.removed(ethernet, new BonjourEvent(BonjourEvent.Type.REMOVED, service("fe80::10", 632)));
+		assertEquals(BonjourEvent.Type.ADDED, event.getType());
+		assertEquals(service("192.168.0.10", 631), event.getService());
+
+		event = merger.removed(wifi, new BonjourEvent(BonjourEvent.Type.REMOVED, service("192.168.0.10", 631)));
+		assertEquals(BonjourEvent.Type.REMOVED, event.getType());
+	}
+}
@@ -0,0 +1,120 @@
+package rxbonjour.jmdns;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class ServiceMonitorTest {
+
+	private static final String NAME = "Test Service";
+	private static final String TYPE = "_http._tcp";
+	private static final long TTL_MILLIS = 100 * 1000;
+
+	private TestScheduler scheduler;
+	private ServiceMonitor.Callback callback;
+	private ServiceMonitor monitor;
+
+	@Before public void setUp() {
+		scheduler = new TestScheduler();
+		callback = mock(ServiceMonitor.Callback.class);
+		monitor = new ServiceMonitor(scheduler);
+		monitor.start(callback);
+	}
+
+	@Test public void testTypeQueryBackoff() {
+		advance(999);
+		verify(callback, never()).queryTypes();
+
+		// Queries at 1s, 3s and 7s
+		advance(1);
+		verify(callback, times(1)).queryTypes();
+		advance(2000);
+		verify(callback, times(2)).queryTypes();
+		advance(3999);
+		verify(callback, times(2)).queryTypes();
+		advance(1);
+		verify(callback, times(3)).queryTypes();
+	}
+
+	@Test public void testTypeQueryIntervalIsCapped() {
+		// 12 queries with doubling intervals up to 2048s, then one per hour
+		advance(4095 * 1000);
+		verify(callback, times(12)).queryTypes();
+		advance(ServiceMonitor.MAX_QUERY_INTERVAL_MILLIS - 1);
+		verify(callback, times(12)).queryTypes();
+		advance(1);
+		verify(callback, times(13)).queryTypes();
+		advance(2 * ServiceMonitor.MAX_QUERY_INTERVAL_MILLIS);
+		verify(callback, times(15)).queryTypes();
+	}
+
+	@Test public void testRefreshBeforeExpiry() {
+		monitor.track(NAME, TYPE, TTL_MILLIS);
+		assertTrue(monitor.isTracked(NAME, TYPE));
+
+		advance(80 * 1000 - 1);
+		verify(callback, never()).refresh(NAME, TYPE);
+		advance(1);
+		verify(callback, times(1)).refresh(NAME, TYPE);
+		advance(5000);
+		verify(callback, times(2)).refresh(NAME, TYPE);
+		advance(10 * 1000);
+		verify(callback, times(4)).refresh(NAME, TYPE);
+		verify(callback, never()).expired(NAME, TYPE);
+
+		advance(5000);
+		verify(callback, times(1)).expired(NAME, TYPE);
+		assertFalse(monitor.isTracked(NAME, TYPE));
+	}
+
+	@Test public void testTrackAgainResetsLifetime() {
+		monitor.track(NAME, TYPE, TTL_MILLIS);
+		advance(85 * 1000);
+		verify(callback, times(2)).refresh(NAME, TYPE);
+
+		// Fresh records arrive in response to the refresh
+		monitor.track(NAME, TYPE, TTL_MILLIS);
+		advance(79 * 1000);
+		verify(callback, times(2)).refresh(NAME, TYPE);
+		verify(callback, never()).expired(NAME, TYPE);
+
+		advance(1000);
+		verify(callback, times(3)).refresh(NAME, TYPE);
+	}
+
+	@Test public void testUntrack() {
+		monitor.track(NAME, TYPE, TTL_MILLIS);
+		assertTrue(monitor.untrack(NAME, TYPE));
+		assertFalse(monitor.untrack(NAME, TYPE));
+
+		advance(TTL_MILLIS);
+		verify(callback, never()).refresh(NAME, TYPE);
+		verify(callback, never()).expired(NAME, TYPE);
+	}
+
+	@Test public void testStop() {
+		monitor.track(NAME, TYPE, TTL_MILLIS);
+		monitor.stop();
+
+		advance(TTL_MILLIS);
+		verifyNoMoreInteractions(callback);
+		assertFalse(monitor.isTracked(NAME, TYPE));
+	}
+
+	/* Begin private */
+
+	private void advance(long millis) {
+		scheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,122 @@
+package rxbonjour.jmdns;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.constants.DNSRecordClass;
+
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourTypeEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TypeTrackerTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+
+	private DNSCache cache;
+	private JmDNSImpl jmdns;
+	private TypeTracker tracker;
+	private long now;
+
+	@Before public void setUp() throws Exception {
+		cache = new DNSCache();
+		jmdns = mock(JmDNSImpl.class);
+		when(jmdns.getCache()).thenReturn(cache);
+		tracker = new TypeTracker();
+		now = System.currentTimeMillis();
+	}
+
+	@Test public void testAdd() throws Exception {
+		assertTrue(tracker.add(TYPE));
+		assertFalse(tracker.add(TYPE));
+		assertTrue(tracker.add("_ssh._tcp.local."));
+	}
+
+	@Test public void testTypeIsRemovedOnceItsRecordsExpire() throws Exception {
+		cache.addDNSEntry(new DNSRecord.Pointer(TypeTracker.TYPE_ENUMERATION, DNSRecordClass.CLASS_IN, false, 100, TYPE));
+		tracker.add(TYPE);
+
+		assertTrue(tracker.sweep(jmdns, now).isEmpty());
+		assertTrue(tracker.sweep(jmdns, now + 99 * 1000).isEmpty());
+
+		List<BonjourTypeEvent> events = tracker.sweep(jmdns, now + 101 * 1000);
+		assertEquals(1, events.size());
+		assertEquals(BonjourEvent.Type.REMOVED, events.get(0).getType());
+		assertEquals(TYPE, events.get(0).getServiceType());
+		assertTrue(tracker.sweep(jmdns, now + 102 * 1000).isEmpty());
+
+		// Instances of the type make it present again
+		cache.addDNSEntry(new DNSRecord.Pointer(TYPE, DNSRecordClass.CLASS_IN, false, 4500, "Service." + TYPE));
+		events = tracker.sweep(jmdns, now + 103 * 1000);
+		assertEquals(1, events.size());
+		assertEquals(BonjourEvent.Type.ADDED, events.get(0).getType());
+	}
+
+	@Test public void testStaleTypesAreRefreshed() throws Exception {
+		cache.addDNSEntry(new DNSRecord.Pointer(TypeTracker.TYPE_ENUMERATION, DNSRecordClass.CLASS_IN, false, 1000, TYPE));
+		cache.addDNSEntry(new DNSRecord.Pointer(TypeTracker.TYPE_ENUMERATION, DNSRecordClass.CLASS_IN, false, 4500, "_ssh._tcp.local."));
+		tracker.add(TYPE);
+		tracker.add("_ssh._tcp.local.");
+
+		// Fresh records don't need to be queried
+		tracker.sweep(jmdns, now);
+		verify(jmdns, never()).send(any(DNSOutgoing.class));
+
+		// Past half of its lifetime, the type is queried, listing the other one as known answer
+		tracker.sweep(jmdns, now + 600 * 1000);
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(jmdns).send(captor.capture());
+		DNSOutgoing out = captor.getValue();
+		assertEquals(TypeTracker.TYPE_ENUMERATION, out.getQuestions().iterator().next().getName());
+		assertEquals(1, out.getNumberOfAnswers());
+		assertEquals("_ssh._tcp.local.", out.getAnswers().iterator().next().getServiceInfo().getType());
+
+		// Queries are sent at most once per interval
+		tracker.sweep(jmdns, now + 700 * 1000);
+		verify(jmdns, times(1)).send(any(DNSOutgoing.class));
+		tracker.sweep(jmdns, now + 600 * 1000 + TypeTracker.REFRESH_INTERVAL_MILLIS);
+		verify(jmdns, times(2)).send(any(DNSOutgoing.class));
+	}
+
+	@Test public void testOverflowingKnownAnswersContinueInTruncatedPackets() throws Exception {
+		cache.addDNSEntry(new DNSRecord.Pointer(TypeTracker.TYPE_ENUMERATION, DNSRecordClass.CLASS_IN, false, 1000, TYPE));
+		tracker.add(TYPE);
+		int count = 150;
+		for (int i = 0; i < count; i++) {
+			String type = "_type-with-a-rather-long-name-number-" + i + "._tcp.local.";
+			cache.addDNSEntry(new DNSRecord.Pointer(TypeTracker.TYPE_ENUMERATION, DNSRecordClass.CLASS_IN, false, 4500, type));
+			tracker.add(type);
+		}
+
+		// All known answers are listed, spread over packets of which all but the last are truncated
+		tracker.sweep(jmdns, now + 600 * 1000);
+		ArgumentCaptor<DNSOutgoing> captor = ArgumentCaptor.forClass(DNSOutgoing.class);
+		verify(jmdns, atLeast(2)).send(captor.capture());
+		List<DNSOutgoing> packets = captor.getAllValues();
+		int answers = 0;
+		for (int i = 0; i < packets.size(); i++) {
+			DNSOutgoing out = packets.get(i);
+			assertEquals(i == 0 ? 1 : 0, out.getNumberOfQuestions());
+			assertEquals(i < packets.size() - 1, out.isTruncated());
+			answers += out.getNumberOfAnswers();
+		}
+		assertEquals(count, answers);
+	}
+}
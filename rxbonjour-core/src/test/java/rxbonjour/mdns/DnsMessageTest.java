@@ -0,0 +1,202 @@
+package rxbonjour.mdns;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DnsMessageTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+	private static final String NAME = "Test.Service." + TYPE;
+
+	@Test public void testQueryRoundTrip() throws Exception {
+		DnsMessage query = DnsMessage.query(Arrays.asList(
+				new DnsQuestion(TYPE, DnsRecord.TYPE_PTR),
+				new DnsQuestion(NAME, DnsRecord.TYPE_SRV)));
+
+		DnsMessage decoded = roundTrip(query);
+		assertFalse(decoded.isResponse());
+		assertEquals(2, decoded.getQuestions().size());
+		assertEquals(TYPE, decoded.getQuestions().get(0).getName());
+		assertEquals(DnsRecord.TYPE_PTR, decoded.getQuestions().get(0).getType());
+		assertEquals(NAME, decoded.getQuestions().get(1).getName());
+		assertEquals(DnsRecord.TYPE_SRV, decoded.getQuestions().get(1).getType());
+	}
+
+	@Test public void testResponseRoundTrip() throws Exception {
+		byte[] txt = { 5, 'a', '=', 'b', 'c', 'd' };
+		List<DnsRecord> answers = Collections.singletonList(DnsRecord.ptr(TYPE, DnsRecord.TTL_OTHER, NAME));
+		List<DnsRecord> additionals = Arrays.asList(
+				DnsRecord.srv(NAME, DnsRecord.TTL_HOST, 8080, "host.local."),
+				DnsRecord.txt(NAME, DnsRecord.TTL_OTHER, txt),
+				DnsRecord.address("host.local.", DnsRecord.TTL_HOST, InetAddress.getByName("192.168.0.2")),
+				DnsRecord.address("host.local.", DnsRecord.TTL_HOST, InetAddress.getByName("fe80::1")));
+
+		DnsMessage decoded = roundTrip(DnsMessage.response(answers, additionals));
+		assertTrue(decoded.isResponse());
+		assertEquals(answers, decoded.getAnswers());
+		assertEquals(additionals, decoded.getAdditionals());
+
+		DnsRecord srv = decoded.getAdditionals().get(0);
+		assertEquals(DnsRecord.TTL_HOST, srv.getTtl());
+		assertEquals(8080, srv.getPort());
+		assertTrue(srv.isUnique());
+		assertFalse(decoded.getAnswers().get(0).isUnique());
+		assertArrayEquals(txt, decoded.getAdditionals().get(1).getTxt());
+		assertEquals(DnsRecord.TYPE_AAAA, decoded.getAdditionals().get(3).getType());
+	}
+
+	@Test public void testQueryWithKnownAnswers() throws Exception {
+		List<DnsRecord> known = Collections.singletonList(DnsRecord.ptr(TYPE, 4500, NAME));
+		List<DnsMessage> messages = DnsMessage.queries(
+				Collections.singletonList(new DnsQuestion(TYPE, DnsRecord.TYPE_PTR)), known, DnsMessage.MTU_PACKET_SIZE);
+
+		assertEquals(1, messages.size());
+		DnsMessage decoded = roundTrip(messages.get(0));
+		assertFalse(decoded.isResponse());
+		assertFalse(decoded.isTruncated());
+		assertEquals(1, decoded.getQuestions().size());
+		assertEquals(known, decoded.getAnswers());
+	}
+
+	@Test public void testKnownAnswersSpanSeveralPackets() throws Exception {
+		List<DnsRecord> known = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			known.add(DnsRecord.ptr(TYPE, 4500, "Service " + i + "." + TYPE));
+		}
+		List<DnsMessage> messages = DnsMessage.queries(
+				Collections.singletonList(new DnsQuestion(TYPE, DnsRecord.TYPE_PTR)), known, DnsMessage.MTU_PACKET_SIZE);
+		assertTrue(messages.size() > 1);
+
+		List<DnsRecord> answers = new ArrayList<>();
+		for (int i = 0; i < messages.size(); i++) {
+			ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_PACKET_SIZE);
+			messages.get(i).encode(buffer);
+			assertTrue(buffer.position() <= DnsMessage.MTU_PACKET_SIZE);
+			buffer.flip();
+
+			// Only the first packet asks, and only the last one isn't truncated
+			DnsMessage decoded = DnsMessage.decode(buffer);
+			assertEquals(i == 0 ? 1 : 0, decoded.getQuestions().size());
+			assertEquals(i < messages.size() - 1, decoded.isTruncated());
+			answers.addAll(decoded.getAnswers());
+		}
+		assertEquals(known, answers);
+	}
+
+	@Test public void testEmptyTxtRecord() throws Exception {
+		DnsMessage decoded = roundTrip(DnsMessage.response(
+				Collections.singletonList(DnsRecord.txt(NAME, DnsRecord.TTL_OTHER, new byte[0])),
+				Collections.<DnsRecord>emptyList()));
+
+		assertArrayEquals(new byte[] { 0 }, decoded.getAnswers().get(0).getTxt());
+	}
+
+	@Test public void testEscapedInstanceName() throws Exception {
+		String name = DnsName.instanceName("Printer 2.0", TYPE);
+		assertEquals("Printer 2\\.0." + TYPE, name);
+
+		DnsMessage decoded = roundTrip(DnsMessage.response(
+				Collections.singletonList(DnsRecord.ptr(TYPE, DnsRecord.TTL_OTHER, name)),
+				Collections.<DnsRecord>emptyList()));
+
+		String target = decoded.getAnswers().get(0).getTarget();
+		assertEquals(name, target);
+		assertEquals("Printer 2.0", DnsName.instanceLabel(target));
+	}
+
+	@Test public void testCompressedNames() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		header(buffer, DnsMessage.FLAGS_RESPONSE, 0, 1);
+
+		// PTR record for "_http._tcp.local.", pointing to "Test._http._tcp.local." through a compression pointer
+		int typeOffset = buffer.position();
+		buffer.put(new byte[] { 5, '_', 'h', 't', 't', 'p', 4, '_', 't', 'c', 'p', 5, 'l', 'o', 'c', 'a', 'l', 0 });
+		buffer.putShort((short) DnsRecord.TYPE_PTR).putShort((short) DnsRecord.CLASS_IN).putInt(4500);
+		buffer.putShort((short) 7);
+		buffer.put(new byte[] { 4, 'T', 'e', 's', 't' });
+		buffer.putShort((short) (0xc000 | typeOffset));
+		buffer.flip();
+
+		DnsMessage decoded = DnsMessage.decode(buffer);
+		assertEquals(1, decoded.getAnswers().size());
+		assertEquals(TYPE, decoded.getAnswers().get(0).getName());
+		assertEquals("Test." + TYPE, decoded.getAnswers().get(0).getTarget());
+	}
+
+	@Test public void testUnknownRecordsAreSkipped() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		header(buffer, DnsMessage.FLAGS_RESPONSE, 0, 2);
+
+		// NSEC record, followed by an A record
+		buffer.put(new byte[] { 4, 'h', 'o', 's', 't', 0 });
+		buffer.putShort((short) 47).putShort((short) DnsRecord.CLASS_IN).putInt(120);
+		buffer.putShort((short) 3).put(new byte[] { 1, 2, 3 });
+		buffer.put(new byte[] { 4, 'h', 'o', 's', 't', 0 });
+		buffer.putShort((short) DnsRecord.TYPE_A).putShort((short) DnsRecord.CLASS_IN).putInt(120);
+		buffer.putShort((short) 4).put(new byte[] { 10, 0, 0, 1 });
+		buffer.flip();
+
+		DnsMessage decoded = DnsMessage.decode(buffer);
+		assertEquals(1, decoded.getAnswers().size());
+		assertEquals(InetAddress.getByName("10.0.0.1"), decoded.getAnswers().get(0).getAddress());
+	}
+
+	@Test public void testCompressionLoop() {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		header(buffer, DnsMessage.FLAGS_QUERY, 1, 0);
+
+		// Name pointing to itself
+		buffer.putShort((short) (0xc000 | buffer.position()));
+		buffer.putShort((short) DnsRecord.TYPE_PTR).putShort((short) DnsRecord.CLASS_IN);
+		buffer.flip();
+
+		assertMalformed(buffer);
+	}
+
+	@Test public void testTruncatedMessage() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_PACKET_SIZE);
+		DnsMessage.response(
+				Collections.singletonList(DnsRecord.srv(NAME, DnsRecord.TTL_HOST, 80, "host.local.")),
+				Collections.<DnsRecord>emptyList())
+				.encode(buffer);
+		buffer.flip();
+		buffer.limit(buffer.limit() - 4);
+
+		assertMalformed(buffer);
+	}
+
+	/* Begin private */
+
+	private static DnsMessage roundTrip(DnsMessage message) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_PACKET_SIZE);
+		message.encode(buffer);
+		buffer.flip();
+		return DnsMessage.decode(buffer);
+	}
+
+	private static void header(ByteBuffer buffer, int flags, int questions, int answers) {
+		buffer.putShort((short) 0).putShort((short) flags);
+		buffer.putShort((short) questions).putShort((short) answers).putShort((short) 0).putShort((short) 0);
+	}
+
+	private static void assertMalformed(ByteBuffer buffer) {
+		try {
+			DnsMessage.decode(buffer);
+			fail("Expected IOException");
+		} catch (IOException expected) {
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package rxbonjour.mdns;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DnsReaderTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+
+	@Test public void testWalksAllSections() throws Exception {
+		DnsReader reader = reader(DnsMessage.response(
+				Collections.singletonList(DnsRecord.ptr(TYPE, 4500, "Test." + TYPE)),
+				Collections.singletonList(DnsRecord.srv("Test." + TYPE, 120, 8080, "host.local."))));
+
+		assertTrue(reader.isResponse());
+		assertTrue(reader.next());
+		assertEquals(DnsReader.SECTION_ANSWER, reader.section());
+		assertEquals(DnsRecord.TYPE_PTR, reader.type());
+		assertEquals(4500, reader.ttl());
+		assertTrue(reader.next());
+		assertEquals(DnsReader.SECTION_ADDITIONAL, reader.section());
+		assertEquals(DnsRecord.TYPE_SRV, reader.type());
+		assertEquals(8080, reader.toRecord().getPort());
+		assertFalse(reader.next());
+
+		reader.rewind();
+		assertTrue(reader.next());
+		assertEquals(DnsRecord.TYPE_PTR, reader.type());
+	}
+
+	@Test public void testNameComparisonsIgnoreCase() throws Exception {
+		DnsReader reader = reader(DnsMessage.response(
+				Collections.singletonList(DnsRecord.srv("Test._HTTP._tcp.local.", 120, 80, "Host.local.")),
+				Collections.<DnsRecord>emptyList()));
+		reader.next();
+
+		assertTrue(reader.nameEquals(reader.nameOffset(), DnsName.toWire("test._http._tcp.local.")));
+		assertFalse(reader.nameEquals(reader.nameOffset(), DnsName.toWire(TYPE)));
+		assertTrue(reader.parentEquals(reader.nameOffset(), DnsName.toWire(TYPE)));
+		assertFalse(reader.parentEquals(reader.nameOffset(), DnsName.toWire("_ipp._tcp.local.")));
+		assertTrue(reader.nameEquals(reader.targetOffset(), DnsName.toWire("host.local.")));
+
+		// Prefixes don't match
+		assertFalse(reader.nameEquals(reader.nameOffset(), DnsName.toWire("test._http._tcp.")));
+		assertFalse(reader.nameEquals(reader.nameOffset(), DnsName.toWire("test._http._tcp.local.com.")));
+	}
+
+	@Test public void testComparesCompressedNames() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		buffer.putShort((short) 0).putShort((short) DnsMessage.FLAGS_RESPONSE);
+		buffer.putShort((short) 0).putShort((short) 2).putShort((short) 0).putShort((short) 0);
+
+		// SRV record pointing to "host.local.", followed by an A record whose name consists of a single pointer to that target
+		int nameOffset = buffer.position();
+		buffer.put(new byte[] { 4, 'T', 'e', 's', 't', 5, '_', 'h', 't', 't', 'p', 4, '_', 't', 'c', 'p', 5, 'l', 'o', 'c', 'a', 'l', 0 });
+		buffer.putShort((short) DnsRecord.TYPE_SRV).putShort((short) DnsRecord.CLASS_IN).putInt(120);
+		buffer.putShort((short) 13);
+		buffer.putShort((short) 0).putShort((short) 0).putShort((short) 80);
+		int targetOffset = buffer.position();
+		buffer.put(new byte[] { 4, 'H', 'O', 'S', 'T' });
+		buffer.putShort((short) (0xc000 | (nameOffset + 16)));
+
+		buffer.putShort((short) (0xc000 | targetOffset));
+		buffer.putShort((short) DnsRecord.TYPE_A).putShort((short) DnsRecord.CLASS_IN).putInt(120);
+		buffer.putShort((short) 4).put(new byte[] { 10, 0, 0, 1 });
+		buffer.flip();
+
+		DnsReader reader = new DnsReader();
+		reader.reset(buffer);
+		reader.next();
+		int srvTarget = reader.targetOffset();
+		assertTrue(reader.nameEquals(srvTarget, DnsName.toWire("host.local.")));
+		assertEquals("HOST.local.", reader.readName(srvTarget));
+
+		reader.next();
+		assertTrue(reader.namesEqual(reader.nameOffset(), srvTarget));
+		assertTrue(reader.nameEquals(reader.nameOffset(), DnsName.toWire("host.local.")));
+		assertEquals(InetAddress.getByName("10.0.0.1"), reader.toRecord().getAddress());
+	}
+
+	@Test public void testUnsupportedRecordsAreNotMaterialized() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		buffer.putShort((short) 0).putShort((short) DnsMessage.FLAGS_RESPONSE);
+		buffer.putShort((short) 0).putShort((short) 1).putShort((short) 0).putShort((short) 0);
+		buffer.put(new byte[] { 4, 'h', 'o', 's', 't', 0 });
+		buffer.putShort((short) DnsRecord.TYPE_A).putShort((short) DnsRecord.CLASS_IN).putInt(120);
+		buffer.putShort((short) 3).put(new byte[] { 1, 2, 3 });
+		buffer.flip();
+
+		DnsReader reader = new DnsReader();
+		reader.reset(buffer);
+		assertTrue(reader.next());
+		assertNull(reader.toRecord());
+	}
+
+	@Test(expected = IOException.class) public void testTruncatedHeader() throws Exception {
+		new DnsReader().reset(ByteBuffer.allocate(11));
+	}
+
+	@Test(expected = IOException.class) public void testRecordExceedingMessage() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_PACKET_SIZE);
+		DnsMessage.response(
+				Arrays.asList(DnsRecord.txt(TYPE, 4500, new byte[] { 3, 'a', '=', 'b' })),
+				Collections.<DnsRecord>emptyList())
+				.encode(buffer);
+		buffer.flip();
+		buffer.limit(buffer.limit() - 1);
+
+		DnsReader reader = new DnsReader();
+		reader.reset(buffer);
+		reader.next();
+	}
+
+	/* Begin private */
+
+	private static DnsReader reader(DnsMessage message) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_PACKET_SIZE);
+		message.encode(buffer);
+		buffer.flip();
+
+		DnsReader reader = new DnsReader();
+		reader.reset(buffer);
+		return reader;
+	}
+}
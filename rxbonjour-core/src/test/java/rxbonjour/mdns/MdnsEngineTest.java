@@ -0,0 +1,273 @@
+package rxbonjour.mdns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rxbonjour.exc.BroadcastFailed;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MdnsEngineTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+
+	private TestScheduler scheduler;
+	private LoopbackNetwork network;
+	private Transport broadcasterTransport;
+	private MdnsEngine broadcaster;
+	private MdnsEngine browser;
+
+	@Before public void setUp() throws Exception {
+		scheduler = new TestScheduler();
+		network = new LoopbackNetwork();
+		broadcasterTransport = network.newTransport();
+		broadcaster = new MdnsEngine(broadcasterTransport, scheduler);
+		broadcaster.start();
+		browser = new MdnsEngine(network.newTransport(), scheduler);
+		browser.start();
+	}
+
+	@After public void tearDown() {
+		broadcaster.close();
+		browser.close();
+		scheduler.triggerActions();
+	}
+
+	@Test public void testDiscoverRegisteredService() throws Exception {
+		TestSubscriber<BonjourEvent> registration = new TestSubscriber<>();
+		broadcaster.register(service("Living Room 2.0", 8080)).subscribe(registration);
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+
+		registration.assertValueCount(1);
+		discovery.assertNoErrors();
+		discovery.assertValueCount(1);
+
+		BonjourEvent event = discovery.getOnNextEvents().get(0);
+		assertEquals(BonjourEvent.Type.ADDED, event.getType());
+		BonjourService service = event.getService();
+		assertEquals("Living Room 2.0", service.getName());
+		assertEquals(TYPE, service.getType());
+		assertEquals(8080, service.getPort());
+		assertEquals(InetAddress.getByName("192.168.0.2"), service.getHost());
+		assertEquals("1", service.getTxtRecord("version"));
+	}
+
+	@Test public void testDiscoverAnnouncedService() throws Exception {
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+		discovery.assertValueCount(0);
+
+		// Picked up from the announcement, without waiting for the next query
+		broadcaster.register(service("Service", 80)).subscribe();
+		scheduler.triggerActions();
+		discovery.assertValueCount(1);
+
+		// The second announcement doesn't report the service again
+		scheduler.advanceTimeBy(MdnsEngine.ANNOUNCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		discovery.assertValueCount(1);
+	}
+
+	@Test public void testGoodbyeRemovesService() {
+		Subscription registration = broadcaster.register(service("Service", 80)).subscribe();
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+		discovery.assertValueCount(1);
+
+		registration.unsubscribe();
+		scheduler.triggerActions();
+		discovery.assertValueCount(2);
+		assertEquals(BonjourEvent.Type.REMOVED, discovery.getOnNextEvents().get(1).getType());
+	}
+
+	@Test public void testExpiryRemovesVanishedService() {
+		broadcaster.register(service("Service", 80)).subscribe();
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+		discovery.assertValueCount(1);
+
+		// Records are renewed as long as the broadcaster responds
+		scheduler.advanceTimeBy(3 * DnsRecord.TTL_HOST, TimeUnit.SECONDS);
+		discovery.assertValueCount(1);
+
+		// Leave the network without a goodbye, so that the SRV record expires
+		broadcasterTransport.close();
+		scheduler.advanceTimeBy(DnsRecord.TTL_HOST, TimeUnit.SECONDS);
+		discovery.assertValueCount(2);
+		assertEquals(BonjourEvent.Type.REMOVED, discovery.getOnNextEvents().get(1).getType());
+	}
+
+	@Test public void testChangedServiceIsUpdated() {
+		broadcaster.register(service("Service", 80)).subscribe();
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+
+		// Re-registered under the same name on another port
+		scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+		broadcaster.register(service("Service", 81)).subscribe();
+		scheduler.triggerActions();
+
+		discovery.assertValueCount(2);
+		BonjourEvent event = discovery.getOnNextEvents().get(1);
+		assertEquals(BonjourEvent.Type.UPDATED, event.getType());
+		assertEquals(81, event.getService().getPort());
+		assertTrue(event.getChanges().contains(BonjourEvent.Change.PORT));
+	}
+
+	@Test public void testLateDiscoveryReplaysServices() {
+		broadcaster.register(service("Service", 80)).subscribe();
+		browser.discover(Collections.singletonList(TYPE)).subscribe();
+		scheduler.triggerActions();
+
+		TestSubscriber<BonjourEvent> late = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(late);
+		scheduler.triggerActions();
+		late.assertValueCount(1);
+	}
+
+	@Test public void testTypeQueryBackoff() {
+		Subscription discovery = browser.discover(Collections.singletonList(TYPE)).subscribe();
+
+		// Queries at 0s, 1s, 3s and 7s
+		scheduler.triggerActions();
+		assertEquals(1, network.getPacketCount());
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(2, network.getPacketCount());
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		assertEquals(3, network.getPacketCount());
+		scheduler.advanceTimeBy(3999, TimeUnit.MILLISECONDS);
+		assertEquals(3, network.getPacketCount());
+		scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		assertEquals(4, network.getPacketCount());
+
+		discovery.unsubscribe();
+		scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+		assertEquals(4, network.getPacketCount());
+	}
+
+	@Test public void testKnownAnswersSuppressResponses() throws Exception {
+		broadcaster.register(service("Service", 80)).subscribe();
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+		discovery.assertValueCount(1);
+
+		// The query at 3s lists the PTR record as a known answer, so the broadcaster doesn't respond
+		scheduler.advanceTimeBy(2500, TimeUnit.MILLISECONDS);
+		List<DnsMessage> packets = sniff();
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+		assertEquals(1, packets.size());
+		DnsMessage query = packets.get(0);
+		assertFalse(query.isResponse());
+		assertEquals(Collections.singletonList(DnsRecord.ptr(TYPE, 0, DnsName.instanceName("Service", TYPE))), query.getAnswers());
+	}
+
+	@Test public void testKnownAnswersSpanSeveralPackets() throws Exception {
+		int count = 40;
+		for (int i = 0; i < count; i++) {
+			broadcaster.register(service("Service " + i, 80)).subscribe();
+		}
+		TestSubscriber<BonjourEvent> discovery = new TestSubscriber<>();
+		browser.discover(Collections.singletonList(TYPE)).subscribe(discovery);
+		scheduler.triggerActions();
+		discovery.assertValueCount(count);
+
+		scheduler.advanceTimeBy(2500, TimeUnit.MILLISECONDS);
+		List<DnsMessage> packets = sniff();
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+		// The broadcaster waits for all known answers, and then has nothing left to send
+		assertEquals(2, packets.size());
+		assertTrue(packets.get(0).isTruncated());
+		assertEquals(1, packets.get(0).getQuestions().size());
+		assertFalse(packets.get(1).isTruncated());
+		assertTrue(packets.get(1).getQuestions().isEmpty());
+		assertEquals(count, packets.get(0).getAnswers().size() + packets.get(1).getAnswers().size());
+		discovery.assertValueCount(count);
+	}
+
+	@Test public void testDuplicateQuestionIsSuppressed() throws Exception {
+		MdnsEngine other = new MdnsEngine(network.newTransport(), scheduler);
+		other.start();
+		browser.discover(Collections.singletonList(TYPE)).subscribe();
+		scheduler.triggerActions();
+		assertEquals(1, network.getPacketCount());
+
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		other.discover(Collections.singletonList(TYPE)).subscribe();
+		scheduler.triggerActions();
+		assertEquals(2, network.getPacketCount());
+
+		// Each engine skips the query it is about to send if the other one has asked just before
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		assertEquals(2, network.getPacketCount());
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		assertEquals(3, network.getPacketCount());
+		scheduler.advanceTimeBy(1500, TimeUnit.MILLISECONDS);
+		assertEquals(4, network.getPacketCount());
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		assertEquals(4, network.getPacketCount());
+
+		other.close();
+	}
+
+	@Test public void testRegisterWithoutAddressFails() {
+		TestSubscriber<BonjourEvent> registration = new TestSubscriber<>();
+		broadcaster.register(new BonjourService.Builder("Service", TYPE).setPort(80).build()).subscribe(registration);
+
+		registration.assertError(BroadcastFailed.class);
+	}
+
+	/* Begin private */
+
+	/**
+	 * @return The messages sent through the network from now on
+	 */
+	private List<DnsMessage> sniff() throws IOException {
+		final List<DnsMessage> messages = new ArrayList<>();
+		network.newTransport().start(new Transport.Receiver() {
+			@Override public void onPacket(ByteBuffer packet) {
+				try {
+					messages.add(DnsMessage.decode(packet));
+				} catch (IOException e) {
+					throw new AssertionError(e);
+				}
+			}
+		});
+		return messages;
+	}
+
+	private static BonjourService service(String name, int port) {
+		try {
+			return new BonjourService.Builder(name, TYPE)
+					.setPort(port)
+					.addAddress(InetAddress.getByName("192.168.0.2"))
+					.addTxtRecord("version", "1")
+					.build();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package rxbonjour.mdns;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PacketFilterTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+	private static final String OTHER_TYPE = "_ipp._tcp.local.";
+	private static final String HOST = "host.local.";
+
+	@Test public void testPicksRecordsOfDiscoveredTypes() throws Exception {
+		PacketFilter filter = new PacketFilter(Collections.singletonList(TYPE), Collections.<String>emptyList(), Collections.<String>emptyList());
+
+		DnsMessage message = filter(filter, DnsMessage.response(
+				Arrays.asList(
+						DnsRecord.ptr(OTHER_TYPE, 4500, "Printer." + OTHER_TYPE),
+						DnsRecord.ptr(TYPE, 4500, "Test." + TYPE)),
+				Arrays.asList(
+						DnsRecord.srv("Printer." + OTHER_TYPE, 120, 631, "printer.local."),
+						DnsRecord.address("printer.local.", 120, InetAddress.getByName("10.0.0.9")),
+						DnsRecord.srv("Test." + TYPE, 120, 80, HOST),
+						DnsRecord.txt("Test." + TYPE, 4500, new byte[] { 0 }),
+						DnsRecord.address(HOST, 120, InetAddress.getByName("10.0.0.1")))));
+
+		assertEquals(Collections.singletonList(DnsRecord.ptr(TYPE, 4500, "Test." + TYPE)), message.getAnswers());
+		List<DnsRecord> additionals = message.getAdditionals();
+		assertEquals(3, additionals.size());
+		assertEquals(DnsRecord.TYPE_SRV, additionals.get(0).getType());
+		assertEquals(DnsRecord.TYPE_TXT, additionals.get(1).getType());
+		assertEquals(InetAddress.getByName("10.0.0.1"), additionals.get(2).getAddress());
+	}
+
+	@Test public void testDropsIrrelevantResponses() throws Exception {
+		PacketFilter filter = new PacketFilter(Collections.singletonList(TYPE), Collections.singletonList(HOST), Collections.<String>emptyList());
+
+		assertNull(filter(filter, DnsMessage.response(
+				Collections.singletonList(DnsRecord.ptr(OTHER_TYPE, 4500, "Printer." + OTHER_TYPE)),
+				Collections.singletonList(DnsRecord.address("printer.local.", 120, InetAddress.getByName("10.0.0.9"))))));
+		assertNull(filter(PacketFilter.NONE, DnsMessage.response(
+				Collections.singletonList(DnsRecord.ptr(TYPE, 4500, "Test." + TYPE)),
+				Collections.<DnsRecord>emptyList())));
+	}
+
+	@Test public void testPicksAddressesOfKnownHosts() throws Exception {
+		PacketFilter filter = new PacketFilter(Collections.singletonList(TYPE), Collections.singletonList(HOST), Collections.<String>emptyList());
+
+		DnsMessage message = filter(filter, DnsMessage.response(
+				Collections.singletonList(DnsRecord.address("HOST.local.", 120, InetAddress.getByName("10.0.0.1"))),
+				Collections.<DnsRecord>emptyList()));
+		assertEquals(1, message.getAnswers().size());
+	}
+
+	@Test public void testPicksInstancesOfSubtypes() throws Exception {
+		PacketFilter filter = new PacketFilter(Collections.singletonList("_printer._sub." + TYPE),
+				Collections.<String>emptyList(), Collections.<String>emptyList());
+
+		DnsMessage message = filter(filter, DnsMessage.response(
+				Collections.singletonList(DnsRecord.ptr("_printer._sub." + TYPE, 4500, "Test." + TYPE)),
+				Collections.singletonList(DnsRecord.srv("Test." + TYPE, 120, 80, HOST))));
+		assertEquals(1, message.getAnswers().size());
+		assertEquals(1, message.getAdditionals().size());
+	}
+
+	@Test public void testPicksQuestionsForLocalNames() throws Exception {
+		PacketFilter filter = new PacketFilter(Collections.<String>emptyList(), Collections.<String>emptyList(), Collections.singletonList(TYPE));
+
+		DnsMessage message = filter(filter, DnsMessage.query(Arrays.asList(
+				new DnsQuestion(OTHER_TYPE, DnsRecord.TYPE_PTR),
+				new DnsQuestion(TYPE, DnsRecord.TYPE_PTR))));
+		assertEquals(1, message.getQuestions().size());
+		assertEquals(TYPE, message.getQuestions().get(0).getName());
+
+		assertNull(filter(filter, DnsMessage.query(Collections.singletonList(new DnsQuestion(OTHER_TYPE, DnsRecord.TYPE_PTR)))));
+		assertNull(filter(PacketFilter.NONE, DnsMessage.query(Collections.singletonList(new DnsQuestion(TYPE, DnsRecord.TYPE_PTR)))));
+	}
+
+	@Test public void testPicksQuestionsOfDiscoveredTypes() throws Exception {
+		PacketFilter filter = new PacketFilter(Collections.singletonList(TYPE), Collections.<String>emptyList(), Collections.<String>emptyList());
+
+		DnsMessage message = filter(filter, DnsMessage.queries(
+				Arrays.asList(new DnsQuestion(OTHER_TYPE, DnsRecord.TYPE_PTR), new DnsQuestion(TYPE, DnsRecord.TYPE_PTR)),
+				Arrays.asList(DnsRecord.ptr(OTHER_TYPE, 4500, "Printer." + OTHER_TYPE), DnsRecord.ptr(TYPE, 4500, "Test." + TYPE)),
+				DnsMessage.MTU_PACKET_SIZE).get(0));
+		assertEquals(Collections.singletonList(new DnsQuestion(TYPE, DnsRecord.TYPE_PTR)).toString(), message.getQuestions().toString());
+		assertEquals(Collections.singletonList(DnsRecord.ptr(TYPE, 4500, "Test." + TYPE)), message.getAnswers());
+	}
+
+	/* Begin private */
+
+	private static DnsMessage filter(PacketFilter filter, DnsMessage message) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_PACKET_SIZE);
+		message.encode(buffer);
+		buffer.flip();
+
+		DnsReader reader = new DnsReader();
+		reader.reset(buffer);
+		return filter.filter(reader);
+	}
+}
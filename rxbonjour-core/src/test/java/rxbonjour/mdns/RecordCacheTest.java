@@ -0,0 +1,113 @@
+package rxbonjour.mdns;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordCacheTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+	private static final String NAME = "Test." + TYPE;
+	private static final String HOST = "host.local.";
+
+	private RecordCache cache;
+
+	@Before public void setUp() {
+		cache = new RecordCache(RecordCache.DEFAULT_MAX_SIZE);
+	}
+
+	@Test public void testPutAndExpire() {
+		DnsRecord ptr = DnsRecord.ptr(TYPE, 100, NAME);
+		assertTrue(cache.put(ptr, 0));
+		assertFalse(cache.put(ptr, 1000));
+
+		// Names are case-insensitive
+		assertEquals(Collections.singletonList(ptr), cache.get("_HTTP._tcp.local.", DnsRecord.TYPE_PTR, 0));
+		assertEquals(1, cache.size());
+
+		assertTrue(cache.expire(100 * 1000).isEmpty());
+		assertEquals(Collections.singletonList(ptr), cache.expire(101 * 1000));
+		assertTrue(cache.get(TYPE, DnsRecord.TYPE_PTR, 0).isEmpty());
+		assertEquals(Long.MAX_VALUE, cache.nextDeadline());
+	}
+
+	@Test public void testGoodbyeRemovesRecord() {
+		DnsRecord ptr = DnsRecord.ptr(TYPE, 100, NAME);
+		cache.put(ptr, 0);
+
+		assertTrue(cache.put(ptr.withTtl(0), 1000));
+		assertEquals(0, cache.size());
+		assertFalse(cache.put(ptr.withTtl(0), 2000));
+	}
+
+	@Test public void testRefreshesBeforeExpiry() {
+		cache.put(DnsRecord.srv(NAME, 100, 80, HOST), 0);
+
+		assertEquals(80 * 1000, cache.nextDeadline());
+		assertTrue(cache.refresh(80 * 1000 - 1).isEmpty());
+		assertEquals(1, cache.refresh(80 * 1000).size());
+		assertTrue(cache.refresh(80 * 1000).isEmpty());
+		assertEquals(85 * 1000, cache.nextDeadline());
+
+		// Missed refreshes are skipped
+		assertEquals(1, cache.refresh(92 * 1000).size());
+		assertEquals(95 * 1000, cache.nextDeadline());
+		assertEquals(1, cache.refresh(95 * 1000).size());
+		assertEquals(100 * 1000, cache.nextDeadline());
+
+		// Receiving the record again starts over
+		cache.put(DnsRecord.srv(NAME, 100, 80, HOST), 96 * 1000);
+		assertEquals(176 * 1000, cache.nextDeadline());
+	}
+
+	@Test public void testKnownAnswersNeedHalfTheirTtl() {
+		cache.put(DnsRecord.ptr(TYPE, 100, NAME), 0);
+
+		List<DnsRecord> known = cache.knownAnswers(TYPE, DnsRecord.TYPE_PTR, 40 * 1000);
+		assertEquals(1, known.size());
+		assertEquals(60, known.get(0).getTtl());
+		assertTrue(cache.knownAnswers(TYPE, DnsRecord.TYPE_PTR, 50 * 1000).isEmpty());
+		assertEquals(1, cache.get(TYPE, DnsRecord.TYPE_PTR, 50 * 1000).size());
+	}
+
+	@Test public void testCacheFlush() throws Exception {
+		DnsRecord first = DnsRecord.address(HOST, 120, InetAddress.getByName("10.0.0.1"));
+		DnsRecord second = DnsRecord.address(HOST, 120, InetAddress.getByName("10.0.0.2"));
+		DnsRecord third = DnsRecord.address(HOST, 120, InetAddress.getByName("10.0.0.3"));
+
+		// Records of the same announcement are kept
+		cache.put(first, 0);
+		cache.put(second, 500);
+		assertEquals(2, cache.get(HOST, DnsRecord.TYPE_A, 500).size());
+
+		// Older ones are flushed
+		cache.put(third, 5000);
+		assertEquals(Collections.singletonList(third), cache.get(HOST, DnsRecord.TYPE_A, 5000));
+		assertEquals(1, cache.size());
+	}
+
+	@Test public void testSharedRecordsAccumulate() {
+		cache.put(DnsRecord.ptr(TYPE, 100, "One." + TYPE), 0);
+		cache.put(DnsRecord.ptr(TYPE, 100, "Two." + TYPE), 5000);
+
+		assertEquals(2, cache.get(TYPE, DnsRecord.TYPE_PTR, 5000).size());
+	}
+
+	@Test public void testEvictsClosestToExpiry() {
+		cache = new RecordCache(2);
+		DnsRecord shortLived = DnsRecord.ptr(TYPE, 10, "One." + TYPE);
+		cache.put(shortLived, 0);
+		cache.put(DnsRecord.ptr(TYPE, 100, "Two." + TYPE), 0);
+		cache.put(DnsRecord.ptr(TYPE, 100, "Three." + TYPE), 0);
+
+		assertEquals(2, cache.size());
+		assertFalse(cache.get(TYPE, DnsRecord.TYPE_PTR, 0).contains(shortLived));
+	}
+}
@@ -0,0 +1,213 @@
+package rxbonjour.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.JmDNS;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rxbonjour.internal.BackpressureStrategy;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.internal.ResolveScheduler;
+import rxbonjour.jmdns.JmDNSManager;
+import rxbonjour.jmdns.MulticastLockManager;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class MetricsTest {
+
+	private static final String TYPE = "_http._tcp.local.";
+
+	private RecordingSink sink;
+
+	static class RecordingSink implements MetricsSink {
+
+		final Map<String, Long> counters = new HashMap<>();
+		final Map<String, List<Long>> samples = new HashMap<>();
+		final Map<String, Long> gauges = new HashMap<>();
+
+		@Override public synchronized void count(String name, long delta) {
+			Long value = counters.get(name);
+			counters.put(name, (value != null ? value : 0) + delta);
+		}
+
+		@Override public synchronized void record(String name, long value) {
+			List<Long> list = samples.get(name);
+			if (list == null) {
+				list = new ArrayList<>();
+				samples.put(name, list);
+			}
+			list.add(value);
+		}
+
+		@Override public synchronized void gauge(String name, long value) {
+			gauges.put(name, value);
+		}
+
+		synchronized List<Long> samples(String name) {
+			List<Long> list = samples.get(name);
+			return (list != null) ? list : new ArrayList<Long>();
+		}
+	}
+
+	@Before public void setUp() {
+		sink = new RecordingSink();
+		Metrics.setSink(sink);
+	}
+
+	@After public void tearDown() {
+		Metrics.setSink(null);
+	}
+
+	@Test public void testDefaultsToNoOp() {
+		assertTrue(Metrics.isEnabled());
+		assertSame(sink, Metrics.sink());
+
+		Metrics.setSink(null);
+		assertFalse(Metrics.isEnabled());
+		assertSame(Metrics.NONE, Metrics.sink());
+	}
+
+	@Test public void testCountsEmittedEventsPerType() {
+		BonjourService service = new BonjourService.Builder("Service", TYPE).build();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		Observable.just(
+				new BonjourEvent(BonjourEvent.Type.ADDED, service),
+				new BonjourEvent(BonjourEvent.Type.REMOVED, service),
+				new BonjourEvent(BonjourEvent.Type.ADDED, new BonjourService.Builder("Other", TYPE).build()))
+				.lift(new EventBackpressure(BackpressureStrategy.BUFFER, 16))
+				.subscribe(subscriber);
+
+		subscriber.assertValueCount(3);
+		assertEquals(Long.valueOf(2), sink.counters.get(Metrics.EVENTS_ADDED));
+		assertEquals(Long.valueOf(1), sink.counters.get(Metrics.EVENTS_REMOVED));
+		assertFalse(sink.counters.containsKey(Metrics.EVENTS_UPDATED));
+	}
+
+	@Test public void testReportsResolveQueueDepthAndWaitTime() {
+		final List<ResolveScheduler<String>.Slot> inFlight = new ArrayList<>();
+		ResolveScheduler<String> scheduler = new ResolveScheduler<String>(1) {
+			@Override public void onNext(Slot slot, String item) {
+				inFlight.add(slot);
+			}
+		};
+
+		scheduler.add("first");
+		scheduler.add("second");
+		scheduler.add("third");
+		assertEquals(Long.valueOf(2), sink.gauges.get(Metrics.RESOLVE_QUEUE_DEPTH));
+
+		inFlight.get(0).complete();
+		assertEquals(Long.valueOf(1), sink.gauges.get(Metrics.RESOLVE_QUEUE_DEPTH));
+		assertEquals(2, sink.samples(Metrics.RESOLVE_QUEUE_WAIT_NANOS).size());
+		scheduler.quit();
+	}
+
+	@Test public void testReportsMulticastLockHolds() {
+		TestScheduler scheduler = new TestScheduler();
+		MulticastLockManager manager = new MulticastLockManager(0, TimeUnit.MILLISECONDS, scheduler) {
+			@Override protected void onAcquire() {
+			}
+
+			@Override protected void onRelease() {
+			}
+		};
+
+		Subscription hold1 = manager.acquire();
+		Subscription hold2 = manager.acquire();
+		assertEquals(Long.valueOf(2), sink.gauges.get(Metrics.MULTICAST_LOCK_HOLDS));
+
+		scheduler.advanceTimeBy(1500, TimeUnit.MILLISECONDS);
+		hold1.unsubscribe();
+		hold2.unsubscribe();
+		assertEquals(Long.valueOf(0), sink.gauges.get(Metrics.MULTICAST_LOCK_HOLDS));
+		assertEquals(1, sink.samples(Metrics.MULTICAST_LOCK_HOLD_MILLIS).size());
+		assertEquals(Long.valueOf(1500), sink.samples(Metrics.MULTICAST_LOCK_HOLD_MILLIS).get(0));
+	}
+
+	@Test public void testReportsJmDNSInstancesAndSubscribers() throws Exception {
+		JmDNSManager manager = new JmDNSManager(0, TimeUnit.MILLISECONDS, new TestScheduler()) {
+			@Override protected JmDNS create(InetAddress address) throws IOException {
+				return mock(JmDNS.class);
+			}
+		};
+
+		JmDNSManager.Lease lease1 = manager.acquire(InetAddress.getByName("192.168.0.10"));
+		JmDNSManager.Lease lease2 = manager.acquire(InetAddress.getByName("192.168.0.10"));
+		manager.acquire(InetAddress.getByName("192.168.0.11"));
+		assertEquals(Long.valueOf(2), sink.gauges.get(Metrics.JMDNS_INSTANCES));
+		assertEquals(Long.valueOf(3), sink.gauges.get(Metrics.JMDNS_SUBSCRIBERS));
+
+		lease1.unsubscribe();
+		lease2.unsubscribe();
+		assertEquals(Long.valueOf(1), sink.gauges.get(Metrics.JMDNS_INSTANCES));
+		assertEquals(Long.valueOf(1), sink.gauges.get(Metrics.JMDNS_SUBSCRIBERS));
+
+		manager.close();
+		assertEquals(Long.valueOf(0), sink.gauges.get(Metrics.JMDNS_INSTANCES));
+	}
+
+	@Test public void testTracksLatencyPerService() {
+		LatencyTracker tracker = new LatencyTracker(Metrics.RESOLVE_LATENCY_NANOS);
+		tracker.start("Service", TYPE);
+		tracker.start("Lost", TYPE);
+		tracker.cancel("Lost", TYPE);
+
+		// Types reported with and without the local domain identify the same service
+		tracker.stop("Service", "_http._tcp.");
+		tracker.stop("Lost", TYPE);
+		tracker.stop("Service", TYPE);
+		assertEquals(1, sink.samples(Metrics.RESOLVE_LATENCY_NANOS).size());
+	}
+
+	@Test public void testAbandonedLatenciesExpire() throws Exception {
+		LatencyTracker tracker = new LatencyTracker(Metrics.RESOLVE_LATENCY_NANOS, TimeUnit.MILLISECONDS.toNanos(1));
+		for (int i = 0; i < LatencyTracker.MAX_TRACKED; i++) {
+			tracker.start("Unresolved " + i, TYPE);
+		}
+		Thread.sleep(5);
+
+		// Making room for new services discards the measurements that were never stopped
+		tracker.start("Service", TYPE);
+		tracker.stop("Service", TYPE);
+		tracker.stop("Unresolved 0", TYPE);
+		assertEquals(1, sink.samples(Metrics.RESOLVE_LATENCY_NANOS).size());
+	}
+
+	@Test public void testClearedLatenciesAreNotRecorded() {
+		LatencyTracker tracker = new LatencyTracker(Metrics.RESOLVE_LATENCY_NANOS);
+		tracker.start("Service", TYPE);
+		tracker.clear();
+
+		tracker.stop("Service", TYPE);
+		assertTrue(sink.samples(Metrics.RESOLVE_LATENCY_NANOS).isEmpty());
+	}
+
+	@Test public void testLatencyIsNotTrackedWhileDisabled() {
+		Metrics.setSink(null);
+		LatencyTracker tracker = new LatencyTracker(Metrics.RESOLVE_LATENCY_NANOS);
+		tracker.start("Service", TYPE);
+
+		Metrics.setSink(sink);
+		tracker.stop("Service", TYPE);
+		assertTrue(sink.samples(Metrics.RESOLVE_LATENCY_NANOS).isEmpty());
+	}
+}
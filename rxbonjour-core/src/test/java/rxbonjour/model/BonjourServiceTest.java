@@ -0,0 +1,115 @@
+package rxbonjour.model;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BonjourServiceTest {
+
+	@Test public void testV4Address() throws Exception {
+		BonjourService service = new BonjourService.Builder("service", "_http._tcp")
+				.setPort(80)
+				.addAddress(InetAddress.getByName("127.0.0.1"))
+				.build();
+
+		assertEquals(InetAddress.getByName("127.0.0.1"), service.getHost());
+		assertEquals(InetAddress.getByName("127.0.0.1"), service.getV4Host());
+		assertNull(service.getV6Host());
+	}
+
+	@Test public void testV6Address() throws Exception {
+		BonjourService service = new BonjourService.Builder("service", "_http._tcp")
+				.setPort(80)
+				.addAddress(InetAddress.getByName("::1"))
+				.build();
+
+		assertEquals(InetAddress.getByName("::1"), service.getHost());
+		assertEquals(InetAddress.getByName("::1"), service.getV6Host());
+		assertNull(service.getV4Host());
+	}
+
+	@Test public void testMultipleAddresses() throws Exception {
+		BonjourService service = new BonjourService.Builder("service", "_http._tcp")
+				.setPort(80)
+				.addAddress(InetAddress.getByName("127.0.0.1"))
+				.addAddress(InetAddress.getByName("::1"))
+				.build();
+
+		assertEquals(InetAddress.getByName("127.0.0.1"), service.getHost());
+		assertEquals(InetAddress.getByName("127.0.0.1"), service.getV4Host());
+		assertEquals(InetAddress.getByName("::1"), service.getV6Host());
+	}
+
+	@Test public void testAllAddressesKept() throws Exception {
+		BonjourService service = new BonjourService.Builder("service", "_http._tcp")
+				.setPort(80)
+				.addAddress(InetAddress.getByName("192.168.0.10"))
+				.addAddress(InetAddress.getByName("fe80::1"))
+				.addAddress(InetAddress.getByName("10.0.0.10"))
+				.addAddress(InetAddress.getByName("192.168.0.10"))
+				.build();
+
+		assertEquals(Arrays.asList(InetAddress.getByName("192.168.0.10"), InetAddress.getByName("fe80::1"), InetAddress.getByName("10.0.0.10")),
+				service.getHosts());
+		assertEquals(InetAddress.getByName("192.168.0.10"), service.getV4Host());
+		assertEquals(InetAddress.getByName("fe80::1"), service.getV6Host());
+	}
+
+	@Test public void testHostOrderDoesNotAffectEquality() throws Exception {
+		BonjourService service1 = new BonjourService.Builder("service", "_http._tcp")
+				.addAddress(InetAddress.getByName("192.168.0.10"))
+				.addAddress(InetAddress.getByName("10.0.0.10"))
+				.build();
+		BonjourService service2 = new BonjourService.Builder("service", "_http._tcp")
+				.addAddress(InetAddress.getByName("10.0.0.10"))
+				.addAddress(InetAddress.getByName("192.168.0.10"))
+				.build();
+
+		assertEquals(service1, service2);
+		assertEquals(service1.hashCode(), service2.hashCode());
+	}
+
+	@Test public void testCopy() throws Exception {
+		BonjourService service = new BonjourService.Builder("service", "_http._tcp")
+				.setPort(80)
+				.addAddress(InetAddress.getByName("127.0.0.1"))
+				.addTxtRecord("a", "1")
+				.build();
+
+		assertEquals(service, new BonjourService.Builder(service).build());
+		BonjourService copy = new BonjourService.Builder(service).addTxtRecord("b", "2").build();
+		assertEquals(2, copy.getTxtRecordCount());
+		assertEquals(1, service.getTxtRecordCount());
+	}
+
+	@Test public void testUnresolved() throws Exception {
+		BonjourService resolved = new BonjourService.Builder("service", "_http._tcp").build();
+		BonjourService unresolved = new BonjourService.Builder("service", "_http._tcp").setResolved(false).build();
+
+		assertTrue(resolved.isResolved());
+		assertFalse(unresolved.isResolved());
+		assertTrue(unresolved.getHosts().isEmpty());
+		assertFalse(resolved.equals(unresolved));
+	}
+
+	@Test public void testRawTxtRecords() throws Exception {
+		byte[] rdata = { 5, 'a', '=', '1', 0, 1, 3, 'b', '=', 'x' };
+		BonjourService service = new BonjourService.Builder("service", "_http._tcp")
+				.setTxtRecords(rdata)
+				.addTxtRecord("c", "3")
+				.build();
+
+		assertEquals(3, service.getTxtRecordCount());
+		assertEquals("3", service.getTxtRecord("c"));
+		assertEquals("x", service.getTxtRecord("b"));
+		assertArrayEquals(new byte[] { '1', 0, 1 }, service.getTxtRecordBytes("a"));
+		assertNull(service.getTxtRecordBytes("d"));
+	}
+}
@@ -0,0 +1,63 @@
+package rxbonjour.model;
+
+import org.junit.Test;
+
+import rxbonjour.exc.TypeMalformedException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceTypeTest {
+
+	@Test public void testComponents() throws Exception {
+		ServiceType type = ServiceType.of("_xmpp-server._tcp");
+
+		assertNull(type.getSubtype());
+		assertEquals("_xmpp-server", type.getService());
+		assertEquals("_tcp", type.getProtocol());
+		assertEquals("local", type.getDomain());
+		assertEquals("_xmpp-server._tcp.local.", type.getFullyQualifiedName());
+		assertEquals("_xmpp-server._tcp", type.toString());
+	}
+
+	@Test public void testDomain() throws Exception {
+		ServiceType type = ServiceType.of("_ssh._udp.example.");
+
+		assertEquals("_udp", type.getProtocol());
+		assertEquals("example", type.getDomain());
+		assertEquals("_ssh._udp.example.", type.getFullyQualifiedName());
+		assertEquals(ServiceType.of("_http._tcp"), ServiceType.of("_http._tcp.local."));
+	}
+
+	@Test public void testSubtype() throws Exception {
+		ServiceType type = ServiceType.of("_printer._sub._http._tcp");
+
+		assertEquals("_printer", type.getSubtype());
+		assertEquals("_http", type.getService());
+		assertEquals("_printer._sub._http._tcp.local.", type.getFullyQualifiedName());
+	}
+
+	@Test public void testInterning() throws Exception {
+		assertSame(ServiceType.of("_ipp._tcp"), ServiceType.of("_ipp._tcp"));
+	}
+
+	@Test public void testInvalidTypes() throws Exception {
+		assertFalse(ServiceType.isValid(null));
+		assertFalse(ServiceType.isValid(""));
+		assertFalse(ServiceType.isValid("_._tcp"));
+		assertFalse(ServiceType.isValid("_http._tcp."));
+		assertFalse(ServiceType.isValid("_http._tcp.local"));
+		assertFalse(ServiceType.isValid("_http._tcp.sub.local."));
+		assertFalse(ServiceType.isValid("_http._tcpx"));
+		assertFalse(ServiceType.isValid("_printer._sub._http"));
+		assertTrue(ServiceType.isValid("_sub._tcp"));
+	}
+
+	@Test(expected = TypeMalformedException.class)
+	public void testParseInvalidType() throws Exception {
+		ServiceType.of("wrong._format");
+	}
+}
@@ -0,0 +1,127 @@
+package rxbonjour.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TxtRecordsTest {
+
+	@Test public void testEmpty() throws Exception {
+		TxtRecords records = new TxtRecords.Builder().build();
+
+		assertSame(TxtRecords.empty(), records);
+		assertTrue(records.isEmpty());
+		assertEquals(0, records.size());
+		assertNull(records.get("key"));
+	}
+
+	@Test public void testLookup() throws Exception {
+		TxtRecords records = new TxtRecords.Builder()
+				.put("path", "/index.html")
+				.put("txtvers", "1")
+				.put("path", "/status")
+				.build();
+
+		assertEquals(2, records.size());
+		assertEquals("/status", records.get("path"));
+		assertEquals("1", records.getString("txtvers"));
+		assertTrue(records.containsKey("txtvers"));
+		assertFalse(records.containsKey("note"));
+		assertEquals(Arrays.asList("path", "txtvers"), new ArrayList<>(records.keySet()));
+	}
+
+	@Test public void testToMapAndEquality() throws Exception {
+		TxtRecords records = new TxtRecords.Builder().put("a", "1").put("b", "2").build();
+		Map<String, String> map = records.toMap();
+
+		assertEquals(2, map.size());
+		assertEquals("2", map.get("b"));
+		assertEquals(records, new TxtRecords.Builder().put("a", "1").put("b", "2").build());
+		assertEquals(records.hashCode(), new TxtRecords.Builder().put("a", "1").put("b", "2").build().hashCode());
+		assertFalse(records.equals(new TxtRecords.Builder().put("a", "1").put("b", "3").build()));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testKeySetIsReadOnly() throws Exception {
+		new TxtRecords.Builder().put("a", "1").build().keySet().clear();
+	}
+
+	@Test public void testFromRdata() throws Exception {
+		TxtRecords records = TxtRecords.fromRdata(rdata("txtvers=1", "", "path=/", "path=/ignored", "secure", "=novalue"));
+
+		assertEquals(3, records.size());
+		assertEquals("1", records.get("txtvers"));
+		assertEquals("/", records.get("path"));
+		assertEquals("true", records.get("secure"));
+		assertArrayEquals(new byte[0], records.getBytes("secure"));
+		assertEquals(Arrays.asList("txtvers", "path", "secure"), new ArrayList<>(records.keySet()));
+	}
+
+	@Test public void testFromMalformedRdata() throws Exception {
+		byte[] rdata = rdata("a=1", "b=2");
+		rdata[4] = 10;
+
+		TxtRecords records = TxtRecords.fromRdata(rdata);
+		assertEquals(1, records.size());
+		assertEquals("1", records.get("a"));
+		assertSame(TxtRecords.empty(), TxtRecords.fromRdata(null));
+		assertSame(TxtRecords.empty(), TxtRecords.fromRdata(new byte[] { 0 }));
+	}
+
+	@Test public void testBinaryValues() throws Exception {
+		byte[] value = { 0, (byte) 0xff, '=', 1 };
+		TxtRecords records = new TxtRecords.Builder().put("bin", value).put("text", "ü").build();
+
+		assertArrayEquals(value, records.getBytes("bin"));
+		assertArrayEquals("ü".getBytes("UTF-8"), records.getBytes("text"));
+		assertNull(records.getBytes("missing"));
+	}
+
+	@Test public void testRdataRoundTrip() throws Exception {
+		TxtRecords records = new TxtRecords.Builder().put("a", "1").put("flag", (String) null).put("ключ", "значение").build();
+		TxtRecords parsed = TxtRecords.fromRdata(records.toRdata());
+
+		assertArrayEquals(rdata("a=1", "flag", "ключ=значение"), records.toRdata());
+		assertEquals(records, parsed);
+		assertEquals(records.hashCode(), parsed.hashCode());
+		assertEquals("значение", parsed.get("ключ"));
+		assertEquals("true", parsed.get("flag"));
+	}
+
+	@Test public void testBuilderFromRecords() throws Exception {
+		TxtRecords records = new TxtRecords.Builder(TxtRecords.fromRdata(rdata("a=1", "flag")))
+				.put("b", "2")
+				.build();
+
+		assertArrayEquals(rdata("a=1", "flag", "b=2"), records.toRdata());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOversizedRecord() throws Exception {
+		char[] value = new char[255];
+		Arrays.fill(value, 'x');
+		new TxtRecords.Builder().put("key", new String(value));
+	}
+
+	/* Begin private */
+
+	private static byte[] rdata(String... strings) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (String string : strings) {
+			byte[] bytes = string.getBytes("UTF-8");
+			out.write(bytes.length);
+			out.write(bytes);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,99 @@
+package rxbonjour.probe;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReachabilityProberTest {
+
+	/**
+	 * Prober reporting fixed latencies instead of connecting, treating unknown addresses as unreachable
+	 */
+	static class FakeProber extends ReachabilityProber {
+		final Map<InetAddress, Long> latencies = new HashMap<>();
+
+		FakeProber() {
+			super(Schedulers.immediate(), 1, TimeUnit.SECONDS);
+		}
+
+		@Override protected long connect(InetSocketAddress address, int timeoutMillis) throws IOException {
+			Long latency = latencies.get(address.getAddress());
+			if (latency == null) throw new IOException("unreachable");
+			return latency;
+		}
+	}
+
+	private static BonjourService service(int port, String... hosts) throws Exception {
+		BonjourService.Builder builder = new BonjourService.Builder("printer", "_ipp._tcp.local.").setPort(port);
+		for (String host : hosts) {
+			builder.addAddress(InetAddress.getByName(host));
+		}
+		return builder.build();
+	}
+
+	@Test public void testRankByLatency() throws Exception {
+		FakeProber prober = new FakeProber();
+		prober.latencies.put(InetAddress.getByName("192.168.0.10"), 3000000L);
+		prober.latencies.put(InetAddress.getByName("fe80::10"), 1000000L);
+		TestSubscriber<List<ReachabilityProber.Endpoint>> subscriber = new TestSubscriber<>();
+
+		prober.rank(service(631, "192.168.0.10", "10.0.0.10", "fe80::10")).subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		List<ReachabilityProber.Endpoint> endpoints = subscriber.getOnNextEvents().get(0);
+		assertEquals(2, endpoints.size());
+		assertEquals(InetAddress.getByName("fe80::10"), endpoints.get(0).getAddress());
+		assertEquals(631, endpoints.get(0).getSocketAddress().getPort());
+		assertEquals(1, endpoints.get(0).getLatency(TimeUnit.MILLISECONDS));
+		assertEquals(InetAddress.getByName("192.168.0.10"), endpoints.get(1).getAddress());
+	}
+
+	@Test public void testNoReachableEndpoint() throws Exception {
+		FakeProber prober = new FakeProber();
+		TestSubscriber<ReachabilityProber.Endpoint> subscriber = new TestSubscriber<>();
+
+		prober.fastest(service(631, "192.168.0.10")).subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		subscriber.assertNoValues();
+		subscriber.assertCompleted();
+	}
+
+	@Test public void testConnect() throws Exception {
+		ServerSocket open = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		closed.close();
+
+		try {
+			ReachabilityProber prober = new ReachabilityProber(2, 1, TimeUnit.SECONDS);
+			TestSubscriber<List<ReachabilityProber.Endpoint>> subscriber = new TestSubscriber<>();
+
+			prober.rank(service(open.getLocalPort(), "127.0.0.1")).subscribe(subscriber);
+			subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+			subscriber.assertNoErrors();
+			assertEquals(1, subscriber.getOnNextEvents().get(0).size());
+
+			subscriber = new TestSubscriber<>();
+			prober.rank(service(closed.getLocalPort(), "127.0.0.1")).subscribe(subscriber);
+			subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+			subscriber.assertNoErrors();
+			assertEquals(0, subscriber.getOnNextEvents().get(0).size());
+
+		} finally {
+			open.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package rxbonjour.registry;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceRegistryTest {
+
+	private static BonjourService service(String name, String type, String host, int port) throws Exception {
+		return new BonjourService.Builder(name, type)
+				.addAddress(InetAddress.getByName(host))
+				.setPort(port)
+				.build();
+	}
+
+	private static BonjourEvent event(BonjourEvent.Type type, BonjourService service) {
+		return new BonjourEvent(type, service);
+	}
+
+	@Test public void testIndexes() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		ServiceRegistry registry = new ServiceRegistry(events);
+		TestSubscriber<ServiceRegistry.Snapshot> subscriber = new TestSubscriber<>();
+		registry.snapshots().subscribe(subscriber);
+
+		BonjourService printer = service("printer", "_ipp._tcp.local.", "10.0.0.1", 631);
+		BonjourService web = service("web", "_http._tcp.local.", "10.0.0.1", 80);
+		BonjourService nas = service("nas", "_http._tcp.local.", "10.0.0.2", 80);
+		events.onNext(event(BonjourEvent.Type.ADDED, printer));
+		events.onNext(event(BonjourEvent.Type.ADDED, web));
+		events.onNext(event(BonjourEvent.Type.ADDED, nas));
+
+		ServiceRegistry.Snapshot snapshot = registry.getSnapshot();
+		assertEquals(3, snapshot.getVersion());
+		assertEquals(3, snapshot.size());
+		assertSame(printer, snapshot.get("printer", "_ipp._tcp."));
+		assertTrue(snapshot.contains("web", "_http._tcp"));
+		assertEquals(2, snapshot.getServicesOfType("_http._tcp").size());
+		assertEquals(2, snapshot.getServicesOnHost(InetAddress.getByName("10.0.0.1")).size());
+		assertEquals(1, snapshot.getServicesOnHost(InetAddress.getByName("10.0.0.2")).size());
+
+		// Snapshots are immutable, and include the empty initial state
+		events.onNext(event(BonjourEvent.Type.REMOVED, web));
+		assertEquals(3, snapshot.size());
+		assertEquals(2, registry.getSnapshot().size());
+		assertEquals(1, registry.getSnapshot().getServicesOnHost(InetAddress.getByName("10.0.0.1")).size());
+		subscriber.assertValueCount(5);
+		assertTrue(subscriber.getOnNextEvents().get(0).isEmpty());
+	}
+
+	@Test public void testUpdatesReplaceServicesInPlace() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		ServiceRegistry registry = new ServiceRegistry(events);
+		TestSubscriber<ServiceRegistry.Snapshot> subscriber = new TestSubscriber<>();
+		registry.snapshots().subscribe(subscriber);
+
+		events.onNext(event(BonjourEvent.Type.ADDED, service("a", "_http._tcp.", "10.0.0.1", 80)));
+		events.onNext(event(BonjourEvent.Type.ADDED, service("b", "_http._tcp.", "10.0.0.1", 80)));
+
+		// Identical re-resolves and removals of unknown services don't produce new snapshots
+		events.onNext(event(BonjourEvent.Type.ADDED, service("a", "_http._tcp.", "10.0.0.1", 80)));
+		events.onNext(event(BonjourEvent.Type.REMOVED, service("c", "_http._tcp.", "10.0.0.1", 80)));
+		subscriber.assertValueCount(3);
+
+		BonjourService moved = service("a", "_http._tcp.local.", "10.0.0.3", 8080);
+		events.onNext(event(BonjourEvent.Type.ADDED, moved));
+
+		ServiceRegistry.Snapshot snapshot = registry.getSnapshot();
+		List<BonjourService> services = snapshot.getServicesOfType("_http._tcp.local.");
+		assertEquals(2, services.size());
+		assertSame(moved, services.get(0));
+		assertEquals(1, snapshot.getServicesOnHost(InetAddress.getByName("10.0.0.1")).size());
+		assertSame(moved, snapshot.getServicesOnHost(InetAddress.getByName("10.0.0.3")).get(0));
+	}
+
+	@Test public void testSharedAmongSubscribers() throws Exception {
+		PublishSubject<BonjourEvent> events = PublishSubject.create();
+		ServiceRegistry registry = new ServiceRegistry(events);
+
+		Subscription first = registry.snapshots().subscribe();
+		events.onNext(event(BonjourEvent.Type.ADDED, service("a", "_http._tcp.", "10.0.0.1", 80)));
+
+		// Late subscribers receive the latest snapshot, rather than the events leading to it
+		TestSubscriber<ServiceRegistry.Snapshot> late = new TestSubscriber<>();
+		registry.snapshots().subscribe(late);
+		late.assertValueCount(1);
+		assertEquals(1, late.getOnNextEvents().get(0).getVersion());
+		assertTrue(events.hasObservers());
+
+		// The registry is reset once everybody unsubscribed
+		first.unsubscribe();
+		late.unsubscribe();
+		assertFalse(events.hasObservers());
+		assertTrue(registry.getSnapshot().isEmpty());
+		assertNull(registry.getSnapshot().get("a", "_http._tcp."));
+	}
+}
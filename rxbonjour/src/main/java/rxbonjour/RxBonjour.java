@@ -2,12 +2,32 @@ package rxbonjour;
 
 import android.content.Context;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import rxbonjour.broadcast.BonjourBroadcast;
 import rxbonjour.broadcast.BonjourBroadcastBuilder;
 import rxbonjour.discovery.BonjourDiscovery;
 import rxbonjour.exc.TypeMalformedException;
+import rxbonjour.internal.BackpressureStrategy;
 import rxbonjour.internal.BonjourSchedulers;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.internal.EventBatcher;
+import rxbonjour.internal.ResolveCache;
+import rxbonjour.internal.ServiceDiff;
+import rxbonjour.jmdns.JmDNSManager;
+import rxbonjour.jmdns.MulticastLockManager;
+import rxbonjour.metrics.Metrics;
+import rxbonjour.metrics.MetricsSink;
 import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+import rxbonjour.model.BonjourTypeEvent;
+import rxbonjour.model.ServiceType;
+import rxbonjour.probe.ReachabilityProber;
+import rxbonjour.registry.ServiceRegistry;
+import rxbonjour.utils.SupportUtils;
 
 /**
  * RxBonjour:
@@ -15,7 +35,11 @@ import rxbonjour.model.BonjourEvent;
  */
 public final class RxBonjour {
 
-	private static final String TYPE_PATTERN = "_[a-zA-Z0-9\\-_]+\\.(_tcp|_udp)(\\.[a-zA-Z0-9\\-]+\\.)?";
+	/** Maximum number of events per batch delivered by {@link #newBatchedDiscovery(Context, String, long, TimeUnit)} */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	/** Prober shared by all reachability probes */
+	private static final ReachabilityProber PROBER = new ReachabilityProber();
 
 	private RxBonjour() {
 		throw new AssertionError("no instances");
@@ -88,6 +112,417 @@ public final class RxBonjour {
 				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
 	}
 
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, merging their events into a single stream.
+	 * The type of each event's service can be obtained through {@link rxbonjour.model.BonjourService#getType()}.
+	 * This method utilizes the support implementation with JmDNS as its backbone, which shares the discovery of each type
+	 * with all other subscribers of that type, and asks for all of the types in the same query packets.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 * This method will throw a Runtime Exception if any of the input types does not obey Bonjour type specifications.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public static rx.Observable<BonjourEvent> newDiscovery(Context context, Collection<String> types) {
+		return newDiscovery(context, types, false);
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, merging their events into a single stream.
+	 * The NsdManager implementation, chosen if forced and supported by the device's API level, runs one discovery per type.
+	 *
+	 * @param context         Context of the request
+	 * @param types           Types of service to discover
+	 * @param forceNsdManager Whether to use the NsdManager implementation on devices that support it
+	 * @return An Observable for Bonjour events of all types
+	 * @see #newDiscovery(Context, String, boolean)
+	 */
+	public static rx.Observable<BonjourEvent> newDiscovery(Context context, Collection<String> types, boolean forceNsdManager) {
+		// Verify input
+		for (String type : types) {
+			if (!isBonjourType(type)) throw new TypeMalformedException(type);
+		}
+
+		// Choose discovery strategy
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(forceNsdManager);
+
+		// Create the discovery Observable and pre-configure it
+		return discovery.start(context, types)
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, without resolving the services it finds.
+	 * Services are reported as soon as they are found, with their name and type only, unless they were resolved earlier;
+	 * see {@link BonjourService#isResolved()}. Resolve the services of interest on demand using {@link #resolve(Context, BonjourService)},
+	 * which saves the resolve traffic for all others on large networks.
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 * This method will throw a Runtime Exception if any of the input types does not obey Bonjour type specifications.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public static rx.Observable<BonjourEvent> newUnresolvedDiscovery(Context context, Collection<String> types) {
+		return newUnresolvedDiscovery(context, types, false);
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, without resolving the services it finds.
+	 *
+	 * @param context         Context of the request
+	 * @param types           Types of service to discover
+	 * @param forceNsdManager Whether to use the NsdManager implementation on devices that support it
+	 * @return An Observable for Bonjour events of all types
+	 * @see #newUnresolvedDiscovery(Context, Collection)
+	 */
+	public static rx.Observable<BonjourEvent> newUnresolvedDiscovery(Context context, Collection<String> types, boolean forceNsdManager) {
+		// Verify input
+		for (String type : types) {
+			if (!isBonjourType(type)) throw new TypeMalformedException(type);
+		}
+
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(forceNsdManager);
+		return discovery.startUnresolved(context, types)
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
+	}
+
+	/**
+	 * Resolves the provided service on demand, e.g. after it was found by {@link #newUnresolvedDiscovery(Context, Collection)}.
+	 * Services resolved earlier are emitted right away. If the service can't be resolved in time,
+	 * a {@link rxbonjour.exc.ResolveFailed} error is emitted.
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 *
+	 * @param context Context of the request
+	 * @param service Service to resolve
+	 * @return An Observable emitting the resolved service
+	 */
+	public static rx.Observable<BonjourService> resolve(Context context, BonjourService service) {
+		return resolve(context, service, false);
+	}
+
+	/**
+	 * Resolves the provided service on demand, using the same implementation that discovered it.
+	 *
+	 * @param context         Context of the request
+	 * @param service         Service to resolve
+	 * @param forceNsdManager Whether to use the NsdManager implementation on devices that support it
+	 * @return An Observable emitting the resolved service
+	 * @see #resolve(Context, BonjourService)
+	 */
+	public static rx.Observable<BonjourService> resolve(Context context, BonjourService service, boolean forceNsdManager) {
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(forceNsdManager);
+		return discovery.resolve(context, service)
+				.compose(BonjourSchedulers.<BonjourService>startSchedulers());
+	}
+
+	/**
+	 * Starts a long-lived Bonjour service discovery for all of the provided service types, suited for screens that stay
+	 * subscribed for days. Instead of querying the network repeatedly, the discovery relies on announcements of services
+	 * and the lifetime of their records: the types are queried with an exponentially increasing interval, from one second
+	 * up to an hour, and known services are only queried again once their records are about to expire.
+	 * Services that don't respond by then are reported as removed.
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 * This method will throw a Runtime Exception if any of the input types does not obey Bonjour type specifications.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public static rx.Observable<BonjourEvent> newMonitoringDiscovery(Context context, Collection<String> types) {
+		// Verify input
+		for (String type : types) {
+			if (!isBonjourType(type)) throw new TypeMalformedException(type);
+		}
+
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(false);
+		return discovery.startMonitoring(context, types)
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types through a lightweight mDNS engine instead of JmDNS.
+	 * The engine starts within milliseconds and runs without threads of its own: the packets of all discoveries and broadcasts
+	 * are read by a single selector thread from one non-blocking channel per network interface, and handled on
+	 * a computation thread. Services are always resolved. The engine requires Android 7.0 or newer;
+	 * on older devices, the returned Observable emits an {@link UnsupportedOperationException}.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 * This method will throw a Runtime Exception if any of the input types does not obey Bonjour type specifications.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public static rx.Observable<BonjourEvent> newLightweightDiscovery(Context context, Collection<String> types) {
+		// Verify input
+		for (String type : types) {
+			if (!isBonjourType(type)) throw new TypeMalformedException(type);
+		}
+
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(false);
+		return discovery.startLightweight(context, types)
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types on all network interfaces of the device
+	 * that support multicast, such as Wi-Fi, Ethernet or USB tethering, over both IPv4 and IPv6. Each interface is served by
+	 * a JmDNS instance of its own. Services visible on more than one interface are reported as a single service, whose
+	 * {@link rxbonjour.model.BonjourService#getHosts()} holds the addresses resolved on all of them; such a service is only
+	 * reported as removed once it has disappeared from all interfaces.
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 * This method will throw a Runtime Exception if any of the input types does not obey Bonjour type specifications.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public static rx.Observable<BonjourEvent> newMultiInterfaceDiscovery(Context context, Collection<String> types) {
+		// Verify input
+		for (String type : types) {
+			if (!isBonjourType(type)) throw new TypeMalformedException(type);
+		}
+
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(false);
+		return discovery.startOnAllInterfaces(context, types)
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for the provided service type, delivering its events in batches.
+	 * Events are collected over a time window on a background thread, and handed over to the main thread as a single list
+	 * once the window has passed. Windows without any events don't produce a batch.
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 *
+	 * @param context  Context of the request
+	 * @param type     Type of service to discover
+	 * @param timespan Length of each window
+	 * @param unit     Unit of the window length
+	 * @return An Observable for batches of Bonjour events
+	 * @see #newBatchedDiscovery(Context, Collection, long, TimeUnit, int, boolean)
+	 */
+	public static rx.Observable<List<BonjourEvent>> newBatchedDiscovery(Context context, String type, long timespan, TimeUnit unit) {
+		return newBatchedDiscovery(context, Collections.singletonList(type), timespan, unit, DEFAULT_BATCH_SIZE, false);
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, delivering their events in batches.
+	 * Events are collected over a time window on a background thread, and handed over to the main thread as a single list
+	 * once the window has passed or the batch is full, whichever comes first. Windows without any events don't produce a batch.
+	 * <p>
+	 * In net-change mode, each batch only contains the net effect of its events per service: repeated resolves of unchanged
+	 * services are suppressed as with {@link #distinctChanges()}, services that are added and removed within the same window
+	 * are omitted, and multiple changes to a service are merged into a single {@link BonjourEvent.Type#UPDATED} event.
+	 * <p>
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 * This method will throw a Runtime Exception if any of the input types does not obey Bonjour type specifications.
+	 *
+	 * @param context    Context of the request
+	 * @param types      Types of service to discover
+	 * @param timespan   Length of each window
+	 * @param unit       Unit of the window length
+	 * @param maxSize    Maximum number of events per batch
+	 * @param netChanges Whether to collapse the events of each batch into their net effect
+	 * @return An Observable for batches of Bonjour events of all types
+	 */
+	public static rx.Observable<List<BonjourEvent>> newBatchedDiscovery(Context context, Collection<String> types, long timespan, TimeUnit unit,
+	                                                                    int maxSize, boolean netChanges) {
+		// Verify input
+		for (String type : types) {
+			if (!isBonjourType(type)) throw new TypeMalformedException(type);
+		}
+
+		// Create the discovery Observable, batching its events before they are handed over to the main thread
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(false);
+		return discovery.start(context, types)
+				.compose(BonjourSchedulers.startSchedulers(new EventBatcher(timespan, unit, maxSize, netChanges)));
+	}
+
+	/**
+	 * Starts enumerating the service types present on the network, using DNS-SD's "_services._dns-sd._udp" meta-query.
+	 * A type is reported as added once it is first enumerated, and as removed once none of its records remain on the network.
+	 * Type enumeration is only available with the support implementation, as NsdManager doesn't expose it.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 *
+	 * @param context Context of the request
+	 * @return An Observable for service type events
+	 */
+	public static rx.Observable<BonjourTypeEvent> newTypeDiscovery(Context context) {
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(false);
+		return discovery.startTypeDiscovery(context)
+				.compose(BonjourSchedulers.<BonjourTypeEvent>startSchedulers());
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all service types present on the network. The discovery of each type
+	 * is started lazily once the type is first enumerated, and all events are merged into a single stream.
+	 * This method utilizes the support implementation, as NsdManager doesn't expose type enumeration.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 *
+	 * @param context Context of the request
+	 * @return An Observable for Bonjour events of all types
+	 * @see #newTypeDiscovery(Context)
+	 */
+	public static rx.Observable<BonjourEvent> newAllTypesDiscovery(Context context) {
+		BonjourDiscovery<?> discovery = BonjourDiscovery.get(false);
+		return discovery.startAllTypes(context)
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
+	}
+
+	/**
+	 * Creates a registry of the services of the provided type that are currently visible on the network.
+	 * The registry publishes immutable snapshots of these services, indexed by name, type and host. All subscribers
+	 * share a single discovery, which is started with the first subscriber and stopped once all of them have unsubscribed.
+	 * New subscribers receive the latest snapshot right away.
+	 * This method utilizes the support implementation with JmDNS as its backbone.
+	 *
+	 * @param context Context of the request
+	 * @param type    Type of service to discover
+	 * @return A registry of the services of the type
+	 */
+	public static ServiceRegistry newRegistry(Context context, String type) {
+		return new ServiceRegistry(newDiscovery(context, type));
+	}
+
+	/**
+	 * Creates a registry of the services of all of the provided types that are currently visible on the network.
+	 * This method utilizes the support implementation with JmDNS as its backbone, asking for all types in the same query packets.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return A registry of the services of all types
+	 * @see #newRegistry(Context, String)
+	 */
+	public static ServiceRegistry newRegistry(Context context, Collection<String> types) {
+		return new ServiceRegistry(newDiscovery(context, types));
+	}
+
+	/**
+	 * Returns a Transformer that deduplicates the events of a service discovery. Each subscriber keeps track of the services
+	 * it has received, and repeated resolves of an unchanged service are suppressed. Whenever the address, port or TXT records
+	 * of a known service change, an event of type {@link BonjourEvent.Type#UPDATED} is emitted instead of another
+	 * {@link BonjourEvent.Type#ADDED} event, exposing the previous state of the service and the properties that changed:
+	 * <pre>
+	 * RxBonjour.newDiscovery(context, "_http._tcp")
+	 *         .compose(RxBonjour.distinctChanges())
+	 *         .subscribe(...);
+	 * </pre>
+	 *
+	 * @return A Transformer for Bonjour events
+	 */
+	public static rx.Observable.Transformer<BonjourEvent, BonjourEvent> distinctChanges() {
+		return ServiceDiff.get();
+	}
+
+	/**
+	 * Sets the number of services that are resolved concurrently by the NsdManager implementation.
+	 * NsdManager rejects concurrent resolves on some devices; these are retried with an increasing delay,
+	 * so higher values are safe to use, but only pay off on devices that support parallel resolves.
+	 * This setting is applied to discoveries started afterwards.
+	 *
+	 * @param concurrency Number of concurrent resolves, must be positive
+	 */
+	public static void setResolveConcurrency(int concurrency) {
+		BonjourDiscovery.setResolveConcurrency(concurrency);
+	}
+
+	/**
+	 * Probes which host addresses of the provided service can be reached, by connecting to the service's port on each of them,
+	 * and ranks them by their connect latency. Up to {@link ReachabilityProber#DEFAULT_CONCURRENCY} probes run at the same time,
+	 * each giving up after {@link ReachabilityProber#DEFAULT_TIMEOUT_MILLIS}; unreachable addresses are omitted.
+	 * This method's return Observable is scheduled to run on a background thread and notify subscribers on the main thread.
+	 *
+	 * @param service Service to probe
+	 * @return An Observable emitting a single list of the reachable endpoints, fastest first
+	 */
+	public static rx.Observable<List<ReachabilityProber.Endpoint>> rankHosts(BonjourService service) {
+		return PROBER.rank(service)
+				.compose(BonjourSchedulers.<List<ReachabilityProber.Endpoint>>startSchedulers());
+	}
+
+	/**
+	 * Sets the maximum number of resolved services kept in memory across discoveries. Services resolved earlier are emitted
+	 * right away to new subscribers of a discovery, until the lifetime of their DNS records has passed.
+	 * The least recently used services are evicted once the cache grows beyond this size.
+	 *
+	 * @param maxSize Maximum number of cached services, 0 disabling the cache
+	 */
+	public static void setResolveCacheSize(int maxSize) {
+		ResolveCache.get().setMaxSize(maxSize);
+	}
+
+	/**
+	 * Removes all services from the cache of resolved services.
+	 */
+	public static void clearResolveCache() {
+		ResolveCache.get().clear();
+	}
+
+	/**
+	 * Sets the time for which the JmDNS instance of the support implementation is kept open after its last discovery
+	 * or broadcast has stopped, defaulting to {@link JmDNSManager#DEFAULT_GRACE_PERIOD_MILLIS}. Restarting a discovery
+	 * within this period reuses the instance, instead of setting up a new one.
+	 *
+	 * @param gracePeriod Time for which the instance is kept open, 0 closing it right away
+	 * @param unit        Unit of the grace period
+	 */
+	public static void setEngineGracePeriod(long gracePeriod, TimeUnit unit) {
+		JmDNSManager.get().setGracePeriod(gracePeriod, unit);
+	}
+
+	/**
+	 * Sets the time for which the multicast lock of the support implementation is held after its last discovery
+	 * or broadcast has stopped, defaulting to {@link MulticastLockManager#DEFAULT_IDLE_DELAY_MILLIS}. All discoveries
+	 * and broadcasts share a single lock, so that restarting them within this period doesn't acquire the lock again.
+	 *
+	 * @param idleDelay Time for which the lock is held, 0 releasing it right away
+	 * @param unit      Unit of the idle delay
+	 */
+	public static void setMulticastLockIdleDelay(long idleDelay, TimeUnit unit) {
+		SupportUtils.get().getMulticastLockManager().setIdleDelay(idleDelay, unit);
+	}
+
+	/**
+	 * Returns the total time for which the support implementation has held the multicast lock so far,
+	 * which keeps the Wi-Fi radio from filtering multicast packets and thus affects battery life.
+	 *
+	 * @param unit Unit of the returned time
+	 * @return The total hold time of the multicast lock
+	 */
+	public static long getMulticastLockHoldTime(TimeUnit unit) {
+		return SupportUtils.get().getMulticastLockManager().getHoldTime(unit);
+	}
+
+	/**
+	 * Sets how discoveries and broadcasts handle events that are produced faster than their subscribers request them,
+	 * for instance because a busy network floods the main thread. By default, only the latest pending event of each service
+	 * is kept; the events of all services are kept, even beyond {@link EventBackpressure#DEFAULT_CAPACITY} services.
+	 * This setting is applied to discoveries and broadcasts started afterwards.
+	 *
+	 * @param strategy Strategy applied to events that can't be delivered yet
+	 * @param capacity Number of pending events held before applying the strategy's overflow rule
+	 */
+	public static void setBackpressureStrategy(BackpressureStrategy strategy, int capacity) {
+		EventBackpressure.setDefault(strategy, capacity);
+	}
+
+	/**
+	 * Sets the sink to which all discoveries, broadcasts and engines report their metrics, such as the number of events emitted
+	 * per type, resolve and registration latencies, queue depths and wait times, the number of JmDNS instances and their subscribers,
+	 * and the hold times of the multicast lock. The names of the metrics are listed in {@link Metrics}.
+	 * By default, metrics are discarded without any allocations.
+	 *
+	 * @param sink Sink receiving the metrics from any thread, which must not block, or null to discard them again
+	 */
+	public static void setMetrics(MetricsSink sink) {
+		Metrics.setSink(sink);
+	}
+
 	public static BonjourBroadcastBuilder newBroadcast(String type) {
 		return newBroadcast(type, false);
 	}
@@ -100,13 +535,48 @@ public final class RxBonjour {
 		return BonjourBroadcast.newBuilder(type, forceNsdManager);
 	}
 
+	/**
+	 * Registers many services at once, sharing a single JmDNS instance and multicast lock among them. The services are
+	 * probed and announced together, and each of them is emitted as soon as its registration has completed.
+	 * All services are unregistered once the returned Observable is unsubscribed from, or if any of them fails to register.
+	 * This method utilizes the support implementation with JmDNS as its backbone, and therefore requires builders
+	 * obtained through {@link #newBroadcast(String)}.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 *
+	 * @param context  Context of the request
+	 * @param builders Builders of the services to register
+	 * @return An Observable emitting each registered service
+	 */
+	public static rx.Observable<BonjourEvent> newBroadcastBatch(Context context, Collection<BonjourBroadcastBuilder> builders) {
+		return BonjourBroadcast.startBatch(context, builders);
+	}
+
+	/**
+	 * Registers a service through the lightweight mDNS engine used by {@link #newLightweightDiscovery(Context, Collection)}.
+	 * Unlike with JmDNS, the service is emitted right away and announced in the background. The engine doesn't probe for
+	 * name conflicts, so the service's name should be unique on the network. This method requires builders obtained
+	 * through {@link #newBroadcast(String)}, and Android 7.0 or newer; on older devices, the returned Observable emits
+	 * an {@link UnsupportedOperationException}.
+	 * This method's return Observable is scheduled to run on an I/O thread and notify subscribers on the main thread.
+	 *
+	 * @param context Context of the request
+	 * @param builder Builder of the service to register
+	 * @return An Observable emitting the registered service
+	 */
+	public static rx.Observable<BonjourEvent> newLightweightBroadcast(Context context, BonjourBroadcastBuilder builder) {
+		return BonjourBroadcast.startLightweight(context, builder);
+	}
+
 	/**
 	 * Checks the provided type String against Bonjour specifications, and returns whether or not the type is valid.
+	 * Valid types consist of a service name and protocol, optionally preceded by a subtype and followed by a domain,
+	 * e.g. "_http._tcp", "_printer._sub._http._tcp" or "_http._tcp.local.". This check doesn't allocate any objects,
+	 * so it may safely be used to validate user input as it is typed.
 	 *
 	 * @param type Type of service to check
 	 * @return True if the type refers to a valid Bonjour type, false otherwise
 	 */
 	public static boolean isBonjourType(String type) {
-		return type.matches(TYPE_PATTERN);
+		return ServiceType.isValid(type);
 	}
 }
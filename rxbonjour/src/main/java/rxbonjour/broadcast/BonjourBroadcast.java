@@ -6,6 +6,7 @@ import android.os.Build;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Map;
 
 import rxbonjour.model.BonjourEvent;
@@ -60,6 +61,28 @@ public abstract class BonjourBroadcast<T extends BonjourUtils<?>> {
 
 	public abstract rx.Observable<BonjourEvent> start(Context context);
 
+	/**
+	 * Registers the services configured by all of the provided builders at once, through the support implementation.
+	 *
+	 * @param context  Context of the request
+	 * @param builders Builders of the services to register, which must not be bound to NsdManager
+	 * @return An Observable emitting each registered service
+	 */
+	public static rx.Observable<BonjourEvent> startBatch(Context context, Collection<BonjourBroadcastBuilder> builders) {
+		return SupportBonjourBroadcast.newBatch(context, builders);
+	}
+
+	/**
+	 * Registers the service configured by the provided builder through the lightweight NIO-based mDNS engine rather than JmDNS.
+	 *
+	 * @param context Context of the request
+	 * @param builder Builder of the service to register, which must not be bound to NsdManager
+	 * @return An Observable emitting the registered service
+	 */
+	public static rx.Observable<BonjourEvent> startLightweight(Context context, BonjourBroadcastBuilder builder) {
+		return SupportBonjourBroadcast.newLightweight(context, builder);
+	}
+
 	public static BonjourBroadcastBuilder newBuilder(String type, boolean forceNsdManager) {
 		if (forceNsdManager && Build.VERSION.SDK_INT >= JELLY_BEAN) {
 			return JBBonjourBroadcast.newBuilder(type);
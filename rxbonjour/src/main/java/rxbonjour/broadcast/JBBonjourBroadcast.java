@@ -5,12 +5,9 @@ import android.content.Context;
 import android.net.nsd.NsdManager;
 import android.net.nsd.NsdServiceInfo;
 import android.os.Build;
-import android.os.Bundle;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
 
 import rx.Observable;
@@ -19,8 +16,11 @@ import rx.android.MainThreadSubscription;
 import rxbonjour.exc.BroadcastFailed;
 import rxbonjour.exc.StaleContextException;
 import rxbonjour.internal.BonjourSchedulers;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.metrics.Metrics;
 import rxbonjour.model.BonjourEvent;
 import rxbonjour.model.BonjourService;
+import rxbonjour.model.TxtRecords;
 import rxbonjour.utils.JBUtils;
 
 import static android.os.Build.VERSION_CODES.LOLLIPOP;
@@ -53,6 +53,7 @@ final class JBBonjourBroadcast extends BonjourBroadcast<JBUtils> {
 					final BonjourService bonjourService = createBonjourService(context);
 					final NsdServiceInfo nsdService = createServiceInfo(bonjourService);
 					final NsdManager nsdManager = utils.getManager(context);
+					final long startTime = System.nanoTime();
 
 					final NsdManager.RegistrationListener listener = new NsdManager.RegistrationListener() {
 						@Override
@@ -67,6 +68,7 @@ final class JBBonjourBroadcast extends BonjourBroadcast<JBUtils> {
 
 						@Override
 						public void onServiceRegistered(NsdServiceInfo info) {
+							Metrics.sink().record(Metrics.BROADCAST_REGISTRATION_NANOS, System.nanoTime() - startTime);
 							subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, bonjourService));
 						}
 
@@ -95,6 +97,7 @@ final class JBBonjourBroadcast extends BonjourBroadcast<JBUtils> {
 		});
 
 		return obs
+				.lift(EventBackpressure.withDefaults())
 				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
 	}
 
@@ -107,8 +110,7 @@ final class JBBonjourBroadcast extends BonjourBroadcast<JBUtils> {
 		if (Build.VERSION.SDK_INT >= LOLLIPOP) {
 			Map<String, byte[]> attrs = info.getAttributes();
 			for (Map.Entry<String, byte[]> entry : attrs.entrySet()) {
-				builder.addTxtRecord(entry.getKey(),
-						new String(entry.getValue(), StandardCharsets.UTF_8));
+				builder.addTxtRecord(entry.getKey(), entry.getValue());
 			}
 		}
 
@@ -124,14 +126,9 @@ final class JBBonjourBroadcast extends BonjourBroadcast<JBUtils> {
 
 		// Add TXT records on Lollipop and up
 		if (Build.VERSION.SDK_INT >= LOLLIPOP) {
-			Bundle txtRecordBundle = serviceInfo.getTxtRecords();
-			Map<String, String> txtRecordMap = new HashMap<>(serviceInfo.getTxtRecordCount());
-			for (String key : txtRecordBundle.keySet()) {
-				txtRecordMap.put(key, txtRecordBundle.getString(key));
-			}
-
-			for (String key : txtRecordMap.keySet()) {
-				nsdService.setAttribute(key, txtRecordMap.get(key));
+			TxtRecords txtRecords = serviceInfo.getTxtRecords();
+			for (String key : txtRecords.keySet()) {
+				nsdService.setAttribute(key, txtRecords.get(key));
 			}
 		}
 
@@ -1,32 +1,27 @@
 package rxbonjour.broadcast;
 
 import android.content.Context;
-import android.net.wifi.WifiManager;
-import android.os.Bundle;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.Map;
-
-import javax.jmdns.JmDNS;
-import javax.jmdns.ServiceInfo;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import rx.Observable;
 import rx.Subscriber;
-import rx.android.MainThreadSubscription;
 import rxbonjour.exc.BroadcastFailed;
 import rxbonjour.exc.StaleContextException;
 import rxbonjour.internal.BonjourSchedulers;
+import rxbonjour.jmdns.JmDNSBroadcast;
+import rxbonjour.mdns.MdnsBroadcast;
 import rxbonjour.model.BonjourEvent;
 import rxbonjour.model.BonjourService;
+import rxbonjour.model.ServiceType;
 import rxbonjour.utils.SupportUtils;
 
 final class SupportBonjourBroadcast extends BonjourBroadcast<SupportUtils> {
 
-	/** Tag to associate with the multicast lock */
-	private static final String LOCK_TAG = "RxBonjourBroadcast";
-
 	protected SupportBonjourBroadcast(BonjourBroadcastBuilder builder) {
 		super(builder);
 	}
@@ -47,44 +42,18 @@ final class SupportBonjourBroadcast extends BonjourBroadcast<SupportUtils> {
 					return;
 				}
 
-				// Obtain a multicast lock from the Wifi Manager and acquire it
-				WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-				final WifiManager.MulticastLock lock = wifiManager.createMulticastLock(LOCK_TAG);
-				lock.setReferenceCounted(true);
-				lock.acquire();
-
+				BonjourService bonjourService;
 				try {
-					// Create a JmDNS service using the BonjourService information and register that
-					final BonjourService bonjourService = createBonjourService(context);
-					final ServiceInfo jmdnsService = createJmdnsService(bonjourService);
-					final JmDNS jmdns = utils.getManager(context);
-
-					subscriber.add(new MainThreadSubscription() {
-						@Override
-						protected void onUnsubscribe() {
-							jmdns.unregisterService(jmdnsService);
-							utils.decrementSubscriberCount();
-							lock.release();
-
-							Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
-								@Override public void call(final Subscriber<? super Void> subscriber) {
-									utils.closeIfNecessary();
-									subscriber.unsubscribe();
-								}
-							});
-
-							cleanUpObservable
-									.compose(BonjourSchedulers.cleanupSchedulers())
-									.subscribe();
-						}
-					});
-
-					jmdns.registerService(jmdnsService);
-					utils.incrementSubscriberCount();
-					subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, bonjourService));
+					bonjourService = createBonjourService(context);
 				} catch (IOException e) {
 					subscriber.onError(new BroadcastFailed(SupportBonjourBroadcast.class, type));
+					return;
 				}
+
+				// Register the service through the JmDNS engine, bound to the device's Wi-Fi connection
+				new JmDNSBroadcast(utils.newEnvironment(context))
+						.start(bonjourService)
+						.unsafeSubscribe(subscriber);
 			}
 		});
 
@@ -92,43 +61,99 @@ final class SupportBonjourBroadcast extends BonjourBroadcast<SupportUtils> {
 				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
 	}
 
-	private ServiceInfo createJmdnsService(BonjourService serviceInfo) {
-		int txtRecordCount = serviceInfo.getTxtRecordCount();
-		Bundle txtRecordBundle = serviceInfo.getTxtRecords();
-		Map<String, String> txtRecordMap = new HashMap<>(txtRecordCount);
+	/* Begin static */
+
+	static BonjourBroadcastBuilder newBuilder(String type) {
+		return new SupportBonjourBroadcastBuilder(type);
+	}
 
-		if (txtRecordBundle.size() > 0) {
-			for (String key : txtRecordBundle.keySet()) {
-				txtRecordMap.put(key, txtRecordBundle.getString(key));
+	static Observable<BonjourEvent> newBatch(Context context, Collection<BonjourBroadcastBuilder> builders) {
+		final List<SupportBonjourBroadcast> broadcasts = new ArrayList<>(builders.size());
+		for (BonjourBroadcastBuilder builder : builders) {
+			if (!(builder instanceof SupportBonjourBroadcastBuilder)) {
+				throw new IllegalArgumentException("Batch broadcasts don't support NsdManager builders: " + builder.type());
 			}
+			broadcasts.add(new SupportBonjourBroadcast(builder));
 		}
 
-		return ServiceInfo.create(
-				serviceInfo.getType(),
-				serviceInfo.getName(),
-				serviceInfo.getPort(),
-				0,
-				0,
-				true,
-				txtRecordMap
-		);
+		// Create a weak reference to the incoming Context
+		final WeakReference<Context> weakContext = new WeakReference<>(context);
+
+		Observable<BonjourEvent> obs = Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				Context context = weakContext.get();
+				if (context == null) {
+					subscriber.onError(new StaleContextException());
+					return;
+				}
+
+				List<BonjourService> services = new ArrayList<>(broadcasts.size());
+				for (SupportBonjourBroadcast broadcast : broadcasts) {
+					try {
+						services.add(broadcast.createBonjourService(context));
+					} catch (IOException e) {
+						subscriber.onError(new BroadcastFailed(SupportBonjourBroadcast.class, broadcast.type));
+						return;
+					}
+				}
+
+				// Register all services through a single JmDNS engine, bound to the device's Wi-Fi connection
+				new JmDNSBroadcast(SupportUtils.get().newEnvironment(context))
+						.startBatch(services)
+						.unsafeSubscribe(subscriber);
+			}
+		});
+
+		return obs
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
 	}
 
-	/* Begin static */
+	static Observable<BonjourEvent> newLightweight(Context context, BonjourBroadcastBuilder builder) {
+		if (!(builder instanceof SupportBonjourBroadcastBuilder)) {
+			throw new IllegalArgumentException("Lightweight broadcasts don't support NsdManager builders: " + builder.type());
+		}
+		if (!SupportUtils.supportsNioMulticast()) {
+			return Observable.error(new UnsupportedOperationException("The lightweight engine requires Android 7.0"));
+		}
 
-	static BonjourBroadcastBuilder newBuilder(String type) {
-		return new SupportBonjourBroadcastBuilder(type);
+		final SupportBonjourBroadcast broadcast = new SupportBonjourBroadcast(builder);
+
+		// Create a weak reference to the incoming Context
+		final WeakReference<Context> weakContext = new WeakReference<>(context);
+
+		Observable<BonjourEvent> obs = Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
+				Context context = weakContext.get();
+				if (context == null) {
+					subscriber.onError(new StaleContextException());
+					return;
+				}
+
+				BonjourService bonjourService;
+				try {
+					bonjourService = broadcast.createBonjourService(context);
+				} catch (IOException e) {
+					subscriber.onError(new BroadcastFailed(SupportBonjourBroadcast.class, broadcast.type));
+					return;
+				}
+
+				// Register the service through the lightweight engine, bound to the device's Wi-Fi connection
+				new MdnsBroadcast(SupportUtils.get().newEnvironment(context))
+						.start(bonjourService)
+						.unsafeSubscribe(subscriber);
+			}
+		});
+
+		return obs
+				.compose(BonjourSchedulers.<BonjourEvent>startSchedulers());
 	}
 
 	/* Begin inner classes */
 
 	private static final class SupportBonjourBroadcastBuilder extends BonjourBroadcastBuilder {
 
-		/** Suffix appended to input types */
-		private static final String SUFFIX = ".local.";
-
 		protected SupportBonjourBroadcastBuilder(String type) {
-			super((type.endsWith(SUFFIX)) ? type : type + SUFFIX);
+			super(ServiceType.of(type).getFullyQualifiedName());
 		}
 
 		@Override public BonjourBroadcast build() {
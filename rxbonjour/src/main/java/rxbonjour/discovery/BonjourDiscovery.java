@@ -3,8 +3,17 @@ package rxbonjour.discovery;
 import android.content.Context;
 import android.os.Build;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import rx.Observable;
+
+import rxbonjour.internal.ResolveScheduler;
 import rxbonjour.utils.BonjourUtils;
 import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
+import rxbonjour.model.BonjourTypeEvent;
 
 import static android.os.Build.VERSION_CODES.JELLY_BEAN;
 
@@ -13,6 +22,9 @@ import static android.os.Build.VERSION_CODES.JELLY_BEAN;
  */
 public abstract class BonjourDiscovery<T extends BonjourUtils<?>> {
 
+	/** Number of services resolved concurrently by implementations that resolve each service separately */
+	private static volatile int resolveConcurrency = ResolveScheduler.DEFAULT_SLOT_COUNT;
+
 	protected final T utils;
 
 	public BonjourDiscovery() {
@@ -30,6 +42,121 @@ public abstract class BonjourDiscovery<T extends BonjourUtils<?>> {
 	 */
 	public abstract rx.Observable<BonjourEvent> start(Context context, String type);
 
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types, merging their events into a single stream.
+	 * Implementations may override this to discover the types more efficiently than through separate discoveries.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public rx.Observable<BonjourEvent> start(Context context, Collection<String> types) {
+		List<Observable<BonjourEvent>> discoveries = new ArrayList<>(types.size());
+		for (String type : types) {
+			discoveries.add(start(context, type));
+		}
+		return Observable.merge(discoveries);
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types without resolving the services it finds.
+	 * Services are reported right away with their name and type only, unless they were resolved earlier;
+	 * see {@link BonjourService#isResolved()}. Services of interest can be resolved on demand using {@link #resolve(Context, BonjourService)}.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public abstract rx.Observable<BonjourEvent> startUnresolved(Context context, Collection<String> types);
+
+	/**
+	 * Resolves the provided service on demand. Services resolved earlier are emitted right away.
+	 *
+	 * @param context Context of the request
+	 * @param service Service to resolve
+	 * @return An Observable emitting the resolved service, or an error if it can't be resolved
+	 */
+	public abstract rx.Observable<BonjourService> resolve(Context context, BonjourService service);
+
+	/**
+	 * Starts a long-lived Bonjour service discovery for all of the provided service types, which relies on announcements
+	 * of services and the lifetime of their records rather than on repeated queries. Implementations that don't control
+	 * their queries emit an {@link UnsupportedOperationException}.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public rx.Observable<BonjourEvent> startMonitoring(Context context, Collection<String> types) {
+		return Observable.error(new UnsupportedOperationException(getClass().getSimpleName() + " can't monitor services"));
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types on all network interfaces of the device
+	 * that support multicast, merging services visible on more than one of them. Implementations that are bound to
+	 * a single interface emit an {@link UnsupportedOperationException}.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public rx.Observable<BonjourEvent> startOnAllInterfaces(Context context, Collection<String> types) {
+		return Observable.error(new UnsupportedOperationException(getClass().getSimpleName() + " can't discover services on all interfaces"));
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all of the provided service types through the lightweight NIO-based mDNS engine
+	 * rather than JmDNS. Implementations that aren't backed by their own mDNS engine emit an {@link UnsupportedOperationException}.
+	 *
+	 * @param context Context of the request
+	 * @param types   Types of service to discover
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public rx.Observable<BonjourEvent> startLightweight(Context context, Collection<String> types) {
+		return Observable.error(new UnsupportedOperationException(getClass().getSimpleName() + " has no lightweight engine"));
+	}
+
+	/**
+	 * Starts enumerating the service types present on the network. A type is reported as added once it is first enumerated,
+	 * and as removed once none of its records remain. Implementations that can't enumerate
+	 * service types emit an {@link UnsupportedOperationException}.
+	 *
+	 * @param context Context of the request
+	 * @return An Observable for service type events
+	 */
+	public rx.Observable<BonjourTypeEvent> startTypeDiscovery(Context context) {
+		return Observable.error(new UnsupportedOperationException(getClass().getSimpleName() + " can't enumerate service types"));
+	}
+
+	/**
+	 * Starts a Bonjour service discovery for all service types present on the network, starting the discovery of each type
+	 * lazily once it is first enumerated. Implementations that can't enumerate service types emit an {@link UnsupportedOperationException}.
+	 *
+	 * @param context Context of the request
+	 * @return An Observable for Bonjour events of all types
+	 */
+	public rx.Observable<BonjourEvent> startAllTypes(Context context) {
+		return Observable.error(new UnsupportedOperationException(getClass().getSimpleName() + " can't enumerate service types"));
+	}
+
+	/**
+	 * Sets the number of services resolved concurrently by implementations that resolve each service separately.
+	 * This setting is applied to discoveries started afterwards.
+	 *
+	 * @param concurrency Number of concurrent resolves, must be positive
+	 */
+	public static void setResolveConcurrency(int concurrency) {
+		if (concurrency < 1) throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		resolveConcurrency = concurrency;
+	}
+
+	/**
+	 * @return The number of services resolved concurrently by implementations that resolve each service separately
+	 */
+	public static int getResolveConcurrency() {
+		return resolveConcurrency;
+	}
+
 	public static BonjourDiscovery get(boolean forceNsdManager) {
 		if (forceNsdManager && Build.VERSION.SDK_INT >= JELLY_BEAN) {
 			return new JBBonjourDiscovery();
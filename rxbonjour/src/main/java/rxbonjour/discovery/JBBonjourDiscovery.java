@@ -8,15 +8,27 @@ import android.os.Build;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import rx.Observable;
 import rx.Subscriber;
 import rx.android.MainThreadSubscription;
 import rxbonjour.exc.DiscoveryFailed;
+import rxbonjour.exc.ResolveFailed;
 import rxbonjour.exc.StaleContextException;
-import rxbonjour.internal.Backlog;
+import rxbonjour.internal.EventBackpressure;
+import rxbonjour.internal.OverflowPolicy;
+import rxbonjour.internal.ResolveCache;
+import rxbonjour.internal.ResolveScheduler;
+import rxbonjour.internal.ServiceKeys;
+import rxbonjour.metrics.LatencyTracker;
+import rxbonjour.metrics.Metrics;
 import rxbonjour.model.BonjourEvent;
 import rxbonjour.model.BonjourService;
 import rxbonjour.utils.JBUtils;
@@ -36,9 +48,24 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 	private int subscriberCount = 0;
 
 	/**
-	 * Resolver backlog, necessary because of NsdManager's "one resolve at a time" limitation
+	 * Resolve scheduler, keeping a limited number of resolves in flight and retrying those rejected by NsdManager
 	 */
-	private Backlog<NsdServiceInfo> resolveBacklog;
+	private ResolveScheduler<NsdServiceInfo> resolveScheduler;
+
+	/**
+	 * Resolve scheduler for on-demand resolves, shared among all discoveries
+	 */
+	private static ResolveScheduler<OnDemandResolve> onDemandResolver;
+
+	/**
+	 * Cache of resolved services, shared among all discoveries
+	 */
+	private final ResolveCache cache = ResolveCache.get();
+
+	/**
+	 * Time from finding services to reporting them resolved
+	 */
+	private final LatencyTracker resolveLatency = new LatencyTracker(Metrics.RESOLVE_LATENCY_NANOS);
 
 	/**
 	 * Constructor
@@ -51,24 +78,24 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 		return JBUtils.get();
 	}
 
-	/* Begin private */
+	/* Begin static */
 
 	/**
 	 * Creates a new BonjourEvent instance from an Nsd Service info object.
 	 *
-	 * @param type        Type of event, either ADDED or REMOVED
-	 * @param serviceInfo ServiceInfo containing information about the changed service
+	 * @param type           Type of event, either ADDED or REMOVED
+	 * @param serviceInfo    ServiceInfo containing information about the changed service
+	 * @param withTxtRecords Whether to include TXT records, which NsdServiceInfo exposes on Lollipop and up
 	 * @return A BonjourEvent containing the necessary information
 	 */
-	@TargetApi(LOLLIPOP) private BonjourEvent newBonjourEvent(BonjourEvent.Type type, NsdServiceInfo serviceInfo) {
+	@TargetApi(LOLLIPOP) static BonjourEvent newBonjourEvent(BonjourEvent.Type type, NsdServiceInfo serviceInfo, boolean withTxtRecords) {
 		// Construct a new BonjourService
 		BonjourService.Builder serviceBuilder = new BonjourService.Builder(serviceInfo.getServiceName(), serviceInfo.getServiceType());
 
-		// Prepare TXT record Bundle (on Lollipop and up)
-		if (Build.VERSION.SDK_INT >= LOLLIPOP) {
-			Map<String, byte[]> attributes = serviceInfo.getAttributes();
-			for (String key : attributes.keySet()) {
-				serviceBuilder.addTxtRecord(key, new String(attributes.get(key), Charset.forName("UTF-8")));
+		// Add TXT records, which are only decoded upon access
+		if (withTxtRecords) {
+			for (Map.Entry<String, byte[]> entry : serviceInfo.getAttributes().entrySet()) {
+				serviceBuilder.addTxtRecord(entry.getKey(), entry.getValue());
 			}
 		}
 
@@ -82,7 +109,64 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 
 	/* Begin overrides */
 
-	@Override public Observable<BonjourEvent> start(Context context, final String type) {
+	@Override public Observable<BonjourEvent> start(Context context, String type) {
+		return start(context, type, true);
+	}
+
+	@Override public Observable<BonjourEvent> startUnresolved(Context context, Collection<String> types) {
+		List<Observable<BonjourEvent>> discoveries = new ArrayList<>(types.size());
+		for (String type : types) {
+			discoveries.add(start(context, type, false));
+		}
+		return Observable.merge(discoveries);
+	}
+
+	@Override public Observable<BonjourService> resolve(Context context, final BonjourService service) {
+		// Create a weak reference to the incoming Context
+		final WeakReference<Context> weakContext = new WeakReference<>(context);
+
+		return Observable.create(new Observable.OnSubscribe<BonjourService>() {
+			@Override public void call(Subscriber<? super BonjourService> subscriber) {
+				BonjourService cached = cache.getService(service.getName(), service.getType());
+				if (cached != null) {
+					subscriber.onNext(cached);
+					subscriber.onCompleted();
+					return;
+				}
+
+				Context context = weakContext.get();
+				if (context == null) {
+					subscriber.onError(new StaleContextException());
+					return;
+				}
+
+				NsdManager nsdManager;
+				try {
+					nsdManager = utils.getManager(context);
+				} catch (IOException e) {
+					subscriber.onError(e);
+					return;
+				}
+
+				NsdServiceInfo info = new NsdServiceInfo();
+				info.setServiceName(service.getName());
+				info.setServiceType(service.getType());
+				getOnDemandResolver().add(new OnDemandResolve(nsdManager, info, subscriber));
+			}
+		});
+	}
+
+	/* Begin private */
+
+	/**
+	 * Starts a Bonjour service discovery for the provided service type.
+	 *
+	 * @param context Context of the request
+	 * @param type    Type of service to discover
+	 * @param resolve Whether to resolve each found service eagerly
+	 * @return An Observable for Bonjour events
+	 */
+	private Observable<BonjourEvent> start(Context context, final String type, final boolean resolve) {
 		// Create a weak reference to the incoming Context
 		final WeakReference<Context> weakContext = new WeakReference<>(context);
 
@@ -94,6 +178,9 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 					return;
 				}
 
+				// Keys of the services emitted upon subscribing, which aren't reported again once found
+				final Set<String> replayed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 				// Create the discovery listener
 				final NsdManager.DiscoveryListener discoveryListener = new NsdManager.DiscoveryListener() {
 					@Override public void onStartDiscoveryFailed(String serviceType, int errorCode) {
@@ -111,11 +198,31 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 					}
 
 					@Override public void onServiceFound(NsdServiceInfo serviceInfo) {
-						// Add the found service to the resolve backlog (it will be processed once the backlog gets to it)
-						resolveBacklog.add(serviceInfo);
+						// Services resolved earlier aren't resolved again while their cache entry is fresh
+						BonjourService service = cache.getService(serviceInfo.getServiceName(), serviceInfo.getServiceType());
+						if (service != null) {
+							// Skip services already emitted upon subscribing
+							if (replayed.remove(ServiceKeys.keyOf(service.getName(), service.getType()))) return;
+						} else if (resolve) {
+							// Add the found service to the resolve scheduler (it will be processed once a slot is available)
+							resolveLatency.start(serviceInfo.getServiceName(), serviceInfo.getServiceType());
+							resolveScheduler.add(serviceInfo);
+							return;
+						} else {
+							// Report the service right away, leaving it up to the subscriber to resolve it
+							service = new BonjourService.Builder(serviceInfo.getServiceName(), serviceInfo.getServiceType())
+									.setResolved(false)
+									.build();
+						}
+						if (!subscriber.isUnsubscribed()) {
+							subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+						}
 					}
 
 					@Override public void onServiceLost(NsdServiceInfo serviceInfo) {
+						replayed.remove(ServiceKeys.keyOf(serviceInfo.getServiceName(), serviceInfo.getServiceType()));
+						resolveLatency.cancel(serviceInfo.getServiceName(), serviceInfo.getServiceType());
+						cache.remove(serviceInfo.getServiceName(), serviceInfo.getServiceType());
 						if (!subscriber.isUnsubscribed()) {
 							subscriber.onNext(newBonjourEvent(BonjourEvent.Type.REMOVED, serviceInfo));
 						}
@@ -132,22 +239,44 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 					return;
 				}
 
-				// Create the resolver backlog
-				if (resolveBacklog == null) {
-					resolveBacklog = new Backlog<NsdServiceInfo>() {
-						@Override public void onNext(Backlog<NsdServiceInfo> backlog, NsdServiceInfo info) {
-							// Resolve this service info using the corresponding listener
+				// Create the resolve scheduler
+				if (resolve && resolveScheduler == null) {
+					// Services reported again before being resolved are only resolved once
+					resolveScheduler = new ResolveScheduler<NsdServiceInfo>(getResolveConcurrency(), ResolveScheduler.DEFAULT_CAPACITY, OverflowPolicy.COALESCE) {
+						@Override protected Object keyOf(NsdServiceInfo info) {
+							return ServiceKeys.keyOf(info.getServiceName(), info.getServiceType());
+						}
+
+						@Override protected void onDropped(NsdServiceInfo info) {
+							resolveLatency.cancel(info.getServiceName(), info.getServiceType());
+						}
+
+						@Override public void onNext(final Slot slot, final NsdServiceInfo info) {
+							// Resolve this service info using a listener dedicated to the slot
 							nsdManager.resolveService(info, new NsdManager.ResolveListener() {
 								@Override public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+									if (errorCode == NsdManager.FAILURE_ALREADY_ACTIVE) {
+										// NsdManager is busy with another resolve; try again after a while
+										if (!slot.retry()) resolveLatency.cancel(info.getServiceName(), info.getServiceType());
+									} else {
+										resolveLatency.cancel(info.getServiceName(), info.getServiceType());
+										slot.complete();
+									}
 								}
 
 								@Override public void onServiceResolved(NsdServiceInfo serviceInfo) {
+									// NsdManager doesn't expose record lifetimes, so the cache's default is used
+									BonjourEvent event = newBonjourEvent(BonjourEvent.Type.ADDED, serviceInfo);
+									cache.put(event.getService(), ResolveCache.DEFAULT_TTL_MILLIS);
 									if (!subscriber.isUnsubscribed()) {
-										subscriber.onNext(newBonjourEvent(BonjourEvent.Type.ADDED, serviceInfo));
+										subscriber.onNext(event);
 									}
 
-									// Inform the backlog to continue processing
-									resolveBacklog.proceed();
+									// Measured against the found service, since NsdManager may report the resolved type differently
+									resolveLatency.stop(info.getServiceName(), info.getServiceType());
+
+									// Inform the scheduler to continue processing
+									slot.complete();
 								}
 							});
 						}
@@ -165,21 +294,91 @@ final class JBBonjourDiscovery extends BonjourDiscovery<JBUtils> {
 							// "Service discovery not active on discoveryListener", thrown if starting the service discovery was unsuccessful earlier
 
 						} finally {
-							if (subscriberCount <= 0) {
-								resolveBacklog.quit();
-								resolveBacklog = null;
+							if (subscriberCount <= 0 && resolveScheduler != null) {
+								resolveScheduler.quit();
+								resolveScheduler = null;
+
+								// Pending and ongoing resolves are abandoned along with the scheduler
+								resolveLatency.clear();
 							}
 						}
 					}
 				});
 
-				// Start discovery
+				// Emit services resolved earlier right away, then start discovery
+				for (BonjourService service : cache.getServices(type)) {
+					replayed.add(ServiceKeys.keyOf(service.getName(), service.getType()));
+					subscriber.onNext(new BonjourEvent(BonjourEvent.Type.ADDED, service));
+				}
 				nsdManager.discoverServices(type, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
 				subscriberCount++;
 			}
 		});
 
 		// Share the observable to have multiple subscribers receive the same results emitted by the single DiscoveryListener
-		return obs.share();
+		return obs
+				.lift(EventBackpressure.withDefaults())
+				.share();
+	}
+
+	private BonjourEvent newBonjourEvent(BonjourEvent.Type type, NsdServiceInfo serviceInfo) {
+		return newBonjourEvent(type, serviceInfo, Build.VERSION.SDK_INT >= LOLLIPOP);
+	}
+
+	/**
+	 * Returns the resolve scheduler for on-demand resolves, which is shared among all discoveries, creating it if necessary.
+	 * Each slot resolves a service using a listener dedicated to it, retrying those rejected by a busy NsdManager.
+	 */
+	private static synchronized ResolveScheduler<OnDemandResolve> getOnDemandResolver() {
+		if (onDemandResolver == null) {
+			onDemandResolver = new ResolveScheduler<OnDemandResolve>(getResolveConcurrency()) {
+				@Override public void onNext(final Slot slot, final OnDemandResolve resolve) {
+					if (resolve.subscriber.isUnsubscribed()) {
+						slot.complete();
+						return;
+					}
+
+					resolve.nsdManager.resolveService(resolve.info, new NsdManager.ResolveListener() {
+						@Override public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+							if (errorCode == NsdManager.FAILURE_ALREADY_ACTIVE && slot.retry()) return;
+							if (errorCode != NsdManager.FAILURE_ALREADY_ACTIVE) slot.complete();
+
+							resolve.subscriber.onError(new ResolveFailed(JBBonjourDiscovery.class,
+									serviceInfo.getServiceName(), serviceInfo.getServiceType(), errorCode));
+						}
+
+						@Override public void onServiceResolved(NsdServiceInfo serviceInfo) {
+							BonjourService service = newBonjourEvent(BonjourEvent.Type.ADDED, serviceInfo,
+									Build.VERSION.SDK_INT >= LOLLIPOP).getService();
+							ResolveCache.get().put(service, ResolveCache.DEFAULT_TTL_MILLIS);
+							if (!resolve.subscriber.isUnsubscribed()) {
+								resolve.subscriber.onNext(service);
+								resolve.subscriber.onCompleted();
+							}
+							slot.complete();
+						}
+					});
+				}
+			};
+		}
+		return onDemandResolver;
+	}
+
+	/* Begin inner classes */
+
+	/**
+	 * Service resolved on demand, along with the subscriber waiting for it
+	 */
+	private static final class OnDemandResolve {
+
+		final NsdManager nsdManager;
+		final NsdServiceInfo info;
+		final Subscriber<? super BonjourService> subscriber;
+
+		OnDemandResolve(NsdManager nsdManager, NsdServiceInfo info, Subscriber<? super BonjourService> subscriber) {
+			this.nsdManager = nsdManager;
+			this.info = info;
+			this.subscriber = subscriber;
+		}
 	}
 }
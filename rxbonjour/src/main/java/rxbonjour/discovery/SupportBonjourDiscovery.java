@@ -1,36 +1,31 @@
 package rxbonjour.discovery;
 
 import android.content.Context;
-import android.net.wifi.WifiManager;
 
-import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.net.InetAddress;
-import java.util.Enumeration;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.jmdns.JmDNS;
-import javax.jmdns.ServiceEvent;
-import javax.jmdns.ServiceInfo;
-import javax.jmdns.ServiceListener;
 import javax.jmdns.impl.DNSIncoming;
 import javax.jmdns.impl.constants.DNSRecordClass;
 import javax.jmdns.impl.constants.DNSRecordType;
 
 import rx.Observable;
 import rx.Subscriber;
-import rx.android.MainThreadSubscription;
-import rxbonjour.exc.DiscoveryFailed;
+import rx.functions.Func1;
 import rxbonjour.exc.StaleContextException;
-import rxbonjour.internal.BonjourSchedulers;
+import rxbonjour.jmdns.JmDNSDiscovery;
+import rxbonjour.mdns.MdnsDiscovery;
 import rxbonjour.model.BonjourEvent;
 import rxbonjour.model.BonjourService;
+import rxbonjour.model.BonjourTypeEvent;
 import rxbonjour.utils.SupportUtils;
 
 /**
  * Support implementation for Bonjour service discovery on pre-Jelly Bean devices,
- * utilizing Android's WifiManager and the JmDNS library for lookups.
+ * utilizing Android's WifiManager and the JmDNS engine for lookups.
  */
 final class SupportBonjourDiscovery extends BonjourDiscovery<SupportUtils> {
 
@@ -42,12 +37,6 @@ final class SupportBonjourDiscovery extends BonjourDiscovery<SupportUtils> {
 		Logger.getLogger(DNSIncoming.MessageInputStream.class.getName()).setLevel(Level.OFF);
 	}
 
-	/** Suffix appended to input types */
-	private static final String SUFFIX = ".local.";
-
-	/** Tag to associate with the multicast lock */
-	private static final String LOCK_TAG = "RxBonjourDiscovery";
-
 	/**
 	 * Constructor
 	 */
@@ -62,114 +51,125 @@ final class SupportBonjourDiscovery extends BonjourDiscovery<SupportUtils> {
 	/* Begin private */
 
 	/**
-	 * Creates a new BonjourEvent instance from a JmDNS ServiceEvent.
+	 * Defers the creation of an Observable from the JmDNS engine until subscription,
+	 * binding the engine to the device's Wi-Fi connection if the Context is still available by then.
 	 *
-	 * @param type  Type of event, either ADDED or REMOVED
-	 * @param event Event containing information about the changed service
-	 * @return A BonjourEvent containing the necessary information
+	 * @param context Context of the request
+	 * @param factory Function creating the Observable from the engine
+	 * @return An Observable for the engine's events
 	 */
-	private BonjourEvent newBonjourEvent(BonjourEvent.Type type, ServiceEvent event) {
-		// Construct a new BonjourService
-		ServiceInfo info = event.getInfo();
-		BonjourService.Builder serviceBuilder = new BonjourService.Builder(event.getName(), event.getType());
-
-		// Prepare TXT record Bundle
-		Enumeration<String> keys = info.getPropertyNames();
-		while (keys.hasMoreElements()) {
-			String key = keys.nextElement();
-			serviceBuilder.addTxtRecord(key, info.getPropertyString(key));
-		}
+	private <T> Observable<T> withEngine(Context context, Func1<JmDNSDiscovery, Observable<T>> factory) {
+		return withEngine(context, false, factory);
+	}
 
-		// Add non-null host addresses and port
-		InetAddress[] addresses = info.getInetAddresses();
-		for (InetAddress address : addresses) {
-			if (address == null) continue;
-			serviceBuilder.addAddress(address);
-		}
-		serviceBuilder.setPort(info.getPort());
+	/**
+	 * Defers the creation of an Observable from the JmDNS engine until subscription,
+	 * binding the engine to the device's Wi-Fi connection or to all of its network interfaces.
+	 *
+	 * @param context       Context of the request
+	 * @param allInterfaces Whether to run discoveries on all network interfaces
+	 * @param factory       Function creating the Observable from the engine
+	 * @return An Observable for the engine's events
+	 */
+	private <T> Observable<T> withEngine(Context context, final boolean allInterfaces, final Func1<JmDNSDiscovery, Observable<T>> factory) {
+		// Create a weak reference to the incoming Context
+		final WeakReference<Context> weakContext = new WeakReference<>(context);
 
-		// Create and return an event wrapping the BonjourService
-		return new BonjourEvent(type, serviceBuilder.build());
+		return Observable.create(new Observable.OnSubscribe<T>() {
+			@Override public void call(Subscriber<? super T> subscriber) {
+				Context context = weakContext.get();
+				if (context == null) {
+					subscriber.onError(new StaleContextException());
+					return;
+				}
+
+				JmDNSDiscovery engine = new JmDNSDiscovery(utils.newEnvironment(context, allInterfaces));
+				factory.call(engine).unsafeSubscribe(subscriber);
+			}
+		});
 	}
 
 	/* Begin overrides */
 
-	@Override public Observable<BonjourEvent> start(Context context, final String type) {
-		// Append ".local." suffix in order to have JmDNS pick up on the services
-		final String dnsType = (type.endsWith(SUFFIX)) ? type : type + SUFFIX;
+	@Override public Observable<BonjourEvent> start(Context context, String type) {
+		return start(context, Collections.singletonList(type));
+	}
+
+	@Override public Observable<BonjourEvent> start(Context context, final Collection<String> types) {
+		return withEngine(context, new Func1<JmDNSDiscovery, Observable<BonjourEvent>>() {
+			@Override public Observable<BonjourEvent> call(JmDNSDiscovery engine) {
+				return engine.start(types);
+			}
+		});
+	}
+
+	@Override public Observable<BonjourEvent> startUnresolved(Context context, final Collection<String> types) {
+		return withEngine(context, new Func1<JmDNSDiscovery, Observable<BonjourEvent>>() {
+			@Override public Observable<BonjourEvent> call(JmDNSDiscovery engine) {
+				return engine.start(types, false);
+			}
+		});
+	}
+
+	@Override public Observable<BonjourService> resolve(Context context, final BonjourService service) {
+		return withEngine(context, new Func1<JmDNSDiscovery, Observable<BonjourService>>() {
+			@Override public Observable<BonjourService> call(JmDNSDiscovery engine) {
+				return engine.resolve(service);
+			}
+		});
+	}
+
+	@Override public Observable<BonjourEvent> startMonitoring(Context context, final Collection<String> types) {
+		return withEngine(context, new Func1<JmDNSDiscovery, Observable<BonjourEvent>>() {
+			@Override public Observable<BonjourEvent> call(JmDNSDiscovery engine) {
+				return engine.monitor(types);
+			}
+		});
+	}
+
+	@Override public Observable<BonjourEvent> startOnAllInterfaces(Context context, final Collection<String> types) {
+		return withEngine(context, true, new Func1<JmDNSDiscovery, Observable<BonjourEvent>>() {
+			@Override public Observable<BonjourEvent> call(JmDNSDiscovery engine) {
+				return engine.start(types);
+			}
+		});
+	}
+
+	@Override public Observable<BonjourEvent> startLightweight(Context context, final Collection<String> types) {
+		if (!SupportUtils.supportsNioMulticast()) {
+			return Observable.error(new UnsupportedOperationException("The lightweight engine requires Android 7.0"));
+		}
 
 		// Create a weak reference to the incoming Context
 		final WeakReference<Context> weakContext = new WeakReference<>(context);
 
 		return Observable.create(new Observable.OnSubscribe<BonjourEvent>() {
-			@Override public void call(final Subscriber<? super BonjourEvent> subscriber) {
+			@Override public void call(Subscriber<? super BonjourEvent> subscriber) {
 				Context context = weakContext.get();
 				if (context == null) {
 					subscriber.onError(new StaleContextException());
 					return;
 				}
 
-				// Create the service listener
-				final ServiceListener listener = new ServiceListener() {
-					@Override public void serviceAdded(ServiceEvent event) {
-						event.getDNS().requestServiceInfo(event.getType(), event.getName());
-					}
-
-					@Override public void serviceRemoved(ServiceEvent event) {
-						if (!subscriber.isUnsubscribed()) {
-							subscriber.onNext(newBonjourEvent(BonjourEvent.Type.REMOVED, event));
-						}
-					}
-
-					@Override public void serviceResolved(ServiceEvent event) {
-						if (!subscriber.isUnsubscribed()) {
-							subscriber.onNext(newBonjourEvent(BonjourEvent.Type.ADDED, event));
-						}
-					}
-				};
-
-				// Obtain a multicast lock from the Wifi Manager and acquire it
-				WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-				final WifiManager.MulticastLock lock = wifiManager.createMulticastLock(LOCK_TAG);
-				lock.setReferenceCounted(true);
-				lock.acquire();
-
-				// Obtain the current IP address and initialize JmDNS' discovery service with that
-				try {
-					final JmDNS jmdns = utils.getManager(context);
-
-					// Add onUnsubscribe() hook
-					subscriber.add(new MainThreadSubscription() {
-						@Override protected void onUnsubscribe() {
-							// Release the lock and clean up the JmDNS client
-							jmdns.removeServiceListener(dnsType, listener);
-							utils.decrementSubscriberCount();
-
-							Observable<Void> cleanUpObservable = Observable.create(new Observable.OnSubscribe<Void>() {
-								@Override public void call(final Subscriber<? super Void> subscriber) {
-									// Release the held multicast lock
-									lock.release();
-
-									// Close the JmDNS instance if no more subscribers remain
-									utils.closeIfNecessary();
-
-									// Unsubscribe from the observable automatically
-									subscriber.unsubscribe();
-								}
-							});
-							cleanUpObservable
-									.compose(BonjourSchedulers.cleanupSchedulers())
-									.subscribe();
-						}
-					});
-
-					// Start discovery
-					jmdns.addServiceListener(dnsType, listener);
-					utils.incrementSubscriberCount();
-
-				} catch (IOException e) {
-					subscriber.onError(new DiscoveryFailed(SupportBonjourDiscovery.class, dnsType));
-				}
+				new MdnsDiscovery(utils.newEnvironment(context))
+						.start(types)
+						.unsafeSubscribe(subscriber);
+			}
+		});
+	}
+
+	@Override public Observable<BonjourTypeEvent> startTypeDiscovery(Context context) {
+		return withEngine(context, new Func1<JmDNSDiscovery, Observable<BonjourTypeEvent>>() {
+			@Override public Observable<BonjourTypeEvent> call(JmDNSDiscovery engine) {
+				return engine.startTypeDiscovery();
+			}
+		});
+	}
+
+	@Override public Observable<BonjourEvent> startAllTypes(Context context) {
+		return withEngine(context, new Func1<JmDNSDiscovery, Observable<BonjourEvent>>() {
+			@Override public Observable<BonjourEvent> call(JmDNSDiscovery engine) {
+				return engine.startAllTypes();
 			}
 		});
 	}
@@ -6,31 +6,38 @@ import rx.schedulers.Schedulers;
 
 public class BonjourSchedulers {
 
-	public static <T> Observable.Transformer<T, T> backlogSchedulers() {
+	public static <T> Observable.Transformer<T, T> cleanupSchedulers() {
 		return new Observable.Transformer<T, T>() {
 			@Override public Observable<T> call(Observable<T> obs) {
 				return obs
-						.subscribeOn(Schedulers.io())
-						.observeOn(Schedulers.io());
+						.subscribeOn(Schedulers.computation())
+						.observeOn(Schedulers.computation());
 			}
 		};
 	}
 
-	public static <T> Observable.Transformer<T, T> cleanupSchedulers() {
+	public static <T> Observable.Transformer<T, T> startSchedulers() {
 		return new Observable.Transformer<T, T>() {
 			@Override public Observable<T> call(Observable<T> obs) {
 				return obs
-						.subscribeOn(Schedulers.computation())
-						.observeOn(Schedulers.computation());
+						.subscribeOn(Schedulers.io())
+						.observeOn(AndroidSchedulers.mainThread());
 			}
 		};
 	}
 
-	public static <T> Observable.Transformer<T, T> startSchedulers() {
-		return new Observable.Transformer<T, T>() {
-			@Override public Observable<T> call(Observable<T> obs) {
+	/**
+	 * Like {@link #startSchedulers()}, but applies the provided Transformer before handing items over to the main thread,
+	 * so that it runs off the main thread.
+	 *
+	 * @param beforeDelivery Transformer to apply before the hand-off
+	 */
+	public static <T, R> Observable.Transformer<T, R> startSchedulers(final Observable.Transformer<T, R> beforeDelivery) {
+		return new Observable.Transformer<T, R>() {
+			@Override public Observable<R> call(Observable<T> obs) {
 				return obs
 						.subscribeOn(Schedulers.io())
+						.compose(beforeDelivery)
 						.observeOn(AndroidSchedulers.mainThread());
 			}
 		};
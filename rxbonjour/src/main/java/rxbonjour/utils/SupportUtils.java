@@ -2,117 +2,156 @@ package rxbonjour.utils;
 
 import android.content.Context;
 import android.net.wifi.WifiManager;
+import android.os.Build;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import javax.jmdns.JmDNS;
-import javax.jmdns.impl.DNSStatefulObject;
+import java.util.List;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.android.MainThreadSubscription;
+import rx.functions.Action0;
+import rxbonjour.internal.BonjourSchedulers;
+import rxbonjour.jmdns.JmDNSEnvironment;
+import rxbonjour.jmdns.JmDNSManager;
+import rxbonjour.jmdns.MulticastLockManager;
+import rxbonjour.jmdns.SharedMulticastLock;
 
 /**
  * Helper class to acquire some of the support implementation's common objects.
+ * Bridges the platform-independent JmDNS engine to Android, binding JmDNS to the device's Wi-Fi address
+ * and holding a multicast lock while the engine is in use. The lock is shared by all discoveries and broadcasts.
  */
-public final class SupportUtils extends BonjourUtils<JmDNS> {
-
-	private static SupportUtils instance;
+public final class SupportUtils extends BonjourUtils<JmDNSManager> {
 
-	private JmDNS jmdnsInstance;
+	private static final SupportUtils INSTANCE = new SupportUtils();
 
-	/** Synchronization lock on the JmDNS instance */
-	private final Object jmdnsLock = new Object();
+	/** API level from which DatagramChannel supports joining multicast groups, as required by the NIO-based mDNS engine (Android 7.0) */
+	private static final int MIN_SDK_NIO_MULTICAST = 24;
 
-	/** Number of subscribers using JmDNS */
-	private final AtomicInteger jmdnsSubscriberCount = new AtomicInteger(0);
+	private final JmDNSManager manager = JmDNSManager.get();
+	private final WifiMulticastLockManager lockManager = new WifiMulticastLockManager();
 
 	private SupportUtils() {
 		//no instance
 	}
 
 	public static SupportUtils get() {
-		if (instance == null) {
-			instance = new SupportUtils();
-		}
-		return instance;
+		return INSTANCE;
 	}
 
 	/**
-	 * Returns the JmDNS shared among all subscribers for Bonjour events, creating it if necessary.
+	 * Returns the pool of JmDNS instances shared among all subscribers for Bonjour events.
 	 *
-	 * @param context Context used to access the WifiManager for the device's IP address with which JmDNS is initialized
-	 * @return The JmDNS instance
-	 * @throws IOException In case the device's address can't be resolved
+	 * @param context Context, unused since instances are bound to the address provided by each environment
+	 * @return The JmDNS pool
 	 */
-	@Override public JmDNS getManager(Context context) throws IOException {
-		synchronized (jmdnsLock) {
-			if (jmdnsInstance == null || !isAvailable()) {
-				WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-				InetAddress inetAddress = getInetAddress(wifiManager);
-				jmdnsInstance = JmDNS.create(inetAddress, inetAddress.toString());
-				jmdnsSubscriberCount.set(0);
-			}
-			return jmdnsInstance;
-		}
+	@Override public JmDNSManager getManager(Context context) {
+		return manager;
 	}
 
 	/**
-	 * Returns whether the JmDNS instance is not closing or closed.
-     */
-	private boolean isAvailable() {
-		if (jmdnsInstance != null) {
-			DNSStatefulObject dso = (DNSStatefulObject) jmdnsInstance;
-			return !(dso.isClosing() || dso.isClosed());
-		}
-
-		return false;
+	 * @return True if the device supports the NIO-based mDNS engine, which requires Android 7.0 or newer
+	 */
+	public static boolean supportsNioMulticast() {
+		return Build.VERSION.SDK_INT >= MIN_SDK_NIO_MULTICAST;
 	}
 
 	/**
-	 * Increments the count of JmDNS subscribers.
+	 * Returns the multicast lock shared among all subscribers for Bonjour events, which is only held through their environments.
 	 *
-	 * @return The updated subscriber count
-     */
-	public int incrementSubscriberCount() {
-		if (isAvailable()) {
-			return jmdnsSubscriberCount.incrementAndGet();
-		}
-		return 0;
+	 * @return The shared multicast lock
+	 */
+	public SharedMulticastLock getMulticastLockManager() {
+		return lockManager;
 	}
 
 	/**
-	 * Decrements the count of JmDNS subscribers.
+	 * Creates the environment for the JmDNS engine, which binds JmDNS to the device's Wi-Fi address,
+	 * holds the shared multicast lock while in use, and tears down subscriptions on the main thread.
 	 *
-	 * @return The updated subscriber count
-     */
-	public int decrementSubscriberCount() {
-		if (isAvailable()) {
-			return jmdnsSubscriberCount.decrementAndGet();
-		}
-		return 0;
+	 * @param context Context used to access the WifiManager
+	 * @return The environment
+	 */
+	public JmDNSEnvironment newEnvironment(Context context) {
+		return newEnvironment(context, false);
 	}
 
 	/**
-	 * Closes the JmDNS instance if there are no longer any subscribers.
+	 * Creates the environment for the JmDNS engine, which holds the shared multicast lock while in use, and tears down subscriptions
+	 * on the main thread. Discoveries either run on the device's Wi-Fi address only, or on all network interfaces
+	 * that support multicast, such as Ethernet, USB tethering or IPv6-only networks.
+	 *
+	 * @param context       Context used to access the WifiManager
+	 * @param allInterfaces Whether to run discoveries on all network interfaces
+	 * @return The environment
 	 */
-	public void closeIfNecessary() {
-		if (jmdnsInstance != null) {
-			if (jmdnsSubscriberCount.get() <= 0) {
-				close();
+	public JmDNSEnvironment newEnvironment(Context context, final boolean allInterfaces) {
+		final WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+
+		return new JmDNSEnvironment() {
+			@Override public InetAddress getAddress() throws IOException {
+				return getInetAddress(wifiManager);
 			}
-		}
+
+			@Override public List<InetAddress> getAddresses() throws IOException {
+				if (allInterfaces) {
+					List<InetAddress> addresses = getMulticastAddresses();
+					if (!addresses.isEmpty()) return addresses;
+				}
+				return super.getAddresses();
+			}
+
+			@Override public Subscription acquireMulticast() {
+				return lockManager.acquire(wifiManager);
+			}
+
+			@Override public Subscription createUnsubscribeHook(final Action0 action) {
+				return new MainThreadSubscription() {
+					@Override protected void onUnsubscribe() {
+						action.call();
+					}
+				};
+			}
+
+			@Override public <T> Observable.Transformer<T, T> cleanupSchedulers() {
+				return BonjourSchedulers.cleanupSchedulers();
+			}
+		};
 	}
 
+	/* Begin inner classes */
+
 	/**
-	 * Closes the JmDNS instance.
+	 * Manager of a single Wi-Fi multicast lock, which is created from the WifiManager of the subscription acquiring it
 	 */
-	public void close() {
-		if (jmdnsInstance != null) {
+	private static final class WifiMulticastLockManager extends MulticastLockManager {
+
+		private static final String LOCK_TAG = "RxBonjour";
+
+		private WifiManager wifiManager;
+		private WifiManager.MulticastLock lock;
+
+		synchronized Hold acquire(WifiManager wifiManager) {
+			this.wifiManager = wifiManager;
 			try {
-				jmdnsInstance.close();
-			} catch (IOException ignored) {
+				return acquire();
 			} finally {
-				jmdnsSubscriberCount.set(0);
+				this.wifiManager = null;
 			}
 		}
+
+		@Override protected void onAcquire() {
+			// Reference counting is handled by the manager
+			lock = wifiManager.createMulticastLock(LOCK_TAG);
+			lock.setReferenceCounted(false);
+			lock.acquire();
+		}
+
+		@Override protected void onRelease() {
+			lock.release();
+			lock = null;
+		}
 	}
 }
@@ -7,8 +7,12 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.concurrent.TimeUnit;
+
 import rxbonjour.internal.BonjourSchedulers;
+import rxbonjour.jmdns.JmDNSManager;
 import rxbonjour.util.TestSchedulers;
+import rxbonjour.utils.SupportUtils;
 
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
@@ -26,10 +30,13 @@ public abstract class BaseTest {
 
 	@Before public final void beforeTests() throws Exception {
 		mockStatic(BonjourSchedulers.class);
-		given(BonjourSchedulers.backlogSchedulers()).willReturn(TestSchedulers.backlogSchedulers());
 		given(BonjourSchedulers.cleanupSchedulers()).willReturn(TestSchedulers.immediateSchedulers());
 		given(BonjourSchedulers.startSchedulers()).willReturn(TestSchedulers.immediateSchedulers());
 
+		// Close unused JmDNS instances and release the multicast lock right away, so that each test starts with fresh ones
+		JmDNSManager.get().setGracePeriod(0, TimeUnit.MILLISECONDS);
+		SupportUtils.get().getMulticastLockManager().setIdleDelay(0, TimeUnit.MILLISECONDS);
+
 		setupMocks();
 	}
 
@@ -3,18 +3,25 @@ package rxbonjour.discovery;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetAddress;
 
 import rx.observers.TestSubscriber;
 import rxbonjour.base.BaseTest;
 import rxbonjour.exc.StaleContextException;
+import rxbonjour.internal.ResolveCache;
 import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourService;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -99,5 +106,33 @@ public class JBBonjourDiscoveryTest extends BaseTest {
 		subscriber.assertError(StaleContextException.class);
 	}
 
+	@Test public void testCachedServicesAreNotResolvedAgain() throws Exception {
+		BonjourService cached = new BonjourService.Builder("server", "_http._tcp.")
+				.addAddress(InetAddress.getByName("10.0.0.1"))
+				.setPort(80)
+				.build();
+		ResolveCache.get().put(cached, ResolveCache.DEFAULT_TTL_MILLIS);
+		BonjourDiscovery<?> discovery = new JBBonjourDiscovery();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+		ArgumentCaptor<NsdManager.DiscoveryListener> captor = ArgumentCaptor.forClass(NsdManager.DiscoveryListener.class);
+
+		discovery.start(context, "_http._tcp").subscribe(subscriber);
+		verify(nsdManager).discoverServices(eq("_http._tcp"), anyInt(), captor.capture());
+		captor.getValue().onServiceFound(serviceInfo("server", "_http._tcp."));
+
+		// The cached service is reported once upon subscribing, and not resolved again once found
+		verify(nsdManager, never()).resolveService(any(NsdServiceInfo.class), any(NsdManager.ResolveListener.class));
+		subscriber.assertValue(new BonjourEvent(BonjourEvent.Type.ADDED, cached));
+		subscriber.unsubscribe();
+		ResolveCache.get().clear();
+	}
+
+	private static NsdServiceInfo serviceInfo(String name, String type) {
+		NsdServiceInfo info = mock(NsdServiceInfo.class);
+		when(info.getServiceName()).thenReturn(name);
+		when(info.getServiceType()).thenReturn(type);
+		return info;
+	}
+
 	// TODO Fill with more tests
 }
@@ -8,15 +8,18 @@ import org.junit.Test;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceListener;
+import javax.jmdns.ServiceTypeListener;
 import javax.jmdns.impl.DNSStatefulObject;
 
 import rx.observers.TestSubscriber;
 import rxbonjour.base.BaseTest;
 import rxbonjour.exc.StaleContextException;
 import rxbonjour.model.BonjourEvent;
+import rxbonjour.model.BonjourTypeEvent;
 
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
@@ -33,12 +36,13 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
 public class SupportBonjourDiscoveryTest extends BaseTest {
 
 	private TestJmDNS jmdns;
+	private WifiManager wifiManager;
 
 	abstract class TestJmDNS extends JmDNS implements DNSStatefulObject {
 	}
 
 	@Override protected void setupMocks() throws Exception {
-		WifiManager wifiManager = mock(WifiManager.class);
+		wifiManager = mock(WifiManager.class);
 		WifiInfo wifiInfo = mock(WifiInfo.class);
 		WifiManager.MulticastLock lock = mock(WifiManager.MulticastLock.class);
 		jmdns = mock(TestJmDNS.class);
@@ -99,12 +103,12 @@ public class SupportBonjourDiscoveryTest extends BaseTest {
 
 		subscriber1.assertNoErrors();
 		subscriber2.assertNoErrors();
-		verify(jmdns, times(2)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
 		subscriber1.unsubscribe();
-		verify(jmdns, times(1)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, never()).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
 		verify(jmdns, never()).close();
 		subscriber2.unsubscribe();
-		verify(jmdns, times(2)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
 		verify(jmdns, times(1)).close();
 		setJmDNSMockClosed();
 	}
@@ -130,6 +134,39 @@ public class SupportBonjourDiscoveryTest extends BaseTest {
 		setJmDNSMockClosed();
 	}
 
+	@Test public void testAddAndRemoveMultipleTypes() throws Exception {
+		BonjourDiscovery<?> discovery = new SupportBonjourDiscovery();
+		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
+
+		discovery.start(context, Arrays.asList("_http._tcp", "_ssh._tcp", "_ipp._tcp.local.")).subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		verify(wifiManager, times(1)).createMulticastLock(anyString());
+		verify(jmdns, times(1)).addServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).addServiceListener(eq("_ssh._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).addServiceListener(eq("_ipp._tcp.local."), any(ServiceListener.class));
+		subscriber.unsubscribe();
+		verify(jmdns, times(1)).removeServiceListener(eq("_http._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).removeServiceListener(eq("_ssh._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).removeServiceListener(eq("_ipp._tcp.local."), any(ServiceListener.class));
+		verify(jmdns, times(1)).close();
+		setJmDNSMockClosed();
+	}
+
+	@Test public void testTypeDiscoveryCycle() throws Exception {
+		BonjourDiscovery discovery = new SupportBonjourDiscovery();
+		TestSubscriber<BonjourTypeEvent> subscriber = new TestSubscriber<>();
+
+		discovery.startTypeDiscovery(context).subscribe(subscriber);
+
+		subscriber.assertNoErrors();
+		verify(jmdns, times(1)).addServiceTypeListener(any(ServiceTypeListener.class));
+		subscriber.unsubscribe();
+		verify(jmdns, times(1)).removeServiceTypeListener(any(ServiceTypeListener.class));
+		verify(jmdns, times(1)).close();
+		setJmDNSMockClosed();
+	}
+
 	@Test public void testStaleContext() throws Exception {
 		BonjourDiscovery discovery = new SupportBonjourDiscovery();
 		TestSubscriber<BonjourEvent> subscriber = new TestSubscriber<>();
@@ -14,14 +14,4 @@ public class TestSchedulers {
 			}
 		};
 	}
-
-	public static <T> Observable.Transformer<T, T> backlogSchedulers() {
-		return new Observable.Transformer<T, T>() {
-			@Override public Observable<T> call(Observable<T> obs) {
-				return obs
-						.subscribeOn(Schedulers.computation())
-						.observeOn(Schedulers.computation());
-			}
-		};
-	}
 }